@@ -17,9 +17,13 @@
 package io.github.k7t3.voicepeakcw4j;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
@@ -31,6 +35,18 @@ import java.util.stream.Collectors;
 @SuppressWarnings("UnusedReturnValue")
 class VoicepeakRunner {
 
+    /**
+     * 音声ファイルを少しずつ書き込むモードを有効にするシステムプロパティ
+     */
+    static final String PROGRESSIVE_PROPERTY = "voicepeakcw4j.mock.progressive";
+
+    private static final int PROGRESSIVE_SLICES = 10;
+
+    /**
+     * test.wavの音声データの開始位置
+     */
+    private static final int DATA_OFFSET = 104;
+
     private String narrator;
 
     private String speechText;
@@ -89,6 +105,45 @@ class VoicepeakRunner {
         System.err.println("===== END BUG REPORT =====");
     }
 
+    /**
+     * テスト音声を生成しながら出力ファイルに書き込む。
+     * <p>
+     *     ヘッダのサイズを0として書き込み、音声データを少しずつ追記したあとで
+     *     RIFFチャンクとdataチャンクのサイズを書き換える。
+     * </p>
+     */
+    private void writeProgressive(Path o) throws IOException {
+        byte[] wav;
+        try (var input = getClass().getResourceAsStream("/test.wav")) {
+            wav = Objects.requireNonNull(input).readAllBytes();
+        }
+
+        var header = ByteBuffer.wrap(wav, 0, DATA_OFFSET).order(ByteOrder.LITTLE_ENDIAN);
+        var riffSize = header.getInt(4);
+        var dataSize = header.getInt(DATA_OFFSET - 4);
+
+        try (var channel = FileChannel.open(o, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            var placeholder = ByteBuffer.allocate(DATA_OFFSET).put(wav, 0, DATA_OFFSET).order(ByteOrder.LITTLE_ENDIAN);
+            placeholder.putInt(4, 0).putInt(DATA_OFFSET - 4, 0).flip();
+            channel.write(placeholder);
+
+            // 生成完了までの遅延を分割して音声データを追記する
+            var sliceSize = (wav.length - DATA_OFFSET + PROGRESSIVE_SLICES - 1) / PROGRESSIVE_SLICES;
+            for (int offset = DATA_OFFSET; offset < wav.length; offset += sliceSize) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(1000 / PROGRESSIVE_SLICES);
+                } catch (InterruptedException e) {
+                    System.err.println("failed to sleep");
+                }
+                channel.write(ByteBuffer.wrap(wav, offset, Math.min(sliceSize, wav.length - offset)));
+            }
+
+            var size = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            channel.write(size.putInt(0, riffSize), 4);
+            channel.write(size.clear().putInt(0, dataSize), DATA_OFFSET - 4);
+        }
+    }
+
     public void run() {
         if (speechText == null && speechFile == null) {
             System.err.println("Please specify text to say");
@@ -125,7 +180,14 @@ class VoicepeakRunner {
             // 既定の出力場所はホームディレクトリのoutput.wav
             o = Path.of(System.getProperty("user.home"), "output.wav");
         }
-        {
+        if (Boolean.getBoolean(PROGRESSIVE_PROPERTY)) {
+            try {
+                writeProgressive(o);
+            } catch (IOException e) {
+                System.err.println("failed to output");
+            }
+            System.out.println("Output: " + o.toAbsolutePath());
+        } else {
             try {
                 // 生成完了までの遅延として遅延をエミュレート
                 TimeUnit.SECONDS.sleep(1);
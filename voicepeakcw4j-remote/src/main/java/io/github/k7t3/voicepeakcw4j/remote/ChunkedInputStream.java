@@ -0,0 +1,135 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.k7t3.voicepeakcw4j.remote;
+
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * ワーカーから受信した出力を読み込むストリーム
+ * <p>
+ *     受信したデータの断片をキューに保持する。キューが満たされているときは
+ *     読み込まれるまで書き込みを待機するため、プロセスのパイプと同様に動作する。
+ * </p>
+ * <p>
+ *     {@link java.nio.channels.Pipe}のストリームは読み込みの間モニターを保持しており、
+ *     仮想スレッドから読み込むとキャリアスレッドを占有してしまうため使用しない。
+ * </p>
+ */
+class ChunkedInputStream extends InputStream {
+
+    private static final byte[] END = new byte[0];
+
+    private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(64);
+
+    private byte[] current;
+
+    private int position;
+
+    private volatile boolean closed = false;
+
+    /**
+     * 受信したデータを書き込む。読み込み側が閉じているときは破棄する。
+     * @param bytes 受信したデータ
+     * @throws InterruptedIOException 待機中に割り込まれたとき
+     */
+    void write(byte[] bytes) throws InterruptedIOException {
+        if (bytes.length == 0) {
+            return;
+        }
+        put(bytes);
+    }
+
+    /**
+     * データの終端を書き込む
+     * @throws InterruptedIOException 待機中に割り込まれたとき
+     */
+    void finish() throws InterruptedIOException {
+        put(END);
+    }
+
+    private void put(byte[] bytes) throws InterruptedIOException {
+        if (closed) {
+            return;
+        }
+        try {
+            chunks.put(bytes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    /**
+     * 読み込める断片がないときは次の断片を受信するまで待機する
+     * @return 終端に達したときはfalse
+     */
+    private boolean fill() throws InterruptedIOException {
+        if (current == END) {
+            return false;
+        }
+        if (current != null && position < current.length) {
+            return true;
+        }
+        try {
+            current = chunks.take();
+            position = 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        return current != END;
+    }
+
+    @Override
+    public int read() throws InterruptedIOException {
+        if (!fill()) {
+            return -1;
+        }
+        return current[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws InterruptedIOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        var length = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, length);
+        position += length;
+        return length;
+    }
+
+    @Override
+    public int available() {
+        var chunk = current;
+        return chunk == null || chunk == END ? 0 : chunk.length - position;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        // 書き込みを待機しているときは解放する
+        chunks.clear();
+        current = END;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.k7t3.voicepeakcw4j.remote;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * ワーカーとの通信プロトコルの定義
+ * <p>
+ *     1つの接続で1つのVOICEPEAKプロセスを実行する。
+ * </p>
+ * <p>
+ *     要求はマジックナンバー、バージョン、オプション引数、
+ *     読み上げるテキストファイルの内容、音声ファイルの出力の有無からなる。
+ *     応答は種類を表す1バイトに続く標準出力、標準エラー出力、音声ファイルの断片と、
+ *     最後の終了ステータスからなる。
+ * </p>
+ */
+final class Protocol {
+
+    static final int MAGIC = 0x56504357;
+
+    static final int VERSION = 1;
+
+    static final byte STANDARD_OUT = 1;
+    static final byte ERROR_OUT = 2;
+    static final byte AUDIO = 3;
+    static final byte EXIT = 4;
+
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * 要求の大きさの上限(バイト)
+     */
+    static final int MAX_LENGTH = 16 * 1024 * 1024;
+
+    static final String TEXT_OPTION = "--text";
+    static final String OUTPUT_OPTION = "--out";
+
+    /**
+     * 値をとるオプション
+     */
+    private static final Set<String> VALUE_OPTIONS = Set.of(
+            "--say", "--narrator", "--emotion", "--pitch", "--speed", "--list-emotion");
+
+    /**
+     * 値をとらないオプション
+     */
+    private static final Set<String> FLAG_OPTIONS = Set.of("--list-narrator");
+
+    private Protocol() {
+    }
+
+    /**
+     * ワーカーで受け付けるオプション引数か検証する。
+     * <p>
+     *     ファイルを参照するオプションはワーカーのファイルシステムに作用するため受け付けない。
+     * </p>
+     * @param arguments オプション引数
+     * @throws IllegalArgumentException 受け付けないオプション引数を含むとき
+     */
+    static void validate(List<String> arguments) {
+        for (int i = 0; i < arguments.size(); i++) {
+            var argument = arguments.get(i);
+            if (VALUE_OPTIONS.contains(argument)) {
+                if (arguments.size() <= ++i)
+                    throw new IllegalArgumentException("missing value of " + argument);
+            } else if (!FLAG_OPTIONS.contains(argument)) {
+                throw new IllegalArgumentException("unsupported argument " + argument);
+            }
+        }
+    }
+
+    static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static byte[] readBytes(DataInputStream in) throws IOException {
+        var length = in.readInt();
+        if (length < 0 || MAX_LENGTH < length)
+            throw new IOException("invalid length " + length);
+        var bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        writeBytes(out, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+
+    static void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (var value : values) {
+            writeString(out, value);
+        }
+    }
+
+    static List<String> readStrings(DataInputStream in) throws IOException {
+        var size = in.readInt();
+        if (size < 0 || 1024 < size)
+            throw new IOException("invalid size " + size);
+        var values = new ArrayList<String>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(readString(in));
+        }
+        return values;
+    }
+
+}
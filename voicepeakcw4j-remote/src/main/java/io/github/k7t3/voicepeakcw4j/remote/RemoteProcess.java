@@ -0,0 +1,289 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.k7t3.voicepeakcw4j.remote;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
+
+/**
+ * ワーカーで実行しているVOICEPEAKプロセス
+ * <p>
+ *     ワーカーから受信した標準出力及び標準エラー出力をストリームに書き込み、
+ *     音声ファイルを出力先に書き込む。
+ * </p>
+ */
+class RemoteProcess extends Process {
+
+    private static final System.Logger LOGGER = System.getLogger(RemoteProcess.class.getName());
+
+    /**
+     * ワーカーとの接続が切れたときの終了ステータス
+     */
+    static final int CONNECTION_LOST_STATUS = -1;
+
+    private final Socket socket;
+
+    private final Path output;
+
+    private final Output standardOut;
+    private final Output errorOut;
+
+    private final CompletableFuture<Process> exit = new CompletableFuture<>();
+
+    private volatile int status;
+
+    RemoteProcess(Socket socket, Path output, Output standardOut, Output errorOut) {
+        this.socket = socket;
+        this.output = output;
+        this.standardOut = standardOut;
+        this.errorOut = errorOut;
+    }
+
+    RemoteProcess start() {
+        Thread.ofVirtual().name("vp-remote-" + socket.getRemoteSocketAddress()).start(this::receive);
+        return this;
+    }
+
+    private void receive() {
+        var result = CONNECTION_LOST_STATUS;
+        try (var in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+
+            OutputStream audio = null;
+            try {
+                while (true) {
+                    var type = in.readByte();
+                    if (type == Protocol.EXIT) {
+                        result = in.readInt();
+                        break;
+                    }
+
+                    var bytes = Protocol.readBytes(in);
+                    switch (type) {
+                        case Protocol.STANDARD_OUT -> standardOut.write(bytes);
+                        case Protocol.ERROR_OUT -> errorOut.write(bytes);
+                        case Protocol.AUDIO -> {
+                            if (audio == null) {
+                                audio = Files.newOutputStream(output);
+                            }
+                            audio.write(bytes);
+                        }
+                        default -> throw new IOException("unexpected response type " + type);
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.log(System.Logger.Level.WARNING, "connection lost " + socket.getRemoteSocketAddress(), e);
+                errorOut.write(("connection lost: " + e.getMessage() + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+            } finally {
+                if (audio != null) {
+                    audio.close();
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(System.Logger.Level.WARNING, "failed to receive response", e);
+            result = CONNECTION_LOST_STATUS;
+        } finally {
+            finish();
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+            status = result;
+            exit.complete(this);
+        }
+    }
+
+    private void finish() {
+        try {
+            standardOut.finish();
+            errorOut.finish();
+        } catch (IOException e) {
+            LOGGER.log(System.Logger.Level.WARNING, "failed to finish streams", e);
+        }
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return OutputStream.nullOutputStream();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return standardOut.input();
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+        return errorOut.input();
+    }
+
+    @Override
+    public int waitFor() throws InterruptedException {
+        try {
+            exit.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+        return status;
+    }
+
+    @Override
+    public int exitValue() {
+        if (!exit.isDone())
+            throw new IllegalThreadStateException("process hasn't exited");
+        return status;
+    }
+
+    @Override
+    public boolean isAlive() {
+        return !exit.isDone();
+    }
+
+    /**
+     * ワーカーとの接続を閉じ、ワーカーで実行しているプロセスを中断する
+     */
+    @Override
+    public void destroy() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            LOGGER.log(System.Logger.Level.WARNING, "failed to close socket", e);
+        }
+    }
+
+    @Override
+    public boolean supportsNormalTermination() {
+        return true;
+    }
+
+    @Override
+    public CompletableFuture<Process> onExit() {
+        return exit.copy();
+    }
+
+    /**
+     * ワーカーで実行しているため、常に-1を返す
+     * @return -1
+     */
+    @Override
+    public long pid() {
+        return -1;
+    }
+
+    @Override
+    public Stream<ProcessHandle> children() {
+        return Stream.empty();
+    }
+
+    @Override
+    public Stream<ProcessHandle> descendants() {
+        return Stream.empty();
+    }
+
+    @Override
+    public String toString() {
+        return "RemoteProcess{address=" + socket.getRemoteSocketAddress() + ", output=" + output + "}";
+    }
+
+    /**
+     * ワーカーから受信した出力の書き込み先
+     * <p>
+     *     {@link ProcessBuilder.Redirect}に従い、パイプのときはストリームから読み込めるようにし、
+     *     それ以外のときはリダイレクト先に書き込む。
+     * </p>
+     */
+    static final class Output {
+
+        private final ChunkedInputStream pipe;
+
+        private final OutputStream sink;
+
+        private Output(ChunkedInputStream pipe, OutputStream sink) {
+            this.pipe = pipe;
+            this.sink = sink;
+        }
+
+        /**
+         * リダイレクトに応じた書き込み先を開く
+         * @param redirect リダイレクト
+         * @param inherit 継承するときの書き込み先
+         * @return 書き込み先
+         * @throws IOException リダイレクト先のファイルを開けなかったとき
+         */
+        static Output open(ProcessBuilder.Redirect redirect, OutputStream inherit) throws IOException {
+            if (redirect == ProcessBuilder.Redirect.DISCARD) {
+                return new Output(null, OutputStream.nullOutputStream());
+            }
+            return switch (redirect.type()) {
+                case PIPE -> new Output(new ChunkedInputStream(), null);
+                case INHERIT -> new Output(null, new FilterOutputStream(inherit) {
+                    @Override
+                    public void close() throws IOException {
+                        // このJVMの出力は閉じない
+                        flush();
+                    }
+                });
+                case WRITE -> new Output(null, Files.newOutputStream(redirect.file().toPath()));
+                case APPEND -> new Output(null, Files.newOutputStream(redirect.file().toPath(),
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+                case READ -> throw new IllegalArgumentException("output cannot be redirected from " + redirect);
+            };
+        }
+
+        InputStream input() {
+            return pipe != null ? pipe : InputStream.nullInputStream();
+        }
+
+        void write(byte[] bytes) throws IOException {
+            if (pipe != null) {
+                pipe.write(bytes);
+            } else {
+                sink.write(bytes);
+            }
+        }
+
+        void finish() throws IOException {
+            if (pipe != null) {
+                pipe.finish();
+            } else {
+                sink.close();
+            }
+        }
+
+        /**
+         * 書き込み先を破棄する
+         */
+        void discard() {
+            try {
+                finish();
+            } catch (IOException e) {
+                LOGGER.log(System.Logger.Level.DEBUG, "failed to close output", e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.k7t3.voicepeakcw4j.remote;
+
+import io.github.k7t3.voicepeakcw4j.VPExecutable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * {@link RemoteWorker}でVOICEPEAKを実行する実行ファイル
+ * <p>
+ *     {@link VPExecutable}を受け付けるすべての箇所で使用でき、
+ *     VOICEPEAKプロセスの代わりにワーカーに合成を要求する。
+ *     読み上げるテキストファイルはワーカーに送信し、合成した音声ファイルは
+ *     ワーカーから受信してこのホストの出力先に書き込む。
+ * </p>
+ * <p>
+ *     複数のワーカーに分散するときは{@link io.github.k7t3.voicepeakcw4j.VPExecutablePool}と組み合わせる。
+ * </p>
+ * <pre>{@code
+ * var pool = new VPExecutablePool(List.of(
+ *         new RemoteVPExecutable(new InetSocketAddress("worker1", 50080)),
+ *         new RemoteVPExecutable(new InetSocketAddress("worker2", 50080))));
+ * VPProcessScheduler.getDefault().setPermits(pool.size());
+ * var client = VPClient.create(pool);
+ * }</pre>
+ * <p>
+ *     環境変数と作業ディレクトリはワーカーで実行するVOICEPEAKプロセスには適用されない。
+ * </p>
+ */
+public class RemoteVPExecutable extends VPExecutable {
+
+    private static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(5);
+
+    private final InetSocketAddress address;
+
+    private final int connectTimeoutMillis;
+
+    /**
+     * 既定の接続タイムアウトでワーカーに接続する実行ファイルを生成する。
+     * @param address ワーカーのアドレス
+     */
+    public RemoteVPExecutable(InetSocketAddress address) {
+        this(address, DEFAULT_CONNECT_TIMEOUT);
+    }
+
+    /**
+     * ワーカーに接続する実行ファイルを生成する。
+     * @param address ワーカーのアドレス
+     * @param connectTimeout 接続タイムアウト
+     */
+    public RemoteVPExecutable(InetSocketAddress address, Duration connectTimeout) {
+        if (address == null)
+            throw new IllegalArgumentException("address is null");
+        if (connectTimeout == null || connectTimeout.isNegative())
+            throw new IllegalArgumentException("connectTimeout is null or negative");
+        this.address = address;
+        this.connectTimeoutMillis = (int) Math.min(Integer.MAX_VALUE, connectTimeout.toMillis());
+    }
+
+    /**
+     * ワーカーのアドレスを返す
+     * @return ワーカーのアドレス
+     */
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * ワーカーにVOICEPEAKの実行を要求する。
+     * <p>
+     *     返されたプロセスの標準出力及び標準エラー出力にはワーカーで実行した
+     *     VOICEPEAKプロセスの出力が流れ、終了ステータスもそのプロセスのものとなる。
+     *     ワーカーとの接続が切れたときは終了ステータス-1で終了する。
+     * </p>
+     * <p>
+     *     プロセスビルダーに出力のリダイレクトが設定されているときは、受信した出力をリダイレクト先に書き込む。
+     * </p>
+     * @param builder オプション引数を設定したプロセスビルダー
+     * @return ワーカーで実行しているプロセス
+     * @throws IOException ワーカーへの接続、あるいはテキストファイルの読み込みに失敗したとき
+     */
+    @Override
+    public Process launch(ProcessBuilder builder) throws IOException {
+        var arguments = new ArrayList<String>();
+        String text = null;
+        Path output = null;
+
+        // ファイルを参照するオプションはこのホストで処理する
+        var command = builder.command();
+        for (int i = 0; i < command.size(); i++) {
+            var argument = command.get(i);
+            if (Protocol.TEXT_OPTION.equals(argument) && i + 1 < command.size()) {
+                text = Files.readString(Paths.get(command.get(++i)));
+            } else if (Protocol.OUTPUT_OPTION.equals(argument) && i + 1 < command.size()) {
+                output = Paths.get(command.get(++i));
+            } else {
+                arguments.add(argument);
+            }
+        }
+
+        // リダイレクトが設定されているときは受信した出力をリダイレクト先に書き込む
+        var standardOut = RemoteProcess.Output.open(builder.redirectOutput(), System.out);
+        RemoteProcess.Output errorOut;
+        try {
+            errorOut = RemoteProcess.Output.open(builder.redirectError(), System.err);
+        } catch (IOException e) {
+            standardOut.discard();
+            throw e;
+        }
+
+        var socket = new Socket();
+        try {
+            socket.connect(address, connectTimeoutMillis);
+
+            var out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeInt(Protocol.MAGIC);
+            out.writeInt(Protocol.VERSION);
+            Protocol.writeStrings(out, arguments);
+            out.writeBoolean(text != null);
+            if (text != null) {
+                Protocol.writeString(out, text);
+            }
+            out.writeBoolean(output != null);
+            out.flush();
+        } catch (IOException e) {
+            socket.close();
+            standardOut.discard();
+            errorOut.discard();
+            throw e;
+        }
+
+        return new RemoteProcess(socket, output, standardOut, errorOut).start();
+    }
+
+    /**
+     * ワーカーで実行するため、このホストで実行するコマンドは書き込まない
+     * @param commands VOICEPEAKを実行するコマンドのリスト
+     */
+    @Override
+    public void fill(List<String> commands) {
+    }
+
+    /**
+     * ワーカーで実行するため、常に空を返す
+     * @return 空
+     */
+    @Override
+    public Optional<Path> locate() {
+        return Optional.empty();
+    }
+
+    @Override
+    public String toString() {
+        return "RemoteVPExecutable{address=" + address + "}";
+    }
+}
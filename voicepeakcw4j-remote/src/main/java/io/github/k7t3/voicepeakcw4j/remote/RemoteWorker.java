@@ -0,0 +1,469 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.k7t3.voicepeakcw4j.remote;
+
+import io.github.k7t3.voicepeakcw4j.VPExecutable;
+import io.github.k7t3.voicepeakcw4j.exception.VPTimeoutException;
+import io.github.k7t3.voicepeakcw4j.process.VPProcessScheduler;
+import io.github.k7t3.voicepeakcw4j.process.VPProcessWatchdog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * リモートからの合成要求をVOICEPEAKで実行するワーカー
+ * <p>
+ *     VOICEPEAKをインストールしたホストで起動し、{@link RemoteVPExecutable}からの要求を受け付ける。
+ *     VOICEPEAKプロセスは指定したスケジューラを経由して起動するため、
+ *     ワーカーが受け付けた要求は同時実行数を超えないようにキューされる。
+ * </p>
+ * <p>
+ *     起動したプロセスは{@link VPProcessWatchdog}で監視し、制限時間を超えたとき、
+ *     あるいは要求元が切断したときは子孫プロセスを含めて終了させる。
+ *     一時的なエラーによる再実行は要求元の{@link io.github.k7t3.voicepeakcw4j.process.RetryPolicy}に任せる。
+ * </p>
+ * <p>
+ *     コマンドラインから起動するときは待ち受けるポート番号と、
+ *     必要に応じてVOICEPEAK実行ファイルのパスを引数に指定する。
+ * </p>
+ * <pre>{@code
+ * java -m voicepeakcw4j.remote/io.github.k7t3.voicepeakcw4j.remote.RemoteWorker 50080 /opt/voicepeak/voicepeak
+ * }</pre>
+ * <p>
+ *     ワーカーは認証を行わないため、信頼できるネットワークでのみ使用すること。
+ * </p>
+ */
+public class RemoteWorker implements AutoCloseable {
+
+    private static final System.Logger LOGGER = System.getLogger(RemoteWorker.class.getName());
+
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofMinutes(10);
+
+    private final VPExecutable executable;
+
+    private final InetSocketAddress bindAddress;
+
+    private final VPProcessScheduler scheduler;
+
+    private final Duration timeout;
+
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+
+    private volatile ServerSocket serverSocket;
+
+    private Thread acceptor;
+
+    /**
+     * すべてのネットワークインターフェースで待ち受けるワーカーを生成する。
+     * @param executable VOICEPEAK実行ファイル
+     * @param port 待ち受けるポート番号。0のときは空いているポート番号
+     */
+    public RemoteWorker(VPExecutable executable, int port) {
+        this(executable, new InetSocketAddress(port), VPProcessScheduler.getDefault());
+    }
+
+    /**
+     * 既定の制限時間(10分)のワーカーを生成する。
+     * @param executable VOICEPEAK実行ファイル
+     * @param bindAddress 待ち受けるアドレス
+     * @param scheduler VOICEPEAKプロセスを起動するスケジューラ
+     */
+    public RemoteWorker(VPExecutable executable, InetSocketAddress bindAddress, VPProcessScheduler scheduler) {
+        this(executable, bindAddress, scheduler, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * ワーカーを生成する。
+     * @param executable VOICEPEAK実行ファイル
+     * @param bindAddress 待ち受けるアドレス
+     * @param scheduler VOICEPEAKプロセスを起動するスケジューラ
+     * @param timeout VOICEPEAKプロセスを起動してから終了するまでの制限時間、あるいは制限しないときはnull
+     */
+    public RemoteWorker(VPExecutable executable, InetSocketAddress bindAddress, VPProcessScheduler scheduler, Duration timeout) {
+        if (executable == null)
+            throw new IllegalArgumentException("executable is null");
+        if (bindAddress == null)
+            throw new IllegalArgumentException("bindAddress is null");
+        if (scheduler == null)
+            throw new IllegalArgumentException("scheduler is null");
+        if (timeout != null && (timeout.isNegative() || timeout.isZero()))
+            throw new IllegalArgumentException("timeout must be positive");
+        this.executable = executable;
+        this.bindAddress = bindAddress;
+        this.scheduler = scheduler;
+        this.timeout = timeout;
+    }
+
+    /**
+     * 要求の受け付けを開始する。
+     * @throws IOException 待ち受けに失敗したとき
+     * @throws IllegalStateException すでに開始しているとき
+     */
+    public synchronized void start() throws IOException {
+        if (serverSocket != null)
+            throw new IllegalStateException("already started");
+
+        var server = new ServerSocket();
+        server.bind(bindAddress);
+        serverSocket = server;
+
+        acceptor = Thread.ofPlatform()
+                .name("vp-remote-worker-" + server.getLocalPort())
+                .daemon(true)
+                .start(this::accept);
+        LOGGER.log(System.Logger.Level.INFO, "worker started " + server.getLocalSocketAddress());
+    }
+
+    /**
+     * 待ち受けているアドレスを返す
+     * @return 待ち受けているアドレス
+     * @throws IllegalStateException 開始していないとき
+     */
+    public InetSocketAddress getAddress() {
+        var server = serverSocket;
+        if (server == null)
+            throw new IllegalStateException("not started");
+        return (InetSocketAddress) server.getLocalSocketAddress();
+    }
+
+    /**
+     * ワーカーが終了するまで待機する
+     * @throws InterruptedException 待機中に割り込まれたとき
+     */
+    public void awaitTermination() throws InterruptedException {
+        Thread thread;
+        synchronized (this) {
+            thread = acceptor;
+        }
+        if (thread != null) {
+            thread.join();
+        }
+    }
+
+    /**
+     * 要求の受け付けを終了し、実行中の要求を中断する
+     */
+    @Override
+    public void close() {
+        var server = serverSocket;
+        if (server == null) {
+            return;
+        }
+        try {
+            server.close();
+        } catch (IOException e) {
+            LOGGER.log(System.Logger.Level.WARNING, "failed to close server socket", e);
+        }
+        connections.forEach(RemoteWorker::closeQuietly);
+
+        // 待ち受けているスレッドが終了するまでポートは解放されない
+        try {
+            awaitTermination();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void accept() {
+        var server = serverSocket;
+        while (!server.isClosed()) {
+            try {
+                var socket = server.accept();
+                connections.add(socket);
+                Thread.ofVirtual().start(() -> {
+                    try {
+                        handle(socket);
+                    } finally {
+                        connections.remove(socket);
+                        closeQuietly(socket);
+                    }
+                });
+            } catch (SocketException e) {
+                // サーバーソケットを閉じたとき
+                LOGGER.log(System.Logger.Level.DEBUG, "worker stopped " + server.getLocalSocketAddress());
+            } catch (IOException e) {
+                LOGGER.log(System.Logger.Level.WARNING, "failed to accept connection", e);
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        Path directory = null;
+        try {
+            var in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            var response = new Response(new DataOutputStream(
+                    new BufferedOutputStream(socket.getOutputStream(), Protocol.CHUNK_SIZE)));
+
+            if (in.readInt() != Protocol.MAGIC || in.readInt() != Protocol.VERSION) {
+                LOGGER.log(System.Logger.Level.WARNING, "unexpected request from " + socket.getRemoteSocketAddress());
+                return;
+            }
+
+            var arguments = new ArrayList<>(Protocol.readStrings(in));
+            var text = in.readBoolean() ? Protocol.readString(in) : null;
+            var hasOutput = in.readBoolean();
+
+            try {
+                Protocol.validate(arguments);
+            } catch (IllegalArgumentException e) {
+                LOGGER.log(System.Logger.Level.WARNING, "rejected request " + e.getMessage());
+                response.reject(e.getMessage());
+                return;
+            }
+
+            directory = Files.createTempDirectory("voicepeakcw4j-worker");
+            if (text != null) {
+                var textFile = directory.resolve("speech.txt");
+                Files.writeString(textFile, text);
+                arguments.add(Protocol.TEXT_OPTION);
+                arguments.add(textFile.toString());
+            }
+            Path output = null;
+            if (hasOutput) {
+                output = directory.resolve("output.wav");
+                arguments.add(Protocol.OUTPUT_OPTION);
+                arguments.add(output.toString());
+            }
+
+            execute(socket, in, response, arguments, output);
+        } catch (IOException e) {
+            LOGGER.log(System.Logger.Level.DEBUG, "connection closed " + socket.getRemoteSocketAddress(), e);
+        } finally {
+            if (directory != null) {
+                delete(directory);
+            }
+        }
+    }
+
+    private void execute(Socket socket, InputStream in, Response response, List<String> arguments, Path output) throws IOException {
+        var watchdog = VPProcessWatchdog.getDefault();
+        var disconnected = new AtomicBoolean(false);
+        var current = new AtomicReference<Process>();
+        var launched = scheduler.submit(() -> {
+            var process = executable.launch(new ProcessBuilder(arguments));
+            current.set(process);
+            return process;
+        });
+
+        // 要求元が切断したときはプロセスを子孫プロセスを含めて直ちに終了させる
+        Thread.ofVirtual().start(() -> {
+            try {
+                while (in.read() != -1) {
+                    // 要求の後には何も送信されない
+                }
+            } catch (IOException ignored) {
+            }
+            disconnected.set(true);
+            launched.cancel(false);
+            var process = current.get();
+            if (process != null) {
+                watchdog.terminate(process);
+            }
+        });
+
+        Process process;
+        try {
+            process = launched.join();
+        } catch (CancellationException | CompletionException e) {
+            response.reject(String.valueOf(e.getCause() == null ? e.getMessage() : e.getCause().getMessage()));
+            return;
+        }
+
+        // 起動している間に切断された
+        if (disconnected.get()) {
+            watchdog.terminate(process);
+            return;
+        }
+
+        var exited = watchdog.watch(process, timeout);
+        var standardOut = pump(process.getInputStream(), response, Protocol.STANDARD_OUT);
+        var errorOut = pump(process.getErrorStream(), response, Protocol.ERROR_OUT);
+
+        // 要求元に出力を送信できないときは結果も送信できないため、終了を待たずに中断する
+        for (var pump : List.of(standardOut, errorOut)) {
+            pump.exceptionally(e -> {
+                watchdog.terminate(process);
+                return null;
+            });
+        }
+
+        int status;
+        try {
+            status = exited.join().exitValue();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof VPTimeoutException timedOut) {
+                response.reject(timedOut.getMessage());
+            }
+            return;
+        }
+
+        try {
+            CompletableFuture.allOf(standardOut, errorOut).join();
+        } catch (CompletionException e) {
+            return;
+        }
+
+        if (status == 0 && output != null && Files.exists(output)) {
+            try (var audio = Files.newInputStream(output)) {
+                var buffer = new byte[Protocol.CHUNK_SIZE];
+                int read;
+                while ((read = audio.read(buffer)) != -1) {
+                    response.write(Protocol.AUDIO, buffer, read, false);
+                }
+            }
+        }
+        response.exit(status);
+
+        // 要求元が接続を閉じるのを待たずに終了する
+        socket.shutdownOutput();
+    }
+
+    private static CompletableFuture<Void> pump(InputStream stream, Response response, byte type) {
+        var future = new CompletableFuture<Void>();
+        Thread.ofVirtual().start(() -> {
+            try (stream) {
+                var buffer = new byte[8192];
+                int read;
+                while ((read = stream.read(buffer)) != -1) {
+                    response.write(type, buffer, read, true);
+                }
+                future.complete(null);
+            } catch (IOException e) {
+                future.completeExceptionally(new UncheckedIOException(e));
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 要求元への応答
+     * <p>
+     *     標準出力と標準エラー出力を別々のスレッドから書き込むため排他制御する。
+     *     仮想スレッドがキャリアスレッドを占有しないようにモニターではなくロックを使用する。
+     * </p>
+     */
+    private static final class Response {
+
+        private final DataOutputStream out;
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        Response(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void write(byte type, byte[] bytes, int length, boolean flush) throws IOException {
+            lock.lock();
+            try {
+                out.writeByte(type);
+                out.writeInt(length);
+                out.write(bytes, 0, length);
+                if (flush) {
+                    out.flush();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void exit(int status) throws IOException {
+            lock.lock();
+            try {
+                out.writeByte(Protocol.EXIT);
+                out.writeInt(status);
+                out.flush();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 実行できなかった理由をエラー出力として返し、終了ステータス1で終了する
+         */
+        void reject(String message) throws IOException {
+            var bytes = (message + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+            write(Protocol.ERROR_OUT, bytes, bytes.length, false);
+            exit(1);
+        }
+    }
+
+    private static void delete(Path directory) {
+        try (var stream = Files.walk(directory)) {
+            stream.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    LOGGER.log(System.Logger.Level.WARNING, "failed to delete " + path, e);
+                }
+            });
+        } catch (IOException e) {
+            LOGGER.log(System.Logger.Level.WARNING, "failed to delete " + directory, e);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * ワーカーを起動する。
+     * @param args 待ち受けるポート番号と、省略可能なVOICEPEAK実行ファイルのパス
+     * @throws Exception ワーカーの起動に失敗したとき
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("usage: RemoteWorker <port> [voicepeak executable]");
+            System.exit(2);
+        }
+
+        var port = Integer.parseInt(args[0]);
+        var executable = args.length < 2 ? new VPExecutable() : new VPExecutable(Paths.get(args[1]));
+
+        var worker = new RemoteWorker(executable, port);
+        Runtime.getRuntime().addShutdownHook(new Thread(worker::close));
+        worker.start();
+        worker.awaitTermination();
+    }
+
+}
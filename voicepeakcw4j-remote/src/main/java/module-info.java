@@ -0,0 +1,9 @@
+/**
+ * 株式会社AHSの展開する音声合成ソフトウェアVOICEPEAKの
+ * ラッパーモジュールvoicepeakcw4jを使用してネットワーク越しに音声を合成するためのモジュール
+ */
+module voicepeakcw4j.remote {
+    requires transitive voicepeakcw4j;
+
+    exports io.github.k7t3.voicepeakcw4j.remote;
+}
\ No newline at end of file
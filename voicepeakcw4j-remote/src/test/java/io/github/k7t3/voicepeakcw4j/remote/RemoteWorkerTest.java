@@ -0,0 +1,210 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.k7t3.voicepeakcw4j.remote;
+
+import io.github.k7t3.voicepeakcw4j.VPClient;
+import io.github.k7t3.voicepeakcw4j.VPExecutablePool;
+import io.github.k7t3.voicepeakcw4j.process.VPProcessScheduler;
+import io.github.k7t3.voicepeakcw4j.process.VPProcessWatchdog;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RemoteWorkerTest {
+
+    private final List<RemoteWorker> workers = new ArrayList<>();
+
+    private final List<VPProcessScheduler> schedulers = new ArrayList<>();
+
+    private Path directory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("vpremote");
+
+        // 同じJVMで動かすため、ワーカーごとにスケジューラを分ける
+        for (int i = 0; i < 2; i++) {
+            var address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+            var scheduler = new VPProcessScheduler(1);
+            var worker = new RemoteWorker(new TestVPExecutable(), address, scheduler);
+            worker.start();
+            workers.add(worker);
+            schedulers.add(scheduler);
+        }
+        VPProcessScheduler.getDefault().setPermits(workers.size());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        VPProcessScheduler.getDefault().setPermits(1);
+        workers.forEach(RemoteWorker::close);
+        try (var stream = Files.walk(directory)) {
+            stream.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private VPExecutablePool createPool() {
+        return new VPExecutablePool(workers.stream()
+                .map(w -> new RemoteVPExecutable(w.getAddress()))
+                .toList());
+    }
+
+    @Test
+    void synthesize() throws IOException {
+        var pool = createPool();
+        var client = VPClient.create(pool);
+
+        var futures = new ArrayList<CompletableFuture<Integer>>();
+        for (int i = 0; i < 2; i++) {
+            var process = client.builder()
+                    .withNarrator("Zundamon")
+                    .withSpeechText("テキスト" + i)
+                    .withOutput(directory.resolve("output" + i + ".wav"))
+                    .build();
+            futures.add(process.start());
+        }
+        futures.forEach(f -> assertEquals(0, f.join()));
+
+        // モックは同じ音声ファイルを出力する
+        var expected = Files.size(directory.resolve("output0.wav"));
+        assertTrue(0 < expected);
+        assertEquals(expected, Files.size(directory.resolve("output1.wav")));
+
+        // 2つのワーカーに振り分けられる
+        pool.getStatus().forEach(s -> assertEquals(1, s.launchedCount()));
+    }
+
+    @Test
+    void speechFile() throws IOException {
+        var text = directory.resolve("speech.txt");
+        Files.writeString(text, "テキストファイル");
+        var output = directory.resolve("output.wav");
+
+        var client = VPClient.create(createPool());
+        var process = client.builder()
+                .withSpeechFile(text)
+                .withOutput(output)
+                .build();
+
+        assertEquals(0, process.start().join());
+        assertTrue(Files.exists(output));
+    }
+
+    @Test
+    void getNarrators() {
+        var client = VPClient.create(createPool());
+        var narrators = client.getNarrators();
+        assertTrue(narrators.contains("Zundamon"));
+        assertTrue(narrators.contains("Tohoku Kiritan"));
+    }
+
+    @Test
+    void fill() {
+        // ワーカーで実行するメンバーはこのホストで実行するコマンドを書き込まない
+        var remote = new RemoteVPExecutable(workers.getFirst().getAddress());
+        var commands = new ArrayList<String>();
+        remote.fill(commands);
+        assertTrue(commands.isEmpty());
+
+        var local = new TestVPExecutable();
+        var expected = new ArrayList<String>();
+        local.fill(expected);
+
+        var pool = new VPExecutablePool(List.of(remote, local));
+        pool.fill(commands);
+        assertEquals(expected, commands);
+    }
+
+    @Test
+    void reject() throws Exception {
+        var executable = new RemoteVPExecutable(workers.getFirst().getAddress());
+
+        // ワーカーのファイルシステムに作用するオプションは受け付けない
+        var process = executable.launch(new ProcessBuilder("--unknown", "/etc/passwd"));
+        var error = new String(process.getErrorStream().readAllBytes(), StandardCharsets.UTF_8);
+
+        assertEquals(1, process.waitFor());
+        assertTrue(error.contains("unsupported argument"));
+    }
+
+    @Test
+    void timeout() throws Exception {
+        var address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        var worker = new RemoteWorker(new TestVPExecutable(), address, new VPProcessScheduler(1), Duration.ofMillis(100));
+        worker.start();
+        workers.add(worker);
+
+        var timedOut = VPProcessWatchdog.getDefault().getStatistics().timedOutCount();
+        var executable = new RemoteVPExecutable(worker.getAddress());
+
+        // 制限時間を超えたプロセスはワーカーで終了させる。モックの合成には制限時間より長くかかる
+        var output = directory.resolve("timeout.wav").toString();
+        var process = executable.launch(new ProcessBuilder("--say", "テキスト", "--out", output));
+        var error = new String(process.getErrorStream().readAllBytes(), StandardCharsets.UTF_8);
+
+        assertEquals(1, process.waitFor());
+        assertTrue(error.contains("timed out"));
+        assertEquals(timedOut + 1, VPProcessWatchdog.getDefault().getStatistics().timedOutCount());
+    }
+
+    @Test
+    void disconnect() throws Exception {
+        var scheduler = schedulers.getFirst();
+        var executable = new RemoteVPExecutable(workers.getFirst().getAddress());
+
+        // モックの合成には1秒かかる
+        var output = directory.resolve("disconnect.wav").toString();
+        var process = executable.launch(new ProcessBuilder("--say", "テキスト", "--out", output));
+        for (int i = 0; i < 100 && scheduler.getStatistics().running() == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, scheduler.getStatistics().running());
+
+        // 要求元が切断するとワーカーはプロセスの終了を待たずに同時実行数を解放する
+        var terminated = VPProcessWatchdog.getDefault().getStatistics().terminatedCount();
+        process.destroy();
+        for (int i = 0; i < 50 && 0 < scheduler.getStatistics().running(); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, scheduler.getStatistics().running());
+        assertTrue(terminated < VPProcessWatchdog.getDefault().getStatistics().terminatedCount());
+    }
+
+    @Test
+    void unreachable() {
+        var worker = workers.getFirst();
+        var address = worker.getAddress();
+        worker.close();
+
+        var executable = new RemoteVPExecutable(address);
+        assertThrows(IOException.class, () -> executable.launch(new ProcessBuilder("--list-narrator")));
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.k7t3.voicepeakcw4j.remote;
+
+import io.github.k7t3.voicepeakcw4j.VPExecutable;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+public class TestVPExecutable extends VPExecutable {
+
+    // モックjarアプリケーション
+    private final Path executable;
+
+    public TestVPExecutable() {
+        executable = Paths.get(System.getProperty("user.dir"))
+                .getParent()
+                .resolve("voicepeakcw4j-mock")
+                .resolve("testLib")
+                .resolve("voicepeakcw4j-mock-all.jar");
+    }
+
+    @Override
+    public void fill(List<String> commands) {
+        // javaコマンドで起動
+        commands.add("java");
+        commands.add("-jar");
+        commands.add(executable.toAbsolutePath().toString());
+    }
+}
@@ -17,19 +17,23 @@
 package io.github.k7t3.voicepeakcw4j.speech;
 
 import javax.sound.sampled.*;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 
 /**
  * VOICEPEAKで生成したオーディオファイルを再生できるデバイス
+ * <p>
+ *     {@link javax.sound.sampled}のミキサーを出力先とする{@link AudioSink}
+ * </p>
  */
-public class AudioDevice {
+public class AudioDevice implements AudioSink {
 
     /**
      * VOICEPEAKのコマンドライン実行で生成されるWAVEフォーマット
      */
-    private static final AudioFormat VOICEPEAK_DEFAULT_FORMAT = new AudioFormat(
+    static final AudioFormat VOICEPEAK_DEFAULT_FORMAT = new AudioFormat(
             AudioFormat.Encoding.PCM_SIGNED,
             48000,
             16,
@@ -80,12 +84,34 @@ public class AudioDevice {
         return info.getVersion();
     }
 
-    SourceDataLine getSourceDataLine() {
-        var info = new DataLine.Info(SourceDataLine.class, VOICEPEAK_DEFAULT_FORMAT);
+    /**
+     * デバイスは音声を再生の速度で消費する
+     * @return true
+     */
+    @Override
+    public boolean isRealtime() {
+        return true;
+    }
+
+    /**
+     * ミキサーのラインを開く。
+     * <p>
+     *     ラインが対応している場合はマスターゲインで音量を設定する。
+     * </p>
+     * @param format 書き込まれる音声の形式
+     * @return 開いたライン
+     * @throws IOException ラインを開けないとき
+     */
+    @Override
+    public Output open(AudioFormat format) throws IOException {
+        var info = new DataLine.Info(SourceDataLine.class, format);
         try {
-            return (SourceDataLine) mixer.getLine(info);
-        } catch (LineUnavailableException e) {
-            throw new RuntimeException(e);
+            var line = (SourceDataLine) mixer.getLine(info);
+            line.open(format);
+            line.start();
+            return new SourceDataLineOutput(line);
+        } catch (LineUnavailableException | IllegalArgumentException e) {
+            throw new IOException("audio format is not supported " + format, e);
         }
     }
 
@@ -16,13 +16,18 @@
 
 package io.github.k7t3.voicepeakcw4j.speech;
 
+import io.github.k7t3.voicepeakcw4j.audio.WavHeader;
+
 import javax.sound.sampled.*;
 import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.nio.file.StandardOpenOption;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 同じタイプの音声ファイルを繰り返し再生できるオーディオプレイヤー
@@ -32,23 +37,72 @@ class AudioPlayer implements AutoCloseable {
 
     private static final System.Logger LOGGER = System.getLogger(AudioPlayer.class.getName());
 
-    private static final float VOLUME_MIN_RATE = 0.0001f;
-    private static final float VOLUME_MAX_RATE = 2.0f;
+    /**
+     * ボリュームが要求されていないことを表す値
+     */
+    private static final int NO_VOLUME_REQUEST = Float.floatToRawIntBits(Float.NaN);
+
+    private static final int BUFFER_SIZE = 1024 * 4;
 
-    private final LinkedBlockingDeque<Float> volumeQueue = new LinkedBlockingDeque<>(32);
+    /**
+     * 一時停止している間に中断の要求を確認する間隔
+     */
+    private static final long PAUSE_POLLING_MILLIS = 100;
+
+    /**
+     * 最後に要求されたボリュームの比率のビット表現。
+     * 再生中に値をボックス化しないように{@link Float#floatToRawIntBits(float)}で保持する
+     */
+    private final AtomicInteger volumeRequest = new AtomicInteger(NO_VOLUME_REQUEST);
 
     private final AtomicBoolean cancelRequest = new AtomicBoolean(false);
 
+    /**
+     * 一時停止の要求を待機するためのロック
+     */
+    private final Object pauseLock = new Object();
+
+    /**
+     * 一時停止が要求されているか
+     */
+    private volatile boolean paused = false;
+
+    /**
+     * 再生中の音声を中断する要求。プレイヤーは閉じずに次の再生を受け付ける
+     */
+    private AtomicBoolean interruption;
+
+    /**
+     * 再生している位置を受け取るリスナー
+     */
+    private ProgressListener progressListener;
+
+    /**
+     * 出力を開いてから書き込んだフレームの数
+     */
+    private long writtenFrames = 0;
+
+    /**
+     * 再生している音声の先頭のフレームの位置
+     */
+    private long startFrame = 0;
+
+    /**
+     * 出力に書き込むバッファ。並列に再生しないため再生ごとに使いまわす
+     */
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private final ChannelReader channelReader = new ChannelReader(buffer);
+
     private volatile boolean closed = false;
     private volatile boolean initialized = false;
 
-    private final AudioDevice audioDevice;
+    private final AudioSink audioSink;
 
-    private SourceDataLine line;
-    private FloatControl volumeControl;
+    private AudioSink.Output output;
 
-    public AudioPlayer(AudioDevice audioDevice) {
-        this.audioDevice = audioDevice;
+    public AudioPlayer(AudioSink audioSink) {
+        this.audioSink = audioSink;
     }
 
     /**
@@ -56,114 +110,391 @@ class AudioPlayer implements AutoCloseable {
      * <p>
      *     1/10000倍から2倍まで
      * </p>
+     * <p>
+     *     再生中に繰り返し要求したときは、次に書き込むときに最後の要求のみ反映する。
+     *     NaNは無視する。
+     * </p>
      *
      * @param volumeRate ボリュームの比率
      */
     public void requestVolume(float volumeRate) {
-        volumeQueue.offer(volumeRate);
+        if (Float.isNaN(volumeRate)) return;
+        volumeRequest.set(Float.floatToRawIntBits(volumeRate));
     }
 
     public void requestCancel() {
         cancelRequest.set(true);
+        synchronized (pauseLock) {
+            pauseLock.notifyAll();
+        }
+    }
+
+    /**
+     * 再生を一時停止するようリクエストする。
+     * <p>
+     *     出力を閉じずに、書き込んだ音声を保持したまま再生を止める。
+     *     再生していないときに要求したときは、次に再生を始めたところで停止する。
+     * </p>
+     */
+    void requestPause() {
+        paused = true;
+    }
+
+    /**
+     * 一時停止した再生を再開するようリクエストする
+     */
+    void requestResume() {
+        synchronized (pauseLock) {
+            paused = false;
+            pauseLock.notifyAll();
+        }
+    }
+
+    /**
+     * 一時停止が要求されているかを返す
+     * @return 一時停止が要求されているときはtrue
+     */
+    boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * 再生中の音声を中断する要求を設定する。
+     * <p>
+     *     要求がtrueになると、プレイヤーを閉じずに出力していない音声を破棄して再生を終える。
+     *     再生するスレッドから設定すること。
+     * </p>
+     * @param interruption 中断の要求、あるいは中断しないときはnull
+     */
+    void setInterruption(AtomicBoolean interruption) {
+        this.interruption = interruption;
+    }
+
+    /**
+     * 再生している位置を受け取るリスナー
+     */
+    @FunctionalInterface
+    interface ProgressListener {
+
+        /**
+         * 再生している位置を受け取る
+         * @param framePosition 再生している音声の先頭から出力したフレームの数
+         * @param format 再生している音声の形式
+         */
+        void onProgress(long framePosition, AudioFormat format);
+
+    }
+
+    /**
+     * 再生している位置を受け取るリスナーを設定する。
+     * <p>
+     *     音声データを出力に書き込むたびに通知する。再生するスレッドから設定すること。
+     * </p>
+     * @param progressListener リスナー、あるいは通知しないときはnull
+     */
+    void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * 出力したフレームの位置を返す
+     */
+    private long framePosition() {
+        var position = output.getFramePosition();
+        return position < 0 ? writtenFrames : position;
     }
 
     private void initialize() {
         if (initialized) {
             throw new IllegalStateException("already initialized");
         }
-        if (audioDevice == null) {
+        if (audioSink == null) {
             LOGGER.log(System.Logger.Level.ERROR, "audio device can not play audio");
             close();
             return;
         }
 
-        try {
-
-            initialized = true;
-
-            // オーディオデバイスのラインを取得
-            line = audioDevice.getSourceDataLine();
-            line.open();
-            line.start();
-
-            // ラインが対応している場合はそのコントロールを使用
-            // ラインを開いてからでないと取得できない
-            try {
-                volumeControl = (FloatControl) line.getControl(FloatControl.Type.MASTER_GAIN);
-                // 初期ボリューム設定
-                setVolumeIfRequested(volumeControl);
-            } catch (IllegalArgumentException ignored) {
-                // ゲインが非対応
-                LOGGER.log(System.Logger.Level.WARNING, "SourceDataLine is not support MASTER_GAIN");
-            }
+        initialized = true;
 
-        } catch (LineUnavailableException e) {
-            LOGGER.log(System.Logger.Level.ERROR, "audio format is not supported");
+        try {
+            // VOICEPEAKが生成する形式で出力を開く
+            output = audioSink.open(AudioDevice.VOICEPEAK_DEFAULT_FORMAT);
+        } catch (IOException e) {
+            LOGGER.log(System.Logger.Level.ERROR, "audio format is not supported", e);
             close();
         }
     }
 
-    private void setVolumeIfRequested(FloatControl volumeControl) {
-        var volumeRate = volumeQueue.poll();
-        if (volumeRate == null) return;
+    private void setVolumeIfRequested() {
+        // 要求がないときは書き込まずに読み込みのみで判定する
+        if (volumeRequest.get() == NO_VOLUME_REQUEST) return;
+
+        var bits = volumeRequest.getAndSet(NO_VOLUME_REQUEST);
+        if (bits == NO_VOLUME_REQUEST) return;
+
+        output.setVolume(Float.intBitsToFloat(bits));
+    }
 
-        setVolume(volumeControl, volumeRate);
+    /**
+     * 音声ファイルを再生する。
+     * <p>
+     *     出力と同じ形式のPCMのWAVファイルはヘッダを直接解釈し、音声データをファイルから直接出力に書き込む。
+     *     それ以外の形式は{@link AudioSystem}で読み込む。
+     * </p>
+     * @param audioFile 再生する音声ファイル
+     * @throws IOException 音声の読み込みに失敗したとき
+     * @throws UnsupportedAudioFileException 対応していない形式のとき
+     */
+    public void play(Path audioFile) throws IOException, UnsupportedAudioFileException {
+        play(audioFile, 0);
     }
 
-    private void setVolume(FloatControl volumeControl, float volumeRate) {
-        if (volumeControl == null) return;
+    /**
+     * 音声ファイルを指定のフレームの位置から再生する。
+     * <p>
+     *     位置が音声の長さを超えるときは何も再生しない。
+     * </p>
+     * @param audioFile 再生する音声ファイル
+     * @param startFrame 再生を始めるフレームの位置
+     * @throws IOException 音声の読み込みに失敗したとき
+     * @throws UnsupportedAudioFileException 対応していない形式のとき
+     */
+    void play(Path audioFile, long startFrame) throws IOException, UnsupportedAudioFileException {
+        if (!prepare()) {
+            return;
+        }
 
-        // logの0は不定なので下限を設ける
-        volumeRate = Math.clamp(volumeRate, VOLUME_MIN_RATE, VOLUME_MAX_RATE);
+        try (var channel = FileChannel.open(audioFile, StandardOpenOption.READ)) {
+            var header = readPcmHeader(channel);
+            if (header != null) {
+                channelReader.reset(channel, header);
+                channelReader.skip(startFrame);
+                try {
+                    write(channelReader, startFrame);
+                } finally {
+                    channelReader.reset(null, null);
+                }
+                return;
+            }
+        }
 
-        // 音圧のデシベルは10のべき乗ごとに20倍になるらしい
-        // https://www.mgco.jp/magazine/plan/mame/b_others/2001/
-        var decibel = (float) (20 * Math.log10(volumeRate));
+        LOGGER.log(System.Logger.Level.DEBUG, "read audio file by AudioSystem " + audioFile);
+        try (var input = AudioSystem.getAudioInputStream(new BufferedInputStream(Files.newInputStream(audioFile)))) {
+            input.skipNBytes(Math.min(startFrame * input.getFormat().getFrameSize(), input.available()));
+            write(input::read, startFrame);
+        }
+    }
 
-        volumeControl.setValue(decibel);
-        LOGGER.log(System.Logger.Level.DEBUG, "set decibel " + decibel);
+    /**
+     * 音声を読み込みながら再生する。
+     * <p>
+     *     ストリームは呼び出し元で閉じること。
+     * </p>
+     * @param input 再生する音声
+     * @throws IOException 音声の読み込みに失敗したとき
+     */
+    public void play(AudioInputStream input) throws IOException {
+        if (!prepare()) {
+            return;
+        }
+        write(input::read, 0);
     }
 
-    public void play(Path audioFile) throws IOException, UnsupportedAudioFileException {
+    /**
+     * 出力を開き、要求されているボリュームを反映する
+     * @return 再生できるときはtrue
+     */
+    private boolean prepare() {
         if (!initialized) {
             initialize();
         }
 
         if (closed) {
             LOGGER.log(System.Logger.Level.WARNING, "player is already closed");
-            return;
+            return false;
         }
 
-        var rate = volumeQueue.peekLast();
-        // キューされていれば最新のものを反映する
-        if (rate != null) {
-            volumeQueue.clear();
-            setVolume(volumeControl, rate);
+        // 要求されていれば最新のものを反映する
+        setVolumeIfRequested();
+        return true;
+    }
+
+    /**
+     * 出力と同じ形式のPCMのヘッダを読み込む
+     * @return ヘッダ、あるいはWAVファイルでないときや形式が異なるときはnull
+     */
+    private WavHeader readPcmHeader(FileChannel channel) {
+        WavHeader header;
+        try {
+            header = WavHeader.read(channel);
+        } catch (IOException e) {
+            LOGGER.log(System.Logger.Level.DEBUG, "failed to read wav header", e);
+            return null;
         }
+        var format = toAudioFormat(header);
+        if (format == null || !format.matches(output.getFormat())) {
+            return null;
+        }
+        return header;
+    }
 
-        try (var input = AudioSystem.getAudioInputStream(new BufferedInputStream(Files.newInputStream(audioFile)))) {
+    /**
+     * WAVヘッダの形式を返す
+     * @param header WAVヘッダ
+     * @return 音声の形式、あるいはPCMでないときはnull
+     */
+    static AudioFormat toAudioFormat(WavHeader header) {
+        var encoding = switch (header.formatTag()) {
+            case WavHeader.FORMAT_PCM -> header.bitsPerSample() == 8 ? AudioFormat.Encoding.PCM_UNSIGNED : AudioFormat.Encoding.PCM_SIGNED;
+            case WavHeader.FORMAT_IEEE_FLOAT -> AudioFormat.Encoding.PCM_FLOAT;
+            default -> null;
+        };
+        if (encoding == null || header.blockAlign() == 0) {
+            return null;
+        }
+        return new AudioFormat(encoding, header.sampleRate(), header.bitsPerSample(), header.channels(),
+                header.blockAlign(), header.sampleRate(), false);
+    }
+
+    /**
+     * 音声データを読み込む関数
+     */
+    @FunctionalInterface
+    private interface PcmReader {
 
-            // オーディオを読み込んでラインに書き込む
-            var buffer = new byte[1024 * 4];
-            int read;
-            while (0 <= (read = input.read(buffer))) {
+        /**
+         * 音声データをフレーム単位で読み込む
+         * @return 読み込んだバイト数、あるいは終端に達したときは-1
+         */
+        int read(byte[] buffer) throws IOException;
 
-                if (closed) {
+    }
+
+    /**
+     * WAVファイルのdataチャンクの範囲をチャネルから直接読み込む。
+     * <p>
+     *     プレイヤーのバッファをラップしたByteBufferを再生ごとに使いまわす
+     * </p>
+     */
+    private static class ChannelReader implements PcmReader {
+
+        private final ByteBuffer wrapped;
+
+        private FileChannel channel;
+
+        private long end;
+
+        private int frameSize;
+
+        private long position;
+
+        ChannelReader(byte[] buffer) {
+            this.wrapped = ByteBuffer.wrap(buffer);
+        }
+
+        /**
+         * 読み込むチャネルを設定する
+         * @param channel 読み込むチャネル、あるいは参照を解放するときはnull
+         * @param header チャネルのWAVヘッダ
+         */
+        void reset(FileChannel channel, WavHeader header) {
+            this.channel = channel;
+            this.position = header == null ? 0 : header.dataOffset();
+            this.end = header == null ? 0 : header.dataOffset() + header.dataSize();
+            this.frameSize = header == null ? 1 : header.blockAlign();
+        }
+
+        /**
+         * 指定のフレームの数だけ読み込む位置を進める
+         */
+        void skip(long frames) {
+            position = Math.min(end, position + frames * frameSize);
+        }
+
+        @Override
+        public int read(byte[] buffer) throws IOException {
+            if (end <= position) {
+                return -1;
+            }
+
+            // 出力にはフレーム単位で書き込む必要があるため、バッファを満たすまで読み込む
+            var length = (int) Math.min(buffer.length - buffer.length % frameSize, end - position);
+            wrapped.clear().limit(length);
+            while (wrapped.hasRemaining()) {
+                if (channel.read(wrapped, position + wrapped.position()) < 0) {
                     break;
                 }
+            }
 
-                // ラインに書き込む
-                // 消費に対して書き込みが追い付かない場合は無音になるのでバッファサイズを調整する
-                line.write(buffer, 0, read);
+            var read = wrapped.position() - wrapped.position() % frameSize;
+            if (read == 0) {
+                return -1;
+            }
+            position += read;
+            return read;
+        }
+    }
 
-                // ボリューム変更チェック
-                setVolumeIfRequested(volumeControl);
+    private void write(PcmReader reader, long offsetFrames) throws IOException {
+        // 途中から再生するときは飛ばしたフレームも再生した位置に含める
+        startFrame = writtenFrames - offsetFrames;
 
-                if (cancelRequest.get()) {
-                    close();
-                    break;
+        // オーディオを読み込んで出力に書き込む
+        int read;
+        while (0 <= (read = reader.read(buffer))) {
+
+            if (closed) {
+                break;
+            }
+
+            output.write(buffer, 0, read);
+            writtenFrames += read / output.getFormat().getFrameSize();
+
+            if (progressListener != null) {
+                progressListener.onProgress(Math.max(0, framePosition() - startFrame), output.getFormat());
+            }
+
+            // ボリューム変更チェック
+            setVolumeIfRequested();
+
+            awaitResume();
+
+            if (cancelRequest.get()) {
+                close();
+                break;
+            }
+
+            if (interruption != null && interruption.get()) {
+                output.flush();
+                // 破棄したフレームは出力されない
+                writtenFrames = framePosition();
+                break;
+            }
+        }
+    }
+
+    /**
+     * 一時停止が要求されているときは、再開、停止あるいは中断が要求されるまで待機する。
+     * <p>
+     *     中断の要求は通知されないため、一時停止している間は一定の間隔で確認する。
+     * </p>
+     */
+    private void awaitResume() {
+        if (!paused) return;
+
+        output.pause();
+        LOGGER.log(System.Logger.Level.DEBUG, "paused audio player");
+        try {
+            synchronized (pauseLock) {
+                while (paused && !cancelRequest.get() && (interruption == null || !interruption.get())) {
+                    pauseLock.wait(PAUSE_POLLING_MILLIS);
                 }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            output.resume();
+            LOGGER.log(System.Logger.Level.DEBUG, "resumed audio player");
         }
     }
 
@@ -174,12 +505,14 @@ class AudioPlayer implements AutoCloseable {
 
         closed = true;
 
-        if (line != null) {
-            line.drain();
-            line.close();
+        if (output != null) {
+            try (var o = output) {
+                o.drain();
+            } catch (IOException e) {
+                LOGGER.log(System.Logger.Level.WARNING, "failed to close audio output", e);
+            }
         }
 
-        volumeControl = null;
-        line = null;
+        output = null;
     }
 }
\ No newline at end of file
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.k7t3.voicepeakcw4j.speech;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * 読み上げ音声の出力先
+ * <p>
+ *     {@link SpeechBuilder#withAudioDevice(AudioSink)}に設定すると、
+ *     合成した音声のPCMデータを{@link Output}に書き込む。
+ *     サウンドカードで再生する{@link AudioDevice}のほか、
+ *     サウンドカードのない環境向けに以下の実装を提供する。
+ * </p>
+ * <ul>
+ *     <li>{@link NullAudioSink} 音声を破棄する</li>
+ *     <li>{@link FileAudioSink} 音声をWAVファイルに書き込む</li>
+ *     <li>{@link MemoryAudioSink} 音声をメモリに保持する</li>
+ *     <li>{@link ChannelAudioSink} 音声をPCMデータとしてチャネルやストリームに書き込む</li>
+ *     <li>{@link PublisherAudioSink} 音声をPCMデータとして{@link java.util.concurrent.Flow.Publisher}で配信する</li>
+ * </ul>
+ */
+public interface AudioSink {
+
+    /**
+     * 出力を開く。
+     * <p>
+     *     読み上げを開始するたびに呼び出され、読み上げが終わると出力は閉じられる。
+     *     書き込まれるPCMデータは引数の形式であるため、
+     *     対応していない形式のときは{@link IOException}をスローすること。
+     * </p>
+     * @param format 書き込まれる音声の形式
+     * @return 開いた出力
+     * @throws IOException 出力を開けないとき
+     */
+    Output open(AudioFormat format) throws IOException;
+
+    /**
+     * 書き込んだ音声を再生の速度で消費するかを返す。
+     * <p>
+     *     再生の速度で消費しない出力先は、合成を先行させるための最初の再生の遅延
+     *     ({@link SpeechBuilder#withDelayMilliSeconds(long)})を行わない。
+     *     既定の実装はfalse
+     * </p>
+     * @return 再生の速度で消費するときはtrue
+     */
+    default boolean isRealtime() {
+        return false;
+    }
+
+    /**
+     * PCMデータを書き込む出力
+     * <p>
+     *     出力は読み上げを再生するスレッドのみから操作される。
+     * </p>
+     */
+    interface Output extends Closeable {
+
+        /**
+         * 書き込まれる音声の形式を返す
+         * @return 書き込まれる音声の形式
+         */
+        AudioFormat getFormat();
+
+        /**
+         * PCMデータを書き込む。
+         * <p>
+         *     長さはフレームサイズの倍数となる。
+         *     引数の配列は呼び出し元で再利用されるため、保持するときは複製すること。
+         * </p>
+         * @param buffer PCMデータ
+         * @param offset 書き込む先頭の位置
+         * @param length 書き込むバイト数
+         * @throws IOException 書き込みに失敗したとき
+         */
+        void write(byte[] buffer, int offset, int length) throws IOException;
+
+        /**
+         * 音量を設定する。
+         * <p>
+         *     既定の実装は何もせず、書き込まれたPCMデータをそのまま出力する。
+         * </p>
+         * @param volumeRate 音量の割合 0.0f ~ 2.0f
+         */
+        default void setVolume(float volumeRate) {
+        }
+
+        /**
+         * 書き込んだPCMデータを出力し終えるまで待機する。
+         * <p>
+         *     既定の実装は何もしない。
+         * </p>
+         * @throws IOException 出力に失敗したとき
+         */
+        default void drain() throws IOException {
+        }
+
+        /**
+         * 書き込んだPCMデータのうち、まだ出力していないものを破棄する。
+         * <p>
+         *     読み上げを途中で停止するときに呼び出される。既定の実装は何もしない。
+         * </p>
+         * @throws IOException 破棄に失敗したとき
+         */
+        default void flush() throws IOException {
+        }
+
+        /**
+         * 書き込んだPCMデータを保持したまま出力を一時停止する。
+         * <p>
+         *     読み上げを一時停止するときに呼び出される。既定の実装は何もしない。
+         * </p>
+         */
+        default void pause() {
+        }
+
+        /**
+         * 一時停止した出力を再開する。
+         * <p>
+         *     既定の実装は何もしない。
+         * </p>
+         */
+        default void resume() {
+        }
+
+        /**
+         * 出力を開いてから実際に出力したフレームの数を返す。
+         * <p>
+         *     オーディオデバイスのように書き込んでから再生するまで遅延がある出力は、
+         *     再生したフレームの数を返すこと。
+         *     既定の実装は{@link javax.sound.sampled.AudioSystem#NOT_SPECIFIED}を返し、
+         *     書き込んだフレームの数を出力したものとして扱う。
+         * </p>
+         * @return 出力したフレームの数、あるいは不明なときは{@link javax.sound.sampled.AudioSystem#NOT_SPECIFIED}
+         */
+        default long getFramePosition() {
+            return javax.sound.sampled.AudioSystem.NOT_SPECIFIED;
+        }
+
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.k7t3.voicepeakcw4j.speech;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * 書き込まれた音声をPCMデータとしてチャネルに出力する出力先
+ * <p>
+ *     ヘッダを付けずに{@link AudioSink#open(AudioFormat)}の形式のPCMデータを文章の順に書き込む。
+ *     音声は再生の速度を待たずに書き込まれるため、合成が完了した文章から直ちに出力される。
+ *     音量の設定は反映されない。
+ * </p>
+ * <p>
+ *     チャネルは閉じないため、読み上げが終わったら呼び出し元で閉じること。
+ *     チャネルへの書き込みがブロックしている間は次の文章を書き込まない。
+ * </p>
+ */
+public class ChannelAudioSink implements AudioSink {
+
+    private final WritableByteChannel channel;
+
+    private final OutputStream stream;
+
+    /**
+     * チャネルに出力する出力先を生成する
+     * @param channel 出力するチャネル
+     * @throws IllegalArgumentException チャネルがnullのとき
+     */
+    public ChannelAudioSink(WritableByteChannel channel) {
+        if (channel == null)
+            throw new IllegalArgumentException("channel is null");
+        this.channel = channel;
+        this.stream = null;
+    }
+
+    /**
+     * ストリームに出力する出力先を生成する。
+     * <p>
+     *     読み上げが終わるとストリームをフラッシュする。
+     * </p>
+     * @param stream 出力するストリーム
+     * @throws IllegalArgumentException ストリームがnullのとき
+     */
+    public ChannelAudioSink(OutputStream stream) {
+        if (stream == null)
+            throw new IllegalArgumentException("stream is null");
+        this.channel = Channels.newChannel(stream);
+        this.stream = stream;
+    }
+
+    @Override
+    public Output open(AudioFormat format) {
+        return new ChannelOutput(channel, format) {
+            @Override
+            public void drain() throws IOException {
+                if (stream != null) {
+                    stream.flush();
+                }
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "ChannelAudioSink{" + (stream == null ? channel : stream) + "}";
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.k7t3.voicepeakcw4j.speech;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * チャネルにPCMデータを書き込む出力
+ * <p>
+ *     チャネルは閉じないため、閉じるときはサブクラスあるいは呼び出し元で閉じること。
+ * </p>
+ */
+class ChannelOutput implements AudioSink.Output {
+
+    private final WritableByteChannel channel;
+
+    private final AudioFormat format;
+
+    private ByteBuffer wrapped;
+
+    private long writtenBytes = 0;
+
+    ChannelOutput(WritableByteChannel channel, AudioFormat format) {
+        this.channel = channel;
+        this.format = format;
+    }
+
+    @Override
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        // 呼び出し元はバッファを使いまわすため、ラップしたByteBufferも使いまわす
+        if (wrapped == null || wrapped.array() != buffer) {
+            wrapped = ByteBuffer.wrap(buffer);
+        }
+        wrapped.limit(offset + length).position(offset);
+        while (wrapped.hasRemaining()) {
+            channel.write(wrapped);
+        }
+        writtenBytes += length;
+    }
+
+    /**
+     * 書き込んだPCMデータのバイト数を返す
+     * @return 書き込んだバイト数
+     */
+    long getWrittenBytes() {
+        return writtenBytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+}
@@ -16,11 +16,16 @@
 
 package io.github.k7t3.voicepeakcw4j.speech;
 
+import io.github.k7t3.voicepeakcw4j.SynthesisOrder;
+import io.github.k7t3.voicepeakcw4j.SynthesisResult;
+import io.github.k7t3.voicepeakcw4j.VPCatalog;
 import io.github.k7t3.voicepeakcw4j.VPClient;
 import io.github.k7t3.voicepeakcw4j.VPExecutable;
 import io.github.k7t3.voicepeakcw4j.process.VPProcessBuilder;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
 
 class DefaultVPSpeech implements VPSpeech {
 
@@ -29,8 +34,12 @@ class DefaultVPSpeech implements VPSpeech {
     private final VPClient client;
 
     DefaultVPSpeech(VPExecutable executable) {
-        this.executable = executable;
-        this.client = VPClient.create(executable);
+        this(new VPCatalog(executable));
+    }
+
+    DefaultVPSpeech(VPCatalog catalog) {
+        this.executable = catalog.getExecutable();
+        this.client = VPClient.create(catalog);
     }
 
     @Override
@@ -53,4 +62,19 @@ class DefaultVPSpeech implements VPSpeech {
         return client.getNarrators();
     }
 
+    @Override
+    public CompletableFuture<List<String>> getEmotionsAsync(String narrator) {
+        return client.getEmotionsAsync(narrator);
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getNarratorsAsync() {
+        return client.getNarratorsAsync();
+    }
+
+    @Override
+    public Flow.Publisher<SynthesisResult> synthesize(Iterable<VPProcessBuilder> requests, SynthesisOrder order) {
+        return client.synthesize(requests, order);
+    }
+
 }
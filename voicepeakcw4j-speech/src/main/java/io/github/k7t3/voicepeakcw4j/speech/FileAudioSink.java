@@ -0,0 +1,165 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.k7t3.voicepeakcw4j.speech;
+
+import io.github.k7t3.voicepeakcw4j.audio.WavHeader;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 書き込まれた音声をWAVファイルに出力する出力先
+ * <p>
+ *     読み上げを開始するたびにファイルを上書きし、読み上げた音声を一つのWAVファイルとして出力する。
+ *     ヘッダはサイズを0として先に書き込み、読み上げが終わったときに書き換える。
+ *     ヘッダを書き込まずにPCMデータのみを出力することもできる。
+ * </p>
+ * <p>
+ *     音声は再生の速度を待たずに書き込まれるため、合成した順に直ちにファイルへ出力される。
+ *     音量の設定は反映されない。
+ * </p>
+ */
+public class FileAudioSink implements AudioSink {
+
+    private final Path file;
+
+    private final boolean wav;
+
+    /**
+     * WAVファイルに出力する出力先を生成する
+     * @param file 出力するWAVファイル
+     * @throws IllegalArgumentException ファイルがnullのとき
+     */
+    public FileAudioSink(Path file) {
+        this(file, true);
+    }
+
+    /**
+     * 出力先を生成する
+     * @param file 出力するファイル
+     * @param wav WAVファイルとして出力するときはtrue、ヘッダのないPCMデータのみを出力するときはfalse
+     * @throws IllegalArgumentException ファイルがnullのとき
+     */
+    public FileAudioSink(Path file, boolean wav) {
+        if (file == null)
+            throw new IllegalArgumentException("file is null");
+        this.file = file;
+        this.wav = wav;
+    }
+
+    /**
+     * 出力するWAVファイルを返す
+     * @return 出力するWAVファイル
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * WAVファイルとして出力するかを返す
+     * @return WAVファイルとして出力するときはtrue、PCMデータのみを出力するときはfalse
+     */
+    public boolean isWav() {
+        return wav;
+    }
+
+    @Override
+    public Output open(AudioFormat format) throws IOException {
+        var header = toWavHeader(format);
+        var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        if (!wav) {
+            return new FileOutput(channel, null, format);
+        }
+        try {
+            // サイズが確定するまでは0としておく
+            header.write(channel);
+            channel.position(WavHeader.CANONICAL_SIZE);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new FileOutput(channel, header, format);
+    }
+
+    /**
+     * 音声の形式からWAVヘッダを生成する
+     * @param format 音声の形式
+     * @return 音声データのサイズが0のWAVヘッダ
+     * @throws IOException PCMでないとき
+     */
+    static WavHeader toWavHeader(AudioFormat format) throws IOException {
+        var encoding = format.getEncoding();
+        int formatTag;
+        if (AudioFormat.Encoding.PCM_SIGNED.equals(encoding) || AudioFormat.Encoding.PCM_UNSIGNED.equals(encoding)) {
+            formatTag = WavHeader.FORMAT_PCM;
+        } else if (AudioFormat.Encoding.PCM_FLOAT.equals(encoding)) {
+            formatTag = WavHeader.FORMAT_IEEE_FLOAT;
+        } else {
+            throw new IOException("audio format is not supported " + format);
+        }
+        if (format.isBigEndian() && 8 < format.getSampleSizeInBits()) {
+            throw new IOException("big endian audio is not supported " + format);
+        }
+
+        var sampleRate = (int) format.getSampleRate();
+        var blockAlign = format.getFrameSize();
+        return new WavHeader(formatTag, format.getChannels(), sampleRate, sampleRate * blockAlign,
+                blockAlign, format.getSampleSizeInBits(), WavHeader.CANONICAL_SIZE, 0);
+    }
+
+    /**
+     * ファイルに音声データを追記し、閉じるときにヘッダのサイズを書き換える出力
+     */
+    private static class FileOutput extends ChannelOutput {
+
+        private final FileChannel channel;
+
+        private final WavHeader header;
+
+        FileOutput(FileChannel channel, WavHeader header, AudioFormat format) {
+            super(channel, format);
+            this.channel = channel;
+            this.header = header;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (header == null) {
+                channel.close();
+                return;
+            }
+            try (channel) {
+                var dataSize = getWrittenBytes();
+                // RIFFのチャンクは偶数バイトに揃える
+                if ((dataSize & 1) != 0) {
+                    channel.write(ByteBuffer.allocate(1));
+                }
+                header.withData(WavHeader.CANONICAL_SIZE, dataSize).write(channel);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FileAudioSink{" + file + ", wav=" + wav + "}";
+    }
+}
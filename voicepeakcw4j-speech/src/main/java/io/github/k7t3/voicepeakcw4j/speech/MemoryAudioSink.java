@@ -0,0 +1,105 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.k7t3.voicepeakcw4j.speech;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.ByteArrayOutputStream;
+
+/**
+ * 書き込まれた音声をメモリに保持する出力先
+ * <p>
+ *     読み上げを開始するたびに保持している音声を破棄し、
+ *     読み上げた音声のPCMデータを{@link #toByteArray()}で取得できる。
+ *     すべての音声をヒープに保持するため、短い音声のテストなどに使用する。
+ * </p>
+ * <p>このクラスはスレッドセーフ</p>
+ */
+public class MemoryAudioSink implements AudioSink {
+
+    private final Object lock = new Object();
+
+    private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+    private AudioFormat format;
+
+    /**
+     * 出力先を生成する
+     */
+    public MemoryAudioSink() {
+    }
+
+    @Override
+    public Output open(AudioFormat format) {
+        synchronized (lock) {
+            this.format = format;
+            data.reset();
+        }
+        return new Output() {
+            @Override
+            public AudioFormat getFormat() {
+                return format;
+            }
+
+            @Override
+            public void write(byte[] buffer, int offset, int length) {
+                synchronized (lock) {
+                    data.write(buffer, offset, length);
+                }
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * 最後に開いた出力の音声の形式を返す
+     * @return 音声の形式、あるいは一度も開いていないときはnull
+     */
+    public AudioFormat getFormat() {
+        synchronized (lock) {
+            return format;
+        }
+    }
+
+    /**
+     * 最後に開いた出力に書き込まれたPCMデータを返す
+     * @return PCMデータの複製
+     */
+    public byte[] toByteArray() {
+        synchronized (lock) {
+            return data.toByteArray();
+        }
+    }
+
+    /**
+     * 最後に開いた出力に書き込まれたPCMデータのバイト数を返す
+     * @return PCMデータのバイト数
+     */
+    public int size() {
+        synchronized (lock) {
+            return data.size();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MemoryAudioSink";
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.k7t3.voicepeakcw4j.speech;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * 書き込まれた音声を破棄する出力先
+ * <p>
+ *     サウンドカードのない環境で読み上げの処理のみを実行するときや、
+ *     ベンチマーク、負荷試験に使用する。音声は再生しないため、読み上げは合成の速度で進む。
+ * </p>
+ */
+public class NullAudioSink implements AudioSink {
+
+    /**
+     * 出力先を生成する
+     */
+    public NullAudioSink() {
+    }
+
+    @Override
+    public Output open(AudioFormat format) {
+        return new Output() {
+            @Override
+            public AudioFormat getFormat() {
+                return format;
+            }
+
+            @Override
+            public void write(byte[] buffer, int offset, int length) {
+                // 破棄する
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "NullAudioSink";
+    }
+}
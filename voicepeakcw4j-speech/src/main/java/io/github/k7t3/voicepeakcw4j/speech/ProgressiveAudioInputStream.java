@@ -0,0 +1,344 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.k7t3.voicepeakcw4j.speech;
+
+import io.github.k7t3.voicepeakcw4j.audio.WavHeader;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * VOICEPEAKが書き込んでいる途中の音声ファイルを読み込む入力ストリーム
+ * <p>
+ *     ファイルの末尾に達しても書き込みが完了していなければ追記されるまで待機する。
+ *     WAVヘッダのサイズは書き込みの完了時に書き換えられることがあるため、
+ *     書き込みが完了したときにdataチャンクのサイズを読み直し、その終端で読み込みを終える。
+ *     dataチャンクの後ろに追記されるチャンクを音声として読み込まないように、
+ *     書き込み中はファイルの末尾の{@value #TAIL_HOLDBACK}バイトを読み込まない。
+ * </p>
+ * <p>並列実行はサポートされない</p>
+ */
+class ProgressiveAudioInputStream extends InputStream {
+
+    private static final long POLL_MILLIS = 10;
+
+    /**
+     * 書き込み中のWAVヘッダに設定されるサイズの仮の値
+     */
+    private static final long UNKNOWN_SIZE = 0xFFFFFFFFL;
+
+    private static final int MAX_FORMAT_SIZE = 1024;
+
+    /**
+     * 書き込み中に読み込まないファイルの末尾のバイト数
+     */
+    static final int TAIL_HOLDBACK = 4096;
+
+    private final Path file;
+
+    private final CompletableFuture<Boolean> written;
+
+    private FileChannel channel;
+
+    private long position = 0;
+
+    private long limit = Long.MAX_VALUE;
+
+    /**
+     * dataチャンクのサイズが書き込まれている位置
+     */
+    private long dataSizePosition = -1;
+
+    private long dataPosition = -1;
+
+    private boolean finished = false;
+
+    /**
+     * コンストラクタ
+     * @param file 読み込むファイル
+     * @param written 書き込みに成功したときはtrue、失敗したときはfalseで完了するFuture
+     */
+    ProgressiveAudioInputStream(Path file, CompletableFuture<Boolean> written) {
+        this.file = file;
+        this.written = written;
+    }
+
+    /**
+     * 書き込み中の音声ファイルを開き、WAVヘッダを解釈する。
+     * <p>
+     *     ヘッダが書き込まれるまで待機する。
+     *     PCM以外の形式など、書き込みの途中で再生できないときはnullを返す。
+     * </p>
+     * @param file 読み込むファイル
+     * @param written 書き込みに成功したときはtrue、失敗したときはfalseで完了するFuture
+     * @return 音声データを読み込むストリーム、あるいは書き込みの途中で再生できないときはnull
+     * @throws IOException 書き込みに失敗したとき、あるいはヘッダが不正なとき
+     */
+    static AudioInputStream open(Path file, CompletableFuture<Boolean> written) throws IOException {
+        var stream = new ProgressiveAudioInputStream(file, written);
+        try {
+            var format = stream.readHeader();
+            if (format == null) {
+                stream.close();
+                return null;
+            }
+            var frameLength = stream.limit == Long.MAX_VALUE
+                    ? AudioSystem.NOT_SPECIFIED
+                    : (stream.limit - stream.dataPosition) / format.getFrameSize();
+            return new AudioInputStream(stream, format, frameLength);
+        } catch (IOException | RuntimeException e) {
+            stream.close();
+            throw e;
+        }
+    }
+
+    /**
+     * dataチャンクの先頭まで読み込み、音声の形式を返す
+     */
+    private AudioFormat readHeader() throws IOException {
+        var buffer = readChunk(12);
+        var riff = readId(buffer);
+        buffer.getInt();
+        if (!riff.equals("RIFF") || !readId(buffer).equals("WAVE")) {
+            throw new IOException("not a wave file " + file);
+        }
+
+        AudioFormat format = null;
+        while (true) {
+            var header = readChunk(8);
+            var id = readId(header);
+            var size = Integer.toUnsignedLong(header.getInt());
+
+            if (id.equals("data")) {
+                dataSizePosition = position - 4;
+                dataPosition = position;
+                // 書き込みの完了時に書き換えられるサイズは終端として扱わない
+                if (size != 0 && size != UNKNOWN_SIZE) {
+                    limit = position + size;
+                }
+                return format;
+            }
+
+            if (id.equals("fmt ")) {
+                if (MAX_FORMAT_SIZE < size) {
+                    throw new IOException("invalid format chunk " + file);
+                }
+                format = readFormat(readChunk((int) size));
+            } else {
+                skipChunk(size);
+            }
+
+            // チャンクは偶数バイトに揃えられる
+            if ((size & 1) != 0) {
+                skipChunk(1);
+            }
+
+            if (id.equals("fmt ") && format == null) {
+                return null;
+            }
+        }
+    }
+
+    private static String readId(ByteBuffer buffer) {
+        var id = new byte[4];
+        buffer.get(id);
+        return new String(id, StandardCharsets.US_ASCII);
+    }
+
+    private static AudioFormat readFormat(ByteBuffer buffer) {
+        if (buffer.remaining() < 16) {
+            return null;
+        }
+        var header = new WavHeader(
+                Short.toUnsignedInt(buffer.getShort()),
+                Short.toUnsignedInt(buffer.getShort()),
+                buffer.getInt(),
+                buffer.getInt(),
+                Short.toUnsignedInt(buffer.getShort()),
+                Short.toUnsignedInt(buffer.getShort()),
+                -1,
+                0);
+        return AudioPlayer.toAudioFormat(header);
+    }
+
+    private ByteBuffer readChunk(int size) throws IOException {
+        var bytes = new byte[size];
+        var offset = 0;
+        while (offset < size) {
+            var read = read(bytes, offset, size - offset);
+            if (read < 0) {
+                throw new EOFException("unexpected end of header " + file);
+            }
+            offset += read;
+        }
+        return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private void skipChunk(long size) throws IOException {
+        while (0 < size) {
+            var skipped = read(new byte[(int) Math.min(size, 4096)]);
+            if (skipped < 0) {
+                throw new EOFException("unexpected end of header " + file);
+            }
+            size -= skipped;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        var b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : Byte.toUnsignedInt(b[0]);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        while (true) {
+            if (limit <= position) {
+                return -1;
+            }
+
+            // 読み込む前に完了を確認し、完了後に追記がないことを保証する
+            var done = written.isDone();
+
+            if (channel == null && !openIfExists()) {
+                if (done) {
+                    finish();
+                    throw new EOFException("audio file is not written " + file);
+                }
+                await();
+                continue;
+            }
+
+            // 書き込みが完了したら確定したサイズで終端を設定してから読み込む
+            if (done && !finished) {
+                finish();
+                continue;
+            }
+
+            // ヘッダは書き込み中も読み込む
+            var end = (done || dataPosition < 0) ? limit : Math.min(limit, channel.size() - TAIL_HOLDBACK);
+            if (end <= position) {
+                await();
+                continue;
+            }
+
+            var length = (int) Math.min(len, end - position);
+            var read = channel.read(ByteBuffer.wrap(b, off, length), position);
+            if (0 < read) {
+                position += read;
+                return read;
+            }
+
+            if (done) {
+                return -1;
+            }
+
+            await();
+        }
+    }
+
+    private boolean openIfExists() throws IOException {
+        if (!Files.exists(file) || Files.size(file) == 0) {
+            return false;
+        }
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            return true;
+        } catch (FileSystemException e) {
+            // 書き込み中のファイルを開けない環境では完了するまで待機する
+            return false;
+        }
+    }
+
+    /**
+     * 書き込みの結果を確認し、確定したdataチャンクのサイズで終端を設定する
+     */
+    private void finish() throws IOException {
+        boolean success;
+        try {
+            success = written.join();
+        } catch (RuntimeException e) {
+            success = false;
+        }
+        if (!success) {
+            throw new IOException("failed to write audio file " + file);
+        }
+
+        finished = true;
+
+        if (channel == null || dataSizePosition < 0) {
+            return;
+        }
+
+        var buffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, dataSizePosition + buffer.position()) < 0) {
+                return;
+            }
+        }
+        var size = Integer.toUnsignedLong(buffer.getInt(0));
+        if (size != 0 && size != UNKNOWN_SIZE) {
+            limit = Math.min(limit, dataPosition + size);
+        }
+    }
+
+    /**
+     * 追記されるか書き込みが完了するまで待機する
+     */
+    private void await() throws IOException {
+        try {
+            written.get(POLL_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException ignored) {
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for " + file);
+        } catch (RuntimeException ignored) {
+            // キャンセルされたときは次の読み込みで失敗として扱う
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        // 閉じたあとは読み込まない
+        limit = position;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.k7t3.voicepeakcw4j.speech;
+
+import javax.sound.sampled.AudioFormat;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+
+/**
+ * 書き込まれた音声をPCMデータとして購読者に配信する出力先
+ * <p>
+ *     書き込まれたPCMデータを複製した読み取り専用の{@link ByteBuffer}を文章の順に配信する。
+ *     配信は{@link SubmissionPublisher}で行い、購読者のバッファがあふれているときは
+ *     購読者が要求するまで次の書き込みをブロックする。
+ *     音声は再生の速度を待たずに配信されるため、合成が完了した文章から直ちに配信される。
+ *     音量の設定は反映されない。
+ * </p>
+ * <p>
+ *     読み上げが終わると、その時点の購読者に{@link Flow.Subscriber#onComplete()}を通知する。
+ *     以降の購読は次の読み上げの音声を配信する。
+ *     読み上げの開始前に購読しなかった音声は配信されない。
+ * </p>
+ * <p>このクラスはスレッドセーフ</p>
+ */
+public class PublisherAudioSink implements AudioSink, Flow.Publisher<ByteBuffer> {
+
+    private final Object lock = new Object();
+
+    private final int maxBufferCapacity;
+
+    private SubmissionPublisher<ByteBuffer> publisher;
+
+    private AudioFormat format;
+
+    /**
+     * 既定のバッファサイズ({@link Flow#defaultBufferSize()})で配信する出力先を生成する
+     */
+    public PublisherAudioSink() {
+        this(Flow.defaultBufferSize());
+    }
+
+    /**
+     * 出力先を生成する
+     * @param maxBufferCapacity 購読者ごとにバッファするPCMデータの数の上限
+     * @throws IllegalArgumentException 上限が1未満のとき
+     */
+    public PublisherAudioSink(int maxBufferCapacity) {
+        if (maxBufferCapacity < 1)
+            throw new IllegalArgumentException("maxBufferCapacity must be greater than 0");
+        this.maxBufferCapacity = maxBufferCapacity;
+        this.publisher = createPublisher();
+    }
+
+    private SubmissionPublisher<ByteBuffer> createPublisher() {
+        return new SubmissionPublisher<>(SpeechEventPublisher.DELIVERY, maxBufferCapacity);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        synchronized (lock) {
+            publisher.subscribe(subscriber);
+        }
+    }
+
+    /**
+     * 最後に開いた出力の音声の形式を返す
+     * @return 音声の形式、あるいは一度も開いていないときはnull
+     */
+    public AudioFormat getFormat() {
+        synchronized (lock) {
+            return format;
+        }
+    }
+
+    @Override
+    public Output open(AudioFormat format) {
+        SubmissionPublisher<ByteBuffer> current;
+        synchronized (lock) {
+            this.format = format;
+            current = publisher;
+        }
+        return new Output() {
+            @Override
+            public AudioFormat getFormat() {
+                return format;
+            }
+
+            @Override
+            public void write(byte[] buffer, int offset, int length) {
+                // 呼び出し元はバッファを使いまわすため複製して配信する
+                var data = ByteBuffer.wrap(Arrays.copyOfRange(buffer, offset, offset + length)).asReadOnlyBuffer();
+                current.submit(data);
+            }
+
+            @Override
+            public void close() {
+                // 以降の購読は次の読み上げで配信する
+                synchronized (lock) {
+                    if (publisher == current) {
+                        publisher = createPublisher();
+                    }
+                }
+                current.close();
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "PublisherAudioSink";
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.k7t3.voicepeakcw4j.speech;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.FloatControl;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * {@link SourceDataLine}に書き込む出力
+ */
+class SourceDataLineOutput implements AudioSink.Output {
+
+    private static final System.Logger LOGGER = System.getLogger(SourceDataLineOutput.class.getName());
+
+    private static final float VOLUME_MIN_RATE = 0.0001f;
+    private static final float VOLUME_MAX_RATE = 2f;
+
+    private final SourceDataLine line;
+
+    private final FloatControl volumeControl;
+
+    SourceDataLineOutput(SourceDataLine line) {
+        this.line = line;
+        this.volumeControl = getVolumeControl(line);
+    }
+
+    /**
+     * ラインが対応している場合はそのコントロールを使用する。
+     * ラインを開いてからでないと取得できない
+     */
+    private static FloatControl getVolumeControl(SourceDataLine line) {
+        try {
+            return (FloatControl) line.getControl(FloatControl.Type.MASTER_GAIN);
+        } catch (IllegalArgumentException ignored) {
+            // ゲインが非対応
+            LOGGER.log(System.Logger.Level.WARNING, "SourceDataLine is not support MASTER_GAIN");
+            return null;
+        }
+    }
+
+    @Override
+    public AudioFormat getFormat() {
+        return line.getFormat();
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) {
+        // 消費に対して書き込みが追い付かない場合は無音になるのでバッファサイズを調整する
+        line.write(buffer, offset, length);
+    }
+
+    /**
+     * 0.0 ~ 2.0
+     * <p>
+     *     1/10000倍から2倍まで
+     * </p>
+     *
+     * @param volumeRate ボリュームの比率
+     */
+    @Override
+    public void setVolume(float volumeRate) {
+        if (volumeControl == null) return;
+
+        // logの0は不定なので下限を設ける
+        volumeRate = Math.clamp(volumeRate, VOLUME_MIN_RATE, VOLUME_MAX_RATE);
+
+        // 音圧のデシベルは10のべき乗ごとに20倍になるらしい
+        // https://www.mgco.jp/magazine/plan/mame/b_others/2001/
+        var decibel = (float) (20 * Math.log10(volumeRate));
+
+        volumeControl.setValue(decibel);
+        LOGGER.log(System.Logger.Level.DEBUG, "set decibel " + decibel);
+    }
+
+    @Override
+    public void drain() {
+        line.drain();
+    }
+
+    @Override
+    public void flush() {
+        line.flush();
+    }
+
+    @Override
+    public void pause() {
+        line.stop();
+    }
+
+    @Override
+    public void resume() {
+        line.start();
+    }
+
+    @Override
+    public long getFramePosition() {
+        return line.getLongFramePosition();
+    }
+
+    @Override
+    public void close() {
+        line.close();
+    }
+}
@@ -17,17 +17,17 @@
 package io.github.k7t3.voicepeakcw4j.speech;
 
 import io.github.k7t3.voicepeakcw4j.exception.VPExecutionException;
+import io.github.k7t3.voicepeakcw4j.process.RetryPolicy;
 import io.github.k7t3.voicepeakcw4j.process.VPProcess;
 import io.github.k7t3.voicepeakcw4j.process.VPProcessBuilder;
+import io.github.k7t3.voicepeakcw4j.text.SentenceSplitter;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Locale;
 import java.util.Map;
-import java.util.UUID;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
@@ -43,25 +43,28 @@ public class SpeechBuilder {
 
     private static final System.Logger LOGGER = System.getLogger(SpeechBuilder.class.getName());
 
-    private static final String DEFAULT_TEMP_DIRECTORY = System.getProperty("java.io.tmpdir");
     private static final int DEFAULT_MAX_SENTENCE_LENGTH = 140; // VOICEPEAKのデフォルト
     private static final float DEFAULT_VOLUME_RATE = 0.5f;
 
     private final VPProcessBuilder builder;
     private String speechText = null;
 
-    private Path temporalDirectory = Paths.get(DEFAULT_TEMP_DIRECTORY);
+    private Path temporalDirectory;
+
+    private TemporaryOutputManager outputManager;
 
     private Locale splitterLocale = Locale.getDefault();
     private int maxSentenceLength = Integer.MIN_VALUE;
 
     private long delayMilliSeconds = Long.MIN_VALUE;
 
-    private AudioDevice audioDevice;
+    private AudioSink audioSink;
     private float volumeRate = DEFAULT_VOLUME_RATE;
 
     private Executor voicepeakExecutor;
 
+    private boolean progressive = false;
+
     /**
      * 引数の実行ファイルを使用したスピーチランナーインスタンスを作成する
      * @param builder VOICEPEAKプロセスのビルダー
@@ -148,7 +151,11 @@ public class SpeechBuilder {
     /**
      * 読み上げる一時音声ファイルを生成するディレクトリを設定する。
      * <p>
-     *     規定値は<code>java.io.tmpdir</code>プロパティで取得できるディレクトリ
+     *     設定したディレクトリの一時ファイルは合計サイズを制限しない。
+     *     設定しないときは{@link TemporaryOutputManager#getDefault()}が一時ファイルを管理する。
+     * </p>
+     * <p>
+     *     {@link #withTemporaryOutputManager(TemporaryOutputManager)}を設定したときは使用されない。
      * </p>
      * @param temporalDirectory 読み上げる一時音声ファイルを生成するディレクトリ
      * @return このインスタンス
@@ -158,6 +165,21 @@ public class SpeechBuilder {
         return this;
     }
 
+    /**
+     * 読み上げる一時音声ファイルを管理するクラスを設定する。
+     * <p>
+     *     書き込まれた一時ファイルの合計サイズが上限に達しているときは、
+     *     一時ファイルが削除されるまでVOICEPEAKプロセスを起動しない。
+     *     規定値は{@link TemporaryOutputManager#getDefault()}
+     * </p>
+     * @param outputManager 一時ファイルを管理するクラス
+     * @return このインスタンス
+     */
+    public SpeechBuilder withTemporaryOutputManager(TemporaryOutputManager outputManager) {
+        this.outputManager = outputManager;
+        return this;
+    }
+
     /**
      * 読み上げる文字列を分割するときに使用する言語を設定する。
      * <p>
@@ -191,13 +213,35 @@ public class SpeechBuilder {
     /**
      * 音声を再生するデバイスを設定する。
      * <p>
+     *     サウンドカードで再生する{@link AudioDevice}のほか、
+     *     {@link NullAudioSink}や{@link FileAudioSink}など任意の{@link AudioSink}を出力先にできる。
      *     デフォルト値は既定のデバイス
      * </p>
-     * @param audioDevice 音声を再生するデバイス
+     * @param audioSink 音声の出力先
      * @return このインスタンス
      */
-    public SpeechBuilder withAudioDevice(AudioDevice audioDevice) {
-        this.audioDevice = audioDevice;
+    public SpeechBuilder withAudioDevice(AudioSink audioSink) {
+        this.audioSink = audioSink;
+        return this;
+    }
+
+    /**
+     * 読み上げる音声を再生せずに一つのWAVファイルに出力する。
+     * <p>
+     *     文字列を分割して合成した音声は、合成が完了した順ではなく文章の順にファイルへ書き込まれる。
+     *     再生の速度を待たないため、VOICEPEAKが合成できる速度で出力する。
+     *     {@link SpeechState#getSpeechFuture()}はファイルを書き終えてから完了する。
+     * </p>
+     * <p>
+     *     {@link #withAudioDevice(AudioSink)}に{@link FileAudioSink}を設定することと同じ。
+     *     音量の設定は反映されない。
+     * </p>
+     * @param output 出力するWAVファイル
+     * @return このインスタンス
+     * @throws IllegalArgumentException ファイルがnullのとき
+     */
+    public SpeechBuilder withRenderTarget(Path output) {
+        this.audioSink = new FileAudioSink(output);
         return this;
     }
 
@@ -253,15 +297,40 @@ public class SpeechBuilder {
         return this;
     }
 
+    /**
+     * 一文ごとのVOICEPEAKプロセスが起動してから終了するまでの制限時間を設定する。
+     * <p>
+     *     制限時間を超過したプロセスは終了され、その文は読み上げられない。
+     * </p>
+     * @param timeout 制限時間、あるいは制限しないときはnull
+     * @return このインスタンス
+     * @see VPProcessBuilder#withTimeout(Duration)
+     */
+    public SpeechBuilder withTimeout(Duration timeout) {
+        builder.withTimeout(timeout);
+        return this;
+    }
+
+    /**
+     * 一時的なエラーで失敗したVOICEPEAKプロセスを再実行する方針を設定する
+     * @param retryPolicy 再実行する方針、あるいは再実行しないときはnull
+     * @return このインスタンス
+     * @see VPProcessBuilder#withRetryPolicy(RetryPolicy)
+     */
+    public SpeechBuilder withRetryPolicy(RetryPolicy retryPolicy) {
+        builder.withRetryPolicy(retryPolicy);
+        return this;
+    }
+
     /**
      * VOICEPEAKコマンドを実行するExecutorを設定する
      * <p>
-     *     VOICEPEAK v1.2.11現在、コマンドライン実行は並列実行が許可されていないため、
-     *     複数スレッドで動作させることを目的として{@link Executor}を設定するべきではない。
+     *     VOICEPEAKプロセスの同時実行数は
+     *     {@link io.github.k7t3.voicepeakcw4j.process.VPProcessScheduler}によって制限されるため、
+     *     通常は設定する必要はない。設定しないときは直ちにスケジューラに起動を要求する。
      * </p>
      * <p>
-     *     むしろVOICEPEAKの並列実行を制限するために、
-     *     シングルスレッドのExecutorを割り当てるために使用する。
+     *     設定したときはこのExecutorのスレッドでVOICEPEAKプロセスの終了を待機する。
      * </p>
      * @param executor Executor
      * @return このインスタンス
@@ -271,27 +340,37 @@ public class SpeechBuilder {
         return this;
     }
 
-    private boolean isNullSpeechText() {
-        return speechText == null || speechText.trim().isEmpty();
+    /**
+     * VOICEPEAKが音声ファイルを書き込んでいる途中から再生するかを設定する。
+     * <p>
+     *     有効にするとVOICEPEAKプロセスの終了を待たずに、WAVヘッダと最初の音声データが
+     *     書き込まれた時点で再生を開始するため、最初の音声が再生されるまでの時間を短縮できる。
+     *     ヘッダのサイズが書き込みの完了時に書き換えられる場合も、完了後のサイズで再生を終える。
+     * </p>
+     * <p>
+     *     PCM以外の形式など書き込みの途中で再生できないときは、
+     *     VOICEPEAKプロセスの終了を待ってから再生する。規定値はfalse
+     * </p>
+     * @param progressive 書き込みの途中から再生するときはtrue
+     * @return このインスタンス
+     */
+    public SpeechBuilder withProgressivePlayback(boolean progressive) {
+        this.progressive = progressive;
+        return this;
     }
 
-    private String generateTemporalFileName() {
-        return UUID.randomUUID() + ".vpcw4j";
+    private boolean isNullSpeechText() {
+        return speechText == null || speechText.trim().isEmpty();
     }
 
-    private Path determineOutputPath() throws IOException {
-        if (temporalDirectory == null) {
-            temporalDirectory = Paths.get(DEFAULT_TEMP_DIRECTORY);
-            return temporalDirectory.resolve(generateTemporalFileName());
-        }
-        if (!Files.exists(temporalDirectory)) {
-            Files.createDirectories(temporalDirectory);
-            return temporalDirectory.resolve(generateTemporalFileName());
+    private TemporaryOutputManager determineOutputManager() {
+        if (outputManager != null) {
+            return outputManager;
         }
-        if (!Files.isDirectory(temporalDirectory)) {
-            throw new IllegalStateException("temporal directory is not directory. " + temporalDirectory);
+        if (temporalDirectory != null) {
+            return new TemporaryOutputManager(temporalDirectory, Long.MAX_VALUE);
         }
-        return temporalDirectory.resolve(generateTemporalFileName());
+        return TemporaryOutputManager.getDefault();
     }
 
     /**
@@ -310,6 +389,7 @@ public class SpeechBuilder {
         if (maxSentenceLength < 4) {
             maxSentenceLength = DEFAULT_MAX_SENTENCE_LENGTH;
         }
+        builder.withMaxSentenceLength(maxSentenceLength).withSplitterLocale(splitterLocale);
 
         // VOICEPEAKのコマンドライン実装で処理できるようにテキストを分割
         var sentenceSplitter = new SentenceSplitter(splitterLocale);
@@ -321,29 +401,51 @@ public class SpeechBuilder {
             sentences.forEach(s -> LOGGER.log(System.Logger.Level.DEBUG, s));
         }
 
-        if (audioDevice == null) {
-            audioDevice = AudioDevice.getDefaultDevice();
+        var audioSink = this.audioSink;
+        if (audioSink == null) {
+            audioSink = AudioDevice.getDefaultDevice();
         }
 
         var volumeRate = Math.clamp(this.volumeRate, 0.0f, 1.0f);
         var delayMilliSeconds = Math.max(0, this.delayMilliSeconds);
 
+        var outputs = determineOutputManager();
+
         // 読み上げに使用するパラメータを生成
         var parameters = new ArrayList<SpeechParameter>(sentences.size());
+        var textOffset = 0;
         for (int i = 0; i < sentences.size(); i++) {
-            parameters.add(createParameter(i, sentences.get(i)));
+            var sentence = sentences.get(i);
+            textOffset = findTextOffset(sentence, textOffset);
+            parameters.add(createParameter(outputs, i, sentence, textOffset));
+            textOffset += sentence.length();
+        }
+        return new SpeechRunner(audioSink, volumeRate, delayMilliSeconds, voicepeakExecutor, progressive, outputs, parameters);
+    }
+
+    /**
+     * 分割した文章の元のテキストにおける位置を返す。
+     * <p>
+     *     分割で前後の空白や改行が取り除かれているときは取り除いた文字列で探し、
+     *     見つからないときは直前の文章の終わりの位置とする。
+     * </p>
+     */
+    private int findTextOffset(String sentence, int fromIndex) {
+        var found = speechText.indexOf(sentence, fromIndex);
+        if (found < 0) {
+            found = speechText.indexOf(sentence.strip(), fromIndex);
         }
-        return new SpeechRunner(audioDevice, volumeRate, delayMilliSeconds, voicepeakExecutor, parameters);
+        return found < 0 ? Math.min(fromIndex, speechText.length()) : found;
     }
 
-    private SpeechParameter createParameter(int index, String sentence) {
+    private SpeechParameter createParameter(TemporaryOutputManager outputs, int index, String sentence, int textOffset) {
         if (isNullSpeechText()) {
             throw new IllegalStateException("require speech text or file");
         }
 
         Path outputPath;
         try {
-            outputPath = determineOutputPath();
+            outputPath = outputs.createOutput();
         } catch (IOException e) {
             throw new IllegalStateException(e);
         }
@@ -355,10 +457,11 @@ public class SpeechBuilder {
                     .withOutput(outputPath)
                     .build();
         } catch (VPExecutionException e) {
+            outputs.release(outputPath);
             throw new IllegalStateException(e);
         }
 
-        return new SpeechParameter(index, process, outputPath);
+        return new SpeechParameter(index, process, outputPath, textOffset, sentence.length());
     }
 
 }
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.k7t3.voicepeakcw4j.speech;
+
+import java.time.Duration;
+
+/**
+ * 読み上げの進捗を通知するイベント
+ * <p>
+ *     {@link SpeechState#getEvents()}あるいは{@link SpeechRunner#setEventSubscriber(java.util.concurrent.Flow.Subscriber)}で購読できる。
+ *     イベントは文章ごとに、キュー、合成の開始、合成の終了、再生の開始、再生の進捗、再生の終了の順に通知される。
+ * </p>
+ * <p>
+ *     「文章」の定義は、VOICEPEAKが処理できる文字数に準拠して分割した文字列のことを示す。
+ * </p>
+ */
+public sealed interface SpeechEvent {
+
+    /**
+     * イベントが発生した文章の位置を返す
+     * @return 文章の位置
+     */
+    int index();
+
+    /**
+     * 文章の合成をキューした
+     * @param index 文章の位置
+     */
+    record Queued(int index) implements SpeechEvent {
+    }
+
+    /**
+     * 文章を合成するVOICEPEAKプロセスの起動を要求した。
+     * <p>
+     *     同時実行数に空きがないときは、プロセスは先に要求されたプロセスが終了してから起動する。
+     * </p>
+     * @param index 文章の位置
+     */
+    record SynthesisStarted(int index) implements SpeechEvent {
+    }
+
+    /**
+     * 文章を合成するVOICEPEAKプロセスが終了した
+     * @param index 文章の位置
+     * @param status 終了ステータス
+     * @param elapsed 起動を要求してから終了するまでの時間
+     */
+    record SynthesisFinished(int index, int status, Duration elapsed) implements SpeechEvent {
+    }
+
+    /**
+     * 文章の再生を開始した
+     * @param index 文章の位置
+     */
+    record PlaybackStarted(int index) implements SpeechEvent {
+    }
+
+    /**
+     * 文章を再生している位置。
+     * <p>
+     *     音声データを出力に書き込むたびに通知する。
+     *     オーディオデバイスでは{@link javax.sound.sampled.SourceDataLine#getLongFramePosition()}に基づき、
+     *     実際に再生したフレームの位置を示す。
+     * </p>
+     * @param index 文章の位置
+     * @param framePosition 文章の先頭から再生したフレームの数
+     * @param microseconds 文章の先頭から再生した時間(マイクロ秒)
+     */
+    record PlaybackProgress(int index, long framePosition, long microseconds) implements SpeechEvent {
+    }
+
+    /**
+     * 文章の音声をすべて出力に書き込んだ、あるいは再生を中断した
+     * @param index 文章の位置
+     */
+    record PlaybackFinished(int index) implements SpeechEvent {
+    }
+
+    /**
+     * 文章の合成あるいは再生に失敗した
+     * @param index 文章の位置
+     * @param error 失敗の原因
+     */
+    record Failed(int index, Throwable error) implements SpeechEvent {
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.k7t3.voicepeakcw4j.speech;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+
+/**
+ * 一つの読み上げのイベントを配信するパブリッシャー
+ * <p>
+ *     読み上げを遅らせないように、購読者のバッファがあふれているときはイベントを破棄する。
+ *     購読者がいないときはイベントを生成しない。
+ * </p>
+ */
+class SpeechEventPublisher implements Flow.Publisher<SpeechEvent> {
+
+    private static final System.Logger LOGGER = System.getLogger(SpeechEventPublisher.class.getName());
+
+    /**
+     * 配信に使用するExecutor。{@link SubmissionPublisher}の既定と同様に、
+     * 共通プールが並列に実行できないときはタスクごとにスレッドを生成する
+     */
+    static final Executor DELIVERY = ForkJoinPool.getCommonPoolParallelism() > 1
+            ? ForkJoinPool.commonPool()
+            : task -> new Thread(task).start();
+
+    private final SubmissionPublisher<SpeechEvent> publisher = new SubmissionPublisher<>(DELIVERY, Flow.defaultBufferSize());
+
+    /**
+     * 文章ごとに合成を開始した時刻
+     */
+    private final long[] synthesisStartedAt;
+
+    SpeechEventPublisher(int sentenceCount) {
+        this.synthesisStartedAt = new long[sentenceCount];
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super SpeechEvent> subscriber) {
+        publisher.subscribe(subscriber);
+    }
+
+    boolean hasSubscribers() {
+        return publisher.hasSubscribers();
+    }
+
+    void publish(SpeechEvent event) {
+        try {
+            publisher.offer(event, (subscriber, e) -> {
+                LOGGER.log(System.Logger.Level.DEBUG, "dropped speech event " + e);
+                return false;
+            });
+        } catch (IllegalStateException ignored) {
+            // 読み上げが終わったあとのイベントは配信しない
+        }
+    }
+
+    void queued(int index) {
+        if (hasSubscribers()) {
+            publish(new SpeechEvent.Queued(index));
+        }
+    }
+
+    void synthesisStarted(int index) {
+        synthesisStartedAt[index] = System.nanoTime();
+        if (hasSubscribers()) {
+            publish(new SpeechEvent.SynthesisStarted(index));
+        }
+    }
+
+    void synthesisFinished(int index, int status) {
+        if (hasSubscribers()) {
+            var elapsed = Duration.ofNanos(System.nanoTime() - synthesisStartedAt[index]);
+            publish(new SpeechEvent.SynthesisFinished(index, status, elapsed));
+        }
+    }
+
+    void failed(int index, Throwable error) {
+        if (hasSubscribers()) {
+            publish(new SpeechEvent.Failed(index, error));
+        }
+    }
+
+    /**
+     * 購読者に完了を通知する
+     */
+    void close() {
+        publisher.close();
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.k7t3.voicepeakcw4j.speech;
+
+import io.github.k7t3.voicepeakcw4j.audio.WavHeader;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 元のテキストにおける文字の位置から、分割した文章と音声のフレームの位置を求める索引
+ * <p>
+ *     文章ごとのテキストの範囲と、合成した音声の長さを保持する。
+ *     文章の中の位置は、文字数の割合を音声の長さに当てはめて求める。
+ * </p>
+ * <p>このクラスはスレッドセーフではない</p>
+ */
+class SpeechIndex {
+
+    private static final System.Logger LOGGER = System.getLogger(SpeechIndex.class.getName());
+
+    /**
+     * 長さを記録していないことを表す値
+     */
+    private static final long UNKNOWN = -1;
+
+    private final int[] textOffsets;
+
+    private final int[] textLengths;
+
+    /**
+     * 文章ごとの音声のフレーム数
+     */
+    private final long[] frames;
+
+    SpeechIndex(List<SpeechParameter> parameters) {
+        var size = parameters.size();
+        this.textOffsets = new int[size];
+        this.textLengths = new int[size];
+        this.frames = new long[size];
+        for (int i = 0; i < size; i++) {
+            var parameter = parameters.get(i);
+            textOffsets[i] = parameter.textOffset();
+            textLengths[i] = parameter.textLength();
+        }
+        Arrays.fill(frames, UNKNOWN);
+    }
+
+    /**
+     * 文字の位置を含む文章の位置を返す。
+     * <p>
+     *     文章の間にある空白などの位置は、直前の文章の位置とする。
+     * </p>
+     * @param textOffset 元のテキストにおける文字の位置
+     * @return 文章の位置
+     */
+    int findSentence(int textOffset) {
+        var found = Arrays.binarySearch(textOffsets, textOffset);
+        if (found < 0) {
+            // 挿入位置の直前の文章
+            found = -found - 2;
+        } else {
+            // 長さのない文章が同じ位置に並ぶときは最後の文章
+            while (found + 1 < textOffsets.length && textOffsets[found + 1] == textOffset) {
+                found++;
+            }
+        }
+        return Math.max(0, found);
+    }
+
+    /**
+     * 合成した音声ファイルから文章の音声の長さを記録する。
+     * <p>
+     *     すでに記録しているときはファイルを読み込まない。
+     * </p>
+     * @param index 文章の位置
+     * @param audioFile 合成した音声ファイル
+     */
+    void record(int index, Path audioFile) {
+        if (frames[index] != UNKNOWN) {
+            return;
+        }
+        try {
+            var header = WavHeader.read(audioFile);
+            if (0 < header.blockAlign()) {
+                frames[index] = header.dataSize() / header.blockAlign();
+            }
+        } catch (IOException e) {
+            LOGGER.log(System.Logger.Level.DEBUG, "failed to read wav header " + audioFile, e);
+        }
+    }
+
+    /**
+     * 文章の中の文字の位置に対応する音声のフレームの位置を返す。
+     * <p>
+     *     音声の長さを記録していないときは文章の先頭とする。
+     * </p>
+     * @param index 文章の位置
+     * @param textOffset 元のテキストにおける文字の位置
+     * @return 文章の音声におけるフレームの位置
+     */
+    long toFrame(int index, int textOffset) {
+        var length = textLengths[index];
+        if (frames[index] == UNKNOWN || length <= 0) {
+            return 0;
+        }
+        var chars = Math.clamp(textOffset - textOffsets[index], 0, length);
+        return frames[index] * chars / length;
+    }
+
+}
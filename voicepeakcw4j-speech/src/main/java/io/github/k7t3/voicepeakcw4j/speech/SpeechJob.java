@@ -0,0 +1,206 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.k7t3.voicepeakcw4j.speech;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link SpeechService}が読み上げる一つの要求
+ * <p>
+ *     サービスが{@link #prepare(int)}で読み上げる順番が近づいた文章の合成を要求し、
+ *     サービスのスレッドが{@link #playNext(AudioPlayer)}で文章ごとに再生する。
+ *     文章の境界で中断し、中断した位置から再開できる。
+ * </p>
+ * <p>
+ *     再生が合成を待っている文章は一時ファイルの合計サイズの上限を待たずに合成する。
+ *     ほかの要求の一時ファイルが上限を占有していても、再生中の要求が止まらないようにする。
+ * </p>
+ */
+class SpeechJob {
+
+    private static final System.Logger LOGGER = System.getLogger(SpeechJob.class.getName());
+
+    private final SpeechRunner runner;
+
+    private final SpeechService.Interruption interruption;
+
+    private final List<SpeechParameter> parameters;
+
+    /**
+     * 合成を要求した文章のFuture。先頭から順に追加する
+     */
+    private final List<CompletableFuture<SpeechRunner.RunnerStage>> processes;
+
+    /**
+     * 文章ごとの一時ファイルの合計サイズの上限の待機をやめさせるFuture
+     */
+    private final List<CompletableFuture<Void>> bypasses;
+
+    /**
+     * 最後に合成を要求した文章のFuture
+     */
+    private CompletableFuture<?> previous = CompletableFuture.completedFuture(null);
+
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+    private final AtomicInteger counter = new AtomicInteger(0);
+
+    private final AtomicBoolean cancel = new AtomicBoolean(false);
+
+    private final SpeechEventPublisher events;
+
+    private final SpeechState state;
+
+    /**
+     * 次に再生する文章の位置。サービスのスレッドのみが操作する
+     */
+    private int next = 0;
+
+    SpeechJob(SpeechRunner runner, SpeechService.Interruption interruption, AudioPlayer player) {
+        this.runner = runner;
+        this.interruption = interruption;
+        this.parameters = runner.getParameters();
+        this.events = runner.createEventPublisher();
+
+        processes = new ArrayList<>(parameters.size());
+        bypasses = new ArrayList<>(parameters.size());
+        for (var parameter : parameters) {
+            events.queued(parameter.index());
+            bypasses.add(new CompletableFuture<>());
+        }
+
+        // 停止したときは合成を要求した文章をキャンセルし、キャンセルなどで再生されなかった一時ファイルも削除する
+        future.whenComplete((v, e) -> {
+            if (future.isCancelled()) {
+                cancel.set(true);
+                cancelProcesses();
+            }
+            parameters.forEach(parameter -> runner.releaseOutput(parameter.audioFile()));
+            events.close();
+        });
+
+        state = new SpeechState(new CompletableFuture<?>[] { future }, future, parameters.size(), counter, cancel, player, true, events, null);
+    }
+
+    /**
+     * 先頭から指定した数の文章までの合成を要求する。
+     * <p>
+     *     合成を要求した文章は順に合成され、一時ファイルの合計サイズが上限に達しているときは
+     *     再生されて削除されるまで待機する。
+     * </p>
+     * @param count 合成を要求する文章の数
+     */
+    void prepare(int count) {
+        synchronized (processes) {
+            var end = Math.min(count, parameters.size());
+            while (!cancel.get() && !future.isDone() && processes.size() < end) {
+                var index = processes.size();
+                var parameter = parameters.get(index);
+                runner.subscribeOutputs(parameter);
+                var process = runner.queueProcess(parameter, previous, bypasses.get(index), runner.getVoicePeakExecutor(), cancel, events);
+                processes.add(process);
+                previous = process;
+            }
+        }
+    }
+
+    /**
+     * すべての文章の合成を要求する
+     */
+    void prepareAll() {
+        prepare(parameters.size());
+    }
+
+    private void cancelProcesses() {
+        synchronized (processes) {
+            processes.forEach(process -> process.cancel(false));
+        }
+    }
+
+    SpeechState getState() {
+        return state;
+    }
+
+    SpeechService.Interruption getInterruption() {
+        return interruption;
+    }
+
+    float getVolumeRate() {
+        return runner.getVolumeRate();
+    }
+
+    AtomicBoolean getCancel() {
+        return cancel;
+    }
+
+    /**
+     * 停止が要求されているか、完了しているかを返す
+     */
+    boolean isDone() {
+        return cancel.get() || future.isDone() || parameters.size() <= next;
+    }
+
+    /**
+     * 次の文章を再生する
+     */
+    void playNext(AudioPlayer player) {
+        prepareAll();
+
+        var parameter = parameters.get(next);
+        CompletableFuture<SpeechRunner.RunnerStage> process;
+        synchronized (processes) {
+            if (processes.size() <= next) {
+                // 合成を要求する前に停止された
+                return;
+            }
+            process = processes.get(next);
+        }
+        // 再生がこの文章の合成を待つため、一時ファイルの合計サイズの上限を待たずに合成させる
+        bypasses.get(next).complete(null);
+        next++;
+
+        try {
+            runner.playAudio(player, parameter, process, events);
+        } catch (RuntimeException e) {
+            LOGGER.log(System.Logger.Level.WARNING, e);
+            events.failed(parameter.index(), e);
+        } finally {
+            runner.releaseOutput(parameter.audioFile());
+            counter.incrementAndGet();
+        }
+    }
+
+    /**
+     * 読み上げを終える。
+     * すべての文章を再生したときは正常に、停止したときはキャンセルで完了する
+     */
+    void finish() {
+        if (!cancel.get() && parameters.size() <= next) {
+            future.complete(null);
+            return;
+        }
+        cancel.set(true);
+        cancelProcesses();
+        future.cancel(false);
+    }
+
+}
@@ -20,5 +20,17 @@ import io.github.k7t3.voicepeakcw4j.process.VPProcess;
 
 import java.nio.file.Path;
 
-record SpeechParameter(int index, VPProcess process, Path audioFile) {
+/**
+ * 分割した文章ごとの読み上げのパラメータ
+ * @param index 文章の位置
+ * @param process 文章を合成するVOICEPEAKプロセス
+ * @param audioFile 合成した音声を出力する一時ファイル
+ * @param textOffset 元のテキストにおける文章の先頭の文字の位置
+ * @param textLength 文章の文字数
+ */
+record SpeechParameter(int index, VPProcess process, Path audioFile, int textOffset, int textLength) {
+
+    SpeechParameter(int index, VPProcess process, Path audioFile) {
+        this(index, process, audioFile, 0, 0);
+    }
 }
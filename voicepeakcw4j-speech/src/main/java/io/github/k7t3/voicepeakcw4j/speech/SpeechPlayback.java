@@ -0,0 +1,310 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.k7t3.voicepeakcw4j.speech;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link SpeechRunner}が合成した文章を順に再生する処理
+ * <p>
+ *     再生した音声ファイルは直近のものを保持し、指定した文字の位置へ移動したときに
+ *     合成しなおさずに再生する。保持する音声は文章の数と合計サイズで制限し、超えたときや
+ *     一時ファイルの合計サイズが上限に達して合成が待機しているときは古いものから削除する。
+ *     削除した音声へ移動したときはその文章のみを合成しなおす。
+ * </p>
+ * <p>
+ *     再生はひとつのスレッドで行い、移動の要求のみ任意のスレッドから受け付ける。
+ * </p>
+ */
+class SpeechPlayback implements Runnable {
+
+    private static final System.Logger LOGGER = System.getLogger(SpeechPlayback.class.getName());
+
+    /**
+     * 移動が要求されていないことを表す値
+     */
+    private static final int NO_SEEK_REQUEST = -1;
+
+    /**
+     * 保持する音声の文章の数の上限
+     */
+    private static final int MAX_RETAINED_SENTENCES = 16;
+
+    /**
+     * 保持する音声の合計サイズの上限(バイト)。一時ファイルの上限の半分を超えては保持しない
+     */
+    private static final long MAX_RETAINED_BYTES = 32L * 1024 * 1024;
+
+    private final SpeechRunner runner;
+
+    private final AudioPlayer player;
+
+    private final List<SpeechParameter> parameters;
+
+    /**
+     * 文章ごとの合成のFuture。合成しなおしたときは置き換える
+     */
+    private final List<CompletableFuture<SpeechRunner.RunnerStage>> processes;
+
+    private final SpeechIndex index;
+
+    private final AtomicInteger counter;
+
+    private final AtomicBoolean cancel;
+
+    private final SpeechEventPublisher events;
+
+    /**
+     * 移動先の文字の位置
+     */
+    private final AtomicInteger seekRequest = new AtomicInteger(NO_SEEK_REQUEST);
+
+    /**
+     * 再生中の音声を中断する要求
+     */
+    private final AtomicBoolean seeking = new AtomicBoolean(false);
+
+    /**
+     * 合成を待機している再生を起こすFuture
+     */
+    private volatile CompletableFuture<Void> wakeup = new CompletableFuture<>();
+
+    /**
+     * 再生した、あるいは移動で飛ばした文章の位置。古いものから削除する
+     */
+    private final ArrayDeque<Integer> retained = new ArrayDeque<>();
+
+    /**
+     * 音声ファイルを削除した文章
+     */
+    private final boolean[] released;
+
+    private final long retainedBytesLimit;
+
+    SpeechPlayback(
+            SpeechRunner runner,
+            AudioPlayer player,
+            List<CompletableFuture<SpeechRunner.RunnerStage>> processes,
+            AtomicInteger counter,
+            AtomicBoolean cancel,
+            SpeechEventPublisher events
+    ) {
+        this.runner = runner;
+        this.player = player;
+        this.parameters = runner.getParameters();
+        this.processes = processes;
+        this.index = new SpeechIndex(parameters);
+        this.counter = counter;
+        this.cancel = cancel;
+        this.events = events;
+        this.released = new boolean[parameters.size()];
+        this.retainedBytesLimit = Math.min(MAX_RETAINED_BYTES, runner.getOutputStatistics().quotaBytes() / 2);
+    }
+
+    /**
+     * 指定の文字の位置へ移動するよう要求する。
+     * <p>
+     *     再生中の音声は出力していないものを破棄し、移動先の文章から再生する。
+     *     続けて要求したときは最後の要求のみ反映する。
+     * </p>
+     * @param textOffset 元のテキストにおける文字の位置
+     */
+    void requestSeek(int textOffset) {
+        seekRequest.set(textOffset);
+        seeking.set(true);
+        wakeup.complete(null);
+    }
+
+    /**
+     * 停止の要求を通知し、合成しなおしている文章もキャンセルする
+     */
+    void requestStop() {
+        cancel.set(true);
+        synchronized (processes) {
+            processes.forEach(process -> process.cancel(false));
+        }
+        wakeup.complete(null);
+    }
+
+    @Override
+    public void run() {
+        var size = parameters.size();
+        var next = 0;
+        var startFrame = 0L;
+
+        player.setInterruption(seeking);
+        try {
+            while (!cancel.get()) {
+                if (wakeup.isDone()) {
+                    wakeup = new CompletableFuture<>();
+                }
+                seeking.set(false);
+
+                var textOffset = seekRequest.getAndSet(NO_SEEK_REQUEST);
+                if (textOffset != NO_SEEK_REQUEST) {
+                    var target = index.findSentence(textOffset);
+                    for (int i = next; i < target; i++) {
+                        retain(i);
+                    }
+                    next = target;
+                    startFrame = locateFrame(target, textOffset);
+                    LOGGER.log(System.Logger.Level.DEBUG, "seek to index: " + target + ", frame: " + startFrame);
+                }
+
+                if (size <= next) {
+                    break;
+                }
+                counter.set(next);
+
+                releaseRetained();
+
+                var process = prepareProcess(next);
+                if (!awaitProcess(process)) {
+                    // 合成を待つ間に移動あるいは停止が要求された
+                    continue;
+                }
+
+                play(parameters.get(next), process, startFrame);
+
+                if (seeking.get()) {
+                    // 再生中に移動が要求された
+                    continue;
+                }
+
+                // 削除したあとに移動したときのために音声の長さを記録しておく
+                if (process.isDone() && !process.isCompletedExceptionally()) {
+                    index.record(next, parameters.get(next).audioFile());
+                }
+                retain(next);
+                next++;
+                startFrame = 0;
+            }
+        } finally {
+            player.setInterruption(null);
+        }
+
+        if (!cancel.get()) {
+            counter.set(size);
+        }
+    }
+
+    private void play(SpeechParameter parameter, CompletableFuture<SpeechRunner.RunnerStage> process, long startFrame) {
+        try {
+            runner.playAudio(player, parameter, process, events, startFrame);
+        } catch (RuntimeException e) {
+            LOGGER.log(System.Logger.Level.WARNING, e);
+            events.failed(parameter.index(), e);
+        }
+    }
+
+    /**
+     * 移動先の文章における音声のフレームの位置を返す
+     */
+    private long locateFrame(int target, int textOffset) {
+        var process = processes.get(target);
+        if (!released[target] && process.isDone() && !process.isCompletedExceptionally()
+                && process.join().status() == 0) {
+            index.record(target, parameters.get(target).audioFile());
+        }
+        return index.toFrame(target, textOffset);
+    }
+
+    /**
+     * 文章の合成のFutureを返す。音声ファイルを削除しているときは合成しなおす
+     */
+    private CompletableFuture<SpeechRunner.RunnerStage> prepareProcess(int target) {
+        var process = processes.get(target);
+        if (!released[target]) {
+            return process;
+        }
+
+        released[target] = false;
+        retained.remove(target);
+
+        var parameter = parameters.get(target);
+        runner.reissueOutput(parameter.audioFile());
+        if (!process.isDone()) {
+            // 削除したときに合成中だった
+            return process;
+        }
+
+        LOGGER.log(System.Logger.Level.DEBUG, "resynthesize index: " + target);
+        var resynthesis = runner.resynthesize(parameter, cancel, events);
+        synchronized (processes) {
+            processes.set(target, resynthesis);
+        }
+        if (cancel.get()) {
+            resynthesis.cancel(false);
+        }
+        return resynthesis;
+    }
+
+    /**
+     * 合成が終わるまで待機する
+     * @return 合成が終わったときはtrue、移動あるいは停止が要求されたときはfalse
+     */
+    private boolean awaitProcess(CompletableFuture<SpeechRunner.RunnerStage> process) {
+        CompletableFuture.anyOf(process, wakeup).exceptionally(e -> null).join();
+        return process.isDone() && !seeking.get();
+    }
+
+    /**
+     * 文章の音声ファイルを、移動したときに再生できるよう保持する
+     */
+    private void retain(int target) {
+        if (!released[target] && !retained.contains(target)) {
+            retained.add(target);
+        }
+    }
+
+    /**
+     * 保持している音声ファイルが上限を超えているとき、あるいは合成が一時ファイルの上限によって
+     * 待機しているときは、保持している音声ファイルを古いものから削除する
+     */
+    private void releaseRetained() {
+        while (!retained.isEmpty() && (MAX_RETAINED_SENTENCES < retained.size()
+                || retainedBytesLimit < retainedBytes()
+                || 0 < runner.getOutputStatistics().waiting())) {
+            var target = retained.poll();
+            released[target] = true;
+            runner.releaseOutput(parameters.get(target).audioFile());
+        }
+    }
+
+    /**
+     * 保持している音声ファイルの合計サイズを返す。
+     * 移動で飛ばした文章は保持したあとに合成を終えることがあるため、その都度取得する
+     */
+    private long retainedBytes() {
+        var total = 0L;
+        for (var target : retained) {
+            try {
+                total += Files.size(parameters.get(target).audioFile());
+            } catch (IOException ignored) {
+                // 書き込まれていないファイルは数えない
+            }
+        }
+        return total;
+    }
+
+}
@@ -16,14 +16,17 @@
 
 package io.github.k7t3.voicepeakcw4j.speech;
 
+import io.github.k7t3.voicepeakcw4j.exception.VPCommandException;
+
 import javax.sound.sampled.UnsupportedAudioFileException;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * 文字列を読み上げるランナー
@@ -50,10 +53,11 @@ public class SpeechRunner {
 
     private Flow.Subscriber<String> standardOutSubscriber;
     private Flow.Subscriber<String> errorOutSubscriber;
+    private Flow.Subscriber<? super SpeechEvent> eventSubscriber;
 
     private final List<SpeechParameter> parameters;
 
-    private final AudioDevice audioDevice;
+    private final AudioSink audioSink;
 
     private final float volumeRate;
 
@@ -61,25 +65,53 @@ public class SpeechRunner {
 
     private final Executor voicePeakExecutor;
 
+    private final boolean progressive;
+
+    private final TemporaryOutputManager outputs;
+
     /**
      * コンストラクタ
-     * @param audioDevice オーディオを再生するデバイス default value: null
+     * @param audioSink 音声の出力先 default value: null
      * @param volumeRate ボリュームの割合 0.0f .. 2.0f default value: 1.0f
      * @param delayMilliSeconds 遅延時間 default value: 0
-     * @param voicePeakExecutor VOICEPEAKを実行するExecutor default value: 0
+     * @param voicePeakExecutor VOICEPEAKを実行するExecutor default value: null
      * @param parameters スピーチに関するパラメータ
      */
     SpeechRunner(
-            AudioDevice audioDevice,
+            AudioSink audioSink,
             float volumeRate,
             long delayMilliSeconds,
             Executor voicePeakExecutor,
             List<SpeechParameter> parameters
     ) {
-        this.audioDevice = audioDevice;
+        this(audioSink, volumeRate, delayMilliSeconds, voicePeakExecutor, false, TemporaryOutputManager.getDefault(), parameters);
+    }
+
+    /**
+     * コンストラクタ
+     * @param audioSink 音声の出力先 default value: null
+     * @param volumeRate ボリュームの割合 0.0f .. 2.0f default value: 1.0f
+     * @param delayMilliSeconds 遅延時間 default value: 0
+     * @param voicePeakExecutor VOICEPEAKを実行するExecutor default value: null
+     * @param progressive VOICEPEAKが書き込んでいる途中の音声を再生するか default value: false
+     * @param outputs 読み上げる一時音声ファイルを管理するクラス
+     * @param parameters スピーチに関するパラメータ
+     */
+    SpeechRunner(
+            AudioSink audioSink,
+            float volumeRate,
+            long delayMilliSeconds,
+            Executor voicePeakExecutor,
+            boolean progressive,
+            TemporaryOutputManager outputs,
+            List<SpeechParameter> parameters
+    ) {
+        this.audioSink = audioSink;
         this.volumeRate = volumeRate;
         this.delayMilliSeconds = delayMilliSeconds;
         this.voicePeakExecutor = voicePeakExecutor;
+        this.progressive = progressive;
+        this.outputs = outputs;
         this.parameters = parameters;
     }
 
@@ -99,6 +131,29 @@ public class SpeechRunner {
         this.errorOutSubscriber = errorOutSubscriber;
     }
 
+    /**
+     * 読み上げの進捗を通知するイベントの購読を設定する。
+     * <p>
+     *     {@link SpeechState#getEvents()}は読み上げを開始したあとに購読するため、
+     *     最初の文章のイベントから受け取るときはこのメソッドで設定する。
+     * </p>
+     * @param eventSubscriber イベントのサブスクライバー
+     */
+    public void setEventSubscriber(Flow.Subscriber<? super SpeechEvent> eventSubscriber) {
+        this.eventSubscriber = eventSubscriber;
+    }
+
+    /**
+     * 読み上げのイベントを配信するパブリッシャーを生成する
+     */
+    SpeechEventPublisher createEventPublisher() {
+        var events = new SpeechEventPublisher(parameters.size());
+        if (eventSubscriber != null) {
+            events.subscribe(eventSubscriber);
+        }
+        return events;
+    }
+
     private ExecutorService createExecutor(String name) {
         return Executors.newSingleThreadExecutor(r -> {
             var t = new Thread(r);
@@ -122,95 +177,138 @@ public class SpeechRunner {
 
         var counter = new AtomicInteger(0);
         var cancel = new AtomicBoolean(false);
+        var events = createEventPublisher();
 
         if (parameters.isEmpty()) {
+            events.close();
             return new SpeechState(
                     new CompletableFuture[0],
                     CompletableFuture.completedFuture(null),
                     parameters.size(),
                     counter,
                     cancel,
+                    null,
+                    false,
+                    events,
                     null
             );
         }
 
-        // 現在のVOICEPEAKのバージョン(v.1.2.11)はコマンドラインの並列実行を許可していない
-        // エラー出力
-        // In this version, up to 1 command line instance can be executed at same time.
-        var executor = voicePeakExecutor == null
-                ? createExecutor("VOICEPEAKCommandLineWrapper")
-                : voicePeakExecutor;
+        // 現在のVOICEPEAKのバージョン(v.1.2.11)はコマンドラインの並列実行を許可していないが、
+        // VOICEPEAKプロセスはVPProcessSchedulerによって要求順に起動されるため
+        // Executorが指定されていなければ前の文章の合成を終えしだい起動を要求する
         var audioPlayerExecutor = createExecutor("AudioPlayer");
         LOGGER.log(System.Logger.Level.DEBUG, "initialized executors");
 
         // 合成した読み上げ音声を再生するプレイヤー
-        var player = new AudioPlayer(audioDevice);
+        var player = new AudioPlayer(audioSink);
         player.requestVolume(volumeRate);
 
         // 音声を合成するFuture、音声を読み上げるFuture
-        var futures = new CompletableFuture<?>[parameters.size() * 2];
-        int i = 0;
+        var futures = new CompletableFuture<?>[parameters.size() + 1];
+        var processes = new ArrayList<CompletableFuture<RunnerStage>>(parameters.size());
 
-        // 読み上げのパラメータごとに処理を実行し、futuresに登録する
+        // 読み上げのパラメータごとに合成を実行し、futuresに登録する
+        CompletableFuture<?> previous = CompletableFuture.completedFuture(null);
         for (var parameter : parameters) {
-            var process = parameter.process();
+            subscribeOutputs(parameter);
+            events.queued(parameter.index());
 
-            if (standardOutSubscriber != null) {
-                process.getStandardOut().subscribe(standardOutSubscriber);
-            }
-            if (errorOutSubscriber != null) {
-                process.getErrorOut().subscribe(errorOutSubscriber);
-            }
-
-            var voicePeakFuture = queueProcess(parameter, executor, cancel);
+            var voicePeakFuture = queueProcess(parameter, previous, null, voicePeakExecutor, cancel, events);
+            previous = voicePeakFuture;
             LOGGER.log(System.Logger.Level.DEBUG, "queued VOICEPEAK process");
 
-            var playAudioFuture = queuePlayAudio(player, voicePeakFuture, audioPlayerExecutor);
-            LOGGER.log(System.Logger.Level.DEBUG, "queued play audio request");
-
-            // 再生が終わったらインクリメント
-            playAudioFuture.thenRun(counter::incrementAndGet);
-
-            futures[i++] = voicePeakFuture;
-            futures[i++] = playAudioFuture;
+            futures[processes.size()] = voicePeakFuture;
+            processes.add(voicePeakFuture);
         }
 
+        // 合成した文章を順に再生する
+        var playback = new SpeechPlayback(this, player, processes, counter, cancel, events);
+        futures[parameters.size()] = CompletableFuture.runAsync(playback, audioPlayerExecutor).exceptionally(throwable -> {
+            LOGGER.log(System.Logger.Level.WARNING, throwable);
+            return null;
+        });
+        LOGGER.log(System.Logger.Level.DEBUG, "queued play audio request");
+
         // オーディオプレイヤーの終了処理
-        CompletableFuture.runAsync(player::close, audioPlayerExecutor);
+        var closeFuture = CompletableFuture.runAsync(player::close, audioPlayerExecutor);
 
-        if (voicePeakExecutor == null)
-            ((ExecutorService) executor).shutdown();
         audioPlayerExecutor.shutdown();
         LOGGER.log(System.Logger.Level.DEBUG, "shutdown executors");
 
-        return new SpeechState(futures, CompletableFuture.allOf(futures), parameters.size(), counter, cancel, player);
+        // 出力先を閉じ終えてから完了する。失敗したときは直ちに完了する
+        var speechFuture = CompletableFuture.allOf(futures).thenCompose(v -> closeFuture);
+
+        // キャンセルなどで再生されなかった一時ファイルも削除する
+        speechFuture.whenComplete((v, e) -> {
+            parameters.forEach(parameter -> outputs.release(parameter.audioFile()));
+            events.close();
+        });
+
+        return new SpeechState(futures, speechFuture, parameters.size(), counter, cancel, player, false, events, playback);
+    }
+
+    /**
+     * VOICEPEAKプロセスの標準出力及び標準エラー出力を購読する
+     */
+    void subscribeOutputs(SpeechParameter parameter) {
+        var process = parameter.process();
+        if (standardOutSubscriber != null) {
+            process.getStandardOut().subscribe(standardOutSubscriber);
+        }
+        if (errorOutSubscriber != null) {
+            process.getErrorOut().subscribe(errorOutSubscriber);
+        }
     }
 
-    private record RunnerStage(int status, SpeechParameter parameter) {}
+    List<SpeechParameter> getParameters() {
+        return parameters;
+    }
+
+    float getVolumeRate() {
+        return volumeRate;
+    }
+
+    Executor getVoicePeakExecutor() {
+        return voicePeakExecutor;
+    }
 
     /**
-     * オーディオの再生をキューする
+     * 読み上げた一時音声ファイル、あるいは読み上げなかった一時音声ファイルを削除する
      */
-    private CompletableFuture<Void> queuePlayAudio(AudioPlayer player, CompletableFuture<RunnerStage> voicePeakFuture, Executor executor) {
-        return CompletableFuture.supplyAsync(() -> playAudio(player, voicePeakFuture), executor).thenAcceptAsync(file -> {
-            if (file == null)
-                return;
-            try {
-                Files.deleteIfExists(file);
-                LOGGER.log(System.Logger.Level.DEBUG, "delete audio file " + file);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-        }).exceptionally(throwable -> {
-            LOGGER.log(System.Logger.Level.WARNING, throwable);
-            return null;
-        });
+    void releaseOutput(Path file) {
+        outputs.release(file);
+    }
+
+    /**
+     * 削除した一時音声ファイルを合成しなおすために記録する
+     */
+    void reissueOutput(Path file) {
+        outputs.reissue(file);
+    }
+
+    TemporaryOutputManager.Statistics getOutputStatistics() {
+        return outputs.getStatistics();
     }
 
+    record RunnerStage(int status, SpeechParameter parameter) {}
+
     /**
      * VOICEPEAKの実行Futureを受け取って成功しているときはオーディオを再生する
      */
-    private Path playAudio(AudioPlayer player, CompletableFuture<RunnerStage> voicePeakFuture) {
+    Path playAudio(AudioPlayer player, SpeechParameter parameter, CompletableFuture<RunnerStage> voicePeakFuture, SpeechEventPublisher events) {
+        return playAudio(player, parameter, voicePeakFuture, events, 0);
+    }
+
+    /**
+     * VOICEPEAKの実行Futureを受け取って成功しているときは、オーディオを指定のフレームの位置から再生する
+     */
+    Path playAudio(AudioPlayer player, SpeechParameter parameter, CompletableFuture<RunnerStage> voicePeakFuture, SpeechEventPublisher events, long startFrame) {
+        // 書き込み中の音声は先頭から再生する
+        if (progressive && startFrame == 0 && playProgressive(player, parameter, voicePeakFuture, events)) {
+            return parameter.audioFile();
+        }
+
         RunnerStage stage;
         try {
             stage = voicePeakFuture.get();
@@ -225,68 +323,283 @@ public class SpeechRunner {
             return null;
         }
 
-        // 読み上げのパラメータを取得
-        var parameter = stage.parameter();
-
         // タスクがキャンセルされていた場合は終了
         if (voicePeakFuture.isCancelled()) {
             return parameter.audioFile();
         }
 
-        // 初回の再生開始前の遅延
-        // 音声ファイルの生成を先行して行うため
-        if (parameter.index() == 0 && 0 < delayMilliSeconds && 1 < parameters.size()) {
-            try {
-                LOGGER.log(System.Logger.Level.DEBUG, "delay milliseconds: " + delayMilliSeconds);
-                Thread.sleep(delayMilliSeconds);
-            } catch (InterruptedException ignored) {
-            }
+        // 書き込み中の再生で遅延済み
+        if (!progressive) {
+            delayFirstPlayback(parameter);
         }
 
         LOGGER.log(System.Logger.Level.DEBUG, "play audio index: " + parameter.index());
 
         var file = parameter.audioFile();
 
+        startPlayback(player, parameter, events);
         try {
 
-            player.play(file);
+            player.play(file, startFrame);
 
             return file;
 
         } catch (UnsupportedAudioFileException | IOException e) {
             throw new RuntimeException(e);
+        } finally {
+            finishPlayback(player, parameter, events);
+        }
+    }
+
+    /**
+     * 再生の開始を通知し、購読者がいるときは再生している位置を通知する
+     */
+    private void startPlayback(AudioPlayer player, SpeechParameter parameter, SpeechEventPublisher events) {
+        if (!events.hasSubscribers()) {
+            return;
+        }
+        var index = parameter.index();
+        events.publish(new SpeechEvent.PlaybackStarted(index));
+        player.setProgressListener((framePosition, format) -> events.publish(new SpeechEvent.PlaybackProgress(
+                index, framePosition, (long) (framePosition * 1_000_000L / format.getFrameRate()))));
+    }
+
+    private void finishPlayback(AudioPlayer player, SpeechParameter parameter, SpeechEventPublisher events) {
+        player.setProgressListener(null);
+        if (events.hasSubscribers()) {
+            events.publish(new SpeechEvent.PlaybackFinished(parameter.index()));
+        }
+    }
+
+    /**
+     * 初回の再生開始前に遅延する。
+     * 音声ファイルの生成を先行して行うため
+     */
+    private void delayFirstPlayback(SpeechParameter parameter) {
+        // 再生の速度を待たない出力先は遅延する必要がない
+        if (audioSink == null || !audioSink.isRealtime()) {
+            return;
+        }
+        if (parameter.index() == 0 && 0 < delayMilliSeconds && 1 < parameters.size()) {
+            try {
+                LOGGER.log(System.Logger.Level.DEBUG, "delay milliseconds: " + delayMilliSeconds);
+                Thread.sleep(delayMilliSeconds);
+            } catch (InterruptedException ignored) {
+            }
+        }
+    }
+
+    /**
+     * VOICEPEAKが音声ファイルを書き込んでいる間に再生する。
+     * <p>
+     *     WAVヘッダを解釈できないとき、あるいは読み込みに失敗したときはfalseを返し、
+     *     呼び出し元でVOICEPEAKの終了を待機してから再生する。
+     * </p>
+     */
+    private boolean playProgressive(AudioPlayer player, SpeechParameter parameter, CompletableFuture<RunnerStage> voicePeakFuture, SpeechEventPublisher events) {
+        var written = voicePeakFuture.thenApply(stage -> stage.status() == 0);
+
+        delayFirstPlayback(parameter);
+
+        LOGGER.log(System.Logger.Level.DEBUG, "play progressive audio index: " + parameter.index());
+
+        try (var input = ProgressiveAudioInputStream.open(parameter.audioFile(), written)) {
+            if (input == null) {
+                LOGGER.log(System.Logger.Level.DEBUG, "audio format can not be played progressively. index: " + parameter.index());
+                return false;
+            }
+            startPlayback(player, parameter, events);
+            try {
+                player.play(input);
+            } finally {
+                finishPlayback(player, parameter, events);
+            }
+        } catch (IOException e) {
+            LOGGER.log(System.Logger.Level.DEBUG, "failed to play progressive audio. index: " + parameter.index(), e);
+            return false;
         }
+
+        // 再生した音声ファイルはVOICEPEAKが終了してから削除する
+        written.exceptionally(e -> false).join();
+        return true;
+    }
+
+    /**
+     * VOICEPEAKコマンドラインの実行をキューする。
+     * <p>
+     *     一時ファイルの容量は前の文章の合成を終えてから確保するため、
+     *     合計サイズが上限に達しているときは合成済みの音声が削除されるまで起動しない。
+     * </p>
+     * <p>
+     *     再生がこの文章の合成を待っているときは、一時ファイルの合計サイズの上限を待たずに起動させるため
+     *     {@code bypass}を完了させる。
+     *     ほかの読み上げの一時ファイルが上限を占有していても、再生中の読み上げが止まらないようにする。
+     * </p>
+     * @param previous 前の文章の合成のFuture
+     * @param bypass 完了すると上限を待たずに起動するFuture、あるいは常に上限を待つときはnull
+     */
+    CompletableFuture<RunnerStage> queueProcess(SpeechParameter parameter, CompletableFuture<?> previous, CompletableFuture<?> bypass, Executor executor, AtomicBoolean cancel, SpeechEventPublisher events) {
+        if (executor == null) {
+            // 一時ファイルの合計サイズが上限を下回ってから起動する
+            return launchProcess(parameter, awaitCapacity(previous, bypass), cancel, events);
+        }
+
+        var launched = new AtomicReference<CompletableFuture<RunnerStage>>();
+        var future = CompletableFuture.supplyAsync(() -> startProcess(parameter, previous, bypass, cancel, events, launched), executor);
+
+        // Executorで実行を待機しているVOICEPEAKもキャンセルする
+        future.whenComplete((stage, e) -> {
+            var launch = launched.get();
+            if (future.isCancelled() && launch != null) {
+                launch.cancel(false);
+            }
+        });
+
+        return future;
     }
 
     /**
-     * VOICEPEAKコマンドラインの実行をキューする
+     * 削除した音声を合成しなおす。
+     * <p>
+     *     再生を待たせている音声のため、一時ファイルの合計サイズの上限を待たずに起動を要求する
+     * </p>
      */
-    private CompletableFuture<RunnerStage> queueProcess(SpeechParameter parameter, Executor executor, AtomicBoolean cancel) {
-        return CompletableFuture.supplyAsync(() -> startProcess(parameter, cancel), executor);
+    CompletableFuture<RunnerStage> resynthesize(SpeechParameter parameter, AtomicBoolean cancel, SpeechEventPublisher events) {
+        return launchProcess(parameter, CompletableFuture.completedFuture(null), cancel, events);
     }
 
     /**
      * VOICEPEAKコマンドラインを実行する
-     * 失敗時はnull
      */
-    private RunnerStage startProcess(SpeechParameter parameter, AtomicBoolean cancel) {
+    private RunnerStage startProcess(SpeechParameter parameter, CompletableFuture<?> previous, CompletableFuture<?> bypass, AtomicBoolean cancel, SpeechEventPublisher events, AtomicReference<CompletableFuture<RunnerStage>> launched) {
+        var launch = launchProcess(parameter, awaitCapacity(previous, bypass), cancel, events);
+        launched.set(launch);
+        if (cancel.get()) {
+            launch.cancel(false);
+        }
         try {
-            var process = parameter.process();
-            var status = process.start().get();
+            return launch.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+    }
 
-            var level = (status != 0) ? System.Logger.Level.WARNING : System.Logger.Level.DEBUG;
-            LOGGER.log(level, "done process. index: " + parameter.index() + ", status: " + status);
+    /**
+     * 前の文章の合成が終わってから、一時ファイルの合計サイズが上限を下回るまで待機する。
+     * <p>
+     *     前の文章の合成は失敗あるいはキャンセルされていても待機を続ける。
+     *     {@code bypass}が完了したときは容量の待機をやめる。
+     *     返したFutureをキャンセルしたときは容量の待機もキャンセルする。
+     * </p>
+     */
+    private CompletableFuture<Void> awaitCapacity(CompletableFuture<?> previous, CompletableFuture<?> bypass) {
+        var capacity = new AtomicReference<CompletableFuture<Void>>();
+        var future = previous.handle((v, e) -> null).thenCompose(v -> {
+            var waiter = outputs.awaitCapacity();
+            capacity.set(waiter);
+            if (bypass == null) {
+                return waiter;
+            }
+            var awaited = new CompletableFuture<Void>();
+            waiter.whenComplete((w, e) -> {
+                if (e == null) {
+                    awaited.complete(null);
+                } else {
+                    awaited.completeExceptionally(e);
+                }
+            });
+            // 待機をやめた要求は後続の要求を待たせないようキャンセルする
+            bypass.whenComplete((b, e) -> {
+                if (awaited.complete(null)) {
+                    waiter.cancel(false);
+                }
+            });
+            return awaited;
+        });
 
-            // 読み上げがキャンセル要求されている場合は作成したファイルを削除する
-            if (status == 0 && cancel.get()) {
-                var file = parameter.audioFile();
-                Files.delete(file);
-                LOGGER.log(System.Logger.Level.DEBUG, "delete audio file " + file);
+        // 待機をやめた要求が後続の要求を待たせないようにする
+        future.whenComplete((v, e) -> {
+            var waiter = capacity.get();
+            if (future.isCancelled() && waiter != null) {
+                waiter.cancel(false);
             }
+        });
 
-            return new RunnerStage(status, parameter);
-        } catch (InterruptedException | ExecutionException | IOException e) {
-            throw new RuntimeException(e);
+        return future;
+    }
+
+    /**
+     * 待機するFutureが完了してからVOICEPEAKコマンドラインの起動を要求する。
+     * <p>
+     *     返したFutureをキャンセルしたときは、起動を待機しているときは起動せず、
+     *     実行中のときはVOICEPEAKを直ちに終了させて同時実行数を解放する。
+     *     書き込み途中の音声ファイルは削除する。
+     * </p>
+     */
+    private CompletableFuture<RunnerStage> launchProcess(SpeechParameter parameter, CompletableFuture<Void> awaitFuture, AtomicBoolean cancel, SpeechEventPublisher events) {
+        var execution = new AtomicReference<CompletableFuture<Void>>();
+        var processFuture = awaitFuture.thenCompose(v -> {
+            var running = executeProcess(parameter, events);
+            execution.set(running);
+            // 起動を要求している間に停止が要求された
+            if (cancel.get()) {
+                running.cancel(false);
+            }
+            return running;
+        });
+        var future = processFuture.handle((v, e) -> completeProcess(parameter, e, cancel, events));
+
+        future.whenComplete((stage, e) -> {
+            if (!future.isCancelled()) {
+                return;
+            }
+            awaitFuture.cancel(false);
+            processFuture.cancel(false);
+            var running = execution.get();
+            if (running != null) {
+                running.cancel(false);
+            }
+            outputs.release(parameter.audioFile());
+        });
+
+        return future;
+    }
+
+    /**
+     * VOICEPEAKコマンドラインの起動を要求する
+     */
+    private CompletableFuture<Void> executeProcess(SpeechParameter parameter, SpeechEventPublisher events) {
+        events.synthesisStarted(parameter.index());
+        return parameter.process().execute();
+    }
+
+    /**
+     * VOICEPEAKコマンドラインの実行結果を処理する。
+     * 終了ステータスが0でないときはエラーの種類を記録し、それ以外の例外はそのままスローする
+     */
+    private RunnerStage completeProcess(SpeechParameter parameter, Throwable error, AtomicBoolean cancel, SpeechEventPublisher events) {
+        var status = 0;
+        if (error != null) {
+            var cause = (error instanceof CompletionException && error.getCause() != null) ? error.getCause() : error;
+            if (!(cause instanceof VPCommandException e)) {
+                events.failed(parameter.index(), cause);
+                throw (error instanceof CompletionException ce) ? ce : new CompletionException(error);
+            }
+            status = e.getStatus();
+            LOGGER.log(System.Logger.Level.WARNING, "failed process. index: " + parameter.index() + ", error: " + e.getErrorType());
         }
+
+        var level = (status != 0) ? System.Logger.Level.WARNING : System.Logger.Level.DEBUG;
+        LOGGER.log(level, "done process. index: " + parameter.index() + ", status: " + status);
+        events.synthesisFinished(parameter.index(), status);
+
+        // 読み上げがキャンセル要求されている場合、あるいは失敗した場合は作成したファイルを削除する
+        if (status != 0 || cancel.get()) {
+            outputs.release(parameter.audioFile());
+        } else {
+            outputs.commit(parameter.audioFile());
+        }
+
+        return new RunnerStage(status, parameter);
     }
 }
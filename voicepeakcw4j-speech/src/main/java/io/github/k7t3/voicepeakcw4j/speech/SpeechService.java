@@ -0,0 +1,290 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.k7t3.voicepeakcw4j.speech;
+
+import java.util.ArrayDeque;
+
+/**
+ * 読み上げの要求を順に読み上げる常駐サービス
+ * <p>
+ *     {@link SpeechRunner#start()}は読み上げごとにスレッドとプレイヤーを生成し、
+ *     オーディオデバイスのラインを開いて閉じる。
+ *     このサービスは一つのスレッドと開いたままの出力で要求を順に読み上げるため、
+ *     繰り返し読み上げても準備の時間がかからず、続けて読み上げる音声の間に隙間ができない。
+ * </p>
+ * <p>
+ *     読み上げ中の要求のすべての文章と、次に読み上げる要求の最初の文章の合成を要求し、
+ *     前の要求を読み上げている間に次の要求の読み上げを始められるようにしておく。
+ *     読み上げを待っている要求は一時ファイルの合計サイズの上限を占有しない。
+ *     {@link Interruption#RESUME}あるいは{@link Interruption#DISCARD}で要求すると、
+ *     読み上げ中の要求を文章の境界で中断して先に読み上げる。
+ * </p>
+ * <p>
+ *     ランナーに設定した出力先と遅延時間のうち、出力先は使用されずサービスの出力先に出力する。
+ *     音量はランナーの読み上げを開始したときに反映する。
+ * </p>
+ * <p>このクラスはスレッドセーフ</p>
+ */
+public class SpeechService implements AutoCloseable {
+
+    private static final System.Logger LOGGER = System.getLogger(SpeechService.class.getName());
+
+    /**
+     * 次に読み上げる要求のうち、前の要求を読み上げている間に合成しておく文章の数
+     */
+    private static final int LOOKAHEAD_SENTENCES = 1;
+
+    /**
+     * 読み上げ中の要求に割り込む方法
+     */
+    public enum Interruption {
+
+        /**
+         * 割り込まずに、先に要求したすべての読み上げが終わってから読み上げる
+         */
+        NONE,
+
+        /**
+         * 読み上げ中の要求を文章の境界で中断して読み上げ、終わったら中断した位置から再開する
+         */
+        RESUME,
+
+        /**
+         * 読み上げ中の要求を文章の境界で停止して読み上げる。停止した要求は再開しない
+         */
+        DISCARD
+
+    }
+
+    private final Object lock = new Object();
+
+    /**
+     * 割り込む要求
+     */
+    private final ArrayDeque<SpeechJob> urgent = new ArrayDeque<>();
+
+    /**
+     * 割り込まない要求、及び中断して再開を待つ要求
+     */
+    private final ArrayDeque<SpeechJob> queue = new ArrayDeque<>();
+
+    private final AudioPlayer player;
+
+    private final Thread worker;
+
+    private SpeechJob current;
+
+    private boolean closed = false;
+
+    /**
+     * 既定のデバイスで読み上げるサービスを開始する
+     * @see AudioDevice#getDefaultDevice()
+     */
+    public SpeechService() {
+        this(AudioDevice.getDefaultDevice());
+    }
+
+    /**
+     * サービスを開始する
+     * @param audioSink 音声の出力先。サービスを閉じるまで開いたままにする
+     */
+    public SpeechService(AudioSink audioSink) {
+        this.player = new AudioPlayer(audioSink);
+        this.worker = Thread.ofPlatform()
+                .name("SpeechService")
+                .daemon(true)
+                .start(this::run);
+    }
+
+    /**
+     * 先に要求したすべての読み上げが終わってから読み上げるよう要求する
+     * @param runner 読み上げるランナー
+     * @return 読み上げの状態
+     * @throws IllegalStateException サービスが閉じているとき
+     */
+    public SpeechState submit(SpeechRunner runner) {
+        return submit(runner, Interruption.NONE);
+    }
+
+    /**
+     * 読み上げを要求する。
+     * <p>
+     *     割り込む要求は割り込まない要求より先に、それぞれ要求した順に読み上げる。
+     *     割り込む要求を読み上げている間は、後から割り込む要求が中断しない。
+     * </p>
+     * @param runner 読み上げるランナー
+     * @param interruption 読み上げ中の要求に割り込む方法
+     * @return 読み上げの状態
+     * @throws IllegalArgumentException ランナーあるいは割り込む方法がnullのとき
+     * @throws IllegalStateException サービスが閉じているとき
+     */
+    public SpeechState submit(SpeechRunner runner, Interruption interruption) {
+        if (runner == null)
+            throw new IllegalArgumentException("runner is null");
+        if (interruption == null)
+            throw new IllegalArgumentException("interruption is null");
+
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("service is already closed");
+            }
+
+            var job = new SpeechJob(runner, interruption, player);
+            if (interruption == Interruption.NONE) {
+                queue.add(job);
+            } else {
+                urgent.add(job);
+            }
+            prepareNext();
+            lock.notifyAll();
+            return job.getState();
+        }
+    }
+
+    /**
+     * 読み上げていない要求の数を返す
+     * @return 読み上げを待機している要求の数
+     */
+    public int getQueuedCount() {
+        synchronized (lock) {
+            return urgent.size() + queue.size();
+        }
+    }
+
+    /**
+     * 次に読み上げる要求を返す。サービスが閉じられたときはnullを返す
+     */
+    private SpeechJob take() throws InterruptedException {
+        synchronized (lock) {
+            while (true) {
+                if (closed) {
+                    current = null;
+                    return null;
+                }
+                var job = urgent.isEmpty() ? queue.poll() : urgent.poll();
+                if (job == null) {
+                    current = null;
+                    lock.wait();
+                } else if (job.isDone()) {
+                    // 待機中に停止された
+                    job.finish();
+                } else {
+                    current = job;
+                    prepareNext();
+                    return job;
+                }
+            }
+        }
+    }
+
+    /**
+     * 次に読み上げる要求の先頭の文章の合成を要求する
+     */
+    private void prepareNext() {
+        var next = urgent.isEmpty() ? queue.peek() : urgent.peek();
+        if (next != null) {
+            next.prepare(LOOKAHEAD_SENTENCES);
+        }
+    }
+
+    /**
+     * 読み上げ中の要求が割り込まれたかを文章の境界で確認し、中断した要求を処理する
+     * @return 割り込まれたときはtrue
+     */
+    private boolean yieldTo(SpeechJob job) {
+        synchronized (lock) {
+            if (urgent.isEmpty() || job.getInterruption() != Interruption.NONE) {
+                return false;
+            }
+            if (urgent.peek().getInterruption() == Interruption.RESUME) {
+                // 割り込む要求が終わったら中断した位置から再開する
+                queue.addFirst(job);
+                LOGGER.log(System.Logger.Level.DEBUG, "speech is suspended by an urgent request");
+                return true;
+            }
+        }
+        LOGGER.log(System.Logger.Level.DEBUG, "speech is discarded by an urgent request");
+        job.finish();
+        return true;
+    }
+
+    private void run() {
+        try {
+            SpeechJob job;
+            while ((job = take()) != null) {
+                play(job);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            player.close();
+            LOGGER.log(System.Logger.Level.DEBUG, "speech service is closed");
+        }
+    }
+
+    private void play(SpeechJob job) {
+        player.setInterruption(job.getCancel());
+        player.requestVolume(job.getVolumeRate());
+        try {
+            while (!job.isDone()) {
+                if (yieldTo(job)) {
+                    return;
+                }
+                job.playNext(player);
+            }
+            job.finish();
+        } catch (RuntimeException e) {
+            LOGGER.log(System.Logger.Level.WARNING, e);
+            job.finish();
+        } finally {
+            player.setInterruption(null);
+        }
+    }
+
+    /**
+     * サービスを閉じる。
+     * <p>
+     *     読み上げ中の要求と待機している要求を停止し、出力を閉じる。
+     * </p>
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            urgent.forEach(job -> job.getState().requestStop());
+            queue.forEach(job -> job.getState().requestStop());
+            urgent.clear();
+            queue.clear();
+            if (current != null) {
+                current.getState().requestStop();
+            }
+            lock.notifyAll();
+        }
+
+        if (Thread.currentThread() != worker) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
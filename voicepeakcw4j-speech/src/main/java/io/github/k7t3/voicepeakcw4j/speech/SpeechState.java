@@ -17,6 +17,7 @@
 package io.github.k7t3.voicepeakcw4j.speech;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -37,13 +38,35 @@ public class SpeechState {
 
     private final AudioPlayer player;
 
+    /**
+     * プレイヤーを{@link SpeechService}と共有しているか
+     */
+    private final boolean sharedPlayer;
+
+    private final Flow.Publisher<SpeechEvent> events;
+
+    /**
+     * 再生する文章を移動する処理。移動できないときはnull
+     */
+    private final SpeechPlayback playback;
+
+    /**
+     * コンストラクタ
+     * @param sharedPlayer プレイヤーを共有しているときはtrue。
+     *                     停止してもプレイヤーを閉じず、停止の要求で再生を中断する
+     * @param events 読み上げのイベントを配信するパブリッシャー
+     * @param playback 再生する文章を移動する処理、あるいは移動できないときはnull
+     */
     SpeechState(
             CompletableFuture<?>[] allFutures,
             CompletableFuture<Void> speechFuture,
             int sentenceCount,
             AtomicInteger currentPosition,
             AtomicBoolean cancel,
-            AudioPlayer player
+            AudioPlayer player,
+            boolean sharedPlayer,
+            Flow.Publisher<SpeechEvent> events,
+            SpeechPlayback playback
     ) {
         this.allFutures = allFutures;
         this.speechFuture = speechFuture;
@@ -51,6 +74,22 @@ public class SpeechState {
         this.currentPosition = currentPosition;
         this.cancel = cancel;
         this.player = player;
+        this.sharedPlayer = sharedPlayer;
+        this.events = events;
+        this.playback = playback;
+    }
+
+    /**
+     * 読み上げの進捗を通知するイベントのパブリッシャーを返す
+     * <p>
+     *     購読する前に発生したイベントは配信されない。
+     *     購読者がイベントを処理する速度が読み上げに追いつかないときは、あふれたイベントを破棄する。
+     *     読み上げが終わると{@link Flow.Subscriber#onComplete()}が通知される。
+     * </p>
+     * @return 読み上げのイベントのパブリッシャー
+     */
+    public Flow.Publisher<SpeechEvent> getEvents() {
+        return events;
     }
 
     /**
@@ -95,13 +134,75 @@ public class SpeechState {
         }
     }
 
+    /**
+     * 読み上げを一時停止するようリクエストする。
+     * <p>
+     *     出力を開いたまま、書き込んだ音声を保持して再生を止める。
+     *     一時停止している間もVOICEPEAKは後続の文章を合成する。
+     *     {@link SpeechService}で読み上げているときは何もしない。
+     * </p>
+     */
+    public void requestPause() {
+        if (player != null && !sharedPlayer) {
+            player.requestPause();
+        }
+    }
+
+    /**
+     * 一時停止した読み上げを再開するようリクエストする
+     */
+    public void requestResume() {
+        if (player != null && !sharedPlayer) {
+            player.requestResume();
+        }
+    }
+
+    /**
+     * 一時停止が要求されているかを返す
+     * @return 一時停止が要求されているときはtrue
+     */
+    public boolean isPaused() {
+        return player != null && !sharedPlayer && player.isPaused();
+    }
+
+    /**
+     * 元のテキストにおける指定の文字の位置から読み上げるようリクエストする。
+     * <p>
+     *     位置を含む文章の音声がすでに合成されているときは、合成しなおさずに文章の途中から再生する。
+     *     文章の中の位置は文字数の割合から推定するため、実際の発音の位置とは前後することがある。
+     *     一時停止しているときは、移動したあとも一時停止を続ける。
+     * </p>
+     * <p>
+     *     テキストの長さを超える位置を指定したときは、最後の文章の末尾に移動して読み上げを終える。
+     * </p>
+     * @param textOffset 元のテキストにおける文字の位置
+     * @return 移動を受け付けたときはtrue、{@link SpeechService}で読み上げているときや
+     *         読み上げが終わっているときはfalse
+     * @throws IllegalArgumentException 位置が負の値のとき
+     */
+    public boolean requestSeek(int textOffset) {
+        if (textOffset < 0)
+            throw new IllegalArgumentException("textOffset must not be negative");
+        if (playback == null || speechFuture.isDone()) {
+            return false;
+        }
+        playback.requestSeek(textOffset);
+        return true;
+    }
+
     /**
      * 読み上げを停止するようリクエストする
      */
     public void requestStop() {
         if (player != null) {
             cancel.set(true);
-            player.requestCancel();
+            if (playback != null) {
+                playback.requestStop();
+            }
+            // 共有しているプレイヤーはキャンセルの要求で再生を中断する
+            if (!sharedPlayer) {
+                player.requestCancel();
+            }
             for (var future : allFutures)
                 future.cancel(false);
             speechFuture.cancel(false);
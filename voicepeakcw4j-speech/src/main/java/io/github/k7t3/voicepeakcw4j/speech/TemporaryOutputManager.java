@@ -0,0 +1,296 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.k7t3.voicepeakcw4j.speech;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 読み上げる音声を一時的に出力するファイルを管理するクラス
+ * <p>
+ *     メモリ上のファイルシステム(<code>/dev/shm</code>)を使用できるときはそのディレクトリを優先し、
+ *     音声ファイルをディスクに書き込まずに読み上げる。
+ * </p>
+ * <p>
+ *     払い出したファイルはすべて記録され、{@link #release(Path)}あるいは{@link #close()}で削除される。
+ *     書き込まれたファイルの合計サイズが上限に達しているときは、
+ *     {@link #awaitCapacity()}が返すFutureはファイルが削除されるまで完了しない。
+ *     上限を超えるのは実行中の合成の分までである。
+ * </p>
+ * <p>このクラスはスレッドセーフ</p>
+ */
+public class TemporaryOutputManager implements AutoCloseable {
+
+    private static final System.Logger LOGGER = System.getLogger(TemporaryOutputManager.class.getName());
+
+    private static final Path SHARED_MEMORY_DIRECTORY = Paths.get("/dev/shm");
+
+    private static final long DEFAULT_QUOTA_BYTES = 128L * 1024 * 1024;
+
+    private static final String SUFFIX = ".vpcw4j";
+
+    private static class DefaultHolder {
+
+        private static final TemporaryOutputManager DEFAULT = createDefault();
+
+        private static TemporaryOutputManager createDefault() {
+            var manager = new TemporaryOutputManager(getDefaultDirectory(), DEFAULT_QUOTA_BYTES);
+            // 読み上げの途中で終了したときも一時ファイルを残さない
+            Runtime.getRuntime().addShutdownHook(new Thread(manager::close, "TemporaryOutputManager-cleanup"));
+            return manager;
+        }
+    }
+
+    private final Object lock = new Object();
+
+    private final Path directory;
+
+    private final long quotaBytes;
+
+    /**
+     * 払い出したファイルと書き込まれたサイズ
+     */
+    private final Map<Path, Long> files = new HashMap<>();
+
+    private final ArrayDeque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+
+    private long usedBytes = 0;
+
+    private boolean closed = false;
+
+    /**
+     * 管理クラスを生成する。
+     * @param directory 一時ファイルを生成するディレクトリ
+     * @param quotaBytes 書き込まれたファイルの合計サイズの上限(バイト)
+     * @throws IllegalArgumentException ディレクトリがnullのとき、あるいは上限が1未満のとき
+     */
+    public TemporaryOutputManager(Path directory, long quotaBytes) {
+        if (directory == null)
+            throw new IllegalArgumentException("directory is null");
+        if (quotaBytes < 1)
+            throw new IllegalArgumentException("quotaBytes must be greater than 0");
+        this.directory = directory;
+        this.quotaBytes = quotaBytes;
+    }
+
+    /**
+     * JVM全体で共有される管理クラスを返す。
+     * <p>
+     *     一時ファイルは{@link #getDefaultDirectory()}に生成され、合計サイズの上限は128MB。
+     *     JVMの終了時に残っているファイルは削除される。
+     * </p>
+     * @return 共有の管理クラス
+     */
+    public static TemporaryOutputManager getDefault() {
+        return DefaultHolder.DEFAULT;
+    }
+
+    /**
+     * 一時ファイルを生成する既定のディレクトリを返す。
+     * <p>
+     *     <code>/dev/shm</code>が書き込み可能なディレクトリのときはそのディレクトリ、
+     *     それ以外は<code>java.io.tmpdir</code>プロパティで取得できるディレクトリ
+     * </p>
+     * @return 既定のディレクトリ
+     */
+    public static Path getDefaultDirectory() {
+        if (Files.isDirectory(SHARED_MEMORY_DIRECTORY) && Files.isWritable(SHARED_MEMORY_DIRECTORY)) {
+            return SHARED_MEMORY_DIRECTORY;
+        }
+        return Paths.get(System.getProperty("java.io.tmpdir"));
+    }
+
+    /**
+     * 一時ファイルを生成するディレクトリを返す
+     * @return 一時ファイルを生成するディレクトリ
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * 音声を出力する一時ファイルのパスを払い出す。
+     * <p>
+     *     ファイルは生成せず、パスのみを記録する。
+     * </p>
+     * @return 一時ファイルのパス
+     * @throws IOException ディレクトリを生成できないとき
+     * @throws IllegalStateException 閉じられているとき
+     */
+    public Path createOutput() throws IOException {
+        if (!Files.exists(directory)) {
+            Files.createDirectories(directory);
+        } else if (!Files.isDirectory(directory)) {
+            throw new IOException("temporal directory is not directory. " + directory);
+        }
+
+        var output = directory.resolve(UUID.randomUUID() + SUFFIX);
+        synchronized (lock) {
+            if (closed)
+                throw new IllegalStateException("already closed");
+            files.put(output, 0L);
+        }
+        return output;
+    }
+
+    /**
+     * 書き込まれたファイルの合計サイズが上限を下回るまで待機するFutureを返す。
+     * <p>
+     *     音声を合成する前に呼び出し、完了してから合成を開始する。
+     *     待機している要求は要求した順に完了する。
+     * </p>
+     * @return 合計サイズが上限を下回ったときに完了するFuture
+     */
+    public CompletableFuture<Void> awaitCapacity() {
+        synchronized (lock) {
+            // キャンセルされた要求は待機させない
+            waiters.removeIf(CompletableFuture::isDone);
+            if (closed || (usedBytes < quotaBytes && waiters.isEmpty())) {
+                return CompletableFuture.completedFuture(null);
+            }
+            var waiter = new CompletableFuture<Void>();
+            waiters.add(waiter);
+            return waiter;
+        }
+    }
+
+    /**
+     * 音声が書き込まれたファイルのサイズを記録する。
+     * <p>
+     *     払い出していないファイルは記録しない。
+     * </p>
+     * @param output 音声が書き込まれたファイル
+     */
+    public void commit(Path output) {
+        long size;
+        try {
+            size = Files.size(output);
+        } catch (IOException e) {
+            LOGGER.log(System.Logger.Level.DEBUG, "failed to get size " + output, e);
+            return;
+        }
+        synchronized (lock) {
+            var previous = files.get(output);
+            if (previous != null) {
+                files.put(output, size);
+                usedBytes += size - previous;
+            }
+        }
+    }
+
+    /**
+     * 一時ファイルを削除し、記録から除く。
+     * <p>
+     *     合計サイズが上限を下回ったときは待機している要求を完了する。
+     * </p>
+     * @param output 一時ファイル
+     */
+    public void release(Path output) {
+        var resumes = new ArrayList<CompletableFuture<Void>>();
+        synchronized (lock) {
+            var size = files.remove(output);
+            if (size != null) {
+                usedBytes -= size;
+            }
+            while (usedBytes < quotaBytes && !waiters.isEmpty()) {
+                resumes.add(waiters.poll());
+            }
+        }
+
+        delete(output);
+
+        // Futureの完了はロックの外で行う
+        resumes.forEach(waiter -> waiter.complete(null));
+    }
+
+    /**
+     * 削除した一時ファイルのパスを、再び払い出したものとして記録する。
+     * <p>
+     *     削除した音声を合成しなおすときに呼び出す。閉じられているときは記録しない。
+     * </p>
+     * @param output 一時ファイル
+     */
+    void reissue(Path output) {
+        synchronized (lock) {
+            if (!closed) {
+                files.putIfAbsent(output, 0L);
+            }
+        }
+    }
+
+    private static void delete(Path output) {
+        try {
+            if (Files.deleteIfExists(output)) {
+                LOGGER.log(System.Logger.Level.DEBUG, "delete audio file " + output);
+            }
+        } catch (IOException e) {
+            LOGGER.log(System.Logger.Level.WARNING, "failed to delete audio file " + output, e);
+        }
+    }
+
+    /**
+     * 払い出したすべての一時ファイルを削除する。
+     * <p>
+     *     待機している要求は完了し、閉じたあとは上限によって待機しない。
+     * </p>
+     */
+    @Override
+    public void close() {
+        ArrayList<Path> outputs;
+        ArrayList<CompletableFuture<Void>> resumes;
+        synchronized (lock) {
+            closed = true;
+            outputs = new ArrayList<>(files.keySet());
+            files.clear();
+            usedBytes = 0;
+            resumes = new ArrayList<>(waiters);
+            waiters.clear();
+        }
+
+        outputs.forEach(TemporaryOutputManager::delete);
+        resumes.forEach(waiter -> waiter.complete(null));
+    }
+
+    /**
+     * 一時ファイルの統計情報を返す
+     * @return 統計情報
+     */
+    public Statistics getStatistics() {
+        synchronized (lock) {
+            return new Statistics(quotaBytes, usedBytes, files.size(), waiters.size());
+        }
+    }
+
+    /**
+     * 一時ファイルの統計情報
+     * @param quotaBytes 書き込まれたファイルの合計サイズの上限(バイト)
+     * @param usedBytes 書き込まれたファイルの合計サイズ(バイト)
+     * @param files 払い出して削除されていないファイルの数
+     * @param waiting 合計サイズが上限を下回るのを待機している要求の数
+     */
+    public record Statistics(long quotaBytes, long usedBytes, int files, int waiting) {
+    }
+
+}
@@ -16,6 +16,7 @@
 
 package io.github.k7t3.voicepeakcw4j.speech;
 
+import io.github.k7t3.voicepeakcw4j.VPCatalog;
 import io.github.k7t3.voicepeakcw4j.VPClient;
 import io.github.k7t3.voicepeakcw4j.VPExecutable;
 
@@ -39,4 +40,13 @@ public interface VPSpeech extends VPClient {
         return new DefaultVPSpeech(executable);
     }
 
+    /**
+     * カタログを指定して既定のスピーチクライアントを生成する。
+     * @param catalog ナレーター及び感情の一覧を保持するカタログ
+     * @return クライアント
+     */
+    static VPSpeech create(VPCatalog catalog) {
+        return new DefaultVPSpeech(catalog);
+    }
+
 }
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.k7t3.voicepeakcw4j.speech;
+
+import io.github.k7t3.voicepeakcw4j.audio.WavHeader;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Control;
+import javax.sound.sampled.FloatControl;
+import javax.sound.sampled.Line;
+import javax.sound.sampled.LineListener;
+import javax.sound.sampled.Mixer;
+import javax.sound.sampled.SourceDataLine;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 再生ループがチャンクごとにヒープを割り当てないことを確認する。
+ * <p>
+ *     書き込みを破棄するラインに対して長さの異なる音声を再生し、
+ *     スレッドが割り当てたバイト数が音声の長さに比例しないことを確かめる。
+ *     通常のテストからは除外しており、<code>gradlew benchmark</code>で実行する。
+ * </p>
+ */
+@Tag("benchmark")
+class AudioPlayerBenchmarkTest {
+
+    private static final AudioFormat FORMAT = new AudioFormat(48000, 16, 1, true, false);
+
+    private static final int CHUNK_SIZE = 1024 * 4;
+
+    private static final int WARMUP = 20;
+
+    /**
+     * 計測のばらつきとして許容する割り当てのバイト数
+     */
+    private static final long ALLOCATION_SLACK = 16 * 1024;
+
+    /**
+     * 書き込まれた音声を破棄するライン。
+     * 計測の対象外で割り当てないようにプロキシを使用しない
+     */
+    private static class DiscardingLine implements SourceDataLine {
+
+        private final FloatControl gain = new FloatControl(FloatControl.Type.MASTER_GAIN, -80f, 6f, 0.1f, 0, 0f, "dB") {};
+
+        private final Line.Info info = new Line.Info(SourceDataLine.class);
+
+        private long written;
+
+        private boolean open;
+
+        @Override
+        public void open(AudioFormat format, int bufferSize) {
+            open = true;
+        }
+
+        @Override
+        public void open(AudioFormat format) {
+            open = true;
+        }
+
+        @Override
+        public void open() {
+            open = true;
+        }
+
+        @Override
+        public int write(byte[] b, int off, int len) {
+            written += len;
+            return len;
+        }
+
+        @Override
+        public void drain() {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public boolean isRunning() {
+            return open;
+        }
+
+        @Override
+        public boolean isActive() {
+            return open;
+        }
+
+        @Override
+        public AudioFormat getFormat() {
+            return FORMAT;
+        }
+
+        @Override
+        public int getBufferSize() {
+            return CHUNK_SIZE;
+        }
+
+        @Override
+        public int available() {
+            return CHUNK_SIZE;
+        }
+
+        @Override
+        public int getFramePosition() {
+            return (int) getLongFramePosition();
+        }
+
+        @Override
+        public long getLongFramePosition() {
+            return written / FORMAT.getFrameSize();
+        }
+
+        @Override
+        public long getMicrosecondPosition() {
+            return (long) (getLongFramePosition() * 1_000_000L / FORMAT.getFrameRate());
+        }
+
+        @Override
+        public float getLevel() {
+            return AudioSystem.NOT_SPECIFIED;
+        }
+
+        @Override
+        public Line.Info getLineInfo() {
+            return info;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public Control[] getControls() {
+            return new Control[] { gain };
+        }
+
+        @Override
+        public boolean isControlSupported(Control.Type control) {
+            return FloatControl.Type.MASTER_GAIN.equals(control);
+        }
+
+        @Override
+        public Control getControl(Control.Type control) {
+            if (!isControlSupported(control)) {
+                throw new IllegalArgumentException("unsupported control " + control);
+            }
+            return gain;
+        }
+
+        @Override
+        public void addLineListener(LineListener listener) {
+        }
+
+        @Override
+        public void removeLineListener(LineListener listener) {
+        }
+    }
+
+    private static AudioDevice device() {
+        var info = new Mixer.Info("discard", "test", "discarding mixer", "1.0") {};
+        var mixer = (Mixer) Proxy.newProxyInstance(Mixer.class.getClassLoader(), new Class<?>[] { Mixer.class },
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getMixerInfo" -> info;
+                    case "getLine" -> new DiscardingLine();
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> info.toString();
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+        return new AudioDevice(mixer);
+    }
+
+    private static Path createWav(int seconds) throws IOException {
+        var file = Files.createTempFile(null, ".wav");
+        var dataSize = (long) seconds * (int) FORMAT.getFrameRate() * FORMAT.getFrameSize();
+        var header = new WavHeader(WavHeader.FORMAT_PCM, 1, 48000, 96000, 2, 16, WavHeader.CANONICAL_SIZE, dataSize);
+        try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            header.write(channel);
+            channel.position(WavHeader.CANONICAL_SIZE);
+            var silence = ByteBuffer.allocate(CHUNK_SIZE);
+            for (long written = 0; written < dataSize; written += silence.limit()) {
+                silence.clear().limit((int) Math.min(CHUNK_SIZE, dataSize - written));
+                channel.write(silence);
+            }
+        }
+        return file;
+    }
+
+    private static long allocatedBytes() {
+        var bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return bean.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * 再生したときにスレッドが割り当てたバイト数を返す
+     */
+    private static long measure(AudioPlayer player, Path file) throws Exception {
+        var before = allocatedBytes();
+        player.play(file);
+        return allocatedBytes() - before;
+    }
+
+    @Test
+    void allocationFree() throws Exception {
+        var shortWav = createWav(1);
+        var longWav = createWav(30);
+        try (var player = new AudioPlayer(device())) {
+            player.requestVolume(0.5f);
+
+            // JITコンパイルとスレッドローカルな一時バッファの確保を済ませる
+            for (int i = 0; i < WARMUP; i++) {
+                player.play(shortWav);
+                player.play(longWav);
+            }
+
+            var shortBytes = measure(player, shortWav);
+            var longBytes = measure(player, longWav);
+
+            var started = System.nanoTime();
+            player.play(longWav);
+            var elapsed = System.nanoTime() - started;
+
+            var chunks = Files.size(longWav) / CHUNK_SIZE;
+            System.out.printf("allocated short=%d bytes long=%d bytes, %d ns/chunk%n",
+                    shortBytes, longBytes, elapsed / chunks);
+
+            // 音声が30倍長くても割り当ては増えない
+            assertTrue(longBytes - shortBytes < ALLOCATION_SLACK,
+                    "allocated " + (longBytes - shortBytes) + " bytes for " + chunks + " chunks");
+        } finally {
+            Files.deleteIfExists(shortWav);
+            Files.deleteIfExists(longWav);
+        }
+    }
+}
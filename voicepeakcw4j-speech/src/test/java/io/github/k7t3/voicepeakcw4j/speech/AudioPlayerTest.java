@@ -0,0 +1,57 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.k7t3.voicepeakcw4j.speech;
+
+import io.github.k7t3.voicepeakcw4j.VPClient;
+import io.github.k7t3.voicepeakcw4j.audio.WavHeader;
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AudioPlayerTest {
+
+    @Test
+    void toAudioFormat() throws IOException {
+        var file = Files.createTempFile(null, ".wav");
+        try {
+            VPClient.create(new TestVPExecutable()).builder()
+                    .withSpeechText("not empty text") // ダミーテキスト
+                    .withOutput(file)
+                    .build()
+                    .execute()
+                    .join();
+
+            // VOICEPEAKの出力は48kHz 16bit モノラルのPCM
+            var format = AudioPlayer.toAudioFormat(WavHeader.read(file));
+            assertNotNull(format);
+            assertTrue(format.matches(new AudioFormat(48000, 16, 1, true, false)));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void unsupportedFormat() {
+        // ADPCMは直接再生しない
+        var header = new WavHeader(2, 1, 48000, 24000, 1024, 4, 0, 0);
+        assertNull(AudioPlayer.toAudioFormat(header));
+    }
+}
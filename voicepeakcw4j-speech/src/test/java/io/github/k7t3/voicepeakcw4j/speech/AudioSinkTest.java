@@ -0,0 +1,162 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.k7t3.voicepeakcw4j.speech;
+
+import io.github.k7t3.voicepeakcw4j.VPClient;
+import io.github.k7t3.voicepeakcw4j.audio.WavHeader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AudioSinkTest {
+
+    private Path temporalFilePath;
+
+    private Path outputFilePath;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        temporalFilePath = Files.createTempFile(null, ".voicepeakcw4jspeech");
+        outputFilePath = Files.createTempFile(null, ".wav");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(temporalFilePath);
+        Files.deleteIfExists(outputFilePath);
+    }
+
+    private void speech(AudioSink sink) throws IOException {
+        var process = VPClient.create(new TestVPExecutable()).builder()
+                .withSpeechText("not empty text") // ダミーテキスト
+                .withOutput(temporalFilePath)
+                .build();
+
+        var runner = new SpeechRunner(sink, 1.0f, 0, null, false, new TemporaryOutputManager(temporalFilePath.getParent(), Long.MAX_VALUE),
+                List.of(new SpeechParameter(0, process, temporalFilePath)));
+
+        var state = runner.start();
+        state.getSpeechFuture().join();
+        assertTrue(state.isDone());
+    }
+
+    private long mockDataSize() throws IOException {
+        var file = Files.createTempFile(null, ".wav");
+        try {
+            VPClient.create(new TestVPExecutable()).builder()
+                    .withSpeechText("not empty text") // ダミーテキスト
+                    .withOutput(file)
+                    .build()
+                    .execute()
+                    .join();
+            return WavHeader.read(file).dataSize();
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void nullSink() throws IOException {
+        // 音声デバイスがなくても最後まで読み上げる
+        speech(new NullAudioSink());
+    }
+
+    @Test
+    void memorySink() throws IOException {
+        var sink = new MemoryAudioSink();
+        speech(sink);
+
+        // VOICEPEAKの出力は48kHz 16bit モノラルのPCM
+        assertTrue(sink.getFormat().matches(AudioDevice.VOICEPEAK_DEFAULT_FORMAT));
+        assertEquals(mockDataSize(), sink.size());
+    }
+
+    @Test
+    void fileSink() throws IOException {
+        var sink = new FileAudioSink(outputFilePath);
+        speech(sink);
+
+        var header = WavHeader.read(outputFilePath);
+        assertEquals(WavHeader.FORMAT_PCM, header.formatTag());
+        assertEquals(48000, header.sampleRate());
+        assertEquals(mockDataSize(), header.dataSize());
+        assertEquals(WavHeader.CANONICAL_SIZE + header.dataSize(), Files.size(outputFilePath));
+    }
+
+    @Test
+    void channelSink() throws IOException {
+        var stream = new ByteArrayOutputStream();
+        speech(new ChannelAudioSink(stream));
+
+        // ヘッダのないPCMデータのみを書き込む
+        assertEquals(mockDataSize(), stream.size());
+    }
+
+    @Test
+    void publisherSink() throws IOException {
+        // バッファを最小にして購読者の要求を待機させる
+        var sink = new PublisherAudioSink(1);
+
+        var received = new ByteArrayOutputStream();
+        var completed = new CompletableFuture<Void>();
+        sink.subscribe(new Flow.Subscriber<>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(ByteBuffer item) {
+                var bytes = new byte[item.remaining()];
+                item.get(bytes);
+                received.writeBytes(bytes);
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                completed.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                completed.complete(null);
+            }
+        });
+
+        speech(sink);
+
+        // 読み上げが終わると完了が通知される
+        completed.join();
+        assertEquals(mockDataSize(), received.size());
+    }
+}
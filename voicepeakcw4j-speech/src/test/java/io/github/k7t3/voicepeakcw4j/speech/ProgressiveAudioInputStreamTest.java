@@ -0,0 +1,161 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.k7t3.voicepeakcw4j.speech;
+
+import io.github.k7t3.voicepeakcw4j.VPClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProgressiveAudioInputStreamTest {
+
+    private static final int DATA_SIZE = 48000;
+
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        file = Files.createTempFile(null, ".wav");
+        Files.delete(file);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * 48kHz モノラル 16bitのWAVヘッダを生成する
+     */
+    private static ByteBuffer header(int formatTag, int dataSize) {
+        var header = ByteBuffer.allocate(44).order(ByteOrder.LITTLE_ENDIAN);
+        header.put("RIFF".getBytes()).putInt(dataSize == 0 ? 0 : 36 + dataSize).put("WAVE".getBytes());
+        header.put("fmt ".getBytes()).putInt(16)
+                .putShort((short) formatTag).putShort((short) 1).putInt(48000).putInt(96000)
+                .putShort((short) 2).putShort((short) 16);
+        header.put("data".getBytes()).putInt(dataSize);
+        return header.flip();
+    }
+
+    private static byte[] readAll(java.io.InputStream input) throws IOException {
+        var output = new ByteArrayOutputStream();
+        input.transferTo(output);
+        return output.toByteArray();
+    }
+
+    @Test
+    void readWhileWriting() throws Exception {
+        var data = new byte[DATA_SIZE];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+
+        var written = new CompletableFuture<Boolean>();
+        var writer = Thread.ofVirtual().start(() -> {
+            try (var channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                // サイズを0として書き込み、最後に書き換える
+                channel.write(header(1, 0));
+                for (int offset = 0; offset < data.length; offset += 960) {
+                    Thread.sleep(20);
+                    channel.write(ByteBuffer.wrap(data, offset, 960));
+                }
+                // dataチャンクの後ろのチャンクは読み込まない
+                channel.write(ByteBuffer.wrap("LIST\0\0\0\0".getBytes()));
+                channel.write(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(0, DATA_SIZE), 40);
+                written.complete(true);
+            } catch (Exception e) {
+                written.completeExceptionally(e);
+            }
+        });
+
+        try (var input = ProgressiveAudioInputStream.open(file, written)) {
+            assertNotNull(input);
+            assertEquals(AudioSystem.NOT_SPECIFIED, input.getFrameLength());
+            assertEquals(AudioFormat.Encoding.PCM_SIGNED, input.getFormat().getEncoding());
+            assertEquals(48000f, input.getFormat().getSampleRate());
+
+            // 書き込みが完了する前に読み込める
+            var first = new byte[2];
+            assertEquals(2, input.read(first));
+            assertFalse(written.isDone());
+
+            var rest = readAll(input);
+            assertEquals(DATA_SIZE - 2, rest.length);
+            assertEquals(data[DATA_SIZE - 1], rest[rest.length - 1]);
+        }
+        writer.join();
+    }
+
+    @Test
+    void failedWriting() throws IOException {
+        var written = new CompletableFuture<Boolean>();
+        try (var channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            channel.write(header(1, 0));
+        }
+
+        try (var input = ProgressiveAudioInputStream.open(file, written)) {
+            assertNotNull(input);
+            written.complete(false);
+            assertThrows(IOException.class, () -> readAll(input));
+        }
+    }
+
+    @Test
+    void unsupportedFormat() throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            // ADPCMは書き込みの途中で再生できない
+            channel.write(header(2, DATA_SIZE));
+        }
+        assertNull(ProgressiveAudioInputStream.open(file, CompletableFuture.completedFuture(true)));
+    }
+
+    @Test
+    void mock() throws IOException {
+        var client = VPClient.create(new TestVPExecutable(true));
+        var process = client.builder()
+                .withSpeechText("not empty text") // ダミーテキスト
+                .withOutput(file)
+                .build();
+
+        var written = process.execute().thenApply(v -> true);
+        try (var input = ProgressiveAudioInputStream.open(file, written)) {
+            assertNotNull(input);
+
+            // VOICEPEAKが終了する前に再生を開始できる
+            assertEquals(2, input.read(new byte[2]));
+            assertFalse(written.isDone());
+
+            // モックの音声データ
+            assertEquals(206336 - 2, readAll(input).length);
+        }
+        assertTrue(written.join());
+    }
+}
@@ -18,11 +18,17 @@ package io.github.k7t3.voicepeakcw4j.speech;
 
 import io.github.k7t3.voicepeakcw4j.VPClient;
 import io.github.k7t3.voicepeakcw4j.VPExecutable;
+import io.github.k7t3.voicepeakcw4j.audio.WavHeader;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -128,4 +134,32 @@ class SpeechBuilderTest {
         builder.withEmotion(Map.of("sad", 101));
         assertThrows(IllegalStateException.class, builder::build);
     }
-}
\ No newline at end of file
+
+    @Test
+    void withRenderTarget() throws IOException, ExecutionException, InterruptedException, TimeoutException {
+        var output = Files.createTempFile(null, ".wav");
+        try {
+            var runner = builder
+                    .withSpeechText("最初の文章です。二番目の文章です。最後の文章です。")
+                    .withMaxSentenceLength(10)
+                    .withDelayTime(TimeUnit.MINUTES, 1)
+                    .withRenderTarget(output)
+                    .build();
+
+            var state = runner.start();
+            assertEquals(3, state.getSentenceCount());
+
+            // ファイルへの出力は最初の再生を遅延しない
+            state.getSpeechFuture().get(30, TimeUnit.SECONDS);
+            assertTrue(state.isDone());
+
+            // すべての文章の音声が一つのファイルに連結されている
+            var header = WavHeader.read(output);
+            assertEquals(WavHeader.FORMAT_PCM, header.formatTag());
+            assertEquals(0, header.dataSize() % 3);
+            assertTrue(0 < header.dataSize());
+        } finally {
+            Files.deleteIfExists(output);
+        }
+    }
+}
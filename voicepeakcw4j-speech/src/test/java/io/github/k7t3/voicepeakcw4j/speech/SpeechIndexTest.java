@@ -0,0 +1,93 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.k7t3.voicepeakcw4j.speech;
+
+import io.github.k7t3.voicepeakcw4j.audio.WavHeader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpeechIndexTest {
+
+    private Path audioFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        audioFile = Files.createTempFile(null, ".wav");
+
+        // 48kHz 16bit モノラルで1秒の音声
+        var dataSize = 96000;
+        var header = new WavHeader(WavHeader.FORMAT_PCM, 1, 48000, 96000, 2, 16, WavHeader.CANONICAL_SIZE, dataSize);
+        try (var channel = FileChannel.open(audioFile, StandardOpenOption.WRITE)) {
+            header.write(channel);
+            channel.write(ByteBuffer.allocate(dataSize), WavHeader.CANONICAL_SIZE);
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(audioFile);
+    }
+
+    private static SpeechIndex createIndex() {
+        // "あいうえお、" "かきくけこ。" の間に改行がある
+        return new SpeechIndex(List.of(
+                new SpeechParameter(0, null, null, 0, 6),
+                new SpeechParameter(1, null, null, 7, 6)
+        ));
+    }
+
+    @Test
+    void findSentence() {
+        var index = createIndex();
+        assertEquals(0, index.findSentence(0));
+        assertEquals(0, index.findSentence(5));
+
+        // 文章の間の改行は直前の文章
+        assertEquals(0, index.findSentence(6));
+
+        assertEquals(1, index.findSentence(7));
+        assertEquals(1, index.findSentence(100));
+    }
+
+    @Test
+    void toFrame() {
+        var index = createIndex();
+
+        // 音声の長さが分からないときは文章の先頭
+        assertEquals(0, index.toFrame(1, 10));
+
+        index.record(1, audioFile);
+
+        // 文字数の割合で音声の位置を求める
+        assertEquals(0, index.toFrame(1, 7));
+        assertEquals(24000, index.toFrame(1, 10));
+        assertEquals(48000, index.toFrame(1, 13));
+        assertEquals(48000, index.toFrame(1, 100));
+    }
+
+}
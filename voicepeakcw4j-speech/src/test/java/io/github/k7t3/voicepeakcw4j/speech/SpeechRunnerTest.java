@@ -17,6 +17,8 @@
 package io.github.k7t3.voicepeakcw4j.speech;
 
 import io.github.k7t3.voicepeakcw4j.VPClient;
+import io.github.k7t3.voicepeakcw4j.audio.WavHeader;
+import io.github.k7t3.voicepeakcw4j.process.VPProcessScheduler;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -24,9 +26,14 @@ import org.junit.jupiter.api.Test;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -117,4 +124,319 @@ class SpeechRunnerTest {
         // 完了例外(Cause: CancellationException)がスローされるはず
         assertThrows(CompletionException.class, future::join);
     }
-}
\ No newline at end of file
+
+    @Test
+    void testEvents() {
+        var runner = new SpeechRunner(new MemoryAudioSink(), 1.0f, 0, null, List.of(parameter));
+
+        var events = new CopyOnWriteArrayList<SpeechEvent>();
+        var completed = new CompletableFuture<Void>();
+        runner.setEventSubscriber(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(SpeechEvent item) {
+                events.add(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                completed.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                completed.complete(null);
+            }
+        });
+
+        runner.start().getSpeechFuture().join();
+
+        // 読み上げが終わると完了が通知される
+        completed.join();
+
+        // 再生している位置を除いたイベントは読み上げの順に通知される
+        var stages = new ArrayList<Class<?>>();
+        for (var event : events) {
+            assertEquals(0, event.index());
+            if (!(event instanceof SpeechEvent.PlaybackProgress)) {
+                stages.add(event.getClass());
+            }
+        }
+        assertEquals(List.of(
+                SpeechEvent.Queued.class,
+                SpeechEvent.SynthesisStarted.class,
+                SpeechEvent.SynthesisFinished.class,
+                SpeechEvent.PlaybackStarted.class,
+                SpeechEvent.PlaybackFinished.class
+        ), stages);
+
+        var finished = events.stream()
+                .filter(SpeechEvent.SynthesisFinished.class::isInstance)
+                .map(SpeechEvent.SynthesisFinished.class::cast)
+                .findFirst()
+                .orElseThrow();
+        assertEquals(0, finished.status());
+
+        // 再生している位置は増加していく
+        var progress = events.stream()
+                .filter(SpeechEvent.PlaybackProgress.class::isInstance)
+                .map(SpeechEvent.PlaybackProgress.class::cast)
+                .toList();
+        assertFalse(progress.isEmpty());
+        for (int i = 1; i < progress.size(); i++) {
+            assertTrue(progress.get(i - 1).framePosition() <= progress.get(i).framePosition());
+        }
+    }
+
+    @Test
+    void testStopDuringSynthesis() throws InterruptedException {
+        var scheduler = VPProcessScheduler.getDefault();
+        var runner = new SpeechRunner(new NullAudioSink(), 1.0f, 0, null, List.of(parameter));
+        var state = runner.start();
+
+        // VOICEPEAKが起動するまで待機する
+        for (int i = 0; i < 100 && scheduler.getStatistics().running() == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, scheduler.getStatistics().running());
+
+        // 停止するとVOICEPEAKの終了を待たずに同時実行数を解放し、書き込み途中のファイルを削除する
+        state.requestStop();
+        for (int i = 0; i < 50 && (0 < scheduler.getStatistics().running() || Files.exists(temporalFilePath)); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, scheduler.getStatistics().running());
+        assertFalse(Files.exists(temporalFilePath));
+    }
+
+    @Test
+    void testOutputQuota() throws IOException, InterruptedException {
+        var directory = Files.createTempDirectory("voicepeakcw4jspeech");
+        // 一つ目の音声を書き込むと上限に達する
+        try (var outputs = new TemporaryOutputManager(directory, 1)) {
+            var client = VPClient.create(new TestVPExecutable());
+            var parameters = new ArrayList<SpeechParameter>();
+            for (int i = 0; i < 4; i++) {
+                var output = outputs.createOutput();
+                var process = client.builder()
+                        .withSpeechText("not empty text") // ダミーテキスト
+                        .withOutput(output)
+                        .build();
+                parameters.add(new SpeechParameter(i, process, output, i * 10, 10));
+            }
+
+            var runner = new SpeechRunner(new NullAudioSink(), 1.0f, 0, null, false, outputs, parameters);
+            var future = runner.start().getSpeechFuture();
+
+            // 合成中の音声と再生中の音声を超えて一時ファイルを残さない
+            var max = 0L;
+            while (!future.isDone()) {
+                try (var files = Files.list(directory)) {
+                    max = Math.max(max, files.count());
+                }
+                Thread.sleep(10);
+            }
+            future.join();
+            assertTrue(max <= 2, "max files: " + max);
+        } finally {
+            try (var files = Files.list(directory)) {
+                for (var file : files.toList()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    @Test
+    void testRetentionLimit() throws IOException, InterruptedException {
+        // 合成される音声のサイズ
+        var client = VPClient.create(new TestVPExecutable());
+        client.builder()
+                .withSpeechText("not empty text") // ダミーテキスト
+                .withOutput(temporalFilePath)
+                .build()
+                .execute()
+                .join();
+        var size = Files.size(temporalFilePath);
+
+        var directory = Files.createTempDirectory("voicepeakcw4jspeech");
+        // 合成は待機しないが、上限の半分を超える音声は保持しない
+        try (var outputs = new TemporaryOutputManager(directory, size + 1)) {
+            var parameters = new ArrayList<SpeechParameter>();
+            for (int i = 0; i < 2; i++) {
+                var output = outputs.createOutput();
+                var process = client.builder()
+                        .withSpeechText("not empty text") // ダミーテキスト
+                        .withOutput(output)
+                        .build();
+                parameters.add(new SpeechParameter(i, process, output, i * 10, 10));
+            }
+            var first = parameters.get(0).audioFile();
+
+            var runner = new SpeechRunner(new NullAudioSink(), 1.0f, 0, null, false, outputs, parameters);
+            var state = runner.start();
+            var future = state.getSpeechFuture();
+
+            // 二つ目の文章の合成を待つ間に、再生した一つ目の音声は削除される
+            var released = false;
+            while (!future.isDone()) {
+                var exists = Files.exists(first);
+                if (0 < state.getCurrentPosition() && !exists && !future.isDone()) {
+                    released = true;
+                }
+                Thread.sleep(10);
+            }
+            future.join();
+            assertEquals(0, outputs.getStatistics().waiting());
+            assertTrue(released);
+        } finally {
+            try (var files = Files.list(directory)) {
+                for (var file : files.toList()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    @Test
+    void testPause() throws InterruptedException {
+        var sink = new MemoryAudioSink();
+        var runner = new SpeechRunner(sink, 1.0f, 0, null, List.of(parameter));
+        var state = runner.start();
+
+        // 合成を待つ間に一時停止する
+        state.requestPause();
+        assertTrue(state.isPaused());
+
+        // 最初の書き込みで停止する
+        while (sink.size() == 0) {
+            Thread.sleep(10);
+        }
+        var paused = sink.size();
+        Thread.sleep(300);
+        assertEquals(paused, sink.size());
+        assertFalse(state.getSpeechFuture().isDone());
+
+        state.requestResume();
+        state.getSpeechFuture().join();
+        assertFalse(state.isPaused());
+        assertTrue(paused < sink.size());
+        assertTrue(state.isDone());
+    }
+
+    @Test
+    void testSeek() throws IOException {
+        var secondFilePath = Files.createTempFile(null, ".voicepeakcw4jspeech");
+        try {
+            var process = VPClient.create(new TestVPExecutable()).builder()
+                    .withSpeechText("not empty text") // ダミーテキスト
+                    .withOutput(secondFilePath)
+                    .build();
+
+            // 10文字ずつの二つの文章
+            var parameters = List.of(
+                    new SpeechParameter(0, parameter.process(), temporalFilePath, 0, 10),
+                    new SpeechParameter(1, process, secondFilePath, 10, 10)
+            );
+
+            var sink = new MemoryAudioSink();
+            var runner = new SpeechRunner(sink, 1.0f, 0, null, parameters);
+            var state = runner.start();
+
+            // 二つ目の文章に移動する。まだ合成していないため文章の先頭から再生する
+            assertTrue(state.requestSeek(15));
+            state.getSpeechFuture().join();
+            assertTrue(state.isDone());
+
+            // 最初の文章は再生されない
+            VPClient.create(new TestVPExecutable()).builder()
+                    .withSpeechText("not empty text") // ダミーテキスト
+                    .withOutput(secondFilePath)
+                    .build()
+                    .execute()
+                    .join();
+            assertEquals(WavHeader.read(secondFilePath).dataSize(), sink.size());
+        } finally {
+            Files.deleteIfExists(secondFilePath);
+        }
+    }
+
+    @Test
+    void testSeekSynthesized() throws IOException, InterruptedException {
+        var secondFilePath = Files.createTempFile(null, ".voicepeakcw4jspeech");
+        try {
+            var process = VPClient.create(new TestVPExecutable()).builder()
+                    .withSpeechText("not empty text") // ダミーテキスト
+                    .withOutput(secondFilePath)
+                    .build();
+
+            var parameters = List.of(
+                    new SpeechParameter(0, parameter.process(), temporalFilePath, 0, 10),
+                    new SpeechParameter(1, process, secondFilePath, 10, 10)
+            );
+
+            var synthesized = new CountDownLatch(2);
+            var sink = new MemoryAudioSink();
+            var runner = new SpeechRunner(sink, 1.0f, 0, null, parameters);
+            runner.setEventSubscriber(new Flow.Subscriber<>() {
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    subscription.request(Long.MAX_VALUE);
+                }
+
+                @Override
+                public void onNext(SpeechEvent item) {
+                    if (item instanceof SpeechEvent.SynthesisFinished) {
+                        synthesized.countDown();
+                    }
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                }
+
+                @Override
+                public void onComplete() {
+                }
+            });
+
+            // 最初の書き込みで一時停止したまま、二つ目の文章の合成を待つ
+            var state = runner.start();
+            state.requestPause();
+            synthesized.await();
+            var paused = sink.size();
+
+            // 合成した音声の長さから文章の半分の位置を求める
+            assertTrue(state.requestSeek(15));
+            state.requestResume();
+            state.getSpeechFuture().join();
+
+            VPClient.create(new TestVPExecutable()).builder()
+                    .withSpeechText("not empty text") // ダミーテキスト
+                    .withOutput(secondFilePath)
+                    .build()
+                    .execute()
+                    .join();
+            var frames = WavHeader.read(secondFilePath).frameCount();
+            assertEquals(paused + (frames / 2) * 2, sink.size());
+        } finally {
+            Files.deleteIfExists(secondFilePath);
+        }
+    }
+
+    @Test
+    void testSeekNegative() {
+        var runner = new SpeechRunner(null, 0.0f, 0, null, List.of());
+        var state = runner.start();
+        assertThrows(IllegalArgumentException.class, () -> state.requestSeek(-1));
+
+        // 読み上げが終わっているときは移動しない
+        assertFalse(state.requestSeek(0));
+    }
+}
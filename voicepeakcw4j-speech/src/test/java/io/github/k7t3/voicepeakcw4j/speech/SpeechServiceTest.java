@@ -0,0 +1,175 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.k7t3.voicepeakcw4j.speech;
+
+import io.github.k7t3.voicepeakcw4j.VPClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpeechServiceTest {
+
+    private static final String LONG_TEXT = "最初の文章です。二番目の文章です。最後の文章です。";
+
+    /**
+     * 出力を開いた回数を数える出力先
+     */
+    private static class CountingAudioSink extends MemoryAudioSink {
+
+        private final AtomicInteger opened = new AtomicInteger();
+
+        @Override
+        public Output open(AudioFormat format) {
+            opened.incrementAndGet();
+            return super.open(format);
+        }
+    }
+
+    private CountingAudioSink sink;
+
+    private SpeechService service;
+
+    @BeforeEach
+    void setUp() {
+        sink = new CountingAudioSink();
+        service = new SpeechService(sink);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.close();
+    }
+
+    private SpeechRunner runner(String text) {
+        return new SpeechBuilder(VPClient.create(new TestVPExecutable()).builder())
+                .withSpeechText(text)
+                .withMaxSentenceLength(10)
+                .build();
+    }
+
+    private SpeechRunner runner(String text, TemporaryOutputManager outputs) {
+        return new SpeechBuilder(VPClient.create(new TestVPExecutable()).builder())
+                .withSpeechText(text)
+                .withMaxSentenceLength(10)
+                .withTemporaryOutputManager(outputs)
+                .build();
+    }
+
+    private static void awaitPosition(SpeechState state, int position) throws InterruptedException {
+        while (state.getCurrentPosition() < position) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void submit() {
+        var first = service.submit(runner("最初の読み上げ"));
+        var second = service.submit(runner("次の読み上げ"));
+
+        first.getSpeechFuture().join();
+        second.getSpeechFuture().join();
+        assertTrue(first.isDone());
+        assertTrue(second.isDone());
+
+        // 出力は開いたまま続けて読み上げる
+        assertEquals(1, sink.opened.get());
+        assertEquals(0, sink.size() % 2);
+        assertTrue(0 < sink.size());
+    }
+
+    @Test
+    void interruptAndResume() throws InterruptedException {
+        var speech = service.submit(runner(LONG_TEXT));
+        assertEquals(3, speech.getSentenceCount());
+        awaitPosition(speech, 1);
+
+        var urgent = service.submit(runner("割り込み"), SpeechService.Interruption.RESUME);
+        urgent.getSpeechFuture().join();
+
+        // 割り込まれた読み上げは最後まで読み上げていない
+        assertFalse(speech.getSpeechFuture().isDone());
+        assertFalse(speech.isDone());
+
+        // 中断した位置から再開する
+        speech.getSpeechFuture().join();
+        assertTrue(speech.isDone());
+    }
+
+    @Test
+    void fullQuota() throws IOException, InterruptedException {
+        // 一つの音声ファイルで上限に達する
+        try (var outputs = new TemporaryOutputManager(Files.createTempDirectory("vpservice"), 1)) {
+            var speech = service.submit(runner(LONG_TEXT, outputs));
+            var next = service.submit(runner(LONG_TEXT, outputs));
+            awaitPosition(speech, 1);
+
+            // 待っている要求や中断した要求が上限を占有しても読み上げ中の要求は止まらない
+            var urgent = service.submit(runner(LONG_TEXT, outputs), SpeechService.Interruption.RESUME);
+            urgent.getSpeechFuture().orTimeout(60, TimeUnit.SECONDS).join();
+            speech.getSpeechFuture().orTimeout(60, TimeUnit.SECONDS).join();
+            next.getSpeechFuture().orTimeout(60, TimeUnit.SECONDS).join();
+            assertTrue(urgent.isDone());
+            assertTrue(speech.isDone());
+            assertTrue(next.isDone());
+        }
+    }
+
+    @Test
+    void interruptAndDiscard() throws InterruptedException {
+        var speech = service.submit(runner(LONG_TEXT));
+        awaitPosition(speech, 1);
+
+        var urgent = service.submit(runner("割り込み"), SpeechService.Interruption.DISCARD);
+        urgent.getSpeechFuture().join();
+        assertTrue(urgent.isDone());
+
+        // 割り込まれた読み上げは停止される
+        assertThrows(CancellationException.class, () -> speech.getSpeechFuture().join());
+        assertFalse(speech.isDone());
+    }
+
+    @Test
+    void requestStop() {
+        var first = service.submit(runner(LONG_TEXT));
+        var second = service.submit(runner("次の読み上げ"));
+
+        // 停止しても次の要求を読み上げる
+        first.requestStop();
+        second.getSpeechFuture().join();
+        assertTrue(second.isDone());
+        assertThrows(CancellationException.class, () -> first.getSpeechFuture().join());
+    }
+
+    @Test
+    void close() {
+        var speech = service.submit(runner(LONG_TEXT));
+        service.close();
+
+        assertThrows(CancellationException.class, () -> speech.getSpeechFuture().join());
+        assertThrows(IllegalStateException.class, () -> service.submit(runner("閉じたあと")));
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.k7t3.voicepeakcw4j.speech;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TemporaryOutputManagerTest {
+
+    private Path directory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("vpcw4j");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (var files = Files.list(directory)) {
+            for (var file : files.toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+
+    @Test
+    void quota() throws IOException {
+        var manager = new TemporaryOutputManager(directory, 100);
+
+        var first = manager.createOutput();
+        assertTrue(manager.awaitCapacity().isDone());
+        Files.write(first, new byte[100]);
+        manager.commit(first);
+        assertEquals(100, manager.getStatistics().usedBytes());
+
+        // 上限に達しているときは削除されるまで待機する
+        var waiting = manager.awaitCapacity();
+        assertFalse(waiting.isDone());
+        assertEquals(1, manager.getStatistics().waiting());
+
+        manager.release(first);
+        assertTrue(waiting.isDone());
+        assertFalse(Files.exists(first));
+        assertEquals(0, manager.getStatistics().usedBytes());
+    }
+
+    @Test
+    void cancelWaiting() throws IOException {
+        var manager = new TemporaryOutputManager(directory, 1);
+        var output = manager.createOutput();
+        Files.write(output, new byte[1]);
+        manager.commit(output);
+
+        manager.awaitCapacity().cancel(false);
+
+        // キャンセルされた要求は待機している要求に数えない
+        var waiting = manager.awaitCapacity();
+        assertEquals(1, manager.getStatistics().waiting());
+
+        manager.release(output);
+        assertTrue(waiting.isDone());
+    }
+
+    @Test
+    void close() throws IOException {
+        var manager = new TemporaryOutputManager(directory, 1);
+        var first = manager.createOutput();
+        var second = manager.createOutput();
+        Files.write(first, new byte[8]);
+        Files.write(second, new byte[8]);
+        manager.commit(first);
+        assertEquals(2, manager.getStatistics().files());
+
+        var waiting = manager.awaitCapacity();
+        manager.close();
+
+        // 払い出したファイルはすべて削除される
+        assertFalse(Files.exists(first));
+        assertFalse(Files.exists(second));
+        assertTrue(waiting.isDone());
+        assertThrows(IllegalStateException.class, manager::createOutput);
+    }
+
+    @Test
+    void defaultDirectory() {
+        var shm = Path.of("/dev/shm");
+        if (Files.isDirectory(shm) && Files.isWritable(shm)) {
+            assertEquals(shm, TemporaryOutputManager.getDefaultDirectory());
+        } else {
+            assertEquals(Path.of(System.getProperty("java.io.tmpdir")), TemporaryOutputManager.getDefaultDirectory());
+        }
+    }
+}
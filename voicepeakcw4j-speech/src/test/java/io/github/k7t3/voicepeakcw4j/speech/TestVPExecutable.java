@@ -27,7 +27,15 @@ public class TestVPExecutable extends VPExecutable {
     // モックjarアプリケーション
     private final Path executable;
 
+    // 音声ファイルを少しずつ書き込むモード
+    private final boolean progressive;
+
     public TestVPExecutable() {
+        this(false);
+    }
+
+    public TestVPExecutable(boolean progressive) {
+        this.progressive = progressive;
         executable = Paths.get(System.getProperty("user.dir"))
                 .getParent()
                 .resolve("voicepeakcw4j-mock")
@@ -39,6 +47,9 @@ public class TestVPExecutable extends VPExecutable {
     public void fill(List<String> commands) {
         // javaコマンドで起動
         commands.add("java");
+        if (progressive) {
+            commands.add("-Dvoicepeakcw4j.mock.progressive=true");
+        }
         commands.add("-jar");
         commands.add(executable.toAbsolutePath().toString());
     }
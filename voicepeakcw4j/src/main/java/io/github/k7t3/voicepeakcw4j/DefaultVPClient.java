@@ -16,19 +16,24 @@
 
 package io.github.k7t3.voicepeakcw4j;
 
-import io.github.k7t3.voicepeakcw4j.option.command.CommandRunner;
-import io.github.k7t3.voicepeakcw4j.option.command.ListEmotionCommand;
-import io.github.k7t3.voicepeakcw4j.option.command.ListNarratorCommand;
 import io.github.k7t3.voicepeakcw4j.process.VPProcessBuilder;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 class DefaultVPClient implements VPClient {
 
     private final VPExecutable defaultExecutable;
 
+    private final VPCatalog catalog;
+
     public DefaultVPClient(VPExecutable executable) {
-        this.defaultExecutable = executable;
+        this(new VPCatalog(executable));
+    }
+
+    public DefaultVPClient(VPCatalog catalog) {
+        this.defaultExecutable = catalog.getExecutable();
+        this.catalog = catalog;
     }
 
     @Override
@@ -38,13 +43,21 @@ class DefaultVPClient implements VPClient {
 
     @Override
     public List<String> getEmotions(String narrator) {
-        var runner = new CommandRunner(defaultExecutable, new ListEmotionCommand(narrator));
-        return runner.run();
+        return catalog.getEmotions(narrator);
     }
 
     @Override
     public List<String> getNarrators() {
-        var runner = new CommandRunner(defaultExecutable, new ListNarratorCommand());
-        return runner.run();
+        return catalog.getNarrators();
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getEmotionsAsync(String narrator) {
+        return catalog.getEmotionsAsync(narrator);
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getNarratorsAsync() {
+        return catalog.getNarratorsAsync();
     }
 }
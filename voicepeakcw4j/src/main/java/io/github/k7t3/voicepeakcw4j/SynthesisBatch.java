@@ -0,0 +1,536 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.k7t3.voicepeakcw4j;
+
+import io.github.k7t3.voicepeakcw4j.exception.VPExecutionException;
+import io.github.k7t3.voicepeakcw4j.process.VPProcessBuilder;
+import io.github.k7t3.voicepeakcw4j.process.VPProcessScheduler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+
+/**
+ * 複数の音声合成を一括で実行するパブリッシャー
+ * <p>
+ *     購読するたびに要求を先頭から実行する。購読者が要求した数を超えて合成を開始せず、
+ *     同時に実行する合成の数もスケジューラの同時実行数までに制限するため、
+ *     要求はその都度イテレータから取り出される。
+ * </p>
+ * <p>
+ *     合成結果のキーが同じ要求は一度だけ合成し、ほかの要求の出力先には音声ファイルをコピーする。
+ *     最初の要求の出力先は結果を通知したあとに購読者が移動あるいは削除することがあるため、
+ *     結果を通知する前にこのクラスが所有するファイルへ退避し、そこからコピーする。
+ *     退避したファイルは一定数を超えると古いものから、購読が終わるとすべて削除する。
+ * </p>
+ */
+class SynthesisBatch implements Flow.Publisher<SynthesisResult> {
+
+    private static final System.Logger LOGGER = System.getLogger(SynthesisBatch.class.getName());
+
+    /**
+     * 退避しておく合成結果の数の上限
+     */
+    private static final int MAX_STAGED_RESULTS = 64;
+
+    private final Iterable<VPProcessBuilder> requests;
+
+    private final SynthesisOrder order;
+
+    private final VPProcessScheduler scheduler;
+
+    SynthesisBatch(Iterable<VPProcessBuilder> requests, SynthesisOrder order, VPProcessScheduler scheduler) {
+        if (requests == null)
+            throw new IllegalArgumentException("requests is null");
+        if (order == null)
+            throw new IllegalArgumentException("order is null");
+        this.requests = requests;
+        this.order = order;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super SynthesisResult> subscriber) {
+        var subscription = new BatchSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        subscription.start();
+    }
+
+    /**
+     * 最初に合成した要求。フィールドは購読のロックで保護する
+     */
+    private static final class Origin {
+
+        /**
+         * 合成結果を退避し終えたときに終了ステータスで完了するFuture
+         */
+        private final CompletableFuture<Integer> future = new CompletableFuture<>();
+
+        private final Path output;
+
+        /**
+         * 退避したファイル、あるいは退避していないときはnull
+         */
+        private Path staging;
+
+        /**
+         * 合成結果のコピーを待っている要求の数
+         */
+        private int sharing = 0;
+
+        Origin(Path output) {
+            this.output = output;
+        }
+
+        boolean isIdle() {
+            return future.isDone() && sharing == 0;
+        }
+    }
+
+    private final class BatchSubscription implements Flow.Subscription {
+
+        private final Object lock = new Object();
+
+        private final Flow.Subscriber<? super SynthesisResult> subscriber;
+
+        private Iterator<VPProcessBuilder> iterator;
+
+        private long demand = 0;
+
+        private int submitted = 0;
+        private int completed = 0;
+        private int delivered = 0;
+
+        private boolean exhausted = false;
+        private boolean cancelled = false;
+        private boolean terminated = false;
+        private boolean emitting = false;
+        private boolean filling = false;
+
+        private Throwable failure;
+
+        /**
+         * 合成が完了した順に並ぶ通知待ちの結果
+         */
+        private final ArrayDeque<SynthesisResult> ready = new ArrayDeque<>();
+
+        /**
+         * インデックス順に並ぶ通知待ちの結果
+         */
+        private final TreeMap<Integer, SynthesisResult> pending = new TreeMap<>();
+
+        /**
+         * 合成結果のキーごとの最初の要求。古いものから削除する
+         */
+        private final LinkedHashMap<String, Origin> origins = new LinkedHashMap<>();
+
+        private final Set<CompletableFuture<Integer>> running = new HashSet<>();
+
+        BatchSubscription(Flow.Subscriber<? super SynthesisResult> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        void start() {
+            try {
+                var it = requests.iterator();
+                synchronized (lock) {
+                    iterator = it;
+                }
+            } catch (RuntimeException e) {
+                synchronized (lock) {
+                    failure = e;
+                }
+            }
+            fill();
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                synchronized (lock) {
+                    failure = new IllegalArgumentException("non-positive request " + n);
+                }
+                drain();
+                return;
+            }
+            synchronized (lock) {
+                demand = Long.MAX_VALUE - demand < n ? Long.MAX_VALUE : demand + n;
+            }
+            fill();
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            CompletableFuture<?>[] futures;
+            synchronized (lock) {
+                cancelled = true;
+                futures = running.toArray(new CompletableFuture<?>[0]);
+                running.clear();
+            }
+            for (var future : futures) {
+                future.cancel(false);
+            }
+            releaseStaging();
+        }
+
+        /**
+         * 要求された数と同時実行数の範囲で合成を開始する。
+         * <p>
+         *     完了済みのFuture(キャッシュから復元した結果など)は開始したスレッドで直ちに完了を処理し、
+         *     そこから再び呼び出されるため、実行中に呼び出されたときは何もせずに戻る。
+         *     実行中のループが状態の変化を拾って続きの合成を開始する。
+         * </p>
+         */
+        private void fill() {
+            synchronized (lock) {
+                if (filling) {
+                    return;
+                }
+                filling = true;
+            }
+
+            while (true) {
+                int index;
+                VPProcessBuilder builder;
+                synchronized (lock) {
+                    if (cancelled || exhausted || failure != null || iterator == null) {
+                        filling = false;
+                        return;
+                    }
+                    try {
+                        // 要求されていなくても終端は検出して完了を通知できるようにする
+                        if (!iterator.hasNext()) {
+                            exhausted = true;
+                            filling = false;
+                            return;
+                        }
+
+                        var outstanding = submitted - delivered;
+                        var inFlight = submitted - completed;
+                        if (demand <= outstanding || scheduler.getPermits() <= inFlight) {
+                            filling = false;
+                            return;
+                        }
+
+                        builder = iterator.next();
+                    } catch (RuntimeException e) {
+                        failure = e;
+                        filling = false;
+                        return;
+                    }
+                    index = submitted++;
+                }
+
+                try {
+                    submit(index, builder);
+                } catch (RuntimeException | Error e) {
+                    synchronized (lock) {
+                        filling = false;
+                    }
+                    throw e;
+                }
+            }
+        }
+
+        private void submit(int index, VPProcessBuilder builder) {
+            var output = builder.getOutput();
+            CompletableFuture<Integer> future;
+            try {
+                if (output == null) {
+                    throw new VPExecutionException("batch request requires output");
+                }
+                future = startOrShare(builder, output);
+            } catch (RuntimeException e) {
+                complete(index, output, null, e);
+                return;
+            }
+
+            synchronized (lock) {
+                running.add(future);
+            }
+            future.whenComplete((status, e) -> {
+                synchronized (lock) {
+                    running.remove(future);
+                }
+                complete(index, output, status, e);
+            });
+        }
+
+        private CompletableFuture<Integer> startOrShare(VPProcessBuilder builder, Path output) {
+            var key = builder.getSynthesisKey();
+            if (key == null) {
+                return builder.build().start();
+            }
+
+            Origin origin;
+            List<Path> evicted;
+            synchronized (lock) {
+                origin = origins.get(key);
+                if (origin != null) {
+                    origin.sharing++;
+                    return share(origin, output);
+                }
+                origin = new Origin(output);
+                origins.put(key, origin);
+                evicted = evict();
+            }
+            evicted.forEach(SynthesisBatch::delete);
+
+            CompletableFuture<Integer> process;
+            try {
+                process = builder.build().start();
+            } catch (RuntimeException e) {
+                synchronized (lock) {
+                    origins.remove(key, origin);
+                }
+                origin.future.completeExceptionally(e);
+                throw e;
+            }
+
+            var started = origin;
+            process.whenComplete((status, e) -> {
+                // 結果を通知する前に、同じキーの要求のために合成結果を退避する
+                if (e == null && status == 0) {
+                    keepStaging(key, started, stage(output));
+                }
+                if (e != null) {
+                    started.future.completeExceptionally(e);
+                } else {
+                    started.future.complete(status);
+                }
+            });
+
+            var future = started.future.thenApply(status -> status);
+            future.whenComplete((status, e) -> {
+                if (future.isCancelled()) {
+                    process.cancel(false);
+                }
+            });
+            return future;
+        }
+
+        /**
+         * 最初の要求の合成結果を出力先にコピーするFutureを返す
+         */
+        private CompletableFuture<Integer> share(Origin origin, Path output) {
+            LOGGER.log(System.Logger.Level.DEBUG, "share synthesis result " + origin.output + " to " + output);
+            return origin.future.thenApply(status -> {
+                try {
+                    Path source;
+                    synchronized (lock) {
+                        source = origin.staging != null ? origin.staging : origin.output;
+                    }
+                    if (status == 0 && !source.equals(output)) {
+                        Files.copy(source, output, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    return status;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    synchronized (lock) {
+                        origin.sharing--;
+                    }
+                }
+            });
+        }
+
+        /**
+         * 退避したファイルを記録する。購読が終わっているか、記録から削除されていれば削除する
+         */
+        private void keepStaging(String key, Origin origin, Path staging) {
+            if (staging == null) {
+                return;
+            }
+            synchronized (lock) {
+                if (origins.get(key) == origin) {
+                    origin.staging = staging;
+                    return;
+                }
+            }
+            delete(staging);
+        }
+
+        /**
+         * 上限を超えた最初の要求を古いものから記録から削除し、削除する退避したファイルを返す。
+         * コピーを待っている要求があるものは削除しない
+         */
+        private List<Path> evict() {
+            var evicted = new ArrayList<Path>();
+            var iterator = origins.values().iterator();
+            while (MAX_STAGED_RESULTS < origins.size() && iterator.hasNext()) {
+                var origin = iterator.next();
+                if (origin.isIdle()) {
+                    iterator.remove();
+                    if (origin.staging != null) {
+                        evicted.add(origin.staging);
+                    }
+                }
+            }
+            return evicted;
+        }
+
+        /**
+         * 退避したすべてのファイルを削除する
+         */
+        private void releaseStaging() {
+            var staged = new ArrayList<Path>();
+            synchronized (lock) {
+                for (var origin : origins.values()) {
+                    if (origin.staging != null) {
+                        staged.add(origin.staging);
+                    }
+                }
+                origins.clear();
+            }
+            staged.forEach(SynthesisBatch::delete);
+        }
+
+        private void complete(int index, Path output, Integer status, Throwable error) {
+            if (error instanceof CompletionException && error.getCause() != null) {
+                error = error.getCause();
+            }
+            var result = new SynthesisResult(index, output, status == null ? -1 : status, error);
+
+            synchronized (lock) {
+                completed++;
+                if (order == SynthesisOrder.COMPLETION) {
+                    ready.add(result);
+                } else {
+                    pending.put(index, result);
+                }
+            }
+            fill();
+            drain();
+        }
+
+        /**
+         * 要求された数の範囲で結果を通知する。同時に複数のスレッドから通知しない
+         */
+        private void drain() {
+            synchronized (lock) {
+                if (emitting) {
+                    return;
+                }
+                emitting = true;
+            }
+
+            while (true) {
+                SynthesisResult next = null;
+                boolean complete = false;
+                Throwable error = null;
+
+                synchronized (lock) {
+                    if (terminated || cancelled) {
+                        emitting = false;
+                        return;
+                    }
+                    if (failure != null) {
+                        terminated = true;
+                        error = failure;
+                    } else if (0 < demand) {
+                        next = order == SynthesisOrder.COMPLETION ? ready.poll() : pending.remove(delivered);
+                        if (next != null) {
+                            demand--;
+                            delivered++;
+                        }
+                    }
+                    if (next == null && error == null) {
+                        if (exhausted && delivered == submitted) {
+                            terminated = true;
+                            complete = true;
+                        } else {
+                            emitting = false;
+                            return;
+                        }
+                    }
+                }
+
+                if (error != null) {
+                    cancel();
+                    subscriber.onError(error);
+                    return;
+                }
+                if (complete) {
+                    releaseStaging();
+                    subscriber.onComplete();
+                    return;
+                }
+
+                try {
+                    subscriber.onNext(next);
+                } catch (RuntimeException e) {
+                    LOGGER.log(System.Logger.Level.WARNING, "subscriber threw an exception", e);
+                    cancel();
+                    synchronized (lock) {
+                        emitting = false;
+                    }
+                    return;
+                }
+
+                // 通知したことで要求できる数が増えていれば次の合成を開始する
+                fill();
+            }
+        }
+    }
+
+    /**
+     * 合成結果を退避する。
+     * 同じファイルシステムにハードリンクを作成し、作成できないときはコピーする
+     * @return 退避したファイル、あるいは退避できなかったときはnull
+     */
+    private static Path stage(Path output) {
+        Path staging = null;
+        try {
+            var directory = output.toAbsolutePath().getParent();
+            staging = Files.createTempFile(directory, ".vpbatch-", ".tmp");
+            try {
+                Files.delete(staging);
+                return Files.createLink(staging, output);
+            } catch (IOException | UnsupportedOperationException e) {
+                return Files.copy(output, staging, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            LOGGER.log(System.Logger.Level.WARNING, "failed to stage synthesis result " + output, e);
+            if (staging != null) {
+                delete(staging);
+            }
+            return null;
+        }
+    }
+
+    private static void delete(Path staging) {
+        try {
+            Files.deleteIfExists(staging);
+        } catch (IOException e) {
+            LOGGER.log(System.Logger.Level.WARNING, "failed to delete staged result " + staging, e);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.k7t3.voicepeakcw4j;
+
+/**
+ * 一括で合成した結果を通知する順序
+ */
+public enum SynthesisOrder {
+
+    /**
+     * 合成が完了した順
+     */
+    COMPLETION,
+
+    /**
+     * 合成を要求した順
+     * <p>
+     *     先に要求した合成が完了するまで、後に要求した合成の結果は通知されない。
+     * </p>
+     */
+    SUBMISSION
+
+}
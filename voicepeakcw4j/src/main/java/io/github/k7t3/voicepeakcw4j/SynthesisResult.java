@@ -0,0 +1,37 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.k7t3.voicepeakcw4j;
+
+import java.nio.file.Path;
+
+/**
+ * 一括で合成した音声の結果
+ * @param index 要求した順の0から始まるインデックス
+ * @param output 音声ファイルの出力先
+ * @param status VOICEPEAKの終了ステータス。実行できなかったときは-1
+ * @param error 実行できなかったときの原因、あるいはnull
+ */
+public record SynthesisResult(int index, Path output, int status, Throwable error) {
+
+    /**
+     * 合成に成功したかを返す
+     * @return 音声ファイルを出力できたときはtrue
+     */
+    public boolean isSuccess() {
+        return error == null && status == 0;
+    }
+
+}
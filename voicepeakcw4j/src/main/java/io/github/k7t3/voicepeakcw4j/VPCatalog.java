@@ -0,0 +1,313 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.k7t3.voicepeakcw4j;
+
+import io.github.k7t3.voicepeakcw4j.option.command.CommandRunner;
+import io.github.k7t3.voicepeakcw4j.option.command.ListEmotionCommand;
+import io.github.k7t3.voicepeakcw4j.option.command.ListNarratorCommand;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * VOICEPEAKにインストールされているナレーター及び感情の一覧をキャッシュするカタログ
+ * <p>
+ *     一覧の取得にはVOICEPEAKの実行が必要となるため、取得した一覧を有効期間の間保持する。
+ *     同じ一覧を同時に要求したときは一度だけVOICEPEAKを実行し、その結果を共有する。
+ * </p>
+ * <p>
+ *     スナップショットファイルを指定したときは取得した一覧をファイルに保存し、
+ *     次に生成したカタログで読み込む。VOICEPEAK実行ファイルの更新日時、
+ *     あるいはサイズが変わっているときはスナップショットを使用しない。
+ *     実行ファイルが変わっていなければ一覧も変わらないため、読み込んだ一覧の有効期間は読み込んだときから数える。
+ * </p>
+ * <p>このクラスはスレッドセーフ</p>
+ */
+public class VPCatalog {
+
+    private static final System.Logger LOGGER = System.getLogger(VPCatalog.class.getName());
+
+    private static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofMinutes(10);
+
+    private static final String FINGERPRINT_KEY = "executable";
+    private static final String NARRATORS_KEY = "narrators";
+    private static final String EMOTION_KEY_PREFIX = "emotion.";
+
+    private final VPExecutable executable;
+
+    private final long timeToLiveMillis;
+
+    private final Path snapshotFile;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * スナップショットを使用しない既定の有効期間のカタログを生成する。
+     * @param executable VOICEPEAK実行ファイル
+     */
+    public VPCatalog(VPExecutable executable) {
+        this(executable, DEFAULT_TIME_TO_LIVE, null);
+    }
+
+    /**
+     * カタログを生成する。
+     * @param executable VOICEPEAK実行ファイル
+     * @param timeToLive 取得した一覧の有効期間
+     * @param snapshotFile スナップショットファイル、あるいは保存しないときはnull
+     */
+    public VPCatalog(VPExecutable executable, Duration timeToLive, Path snapshotFile) {
+        if (executable == null)
+            throw new IllegalArgumentException("executable is null");
+        if (timeToLive == null || timeToLive.isNegative())
+            throw new IllegalArgumentException("timeToLive is null or negative");
+        this.executable = executable;
+        this.timeToLiveMillis = timeToLive.toMillis();
+        this.snapshotFile = snapshotFile;
+
+        if (snapshotFile != null) {
+            loadSnapshot();
+        }
+    }
+
+    private final class Entry {
+
+        private final CompletableFuture<List<String>> future = new CompletableFuture<>();
+
+        private volatile long loadedAt;
+
+        /**
+         * 取得した一覧。取得中あるいは失敗したときはnull
+         */
+        private volatile List<String> values;
+
+        Entry() {
+        }
+
+        Entry(List<String> values, long loadedAt) {
+            this.loadedAt = loadedAt;
+            this.values = values;
+            future.complete(values);
+        }
+
+        void loaded(List<String> values) {
+            this.loadedAt = System.currentTimeMillis();
+            this.values = values;
+        }
+
+        boolean isExpired(long now) {
+            // 取得中のときは期限切れとしない
+            return future.isDone() && timeToLiveMillis <= now - loadedAt;
+        }
+    }
+
+    /**
+     * カタログのVOICEPEAK実行ファイルを返す
+     * @return VOICEPEAK実行ファイル
+     */
+    public VPExecutable getExecutable() {
+        return executable;
+    }
+
+    /**
+     * インストールされているナレーターの一覧を返す
+     * @return インストールされているナレーターの一覧
+     */
+    public List<String> getNarrators() {
+        return join(getNarratorsAsync());
+    }
+
+    /**
+     * インストールされているナレーターの一覧を非同期に取得する
+     * @return インストールされているナレーターの一覧で完了するFuture
+     */
+    public CompletableFuture<List<String>> getNarratorsAsync() {
+        return lookup(NARRATORS_KEY, () -> new CommandRunner(executable, new ListNarratorCommand()).runAsync());
+    }
+
+    /**
+     * ナレーターに対応する感情の一覧を返す
+     * @param narrator ナレーター
+     * @return ナレーターに対応する感情の一覧
+     */
+    public List<String> getEmotions(String narrator) {
+        return join(getEmotionsAsync(narrator));
+    }
+
+    /**
+     * ナレーターに対応する感情の一覧を非同期に取得する
+     * @param narrator ナレーター
+     * @return ナレーターに対応する感情の一覧で完了するFuture
+     */
+    public CompletableFuture<List<String>> getEmotionsAsync(String narrator) {
+        var command = new ListEmotionCommand(narrator);
+        return lookup(EMOTION_KEY_PREFIX + narrator.trim(), () -> new CommandRunner(executable, command).runAsync());
+    }
+
+    /**
+     * 保持しているすべての一覧を破棄する
+     */
+    public void invalidate() {
+        entries.clear();
+        saveSnapshot();
+    }
+
+    private CompletableFuture<List<String>> lookup(String key, Supplier<CompletableFuture<List<String>>> loader) {
+        var now = System.currentTimeMillis();
+        var created = new Entry();
+        var entry = entries.compute(key, (k, current) ->
+                (current == null || current.isExpired(now)) ? created : current);
+
+        if (entry == created) {
+            CompletableFuture<List<String>> loading;
+            try {
+                loading = loader.get();
+            } catch (RuntimeException e) {
+                loading = CompletableFuture.failedFuture(e);
+            }
+
+            loading.whenComplete((values, e) -> {
+                if (e == null) {
+                    var copied = List.copyOf(values);
+                    entry.loaded(copied);
+                    // 完了を待っている呼び出し元がスナップショットを参照できるように先に保存する
+                    saveSnapshot();
+                    entry.future.complete(copied);
+                } else {
+                    // 失敗した結果は保持しない
+                    entries.remove(key, entry);
+                    entry.future.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                }
+            });
+        }
+
+        // 呼び出し元がキャンセルしても共有している取得は中断しない
+        return entry.future.copy();
+    }
+
+    private static List<String> join(CompletableFuture<List<String>> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 実行ファイルが更新されたことを検出するための値
+     */
+    private String fingerprint() {
+        var path = executable.locate().orElse(null);
+        if (path == null) {
+            return null;
+        }
+        try {
+            return "%s:%d:%d".formatted(path, Files.size(path), Files.getLastModifiedTime(path).toMillis());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void loadSnapshot() {
+        if (!Files.exists(snapshotFile)) {
+            return;
+        }
+
+        var fingerprint = fingerprint();
+        if (fingerprint == null) {
+            LOGGER.log(System.Logger.Level.DEBUG, "executable is not found, snapshot is ignored");
+            return;
+        }
+
+        var properties = new Properties();
+        try (var reader = Files.newBufferedReader(snapshotFile)) {
+            properties.load(reader);
+        } catch (IOException e) {
+            LOGGER.log(System.Logger.Level.WARNING, "failed to load snapshot " + snapshotFile, e);
+            return;
+        }
+
+        if (!fingerprint.equals(properties.getProperty(FINGERPRINT_KEY))) {
+            LOGGER.log(System.Logger.Level.DEBUG, "executable is modified, snapshot is ignored");
+            return;
+        }
+
+        // 実行ファイルが保存したときと同じであれば、保存した日時に関わらず読み込んだときに取得したものとする
+        var now = System.currentTimeMillis();
+        for (var key : properties.stringPropertyNames()) {
+            if (!key.equals(NARRATORS_KEY) && !key.startsWith(EMOTION_KEY_PREFIX)) {
+                continue;
+            }
+
+            // 一行に一つずつ並べた一覧
+            var values = Arrays.stream(properties.getProperty(key).split("\n"))
+                    .filter(s -> !s.isEmpty())
+                    .toList();
+            entries.put(key, new Entry(values, now));
+        }
+        LOGGER.log(System.Logger.Level.DEBUG, "loaded snapshot " + snapshotFile);
+    }
+
+    private synchronized void saveSnapshot() {
+        if (snapshotFile == null) {
+            return;
+        }
+
+        var fingerprint = fingerprint();
+        if (fingerprint == null) {
+            return;
+        }
+
+        var properties = new Properties();
+        properties.setProperty(FINGERPRINT_KEY, fingerprint);
+        entries.forEach((key, entry) -> {
+            var values = entry.values;
+            if (values != null) {
+                properties.setProperty(key, String.join("\n", values));
+            }
+        });
+
+        try {
+            var directory = snapshotFile.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            var temp = Files.createTempFile(directory, "catalog", ".tmp");
+            try {
+                try (var writer = Files.newBufferedWriter(temp)) {
+                    properties.store(writer, "voicepeakcw4j catalog snapshot");
+                }
+                Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            LOGGER.log(System.Logger.Level.WARNING, "failed to save snapshot " + snapshotFile, e);
+        }
+    }
+
+}
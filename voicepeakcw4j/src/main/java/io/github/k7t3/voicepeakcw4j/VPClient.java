@@ -18,8 +18,11 @@ package io.github.k7t3.voicepeakcw4j;
 
 import io.github.k7t3.voicepeakcw4j.exception.VPExecutionException;
 import io.github.k7t3.voicepeakcw4j.process.VPProcessBuilder;
+import io.github.k7t3.voicepeakcw4j.process.VPProcessScheduler;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
 
 /**
  * VOICEPEAKコマンドライン実行クライアント
@@ -37,6 +40,9 @@ public interface VPClient {
      * <p>
      *     正しくないナレーターが渡されたときは空のリスト
      * </p>
+     * <p>
+     *     取得した一覧は{@link VPCatalog}の有効期間の間保持される。
+     * </p>
      * @param narrator ナレーター
      * @return ナレーターに対応する感情のリスト
      * @throws VPExecutionException VOICEPEAKのコマンドライン実行に失敗
@@ -45,11 +51,79 @@ public interface VPClient {
 
     /**
      * インストールされているナレーターの一覧を返す
+     * <p>
+     *     取得した一覧は{@link VPCatalog}の有効期間の間保持される。
+     * </p>
      * @return インストールされているナレーターの一覧
      * @throws VPExecutionException VOICEPEAKのコマンドライン実行に失敗
      */
     List<String> getNarrators();
 
+    /**
+     * ナレーターに対応する感情の一覧を非同期に取得する
+     * <p>
+     *     VOICEPEAKの実行を待たずに返す。
+     *     VOICEPEAKのコマンドライン実行に失敗したときは{@link VPExecutionException}で完了する。
+     * </p>
+     * <p>
+     *     既定の実装は{@link #getEmotions(String)}を{@link CompletableFuture#supplyAsync(java.util.function.Supplier)}で実行する。
+     * </p>
+     * @param narrator ナレーター
+     * @return ナレーターに対応する感情のリストで完了するFuture
+     * @see #getEmotions(String)
+     */
+    default CompletableFuture<List<String>> getEmotionsAsync(String narrator) {
+        return CompletableFuture.supplyAsync(() -> getEmotions(narrator));
+    }
+
+    /**
+     * インストールされているナレーターの一覧を非同期に取得する
+     * <p>
+     *     VOICEPEAKの実行を待たずに返す。
+     *     VOICEPEAKのコマンドライン実行に失敗したときは{@link VPExecutionException}で完了する。
+     * </p>
+     * <p>
+     *     既定の実装は{@link #getNarrators()}を{@link CompletableFuture#supplyAsync(java.util.function.Supplier)}で実行する。
+     * </p>
+     * @return インストールされているナレーターのリストで完了するFuture
+     * @see #getNarrators()
+     */
+    default CompletableFuture<List<String>> getNarratorsAsync() {
+        return CompletableFuture.supplyAsync(this::getNarrators);
+    }
+
+    /**
+     * 複数の音声を一括で合成する。
+     * <p>
+     *     返されたパブリッシャーを購読すると、購読者が要求した数の範囲で合成を開始し、
+     *     指定した順序で結果を通知する。要求はその都度イテレータから取り出されるため、
+     *     すべての要求をあらかじめ生成しておく必要はない。
+     * </p>
+     * <p>
+     *     それぞれの要求には出力先を設定しておくこと。
+     *     同じ内容の要求は一度だけ合成し、ほかの要求の出力先には音声ファイルをコピーする。
+     *     合成に失敗した要求は購読を終了せずに失敗した結果として通知する。
+     * </p>
+     * <p>
+     *     合成の同時実行数は{@link VPProcessScheduler#getDefault()}の許可数に従う。
+     * </p>
+     * @param requests 合成する音声のビルダー
+     * @param order 結果を通知する順序
+     * @return 合成した結果のパブリッシャー
+     */
+    default Flow.Publisher<SynthesisResult> synthesize(Iterable<VPProcessBuilder> requests, SynthesisOrder order) {
+        return new SynthesisBatch(requests, order, VPProcessScheduler.getDefault());
+    }
+
+    /**
+     * 複数の音声を一括で合成し、合成が完了した順に結果を通知する。
+     * @param requests 合成する音声のビルダー
+     * @return 合成した結果のパブリッシャー
+     * @see #synthesize(Iterable, SynthesisOrder)
+     */
+    default Flow.Publisher<SynthesisResult> synthesize(Iterable<VPProcessBuilder> requests) {
+        return synthesize(requests, SynthesisOrder.COMPLETION);
+    }
 
     /**
      * インスタンスの生成
@@ -60,4 +134,16 @@ public interface VPClient {
         return new DefaultVPClient(executable);
     }
 
+    /**
+     * カタログを指定してインスタンスを生成する
+     * <p>
+     *     VOICEPEAKの実行にはカタログの実行可能コマンドを使用する。
+     * </p>
+     * @param catalog ナレーター及び感情の一覧を保持するカタログ
+     * @return インスタンス
+     */
+    static VPClient create(VPCatalog catalog) {
+        return new DefaultVPClient(catalog);
+    }
+
 }
@@ -16,8 +16,19 @@
 
 package io.github.k7t3.voicepeakcw4j;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 /**
  * VOICEPEAK実行ファイル
@@ -30,11 +41,23 @@ import java.util.List;
  *     {@link VPExecutable#VPExecutable()}コンストラクタを使用して
  *     インスタンス化できる。
  * </p>
+ * <p>
+ *     実行ファイルごとに環境変数と作業ディレクトリを設定できる。
+ *     {@link #withIsolatedHome(Path)}でホームディレクトリを分けると、
+ *     同じホストで複数のVOICEPEAKを互いの設定ファイルを共有せずに実行できる。
+ * </p>
  */
 public class VPExecutable {
 
     private final String executable;
 
+    /**
+     * プロセスの環境変数に上書きする値。nullの値は環境変数から削除する
+     */
+    private final Map<String, String> environment = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    private volatile Path workingDirectory;
+
     /**
      * VOICEPEAKコマンドの実行可能インスタンスを生成するコンストラクタ。
      * <p>
@@ -66,6 +89,169 @@ public class VPExecutable {
         commands.add(executable);
     }
 
+    /**
+     * VOICEPEAKプロセスの環境変数を設定する。
+     * <p>
+     *     JVMの環境変数を引き継いだうえで上書きする。値にnullを指定したときは環境変数を削除する。
+     * </p>
+     * @param name 環境変数の名前
+     * @param value 環境変数の値、あるいは削除するときはnull
+     * @return このインスタンス
+     */
+    public VPExecutable withEnvironment(String name, String value) {
+        if (name == null || name.isEmpty())
+            throw new IllegalArgumentException("name is null or empty");
+        environment.put(name, value);
+        return this;
+    }
+
+    /**
+     * VOICEPEAKプロセスの作業ディレクトリを設定する。
+     * <p>
+     *     出力先を指定しないときにVOICEPEAKが音声ファイルを出力するディレクトリとなる。
+     * </p>
+     * @param workingDirectory 作業ディレクトリ、あるいはJVMの作業ディレクトリを引き継ぐときはnull
+     * @return このインスタンス
+     */
+    public VPExecutable withWorkingDirectory(Path workingDirectory) {
+        this.workingDirectory = workingDirectory == null ? null : workingDirectory.toAbsolutePath();
+        return this;
+    }
+
+    /**
+     * VOICEPEAKプロセスのホームディレクトリを分離する。
+     * <p>
+     *     ホームディレクトリ及びユーザーごとの設定、データ、キャッシュのディレクトリを示す環境変数
+     *     (<code>HOME</code>、<code>USERPROFILE</code>、<code>APPDATA</code>、
+     *     <code>LOCALAPPDATA</code>、<code>XDG_*</code>)を指定したディレクトリ配下に設定する。
+     *     作業ディレクトリを設定していないときは作業ディレクトリも指定したディレクトリとする。
+     * </p>
+     * <p>
+     *     ホームディレクトリが存在しないときは作成する。
+     *     分離したホームディレクトリではVOICEPEAKのユーザー設定が初期状態となる点に注意すること。
+     * </p>
+     * @param home ホームディレクトリ
+     * @return このインスタンス
+     * @throws UncheckedIOException ホームディレクトリの作成に失敗したとき
+     */
+    public VPExecutable withIsolatedHome(Path home) {
+        if (home == null)
+            throw new IllegalArgumentException("home is null");
+        var absolute = home.toAbsolutePath();
+        try {
+            Files.createDirectories(absolute);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        withEnvironment("HOME", absolute.toString());
+        withEnvironment("USERPROFILE", absolute.toString());
+        withEnvironment("APPDATA", absolute.resolve("AppData").resolve("Roaming").toString());
+        withEnvironment("LOCALAPPDATA", absolute.resolve("AppData").resolve("Local").toString());
+        withEnvironment("XDG_CONFIG_HOME", absolute.resolve(".config").toString());
+        withEnvironment("XDG_DATA_HOME", absolute.resolve(".local").resolve("share").toString());
+        withEnvironment("XDG_STATE_HOME", absolute.resolve(".local").resolve("state").toString());
+        withEnvironment("XDG_CACHE_HOME", absolute.resolve(".cache").toString());
+        if (workingDirectory == null) {
+            withWorkingDirectory(absolute);
+        }
+        return this;
+    }
+
+    /**
+     * VOICEPEAKプロセスに上書きする環境変数を返す
+     * @return 上書きする環境変数。削除する環境変数の値はnull
+     */
+    public Map<String, String> getEnvironment() {
+        synchronized (environment) {
+            return Collections.unmodifiableMap(new LinkedHashMap<>(environment));
+        }
+    }
+
+    /**
+     * VOICEPEAKプロセスの作業ディレクトリを返す
+     * @return 作業ディレクトリ、あるいは設定していないときはnull
+     */
+    public Path getWorkingDirectory() {
+        return workingDirectory;
+    }
+
+    /**
+     * VOICEPEAKプロセスを起動する。
+     * <p>
+     *     プロセスビルダーのコマンドにはVOICEPEAKのオプション引数のみを設定しておくこと。
+     *     {@link #fill(List)}で書き込んだコマンドをその前に連結し、
+     *     このインスタンスの環境変数と作業ディレクトリを適用して起動する。
+     * </p>
+     * @param builder オプション引数を設定したプロセスビルダー
+     * @return 起動したプロセス
+     * @throws IOException プロセスの起動に失敗したとき
+     */
+    public Process launch(ProcessBuilder builder) throws IOException {
+        var commands = new ArrayList<String>();
+        fill(commands);
+        commands.addAll(builder.command());
+        builder.command(commands);
+        configure(builder);
+        return builder.start();
+    }
+
+    /**
+     * 環境変数と作業ディレクトリをプロセスビルダーに適用する
+     * @param builder プロセスビルダー
+     */
+    protected void configure(ProcessBuilder builder) {
+        var overlay = getEnvironment();
+        if (!overlay.isEmpty()) {
+            var env = builder.environment();
+            overlay.forEach((name, value) -> {
+                if (value == null) {
+                    env.remove(name);
+                } else {
+                    env.put(name, value);
+                }
+            });
+        }
+
+        var directory = workingDirectory;
+        if (directory != null) {
+            builder.directory(directory.toFile());
+        }
+    }
+
+    /**
+     * VOICEPEAK実行ファイルのパスを返す。
+     * <p>
+     *     実行ファイル名のみを指定したときは環境変数PATHに含まれるディレクトリから検索する。
+     * </p>
+     * @return VOICEPEAK実行ファイルのパス、あるいは見つからないときは空
+     */
+    public Optional<Path> locate() {
+        try {
+            var path = Paths.get(executable);
+            if (path.isAbsolute()) {
+                return Files.isRegularFile(path) ? Optional.of(path) : Optional.empty();
+            }
+        } catch (InvalidPathException e) {
+            return Optional.empty();
+        }
+
+        var paths = System.getenv("PATH");
+        if (paths == null) {
+            return Optional.empty();
+        }
+
+        for (var directory : paths.split(File.pathSeparator)) {
+            try {
+                var path = Paths.get(directory).resolve(executable);
+                if (Files.isRegularFile(path)) {
+                    return Optional.of(path.toAbsolutePath());
+                }
+            } catch (InvalidPathException ignored) {
+            }
+        }
+        return Optional.empty();
+    }
+
     private static String executableName() {
         var os = System.getProperty("os.name", "").toLowerCase();
         if (os.startsWith("win")) {
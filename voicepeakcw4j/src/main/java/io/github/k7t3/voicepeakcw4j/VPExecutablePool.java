@@ -0,0 +1,323 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.k7t3.voicepeakcw4j;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 複数のVOICEPEAK実行ファイルをまとめたプール
+ * <p>
+ *     {@link VPExecutable}を受け付けるすべての箇所で使用でき、
+ *     VOICEPEAKプロセスを起動するたびに実行中のプロセスが最も少ないメンバーで起動する。
+ * </p>
+ * <p>
+ *     起動に失敗したメンバーは一定時間不健全として扱い、ほかのメンバーで起動しなおす。
+ *     起動したプロセスが0以外の終了コードで終了したとき、あるいは最短実行時間より早く終了したときも
+ *     そのメンバーを一定時間不健全として扱う。
+ *     すべてのメンバーが不健全なときは最も早く回復するメンバーで起動を試みる。
+ * </p>
+ * <p>
+ *     VOICEPEAKプロセスの同時実行数は{@link io.github.k7t3.voicepeakcw4j.process.VPProcessScheduler}
+ *     により制限されるため、並列に合成するには同時実行数をプールのメンバー数に合わせること。
+ * </p>
+ * <pre>{@code
+ * var pool = new VPExecutablePool(List.of(
+ *         new VPExecutable(Paths.get("/opt/voicepeak1/voicepeak")),
+ *         new VPExecutable(Paths.get("/opt/voicepeak2/voicepeak"))));
+ * VPProcessScheduler.getDefault().setPermits(pool.size());
+ * var client = VPClient.create(pool);
+ * }</pre>
+ * <p>このクラスはスレッドセーフ</p>
+ */
+public class VPExecutablePool extends VPExecutable {
+
+    private static final System.Logger LOGGER = System.getLogger(VPExecutablePool.class.getName());
+
+    private static final Duration DEFAULT_COOLDOWN = Duration.ofSeconds(30);
+
+    private final List<Member> members;
+
+    private final long cooldownMillis;
+
+    private final long minimumRunNanos;
+
+    /**
+     * 既定の回復時間のプールを生成する。
+     * @param executables プールに含めるVOICEPEAK実行ファイル
+     */
+    public VPExecutablePool(List<? extends VPExecutable> executables) {
+        this(executables, DEFAULT_COOLDOWN);
+    }
+
+    /**
+     * プールを生成する。
+     * @param executables プールに含めるVOICEPEAK実行ファイル
+     * @param cooldown 起動に失敗したメンバーを不健全として扱う時間
+     */
+    public VPExecutablePool(List<? extends VPExecutable> executables, Duration cooldown) {
+        this(executables, cooldown, Duration.ZERO);
+    }
+
+    /**
+     * 最短実行時間を指定してプールを生成する。
+     * <p>
+     *     起動したプロセスが最短実行時間より早く終了したときは、終了コードにかかわらず
+     *     起動直後に異常終了したものとみなしてメンバーを不健全として扱う。
+     *     ゼロのときは終了コードだけで判断する。
+     * </p>
+     * @param executables プールに含めるVOICEPEAK実行ファイル
+     * @param cooldown 起動に失敗したメンバーを不健全として扱う時間
+     * @param minimumRun 正常に起動したとみなすプロセスの最短実行時間
+     */
+    public VPExecutablePool(List<? extends VPExecutable> executables, Duration cooldown, Duration minimumRun) {
+        if (executables == null || executables.isEmpty())
+            throw new IllegalArgumentException("executables is null or empty");
+        if (cooldown == null || cooldown.isNegative())
+            throw new IllegalArgumentException("cooldown is null or negative");
+        if (minimumRun == null || minimumRun.isNegative())
+            throw new IllegalArgumentException("minimumRun is null or negative");
+        this.members = executables.stream().map(Member::new).toList();
+        this.cooldownMillis = cooldown.toMillis();
+        this.minimumRunNanos = minimumRun.toNanos();
+    }
+
+    private static final class Member {
+
+        private final VPExecutable executable;
+
+        private int load = 0;
+        private long launchedCount = 0;
+        private long failureCount = 0;
+        private long unhealthyUntil = 0;
+
+        Member(VPExecutable executable) {
+            this.executable = executable;
+        }
+
+        boolean isHealthy(long now) {
+            return unhealthyUntil <= now;
+        }
+    }
+
+    /**
+     * プールのメンバーの数を返す
+     * @return メンバーの数
+     */
+    public int size() {
+        return members.size();
+    }
+
+    /**
+     * 実行中のプロセスが最も少ない健全なメンバーを選択する
+     */
+    private synchronized Member select(List<Member> excluded) {
+        var now = System.currentTimeMillis();
+        var candidates = members.stream().filter(m -> !excluded.contains(m)).toList();
+        if (candidates.isEmpty()) {
+            return null;
+        }
+
+        var healthy = candidates.stream().filter(m -> m.isHealthy(now)).toList();
+        var comparator = healthy.isEmpty()
+                ? Comparator.<Member>comparingLong(m -> m.unhealthyUntil)
+                : Comparator.<Member>comparingInt(m -> m.load).thenComparingLong(m -> m.launchedCount);
+
+        var member = (healthy.isEmpty() ? candidates : healthy).stream().min(comparator).orElseThrow();
+        member.load++;
+        member.launchedCount++;
+        return member;
+    }
+
+    private synchronized void release(Member member) {
+        member.load--;
+    }
+
+    private synchronized void markFailure(Member member) {
+        member.failureCount++;
+        member.unhealthyUntil = System.currentTimeMillis() + cooldownMillis;
+    }
+
+    private synchronized void markSuccess(Member member) {
+        member.unhealthyUntil = 0;
+    }
+
+    /**
+     * 選択したメンバーでVOICEPEAKプロセスを起動する。
+     * <p>
+     *     起動に失敗したときはまだ試していないメンバーで起動しなおし、
+     *     すべてのメンバーで失敗したときは最初の例外をスローする。
+     * </p>
+     * <p>
+     *     プールに設定した環境変数と作業ディレクトリを適用したうえで、
+     *     メンバーに設定したものを優先する。
+     *     メンバーごとに新しいプロセスビルダーで起動するため、失敗したメンバーに設定した
+     *     環境変数と作業ディレクトリはほかのメンバーに引き継がれない。
+     * </p>
+     * @param builder オプション引数を設定したプロセスビルダー
+     * @return 起動したプロセス
+     * @throws IOException すべてのメンバーでプロセスの起動に失敗したとき
+     */
+    @Override
+    public Process launch(ProcessBuilder builder) throws IOException {
+        configure(builder);
+
+        var tried = new ArrayList<Member>();
+        IOException failure = null;
+
+        Member member;
+        while ((member = select(tried)) != null) {
+            tried.add(member);
+
+            Process process;
+            try {
+                process = member.executable.launch(copy(builder));
+            } catch (IOException e) {
+                LOGGER.log(System.Logger.Level.WARNING, "failed to launch pool member " + members.indexOf(member), e);
+                release(member);
+                markFailure(member);
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+                continue;
+            }
+
+            markSuccess(member);
+            var launched = member;
+            var startedAt = System.nanoTime();
+            process.onExit().whenComplete((p, e) -> {
+                release(launched);
+                if (e != null || isAbnormalExit(process, System.nanoTime() - startedAt)) {
+                    LOGGER.log(System.Logger.Level.WARNING, "pool member " + members.indexOf(launched) + " exited abnormally");
+                    markFailure(launched);
+                }
+            });
+            return process;
+        }
+
+        throw failure;
+    }
+
+    /**
+     * 0以外の終了コードで終了したとき、あるいは最短実行時間より早く終了したときはtrue
+     */
+    private boolean isAbnormalExit(Process process, long elapsedNanos) {
+        if (elapsedNanos < minimumRunNanos) {
+            return true;
+        }
+        try {
+            return process.exitValue() != 0;
+        } catch (IllegalThreadStateException e) {
+            return false;
+        }
+    }
+
+    /**
+     * コマンド、環境変数、作業ディレクトリ及びリダイレクトを複製したプロセスビルダーを返す
+     */
+    private static ProcessBuilder copy(ProcessBuilder builder) {
+        var copied = new ProcessBuilder(new ArrayList<>(builder.command()));
+
+        var environment = copied.environment();
+        environment.clear();
+        environment.putAll(builder.environment());
+
+        return copied.directory(builder.directory())
+                .redirectInput(builder.redirectInput())
+                .redirectOutput(builder.redirectOutput())
+                .redirectError(builder.redirectError())
+                .redirectErrorStream(builder.redirectErrorStream());
+    }
+
+    /**
+     * 現在実行中のプロセスが最も少ない健全なメンバーのコマンドを書き込む。
+     * <p>
+     *     ワーカーで実行するメンバーなど、このホストで実行するコマンドを書き込まないメンバーは選択しない。
+     *     そのようなメンバーしかないときは何も書き込まない。
+     * </p>
+     * <p>
+     *     このメソッドで書き込んだコマンドで起動したプロセスはメンバーの負荷として数えられない。
+     *     プロセスを起動するときは{@link #launch(ProcessBuilder)}を使用すること。
+     * </p>
+     * @param commands VOICEPEAKを実行するコマンドのリスト
+     */
+    @Override
+    public void fill(List<String> commands) {
+        List<Member> candidates;
+        synchronized (this) {
+            var now = System.currentTimeMillis();
+            candidates = members.stream()
+                    .sorted(Comparator.<Member, Boolean>comparing(m -> !m.isHealthy(now))
+                            .thenComparingInt(m -> m.load)
+                            .thenComparingLong(m -> m.launchedCount))
+                    .toList();
+        }
+
+        for (var member : candidates) {
+            var filled = new ArrayList<String>();
+            member.executable.fill(filled);
+            if (!filled.isEmpty()) {
+                commands.addAll(filled);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 先頭のメンバーのVOICEPEAK実行ファイルのパスを返す。
+     * @return VOICEPEAK実行ファイルのパス、あるいは見つからないときは空
+     */
+    @Override
+    public Optional<Path> locate() {
+        return members.getFirst().executable.locate();
+    }
+
+    /**
+     * メンバーごとの状態を返す
+     * @return プールに追加した順のメンバーの状態
+     */
+    public synchronized List<MemberStatus> getStatus() {
+        var now = System.currentTimeMillis();
+        return members.stream()
+                .map(m -> new MemberStatus(m.executable, m.load, m.isHealthy(now), m.launchedCount, m.failureCount))
+                .toList();
+    }
+
+    /**
+     * プールのメンバーの状態
+     * @param executable VOICEPEAK実行ファイル
+     * @param load 実行中のプロセスの数
+     * @param healthy 健全なときはtrue
+     * @param launchedCount 起動を試みた回数
+     * @param failureCount 起動に失敗した、あるいは異常終了した回数
+     */
+    public record MemberStatus(
+            VPExecutable executable,
+            int load,
+            boolean healthy,
+            long launchedCount,
+            long failureCount
+    ) {}
+
+}
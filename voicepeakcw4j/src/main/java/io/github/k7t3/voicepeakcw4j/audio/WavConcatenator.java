@@ -0,0 +1,103 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.k7t3.voicepeakcw4j.audio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * 複数のWAVファイルを一つのWAVファイルに連結するクラス
+ * <p>
+ *     音声データは{@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}で
+ *     ファイルからファイルへ直接転送するため、長時間の音声を連結してもヒープに保持しない。
+ *     ヘッダはサイズを0として先に書き込み、すべての音声データを書き込んだあとで書き換える。
+ * </p>
+ */
+public class WavConcatenator {
+
+    private WavConcatenator() {
+    }
+
+    /**
+     * WAVファイルを指定した順に連結する。
+     * <p>
+     *     すべてのファイルは同じ形式でなければならない。
+     *     出力先のファイルが存在するときは上書きする。
+     * </p>
+     * @param inputs 連結するWAVファイル
+     * @param output 出力先
+     * @return 出力したファイルのヘッダ
+     * @throws IOException 読み込みあるいは書き込みに失敗したとき、あるいは形式が異なるファイルが含まれるとき
+     * @throws IllegalArgumentException 連結するファイルが空のとき
+     */
+    public static WavHeader concatenate(List<Path> inputs, Path output) throws IOException {
+        if (inputs == null || inputs.isEmpty())
+            throw new IllegalArgumentException("inputs is empty");
+        if (output == null)
+            throw new IllegalArgumentException("output is null");
+
+        try (var out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            WavHeader format = null;
+            long position = WavHeader.CANONICAL_SIZE;
+
+            for (var input : inputs) {
+                try (var in = FileChannel.open(input, StandardOpenOption.READ)) {
+                    var header = WavHeader.read(in);
+                    if (format == null) {
+                        format = header;
+                        // サイズが確定するまでは0としておく
+                        format.withData(WavHeader.CANONICAL_SIZE, 0).write(out);
+                    } else if (!format.isSameFormat(header)) {
+                        throw new IOException("audio format mismatch " + input);
+                    }
+
+                    position += transfer(in, header.dataOffset(), header.dataSize(), out, position);
+                }
+            }
+
+            var dataSize = position - WavHeader.CANONICAL_SIZE;
+
+            // RIFFのチャンクは偶数バイトに揃える
+            if ((dataSize & 1) != 0) {
+                out.write(ByteBuffer.allocate(1), position);
+            }
+
+            var header = format.withData(WavHeader.CANONICAL_SIZE, dataSize);
+            header.write(out);
+            return header;
+        }
+    }
+
+    private static long transfer(FileChannel in, long offset, long size, FileChannel out, long position) throws IOException {
+        long transferred = 0;
+        while (transferred < size) {
+            // 書き込み位置を指定するため、出力先の位置を合わせてから転送する
+            out.position(position + transferred);
+            var count = in.transferTo(offset + transferred, size - transferred, out);
+            if (count <= 0) {
+                throw new IOException("unexpected end of audio data");
+            }
+            transferred += count;
+        }
+        return transferred;
+    }
+
+}
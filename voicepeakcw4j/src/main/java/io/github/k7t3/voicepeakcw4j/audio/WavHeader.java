@@ -0,0 +1,228 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.k7t3.voicepeakcw4j.audio;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * WAVファイルのヘッダ
+ * <p>
+ *     fmtチャンクの内容とdataチャンクの位置を表す。
+ *     音声データは読み込まないため、大きなファイルでもヘッダのみを読み込む。
+ * </p>
+ * @param formatTag 音声の形式(1: PCM, 3: IEEE float)
+ * @param channels チャンネル数
+ * @param sampleRate サンプリング周波数
+ * @param byteRate 1秒あたりのバイト数
+ * @param blockAlign 1フレームのバイト数
+ * @param bitsPerSample 1サンプルのビット数
+ * @param dataOffset 音声データの開始位置
+ * @param dataSize 音声データのサイズ(バイト)
+ */
+public record WavHeader(
+        int formatTag,
+        int channels,
+        int sampleRate,
+        int byteRate,
+        int blockAlign,
+        int bitsPerSample,
+        long dataOffset,
+        long dataSize
+) {
+
+    /**
+     * PCMの形式
+     */
+    public static final int FORMAT_PCM = 1;
+
+    /**
+     * IEEE floatの形式
+     */
+    public static final int FORMAT_IEEE_FLOAT = 3;
+
+    /**
+     * {@link #write(FileChannel)}が書き込むヘッダのサイズ
+     */
+    public static final int CANONICAL_SIZE = 44;
+
+    /**
+     * 書き込み中のWAVヘッダに設定されるサイズの仮の値
+     */
+    private static final long UNKNOWN_SIZE = 0xFFFFFFFFL;
+
+    private static final int MAX_FORMAT_SIZE = 1024;
+
+    /**
+     * 音声の形式が同じかを返す
+     * @param other 比較するヘッダ
+     * @return 形式、チャンネル数、サンプリング周波数、サンプルのビット数が同じときはtrue
+     */
+    public boolean isSameFormat(WavHeader other) {
+        return formatTag == other.formatTag
+                && channels == other.channels
+                && sampleRate == other.sampleRate
+                && blockAlign == other.blockAlign
+                && bitsPerSample == other.bitsPerSample;
+    }
+
+    /**
+     * 音声データのフレーム数を返す
+     * @return フレーム数
+     */
+    public long frameCount() {
+        return blockAlign == 0 ? 0 : dataSize / blockAlign;
+    }
+
+    /**
+     * 音声データのサイズを変更したヘッダを返す
+     * @param dataOffset 音声データの開始位置
+     * @param dataSize 音声データのサイズ(バイト)
+     * @return 新しいヘッダ
+     */
+    public WavHeader withData(long dataOffset, long dataSize) {
+        return new WavHeader(formatTag, channels, sampleRate, byteRate, blockAlign, bitsPerSample, dataOffset, dataSize);
+    }
+
+    /**
+     * WAVファイルのヘッダを読み込む
+     * @param file WAVファイル
+     * @return ヘッダ
+     * @throws IOException 読み込みに失敗したとき、あるいはWAVファイルでないとき
+     */
+    public static WavHeader read(Path file) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return read(channel);
+        }
+    }
+
+    /**
+     * ファイルの先頭からWAVファイルのヘッダを読み込む。
+     * <p>
+     *     dataチャンクのサイズが書き込みの途中の値(0あるいは0xFFFFFFFF)のとき、
+     *     あるいはファイルの終端を超えるときはファイルの終端までを音声データとする。
+     * </p>
+     * @param channel WAVファイルのチャネル
+     * @return ヘッダ
+     * @throws IOException 読み込みに失敗したとき、あるいはWAVファイルでないとき
+     */
+    public static WavHeader read(FileChannel channel) throws IOException {
+        var riff = readFully(channel, 0, 12);
+        if (!readId(riff).equals("RIFF")) {
+            throw new IOException("not a RIFF file");
+        }
+        riff.getInt();
+        if (!readId(riff).equals("WAVE")) {
+            throw new IOException("not a WAVE file");
+        }
+
+        WavHeader format = null;
+        long position = 12;
+        while (true) {
+            var chunk = readFully(channel, position, 8);
+            var id = readId(chunk);
+            var size = Integer.toUnsignedLong(chunk.getInt());
+            position += 8;
+
+            if (id.equals("data")) {
+                if (format == null) {
+                    throw new IOException("fmt chunk not found");
+                }
+                var remaining = channel.size() - position;
+                if (size == 0 || size == UNKNOWN_SIZE || remaining < size) {
+                    size = remaining;
+                }
+                return format.withData(position, size);
+            }
+
+            if (id.equals("fmt ")) {
+                if (size < 16 || MAX_FORMAT_SIZE < size) {
+                    throw new IOException("invalid fmt chunk size " + size);
+                }
+                var fmt = readFully(channel, position, 16);
+                format = new WavHeader(
+                        Short.toUnsignedInt(fmt.getShort()),
+                        Short.toUnsignedInt(fmt.getShort()),
+                        fmt.getInt(),
+                        fmt.getInt(),
+                        Short.toUnsignedInt(fmt.getShort()),
+                        Short.toUnsignedInt(fmt.getShort()),
+                        -1,
+                        0);
+            }
+
+            // チャンクは偶数バイトに揃えられる
+            position += size + (size & 1);
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int size) throws IOException {
+        var buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("unexpected end of header");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static String readId(ByteBuffer buffer) {
+        var id = new byte[4];
+        buffer.get(id);
+        return new String(id, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * 44バイトの標準的なヘッダをチャネルの先頭に書き込む。
+     * <p>
+     *     音声データはヘッダの直後に配置されるものとして、{@link #dataSize()}からサイズを計算する。
+     * </p>
+     * @param channel 書き込むチャネル
+     * @throws IOException 書き込みに失敗したとき、あるいは音声データが4GBを超えるとき
+     */
+    public void write(FileChannel channel) throws IOException {
+        var riffSize = CANONICAL_SIZE - 8 + dataSize + (dataSize & 1);
+        if (UNKNOWN_SIZE < riffSize) {
+            throw new IOException("too large audio data " + dataSize);
+        }
+
+        var buffer = ByteBuffer.allocate(CANONICAL_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put("RIFF".getBytes(StandardCharsets.US_ASCII)).putInt((int) riffSize)
+                .put("WAVE".getBytes(StandardCharsets.US_ASCII))
+                .put("fmt ".getBytes(StandardCharsets.US_ASCII)).putInt(16)
+                .putShort((short) formatTag)
+                .putShort((short) channels)
+                .putInt(sampleRate)
+                .putInt(byteRate)
+                .putShort((short) blockAlign)
+                .putShort((short) bitsPerSample)
+                .put("data".getBytes(StandardCharsets.US_ASCII)).putInt((int) dataSize);
+        buffer.flip();
+
+        var position = 0L;
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.k7t3.voicepeakcw4j.cache;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * VOICEPEAKで合成した音声ファイルをディスクに保持するキャッシュ
+ * <p>
+ *     ナレーター、テキスト、感情、ピッチ、スピードが同じ合成結果は同じ音声になるため、
+ *     それらのオプションから生成したキーに対応する音声ファイルを保存しておき、
+ *     再度同じ合成が要求されたときはVOICEPEAKを実行せずに保存した音声ファイルを返す。
+ * </p>
+ * <p>
+ *     キャッシュの合計サイズが上限を超えたときは最も長く参照されていない音声ファイルから削除する。
+ *     参照順は音声ファイルの更新日時として記録されるため、同じディレクトリを指定すれば
+ *     アプリケーションを再起動しても引き継がれる。
+ * </p>
+ * <p>このクラスはスレッドセーフ</p>
+ */
+public class SynthesisCache {
+
+    private static final System.Logger LOGGER = System.getLogger(SynthesisCache.class.getName());
+
+    private static final String EXTENSION = ".wav";
+
+    private final Path directory;
+
+    private final long maxBytes;
+
+    /**
+     * キーとファイルサイズ。アクセス順に並ぶ
+     */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long currentBytes = 0;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * キャッシュを生成する。
+     * <p>
+     *     ディレクトリに保存済みの音声ファイルがあるときはそれらを読み込む。
+     * </p>
+     * @param directory 音声ファイルを保存するディレクトリ
+     * @param maxBytes キャッシュの合計サイズの上限(バイト)
+     * @throws IllegalArgumentException 上限が正の値でないとき
+     * @throws UncheckedIOException ディレクトリの読み込みに失敗したとき
+     */
+    public SynthesisCache(Path directory, long maxBytes) {
+        if (directory == null)
+            throw new IllegalArgumentException("directory is null");
+        if (maxBytes <= 0)
+            throw new IllegalArgumentException("maxBytes must be positive");
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+
+        try {
+            Files.createDirectories(directory);
+            load();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private record StoredFile(String key, long size, FileTime lastModified) {}
+
+    private void load() throws IOException {
+        List<StoredFile> files;
+        try (var stream = Files.list(directory)) {
+            files = stream
+                    .filter(p -> p.getFileName().toString().endsWith(EXTENSION))
+                    .map(this::toStoredFile)
+                    .sorted(Comparator.comparing(StoredFile::lastModified))
+                    .toList();
+        }
+
+        synchronized (this) {
+            for (var file : files) {
+                entries.put(file.key(), file.size());
+                currentBytes += file.size();
+            }
+            evict();
+        }
+        LOGGER.log(System.Logger.Level.DEBUG, "loaded cache entries = " + files.size());
+    }
+
+    private StoredFile toStoredFile(Path path) {
+        var name = path.getFileName().toString();
+        var key = name.substring(0, name.length() - EXTENSION.length());
+        try {
+            return new StoredFile(key, Files.size(path), Files.getLastModifiedTime(path));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path resolve(String key) {
+        return directory.resolve(key + EXTENSION);
+    }
+
+    /**
+     * キーに対応する音声ファイルを出力先にコピーする。
+     * <p>
+     *     コピーはロックの外で行うため、ほかの合成結果の参照や保存を待たせない。
+     * </p>
+     * @param key 合成結果のキー
+     * @param target 音声ファイルの出力先
+     * @return キャッシュに存在し、コピーしたときはtrue
+     */
+    public boolean restore(String key, Path target) {
+        synchronized (this) {
+            // getで参照順を更新する
+            if (entries.get(key) == null) {
+                missCount.incrementAndGet();
+                return false;
+            }
+        }
+
+        var file = resolve(key);
+        try {
+            Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING);
+            // 参照順を永続化する
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (NoSuchFileException e) {
+            // 外部から、あるいはコピーしている間に削除されたとき
+            synchronized (this) {
+                if (!Files.exists(file)) {
+                    var size = entries.remove(key);
+                    if (size != null) {
+                        currentBytes -= size;
+                    }
+                }
+            }
+            missCount.incrementAndGet();
+            return false;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        hitCount.incrementAndGet();
+        LOGGER.log(System.Logger.Level.DEBUG, "cache hit " + key);
+        return true;
+    }
+
+    /**
+     * 合成した音声ファイルをキャッシュに保存する。
+     * <p>
+     *     音声ファイルが単体で上限を超えるときは保存しない。
+     *     音声ファイルはロックの外で一時ファイルにコピーし、ロックしている間は移動と記録のみを行う。
+     * </p>
+     * @param key 合成結果のキー
+     * @param source 合成した音声ファイル
+     * @throws UncheckedIOException 音声ファイルの保存に失敗したとき
+     */
+    public void store(String key, Path source) {
+        try {
+            var size = Files.size(source);
+            if (maxBytes < size) {
+                LOGGER.log(System.Logger.Level.DEBUG, "too large to cache " + source);
+                return;
+            }
+
+            // 書き込み途中のファイルを参照しないように一時ファイルから移動する
+            var temp = Files.createTempFile(directory, key, ".tmp");
+            try {
+                Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+                synchronized (this) {
+                    Files.move(temp, resolve(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+                    var previous = entries.put(key, size);
+                    if (previous != null) {
+                        currentBytes -= previous;
+                    }
+                    currentBytes += size;
+                    evict();
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void evict() {
+        var iterator = entries.entrySet().iterator();
+        while (maxBytes < currentBytes && iterator.hasNext()) {
+            var entry = iterator.next();
+            delete(entry.getKey());
+            currentBytes -= entry.getValue();
+            iterator.remove();
+            LOGGER.log(System.Logger.Level.DEBUG, "evicted cache " + entry.getKey());
+        }
+    }
+
+    private void delete(String key) {
+        try {
+            Files.deleteIfExists(resolve(key));
+        } catch (IOException e) {
+            LOGGER.log(System.Logger.Level.WARNING, "failed to delete cache " + key, e);
+        }
+    }
+
+    /**
+     * 保存しているすべての音声ファイルを削除する。
+     * <p>ヒット数及びミス数はリセットしない</p>
+     */
+    public synchronized void clear() {
+        entries.keySet().forEach(this::delete);
+        entries.clear();
+        currentBytes = 0;
+    }
+
+    /**
+     * キャッシュに存在した回数を返す
+     * @return ヒット数
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * キャッシュに存在しなかった回数を返す
+     * @return ミス数
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * 保存している音声ファイルの数を返す
+     * @return 音声ファイルの数
+     */
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * 保存している音声ファイルの合計サイズを返す
+     * @return 合計サイズ(バイト)
+     */
+    public synchronized long getSize() {
+        return currentBytes;
+    }
+
+    /**
+     * キャッシュの合計サイズの上限を返す
+     * @return 上限(バイト)
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * VOICEPEAKのコマンドライン引数から合成結果のキーを生成する。
+     * <p>
+     *     同じ合成結果になる引数は同じ順序で渡すこと。
+     * </p>
+     * @param arguments 合成結果に影響するコマンドライン引数
+     * @return キー
+     */
+    public static String createKey(List<String> arguments) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            for (var argument : arguments) {
+                digest.update(argument.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.k7t3.voicepeakcw4j.exception;
+
+import java.util.List;
+
+/**
+ * VOICEPEAKコマンドラインが0以外の終了ステータスで終了したときの例外
+ * <p>
+ *     エラー出力の内容から分類したエラーの種類を持つ
+ * </p>
+ */
+public class VPCommandException extends VPExecutionException {
+
+    private final int status;
+
+    private final VPErrorType errorType;
+
+    private final List<String> errorOutput;
+
+    /**
+     * 例外インスタンスを生成する
+     * @param status 終了ステータス
+     * @param errorOutput エラー出力の各行
+     */
+    public VPCommandException(int status, List<String> errorOutput) {
+        super("exit status %d: %s".formatted(status, String.join(" ", errorOutput)));
+        this.status = status;
+        this.errorOutput = List.copyOf(errorOutput);
+        this.errorType = VPErrorType.classify(this.errorOutput);
+    }
+
+    /**
+     * 終了ステータスを返す
+     * @return 終了ステータス
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * エラー出力から分類したエラーの種類を返す
+     * @return エラーの種類
+     */
+    public VPErrorType getErrorType() {
+        return errorType;
+    }
+
+    /**
+     * エラー出力の各行を返す
+     * @return エラー出力
+     */
+    public List<String> getErrorOutput() {
+        return errorOutput;
+    }
+
+}
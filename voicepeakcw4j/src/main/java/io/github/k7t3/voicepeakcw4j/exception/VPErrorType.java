@@ -0,0 +1,110 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.k7t3.voicepeakcw4j.exception;
+
+import java.util.List;
+
+/**
+ * VOICEPEAKコマンドラインのエラー出力から分類したエラーの種類
+ */
+public enum VPErrorType {
+
+    /**
+     * 同時に実行できるインスタンス数の上限に達している
+     * <p>
+     *     <code>In this version, up to 1 command line instance can be executed at same time.</code>
+     * </p>
+     * <p>
+     *     他のインスタンスが終了すると成功する可能性があるため一時的なエラーとみなす
+     * </p>
+     */
+    INSTANCE_LIMIT(true),
+
+    /**
+     * 一度に処理できる文字数の上限を超えている
+     * <p>
+     *     <code>In this version, the character limit for a single run is 140 characters, but the input string contains XXX characters.</code>
+     * </p>
+     */
+    CHARACTER_LIMIT(false),
+
+    /**
+     * 読み上げるテキストが指定されていない
+     * <p>
+     *     <code>Please specify text to say</code>
+     * </p>
+     */
+    MISSING_TEXT(false),
+
+    /**
+     * VOICEPEAKの内部エラー
+     * <p>
+     *     <code>===== BEGIN BUG REPORT =====</code>
+     * </p>
+     * <p>
+     *     未対応のナレーターや感情を指定したときにも出力されるため一時的なエラーとはみなさない
+     * </p>
+     */
+    INTERNAL_ERROR(false),
+
+    /**
+     * 分類できないエラー
+     */
+    UNKNOWN(false);
+
+    private final boolean transientError;
+
+    VPErrorType(boolean transientError) {
+        this.transientError = transientError;
+    }
+
+    /**
+     * 再実行すると成功する可能性がある一時的なエラーであるかを返す
+     * @return 一時的なエラーのときはtrue
+     */
+    public boolean isTransient() {
+        return transientError;
+    }
+
+    /**
+     * エラー出力の内容からエラーの種類を分類する
+     * @param errorOutput エラー出力の各行
+     * @return エラーの種類
+     * @throws IllegalArgumentException エラー出力がnullのとき
+     */
+    public static VPErrorType classify(List<String> errorOutput) {
+        if (errorOutput == null)
+            throw new IllegalArgumentException("errorOutput is null");
+
+        for (var line : errorOutput) {
+            if (line.contains("command line instance can be executed")) {
+                return INSTANCE_LIMIT;
+            }
+            if (line.contains("character limit")) {
+                return CHARACTER_LIMIT;
+            }
+            if (line.contains("specify text to say")) {
+                return MISSING_TEXT;
+            }
+            if (line.contains("BUG REPORT") || line.contains("Internal BUG")) {
+                return INTERNAL_ERROR;
+            }
+        }
+        return UNKNOWN;
+    }
+
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.k7t3.voicepeakcw4j.exception;
+
+import java.time.Duration;
+
+/**
+ * VOICEPEAKコマンドラインの実行が制限時間内に終了しなかったときの例外
+ */
+public class VPTimeoutException extends VPExecutionException {
+
+    private final Duration timeout;
+
+    /**
+     * 例外インスタンスを生成する
+     * @param timeout 超過した制限時間
+     */
+    public VPTimeoutException(Duration timeout) {
+        super("process timed out after " + timeout.toMillis() + " ms");
+        this.timeout = timeout;
+    }
+
+    /**
+     * 超過した制限時間を返す
+     * @return 制限時間
+     */
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+}
@@ -16,9 +16,9 @@
 
 package io.github.k7t3.voicepeakcw4j.option;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 
 /**
@@ -39,7 +39,8 @@ public class EmotionOption implements Option {
             throw new IllegalArgumentException("emotions is empty");
         if (emotions.values().stream().anyMatch(v -> v < 0 || 100 < v))
             throw new IllegalArgumentException("contains unexpected emotion value");
-        this.emotions = new HashMap<>(emotions);
+        // 同じ感情の組み合わせが常に同じ引数になるように感情名の順に並べる
+        this.emotions = new TreeMap<>(emotions);
     }
 
     @Override
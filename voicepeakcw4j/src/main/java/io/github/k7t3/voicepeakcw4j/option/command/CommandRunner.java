@@ -17,18 +17,28 @@
 package io.github.k7t3.voicepeakcw4j.option.command;
 
 import io.github.k7t3.voicepeakcw4j.VPExecutable;
+import io.github.k7t3.voicepeakcw4j.exception.VPExecutionException;
+import io.github.k7t3.voicepeakcw4j.process.OutputBuffer;
+import io.github.k7t3.voicepeakcw4j.process.OverflowPolicy;
+import io.github.k7t3.voicepeakcw4j.process.RetryPolicy;
+import io.github.k7t3.voicepeakcw4j.process.VPProcessScheduler;
 import io.github.k7t3.voicepeakcw4j.process.impl.DefaultVPProcess;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * VOICEPEAKの実行可能なコマンドラインオプションの定義
  */
 public class CommandRunner {
 
+    /**
+     * 一覧の出力を欠かさないよう、既定の設定に関わらず行を破棄しないバッファ
+     */
+    private static final OutputBuffer OUTPUT_BUFFER = OutputBuffer.of(256, OverflowPolicy.BLOCK);
+
     private final VPExecutable executable;
 
     private final Command command;
@@ -44,30 +54,40 @@ public class CommandRunner {
     }
 
     /**
-     * コマンドを実行する。
-     * <p>標準出力の内容を返す</p>
-     * @return 標準出力
+     * コマンドを非同期に実行する。
+     * <p>
+     *     VOICEPEAKプロセスが終了すると標準出力の内容で完了する。
+     *     終了ステータスが0でないときはエラー出力の内容を含む{@link io.github.k7t3.voicepeakcw4j.exception.VPCommandException}で完了する。
+     * </p>
+     * @return 標準出力の内容で完了するFuture
      */
-    public List<String> run() {
+    public CompletableFuture<List<String>> runAsync() {
         var commands = new ArrayList<String>();
-        executable.fill(commands);
         command.fill(commands);
 
-        var sub = new CommandSubscriber();
+        var out = new CommandSubscriber();
 
-        var process = new DefaultVPProcess(new ProcessBuilder(commands));
-        process.getStandardOut().subscribe(sub);
+        var process = new DefaultVPProcess(executable, commands, VPProcessScheduler.getDefault(), null, RetryPolicy.DEFAULT, OUTPUT_BUFFER);
+        process.getStandardOut().subscribe(out);
 
+        // 標準出力をすべて受け取ってから完了する
+        return process.execute().thenCompose(v -> out.getCompletion());
+    }
+
+    /**
+     * コマンドを実行する。
+     * <p>標準出力の内容を返す</p>
+     * @return 標準出力
+     * @throws VPExecutionException VOICEPEAKの実行に失敗したとき、あるいは終了ステータスが0でないとき
+     */
+    public List<String> run() {
         try {
-            return process.start().thenApply(status -> {
-                if (status == 0) {
-                    return Collections.unmodifiableList(sub.getOutputs());
-                } else {
-                    return List.<String>of();
-                }
-            }).get();
-        } catch (InterruptedException | ExecutionException e) {
-            throw new RuntimeException(e);
+            return runAsync().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new VPExecutionException(e);
         }
     }
 
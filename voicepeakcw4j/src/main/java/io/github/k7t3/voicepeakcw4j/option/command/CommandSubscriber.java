@@ -21,11 +21,14 @@ import io.github.k7t3.voicepeakcw4j.Subscriber;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 class CommandSubscriber implements Subscriber<String> {
 
     private final List<String> outputs = Collections.synchronizedList(new ArrayList<>());
 
+    private final CompletableFuture<List<String>> completion = new CompletableFuture<>();
+
     @Override
     public void onNext(String item) {
         var output = (item == null) ? "" : item.trim();
@@ -34,8 +37,26 @@ class CommandSubscriber implements Subscriber<String> {
         outputs.add(output);
     }
 
+    @Override
+    public void onComplete() {
+        completion.complete(List.copyOf(outputs));
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        completion.completeExceptionally(throwable);
+    }
+
     public List<String> getOutputs() {
         return outputs;
     }
 
+    /**
+     * 購読が完了すると出力の内容で完了するFutureを返す
+     * @return 出力の内容で完了するFuture
+     */
+    public CompletableFuture<List<String>> getCompletion() {
+        return completion;
+    }
+
 }
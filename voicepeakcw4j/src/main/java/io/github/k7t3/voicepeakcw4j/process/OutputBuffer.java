@@ -0,0 +1,66 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.k7t3.voicepeakcw4j.process;
+
+/**
+ * VOICEPEAKプロセスの標準出力及びエラー出力を購読者ごとにバッファする設定
+ * <p>
+ *     出力の読み込みは購読者への配信とは別に行われ、
+ *     バッファがあふれたときは{@link OverflowPolicy}に従う。
+ * </p>
+ * @param capacity 購読者ごとのバッファの大きさ(行数)
+ * @param overflowPolicy バッファがあふれたときの振る舞い
+ * @param spillCapacity {@link OverflowPolicy#SPILL}のときに退避するリングバッファの大きさ(行数)
+ */
+public record OutputBuffer(int capacity, OverflowPolicy overflowPolicy, int spillCapacity) {
+
+    /**
+     * 256行を超えると最も古い行を破棄する既定の設定。
+     * <p>
+     *     購読者が遅くてもVOICEPEAKプロセスの合成は停止しない。
+     *     ナレーターの一覧のように欠けてはならない出力を受け取るときは{@link OverflowPolicy#BLOCK}を指定すること。
+     * </p>
+     */
+    public static final OutputBuffer DEFAULT = new OutputBuffer(256, OverflowPolicy.DROP_OLDEST, 0);
+
+    /**
+     * コンストラクタ
+     * @throws IllegalArgumentException バッファの大きさが1未満のとき、振る舞いがnullのとき、
+     *                                  {@link OverflowPolicy#SPILL}でリングバッファの大きさが1未満のとき
+     */
+    public OutputBuffer {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be greater than 0");
+        if (overflowPolicy == null)
+            throw new IllegalArgumentException("overflowPolicy is null");
+        if (overflowPolicy == OverflowPolicy.SPILL && spillCapacity < 1)
+            throw new IllegalArgumentException("spillCapacity must be greater than 0");
+        if (spillCapacity < 0)
+            throw new IllegalArgumentException("spillCapacity must not be negative");
+    }
+
+    /**
+     * あふれた行を退避しない設定を生成する
+     * @param capacity 購読者ごとのバッファの大きさ(行数)
+     * @param overflowPolicy バッファがあふれたときの振る舞い
+     * @return 設定
+     */
+    public static OutputBuffer of(int capacity, OverflowPolicy overflowPolicy) {
+        return new OutputBuffer(capacity, overflowPolicy, 0);
+    }
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.k7t3.voicepeakcw4j.process;
+
+/**
+ * 購読者が受け取るよりも速くVOICEPEAKプロセスが出力したときの振る舞い
+ */
+public enum OverflowPolicy {
+
+    /**
+     * バッファの最も古い行を破棄して新しい行を追加する
+     */
+    DROP_OLDEST,
+
+    /**
+     * 新しい行を破棄する
+     */
+    DROP_NEWEST,
+
+    /**
+     * バッファに空きができるまで出力の読み込みを停止する。
+     * <p>
+     *     行を破棄しないが、購読者が遅いとVOICEPEAKプロセスの出力が詰まり合成が停止する可能性がある
+     * </p>
+     */
+    BLOCK,
+
+    /**
+     * あふれた行をリングバッファに退避する。
+     * <p>
+     *     リングバッファもあふれたときは退避した最も古い行を破棄するため、
+     *     出力の先頭と末尾が保持される。
+     * </p>
+     */
+    SPILL
+
+}
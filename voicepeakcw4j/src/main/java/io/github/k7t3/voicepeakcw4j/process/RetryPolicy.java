@@ -0,0 +1,102 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.k7t3.voicepeakcw4j.process;
+
+import io.github.k7t3.voicepeakcw4j.exception.VPErrorType;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 一時的なエラーで失敗したVOICEPEAKプロセスを再実行する方針
+ * <p>
+ *     再実行までの待機時間は試行ごとに倍増し、複数のプロセスが同時に再実行しないように
+ *     その半分をランダムに揺らがせる。
+ * </p>
+ * @param maxAttempts 最初の実行を含む最大の試行回数
+ * @param initialBackoff 最初の再実行までの待機時間
+ * @param maxBackoff 再実行までの待機時間の上限
+ * @param retryOn 再実行するエラーの種類
+ */
+public record RetryPolicy(int maxAttempts, Duration initialBackoff, Duration maxBackoff, Set<VPErrorType> retryOn) {
+
+    /**
+     * 一時的なエラーを最大4回まで試行する既定の方針
+     */
+    public static final RetryPolicy DEFAULT = new RetryPolicy(4, Duration.ofMillis(200), Duration.ofSeconds(5), transientTypes());
+
+    /**
+     * 再実行しない方針
+     */
+    public static final RetryPolicy NONE = new RetryPolicy(1, Duration.ZERO, Duration.ZERO, Set.of());
+
+    /**
+     * コンストラクタ
+     * @throws IllegalArgumentException 試行回数が1未満のとき、待機時間がnullあるいは負のとき、
+     *                                  エラーの種類がnullのとき
+     */
+    public RetryPolicy {
+        if (maxAttempts < 1)
+            throw new IllegalArgumentException("maxAttempts must be greater than 0");
+        if (initialBackoff == null || initialBackoff.isNegative())
+            throw new IllegalArgumentException("initialBackoff must not be null or negative");
+        if (maxBackoff == null || maxBackoff.isNegative())
+            throw new IllegalArgumentException("maxBackoff must not be null or negative");
+        if (retryOn == null)
+            throw new IllegalArgumentException("retryOn is null");
+        retryOn = Set.copyOf(retryOn);
+    }
+
+    private static Set<VPErrorType> transientTypes() {
+        var types = EnumSet.noneOf(VPErrorType.class);
+        Arrays.stream(VPErrorType.values()).filter(VPErrorType::isTransient).forEach(types::add);
+        return types;
+    }
+
+    /**
+     * 失敗した試行を再実行するかを返す
+     * @param errorType 失敗したエラーの種類
+     * @param attempt 失敗した試行の回数(1始まり)
+     * @return 再実行するときはtrue
+     */
+    public boolean shouldRetry(VPErrorType errorType, int attempt) {
+        return attempt < maxAttempts && retryOn.contains(errorType);
+    }
+
+    /**
+     * 再実行までの待機時間を返す
+     * @param attempt 失敗した試行の回数(1始まり)
+     * @return 待機時間
+     */
+    public Duration backoff(int attempt) {
+        var exponent = Math.min(Math.max(attempt - 1, 0), 30);
+        var nanos = Math.min(maxBackoff.toNanos(), saturatedShift(initialBackoff.toNanos(), exponent));
+        if (nanos <= 1) {
+            return Duration.ofNanos(nanos);
+        }
+        var half = nanos / 2;
+        return Duration.ofNanos(half + ThreadLocalRandom.current().nextLong(nanos - half + 1));
+    }
+
+    private static long saturatedShift(long value, int exponent) {
+        return value > (Long.MAX_VALUE >> exponent) ? Long.MAX_VALUE : value << exponent;
+    }
+
+}
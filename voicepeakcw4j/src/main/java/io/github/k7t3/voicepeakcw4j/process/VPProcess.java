@@ -16,6 +16,9 @@
 
 package io.github.k7t3.voicepeakcw4j.process;
 
+import io.github.k7t3.voicepeakcw4j.exception.VPCommandException;
+
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Flow;
 
@@ -32,19 +35,54 @@ public interface VPProcess {
      * {@link #getErrorOut()}からメッセージが同時に配信されるため区別できない可能性がある。
      * </p>
      * <p>
-     * コマンドラインの実行に失敗したときは{@link RuntimeException}をスローする。
+     * プロセスは{@link VPProcessScheduler#getDefault()}を経由して起動されるため、
+     * 同時実行数に空きがないときは先に要求されたプロセスが終了するまで起動を待機する。
+     * 起動を待機している間にfutureをキャンセルしたときは起動しない。
+     * 実行中にキャンセルしたときは子孫プロセスを含めて直ちに終了させ、同時実行数を解放する。
+     * </p>
+     * <p>
+     * コマンドラインの実行に失敗したときは{@link io.github.k7t3.voicepeakcw4j.exception.VPExecutionException}で
+     * 例外的に完了する。
      * </p>
      *
      * @return VOICEPEAKコマンドラインの将来的な実行結果を表すfuture
-     * @throws RuntimeException コマンドラインの実行に失敗したとき
      */
     CompletableFuture<Integer> start();
 
+    /**
+     * {@link #start()}と同様にVOICEPEAKコマンドラインを実行し、その将来的な実行結果を表す{@link CompletableFuture}を返す。
+     * <p>
+     *     終了ステータスが0でないときは、エラー出力の内容から分類したエラーの種類を持つ
+     *     {@link VPCommandException}で例外的に完了する。
+     * </p>
+     * <p>
+     *     既定の実装はエラー出力を参照しないため、エラーの種類は
+     *     {@link io.github.k7t3.voicepeakcw4j.exception.VPErrorType#UNKNOWN}になる。
+     * </p>
+     *
+     * @return VOICEPEAKコマンドラインの将来的な実行結果を表すfuture
+     */
+    default CompletableFuture<Void> execute() {
+        return start().thenAccept(status -> {
+            if (status != 0) {
+                throw new VPCommandException(status, List.of());
+            }
+        });
+    }
+
     /**
      * VOICEPEAKコマンドラインの標準出力パブリッシャーを返す
      * <p>
      * {@link #start()}メソッドが実行されていなくても取得できる
      * </p>
+     * <p>
+     * プロセスの起動時に購読者がいないときは出力を読み込まないため、{@link #start()}の前に購読しておくこと
+     * </p>
+     * <p>
+     * 実行が終了すると購読者には{@link Flow.Subscriber#onComplete()}が通知され、
+     * 起動に失敗したときや制限時間を超過したときは{@link Flow.Subscriber#onError(Throwable)}が通知される。
+     * 通知した購読者は解放されるため、再び実行するときは改めて購読すること
+     * </p>
      *
      * @return VOICEPEAKコマンドラインの標準出力パブリッシャー
      */
@@ -55,9 +93,29 @@ public interface VPProcess {
      * <p>
      * {@link #start()}メソッドが実行されていなくても取得できる
      * </p>
+     * <p>
+     * プロセスの起動時に購読者がいないときは出力を読み込まないため、{@link #start()}の前に購読しておくこと
+     * </p>
+     * <p>
+     * 実行が終了すると購読者には{@link Flow.Subscriber#onComplete()}が通知され、
+     * 起動に失敗したときや制限時間を超過したときは{@link Flow.Subscriber#onError(Throwable)}が通知される。
+     * 通知した購読者は解放されるため、再び実行するときは改めて購読すること
+     * </p>
      *
      * @return VOICEPEAKコマンドラインのエラー出力パブリッシャー
      */
     Flow.Publisher<String> getErrorOut();
 
+    /**
+     * 購読者が受け取るよりも速く出力されたために、標準出力及びエラー出力で破棄した行の累計を返す
+     * <p>
+     *     破棄するかは{@link VPProcessBuilder#withOutputBuffer(OutputBuffer)}の設定に従う
+     * </p>
+     *
+     * @return 破棄した行の累計
+     */
+    default long getDroppedLineCount() {
+        return 0;
+    }
+
 }
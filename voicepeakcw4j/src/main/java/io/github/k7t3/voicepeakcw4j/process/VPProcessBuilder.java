@@ -17,13 +17,22 @@
 package io.github.k7t3.voicepeakcw4j.process;
 
 import io.github.k7t3.voicepeakcw4j.VPExecutable;
+import io.github.k7t3.voicepeakcw4j.cache.SynthesisCache;
 import io.github.k7t3.voicepeakcw4j.exception.VPExecutionException;
 import io.github.k7t3.voicepeakcw4j.option.*;
+import io.github.k7t3.voicepeakcw4j.process.impl.CachedVPProcess;
 import io.github.k7t3.voicepeakcw4j.process.impl.DefaultVPProcess;
+import io.github.k7t3.voicepeakcw4j.process.impl.LongTextVPProcess;
+import io.github.k7t3.voicepeakcw4j.text.SentenceSplitter;
 
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 /**
@@ -33,6 +42,10 @@ import java.util.Map;
  *     それを超過する文字列を渡した場合は以下のエラーメッセージがエラー出力に排出される。
  *     <code>In this version, the character limit for a single run is 140 characters, but the input string contains XXX characters.</code>
  * </p>
+ * <p>
+ *     上限を超えるテキストは{@link #withMaxSentenceLength(int)}の長さを上限として句読点に基づき分割し、
+ *     分割した文ごとにVOICEPEAKを実行して一つの音声ファイルに連結する。
+ * </p>
  * <p>以下のオプションは使用できない</p>
  * <ul>
  *     <li>--list-emotion</li>
@@ -41,6 +54,12 @@ import java.util.Map;
  */
 public class VPProcessBuilder {
 
+    private static final System.Logger LOGGER = System.getLogger(VPProcessBuilder.class.getName());
+
+    private static final int DEFAULT_MAX_SENTENCE_LENGTH = 140; // VOICEPEAKのデフォルト
+
+    private static final String DEFAULT_OUTPUT = "output.wav";
+
     private final VPExecutable executable;
 
     private String narrator;
@@ -53,6 +72,18 @@ public class VPProcessBuilder {
     private int speed = Integer.MIN_VALUE;
     private Map<String, Integer> emotion;
 
+    private SynthesisCache cache;
+
+    private Duration timeout;
+
+    private RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+
+    private OutputBuffer outputBuffer = OutputBuffer.DEFAULT;
+
+    private int maxSentenceLength = DEFAULT_MAX_SENTENCE_LENGTH;
+
+    private Locale splitterLocale = Locale.getDefault();
+
     /**
      * コンストラクタ
      * @param executable 実行するファイル
@@ -158,6 +189,125 @@ public class VPProcessBuilder {
         return this;
     }
 
+    /**
+     * 合成結果のキャッシュを設定する。
+     * <p>
+     *     キャッシュは読み上げるテキストを{@link #withSpeechText(String)}で、
+     *     出力先を{@link #withOutput(Path)}で指定したときのみ使用される。
+     *     同じナレーター、テキスト、感情、ピッチ、スピードの合成結果がキャッシュに存在するときは
+     *     VOICEPEAKを実行せずに保存されている音声ファイルを出力先にコピーする。
+     * </p>
+     * <p>
+     *     キャッシュから出力したときは標準出力及びエラー出力には行は配信されず、完了のみ通知される。
+     * </p>
+     * @param cache キャッシュ、あるいは使用しないときはnull
+     * @return このインスタンス
+     */
+    public VPProcessBuilder withCache(SynthesisCache cache) {
+        this.cache = cache;
+        return this;
+    }
+
+    /**
+     * プロセスが起動してから終了するまでの制限時間を設定する。
+     * <p>
+     *     制限時間を超過したときは{@link VPProcess#start()}が返すFutureが
+     *     {@link io.github.k7t3.voicepeakcw4j.exception.VPTimeoutException}で例外的に完了し、
+     *     プロセスは{@link VPProcessWatchdog}によって子孫プロセスを含めて終了される。
+     *     起動を待機している時間は含まない。
+     * </p>
+     * @param timeout 制限時間、あるいは制限しないときはnull
+     * @return このインスタンス
+     */
+    public VPProcessBuilder withTimeout(Duration timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
+    /**
+     * 一時的なエラーで失敗したときに再実行する方針を設定する。
+     * <p>
+     *     設定しないときは{@link RetryPolicy#DEFAULT}に従い、
+     *     同時実行数の上限による失敗を待機時間を空けて再実行する。
+     * </p>
+     * @param retryPolicy 再実行する方針、あるいは再実行しないときはnull
+     * @return このインスタンス
+     */
+    public VPProcessBuilder withRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy == null ? RetryPolicy.NONE : retryPolicy;
+        return this;
+    }
+
+    /**
+     * 標準出力及びエラー出力を購読者ごとにバッファする設定を行う。
+     * <p>
+     *     設定しないときは{@link OutputBuffer#DEFAULT}に従い、
+     *     購読者が遅くてもVOICEPEAKプロセスの出力が詰まらないように古い行から破棄する。
+     *     すべての行を受け取るときは{@link OverflowPolicy#BLOCK}を設定する。
+     * </p>
+     * @param outputBuffer バッファの設定、あるいは既定の設定を使用するときはnull
+     * @return このインスタンス
+     */
+    public VPProcessBuilder withOutputBuffer(OutputBuffer outputBuffer) {
+        this.outputBuffer = outputBuffer == null ? OutputBuffer.DEFAULT : outputBuffer;
+        return this;
+    }
+
+    /**
+     * 一度のVOICEPEAKの実行で合成する文字数の上限を設定する。
+     * <p>
+     *     テキストあるいはテキストファイルの内容がこの長さを超えるときは句読点に基づいて分割し、
+     *     分割した文ごとにVOICEPEAKを実行して{@link #withOutput(Path)}の出力先に連結する。
+     *     規定値はコマンドライン実装に基づき140
+     * </p>
+     * @param maxSentenceLength 文字列を分割する最大長(4以上)
+     * @return このインスタンス
+     */
+    public VPProcessBuilder withMaxSentenceLength(int maxSentenceLength) {
+        this.maxSentenceLength = maxSentenceLength;
+        return this;
+    }
+
+    /**
+     * 上限を超えるテキストを分割するときに使用する言語を設定する。
+     * <p>
+     *     規定値はシステムのロケール
+     * </p>
+     * @param splitterLocale 言語
+     * @return このインスタンス
+     * @see #withMaxSentenceLength(int)
+     */
+    public VPProcessBuilder withSplitterLocale(Locale splitterLocale) {
+        this.splitterLocale = splitterLocale == null ? Locale.getDefault() : splitterLocale;
+        return this;
+    }
+
+    /**
+     * 出力するファイルパスを返す
+     * @return 出力するパス、あるいは設定していないときはnull
+     */
+    public Path getOutput() {
+        return output;
+    }
+
+    /**
+     * 合成結果を識別するキーを返す。
+     * <p>
+     *     ナレーター、テキスト、ピッチ、スピード、感情が同じビルダーは同じキーを返す。
+     *     テキストファイルの内容は実行するまで確定しないため、テキストを設定していないときはnullを返す。
+     * </p>
+     * @return 合成結果のキー、あるいはテキストを設定していないときはnull
+     * @throws VPExecutionException オプションの値が範囲外のとき
+     */
+    public String getSynthesisKey() {
+        if (isNullSpeechText()) {
+            return null;
+        }
+        var options = new ArrayList<String>();
+        fillSynthesisOptions(options, speechText);
+        return SynthesisCache.createKey(options);
+    }
+
     private boolean isNullSpeechText() {
         return speechText == null || speechText.trim().isEmpty();
     }
@@ -181,17 +331,23 @@ public class VPProcessBuilder {
                 throw new VPExecutionException("not exist speech file");
             }
         }
+        if (maxSentenceLength < 4) {
+            throw new VPExecutionException("maxSentenceLength must be greater than 3");
+        }
+        if (timeout != null && (timeout.isNegative() || timeout.isZero())) {
+            throw new VPExecutionException("timeout must be positive");
+        }
 
-        var commands = new ArrayList<String>();
-        executable.fill(commands);
+        // 合成結果に影響するオプション
+        var options = new ArrayList<String>();
+        fillSynthesisOptions(options, speechText);
 
-        if (narrator != null) {
-            new NarratorOption(this.narrator).fill(commands);
+        var longText = readLongText();
+        if (longText != null) {
+            return cache(buildLongText(longText), options);
         }
 
-        if (!isNullSpeechText()) {
-            new SpeechTextOption(speechText).fill(commands);
-        }
+        var commands = new ArrayList<String>(options);
 
         if (speechFile != null) {
             new SpeechFileOption(speechFile).fill(commands);
@@ -201,6 +357,88 @@ public class VPProcessBuilder {
             new OutputFileOption(output).fill(commands);
         }
 
+        return cache(createProcess(commands, output), options);
+    }
+
+    private DefaultVPProcess createProcess(List<String> commands, Path output) {
+        return new DefaultVPProcess(executable, commands, VPProcessScheduler.getDefault(), timeout, retryPolicy, outputBuffer, output);
+    }
+
+    /**
+     * 読み上げるテキストと出力先が明示されているときのみキャッシュできる
+     */
+    private VPProcess cache(VPProcess process, List<String> options) {
+        if (cache != null && output != null && !isNullSpeechText()) {
+            var key = SynthesisCache.createKey(options);
+            return new CachedVPProcess(process, cache, key, output, outputBuffer);
+        }
+        return process;
+    }
+
+    /**
+     * 上限を超えるテキストを返す。
+     * テキストが設定されていないときはテキストファイルの内容を読み込む
+     */
+    private String readLongText() {
+        if (!isNullSpeechText()) {
+            var text = speechText.trim();
+            return maxSentenceLength < text.length() ? text : null;
+        }
+
+        try {
+            // UTF-8では文字数はバイト数を超えない
+            if (Files.size(speechFile) <= maxSentenceLength) {
+                return null;
+            }
+            var text = Files.readString(speechFile).trim();
+            return maxSentenceLength < text.length() ? text : null;
+        } catch (IOException e) {
+            // 読み込めないファイルはそのままVOICEPEAKに渡す
+            LOGGER.log(System.Logger.Level.DEBUG, "failed to read speech file " + speechFile, e);
+            return null;
+        }
+    }
+
+    /**
+     * テキストを分割し、文ごとに出力先と同じディレクトリの一時ファイルに合成するプロセスを生成する
+     */
+    private LongTextVPProcess buildLongText(String text) {
+        var sentences = new SentenceSplitter(splitterLocale).splitByWord(text, maxSentenceLength)
+                .stream()
+                .filter(sentence -> !sentence.trim().isEmpty())
+                .toList();
+
+        var target = (output != null ? output : Paths.get(DEFAULT_OUTPUT)).toAbsolutePath();
+        LOGGER.log(System.Logger.Level.DEBUG, "split long text. count: " + sentences.size() + ", output: " + target);
+
+        var chunks = new ArrayList<DefaultVPProcess>(sentences.size());
+        var chunkOutputs = new ArrayList<Path>(sentences.size());
+        for (int i = 0; i < sentences.size(); i++) {
+            var chunkOutput = target.resolveSibling(target.getFileName() + ".part" + i);
+
+            var commands = new ArrayList<String>();
+            fillSynthesisOptions(commands, sentences.get(i));
+            new OutputFileOption(chunkOutput).fill(commands);
+
+            chunks.add(createProcess(commands, chunkOutput));
+            chunkOutputs.add(chunkOutput);
+        }
+
+        return new LongTextVPProcess(chunks, chunkOutputs, target, outputBuffer);
+    }
+
+    /**
+     * ナレーター、テキスト、ピッチ、スピード、感情のオプションを設定する
+     */
+    private void fillSynthesisOptions(List<String> commands, String text) {
+        if (narrator != null) {
+            new NarratorOption(this.narrator).fill(commands);
+        }
+
+        if (text != null && !text.trim().isEmpty()) {
+            new SpeechTextOption(text).fill(commands);
+        }
+
         if (pitch != Integer.MIN_VALUE) {
             try {
                 new PitchOption(pitch).fill(commands);
@@ -224,8 +462,6 @@ public class VPProcessBuilder {
                 throw new VPExecutionException(e);
             }
         }
-
-        return new DefaultVPProcess(new ProcessBuilder(commands));
     }
 
 }
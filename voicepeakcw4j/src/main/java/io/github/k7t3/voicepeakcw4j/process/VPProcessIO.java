@@ -0,0 +1,167 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.k7t3.voicepeakcw4j.process;
+
+import io.github.k7t3.voicepeakcw4j.VPExecutable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * VOICEPEAKプロセスの起動と出力の読み込みを担うI/Oエンジン
+ * <p>
+ *     出力の読み込みは出力ごとに仮想スレッドで行う。仮想スレッドを生成するExecutorは
+ *     すべてのプロセスで共有し、起動ごとにプラットフォームスレッドやExecutorを生成しない。
+ *     購読者のいない出力は{@link ProcessBuilder.Redirect#DISCARD}やファイルにリダイレクトされ、
+ *     パイプも読み込みのスレッドも必要としない。
+ * </p>
+ * <p>
+ *     起動に要した時間とリダイレクトの内訳を{@link #getStatistics()}で取得できる。
+ * </p>
+ * <p>このクラスはスレッドセーフ</p>
+ */
+public class VPProcessIO {
+
+    private static final VPProcessIO DEFAULT = new VPProcessIO();
+
+    private final Executor readers = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("voicepeakcw4j-reader-", 0).factory());
+
+    private final AtomicLong launchedCount = new AtomicLong();
+    private final AtomicLong totalLaunchNanos = new AtomicLong();
+    private final AtomicLong maxLaunchNanos = new AtomicLong();
+
+    private final AtomicLong pipedCount = new AtomicLong();
+    private final AtomicLong redirectedCount = new AtomicLong();
+    private final AtomicLong discardedCount = new AtomicLong();
+
+    private final AtomicInteger activeReaders = new AtomicInteger();
+
+    private VPProcessIO() {
+    }
+
+    /**
+     * JVM全体で共有されるI/Oエンジンを返す
+     * @return 共有のI/Oエンジン
+     */
+    public static VPProcessIO getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * VOICEPEAKプロセスを起動し、起動に要した時間とリダイレクトの種類を記録する
+     * @param executable VOICEPEAK実行ファイル
+     * @param builder オプション引数とリダイレクトを設定したプロセスビルダー
+     * @return 起動したプロセス
+     * @throws IOException プロセスの起動に失敗したとき
+     */
+    public Process launch(VPExecutable executable, ProcessBuilder builder) throws IOException {
+        var begin = System.nanoTime();
+        var process = executable.launch(builder);
+        var elapsed = System.nanoTime() - begin;
+
+        launchedCount.incrementAndGet();
+        totalLaunchNanos.addAndGet(elapsed);
+        maxLaunchNanos.accumulateAndGet(elapsed, Math::max);
+        count(builder.redirectOutput());
+        count(builder.redirectError());
+
+        return process;
+    }
+
+    private void count(ProcessBuilder.Redirect redirect) {
+        if (redirect == ProcessBuilder.Redirect.DISCARD) {
+            discardedCount.incrementAndGet();
+        } else if (redirect.type() == ProcessBuilder.Redirect.Type.PIPE) {
+            pipedCount.incrementAndGet();
+        } else {
+            redirectedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * 仮想スレッドで行を読み込む
+     * @param reader 読み込むReader。読み込みが終了すると閉じる
+     * @param consumer 読み込んだ行を受け取る関数
+     * @return 読み込みが終了すると完了するFuture
+     */
+    public CompletableFuture<Void> read(BufferedReader reader, Consumer<String> consumer) {
+        activeReaders.incrementAndGet();
+        return CompletableFuture.runAsync(() -> {
+            try (reader) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    consumer.accept(line);
+                }
+            } catch (IOException ignored) {
+            } finally {
+                activeReaders.decrementAndGet();
+            }
+        }, readers);
+    }
+
+    /**
+     * I/Oエンジンの統計情報を返す
+     * @return 統計情報
+     */
+    public Statistics getStatistics() {
+        return new Statistics(
+                launchedCount.get(),
+                totalLaunchNanos.get(),
+                maxLaunchNanos.get(),
+                pipedCount.get(),
+                redirectedCount.get(),
+                discardedCount.get(),
+                activeReaders.get());
+    }
+
+    /**
+     * I/Oエンジンの統計情報
+     * @param launchedCount 起動したプロセスの累計
+     * @param totalLaunchNanos 起動に要した時間の累計(ナノ秒)
+     * @param maxLaunchNanos 起動に要した時間の最大値(ナノ秒)
+     * @param pipedCount パイプで読み込んだ出力の累計
+     * @param redirectedCount ファイルにリダイレクトした出力の累計
+     * @param discardedCount 破棄した出力の累計
+     * @param activeReaders 読み込み中の出力の数
+     */
+    public record Statistics(
+            long launchedCount,
+            long totalLaunchNanos,
+            long maxLaunchNanos,
+            long pipedCount,
+            long redirectedCount,
+            long discardedCount,
+            int activeReaders
+    ) {
+
+        /**
+         * 起動に要した時間の平均を返す
+         * @return 起動に要した時間の平均(ナノ秒)
+         */
+        public long averageLaunchNanos() {
+            return launchedCount == 0 ? 0 : totalLaunchNanos / launchedCount;
+        }
+
+    }
+
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.k7t3.voicepeakcw4j.process;
+
+import io.github.k7t3.voicepeakcw4j.exception.VPExecutionException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * VOICEPEAKプロセスの同時実行数を制限するスケジューラ
+ * <p>
+ *     現在のVOICEPEAKのバージョン(v1.2.11)はコマンドラインの並列実行を許可しておらず、
+ *     同時に実行すると以下のエラーメッセージがエラー出力に排出される。
+ *     <code>In this version, up to 1 command line instance can be executed at same time.</code>
+ * </p>
+ * <p>
+ *     このライブラリが起動するすべてのVOICEPEAKプロセスは{@link #getDefault()}のスケジューラを経由し、
+ *     同時実行数を超える起動要求は要求した順にキューされる。
+ *     プロセスが終了すると、キューの先頭の要求が起動される。
+ * </p>
+ * <p>このクラスはスレッドセーフ</p>
+ */
+public class VPProcessScheduler {
+
+    private static final System.Logger LOGGER = System.getLogger(VPProcessScheduler.class.getName());
+
+    private static final VPProcessScheduler DEFAULT = new VPProcessScheduler(1);
+
+    private final Object lock = new Object();
+
+    private final ArrayDeque<Request> queue = new ArrayDeque<>();
+
+    private int permits;
+
+    private int running = 0;
+
+    private long startedCount = 0;
+    private long totalWaitNanos = 0;
+    private long maxWaitNanos = 0;
+
+    /**
+     * スケジューラを生成する。
+     * @param permits 同時に実行できるプロセスの数
+     * @throws IllegalArgumentException 同時実行数が1未満のとき
+     */
+    public VPProcessScheduler(int permits) {
+        if (permits < 1)
+            throw new IllegalArgumentException("permits must be greater than 0");
+        this.permits = permits;
+    }
+
+    /**
+     * JVM全体で共有されるスケジューラを返す。
+     * <p>
+     *     既定の同時実行数はVOICEPEAKの制約に基づき1
+     * </p>
+     * @return 共有のスケジューラ
+     */
+    public static VPProcessScheduler getDefault() {
+        return DEFAULT;
+    }
+
+    private record Request(Callable<Process> launcher, CompletableFuture<Process> future, long queuedAt) {}
+
+    /**
+     * 同時に実行できるプロセスの数を設定する。
+     * <p>
+     *     増やしたときはキューされている要求を直ちに起動する。
+     *     減らしたときは実行中のプロセスが終了するまで新たに起動しない。
+     * </p>
+     * @param permits 同時に実行できるプロセスの数
+     * @throws IllegalArgumentException 同時実行数が1未満のとき
+     */
+    public void setPermits(int permits) {
+        if (permits < 1)
+            throw new IllegalArgumentException("permits must be greater than 0");
+        synchronized (lock) {
+            this.permits = permits;
+        }
+        dispatch();
+    }
+
+    /**
+     * 同時に実行できるプロセスの数を返す
+     * @return 同時に実行できるプロセスの数
+     */
+    public int getPermits() {
+        synchronized (lock) {
+            return permits;
+        }
+    }
+
+    /**
+     * プロセスの起動を要求する。
+     * <p>
+     *     同時実行数に空きがあるときは直ちに起動し、ないときはキューする。
+     *     起動したプロセスは終了するまで同時実行数を占有する。
+     * </p>
+     * <p>
+     *     返されたFutureを起動前にキャンセルしたときは起動しない。
+     *     起動に失敗したときは{@link VPExecutionException}で完了する。
+     * </p>
+     * @param launcher プロセスを起動する関数
+     * @return 起動したプロセスを表すFuture
+     */
+    public CompletableFuture<Process> submit(Callable<Process> launcher) {
+        var future = new CompletableFuture<Process>();
+        synchronized (lock) {
+            queue.add(new Request(launcher, future, System.nanoTime()));
+        }
+        dispatch();
+        return future;
+    }
+
+    /**
+     * 同時実行数に空きがある限りキューの先頭から起動する
+     */
+    private void dispatch() {
+        var launches = new ArrayList<Request>();
+        synchronized (lock) {
+            while (running < permits && !queue.isEmpty()) {
+                var request = queue.poll();
+                if (request.future().isDone()) {
+                    // 起動前にキャンセルされている
+                    continue;
+                }
+
+                var waitNanos = System.nanoTime() - request.queuedAt();
+                totalWaitNanos += waitNanos;
+                maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+                startedCount++;
+                running++;
+
+                launches.add(request);
+            }
+        }
+
+        // プロセスの起動はロックの外で行う
+        launches.forEach(this::launch);
+    }
+
+    private void launch(Request request) {
+        Process process;
+        try {
+            process = request.launcher().call();
+        } catch (Exception e) {
+            release();
+            request.future().completeExceptionally(new VPExecutionException(e));
+            return;
+        }
+
+        process.onExit().whenComplete((p, e) -> release());
+
+        if (!request.future().complete(process)) {
+            // 起動中にキャンセルされたときは子孫プロセスを含めて直ちに終了させる
+            LOGGER.log(System.Logger.Level.DEBUG, "cancelled process pid = " + process.pid());
+            VPProcessWatchdog.getDefault().terminate(process);
+        }
+    }
+
+    private void release() {
+        synchronized (lock) {
+            running--;
+        }
+        dispatch();
+    }
+
+    /**
+     * スケジューラの統計情報を返す
+     * @return 統計情報
+     */
+    public Statistics getStatistics() {
+        synchronized (lock) {
+            return new Statistics(permits, running, queue.size(), startedCount, totalWaitNanos, maxWaitNanos);
+        }
+    }
+
+    /**
+     * スケジューラの統計情報
+     * @param permits 同時に実行できるプロセスの数
+     * @param running 実行中のプロセスの数
+     * @param queued 起動を待機している要求の数
+     * @param startedCount 起動したプロセスの累計
+     * @param totalWaitNanos 起動までに待機した時間の累計(ナノ秒)
+     * @param maxWaitNanos 起動までに待機した時間の最大値(ナノ秒)
+     */
+    public record Statistics(
+            int permits,
+            int running,
+            int queued,
+            long startedCount,
+            long totalWaitNanos,
+            long maxWaitNanos
+    ) {
+
+        /**
+         * 起動までに待機した時間の平均を返す
+         * @return 起動までに待機した時間の平均(ナノ秒)
+         */
+        public long averageWaitNanos() {
+            return startedCount == 0 ? 0 : totalWaitNanos / startedCount;
+        }
+
+    }
+
+}
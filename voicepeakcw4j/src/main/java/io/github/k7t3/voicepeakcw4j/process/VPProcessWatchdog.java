@@ -0,0 +1,224 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.k7t3.voicepeakcw4j.process;
+
+import io.github.k7t3.voicepeakcw4j.exception.VPTimeoutException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 実行中のVOICEPEAKプロセスを監視し、制限時間を超過したプロセスを終了させるウォッチドッグ
+ * <p>
+ *     制限時間を超過したプロセスは子孫プロセスを含めて通常の終了を要求され、
+ *     猶予期間を過ぎても終了しないときは強制的に終了される。
+ *     親プロセスが終了しても残っている子孫プロセスも強制的に終了される。
+ *     終了したプロセスは{@link VPProcessScheduler}の同時実行数を直ちに解放する。
+ * </p>
+ * <p>このクラスはスレッドセーフ</p>
+ */
+public class VPProcessWatchdog {
+
+    private static final System.Logger LOGGER = System.getLogger(VPProcessWatchdog.class.getName());
+
+    private static final Duration DEFAULT_GRACE_PERIOD = Duration.ofSeconds(5);
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        var thread = new Thread(r, "voicepeakcw4j-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final VPProcessWatchdog DEFAULT = new VPProcessWatchdog(DEFAULT_GRACE_PERIOD);
+
+    private final Set<Process> live = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong timedOutCount = new AtomicLong();
+    private final AtomicLong killedCount = new AtomicLong();
+    private final AtomicLong terminatedCount = new AtomicLong();
+
+    private volatile Duration gracePeriod;
+
+    /**
+     * ウォッチドッグを生成する。
+     * @param gracePeriod 終了を要求してから強制的に終了させるまでの猶予期間
+     * @throws IllegalArgumentException 猶予期間がnullあるいは負のとき
+     */
+    public VPProcessWatchdog(Duration gracePeriod) {
+        this.gracePeriod = validateGracePeriod(gracePeriod);
+    }
+
+    /**
+     * JVM全体で共有されるウォッチドッグを返す。
+     * <p>
+     *     既定の猶予期間は5秒
+     * </p>
+     * @return 共有のウォッチドッグ
+     */
+    public static VPProcessWatchdog getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * 終了を要求してから強制的に終了させるまでの猶予期間を設定する
+     * @param gracePeriod 猶予期間
+     * @throws IllegalArgumentException 猶予期間がnullあるいは負のとき
+     */
+    public void setGracePeriod(Duration gracePeriod) {
+        this.gracePeriod = validateGracePeriod(gracePeriod);
+    }
+
+    private static Duration validateGracePeriod(Duration gracePeriod) {
+        if (gracePeriod == null)
+            throw new IllegalArgumentException("gracePeriod is null");
+        if (gracePeriod.isNegative())
+            throw new IllegalArgumentException("gracePeriod must not be negative");
+        return gracePeriod;
+    }
+
+    /**
+     * 終了を要求してから強制的に終了させるまでの猶予期間を返す
+     * @return 猶予期間
+     */
+    public Duration getGracePeriod() {
+        return gracePeriod;
+    }
+
+    /**
+     * プロセスを監視する。
+     * <p>
+     *     返されたFutureはプロセスが終了すると完了する。
+     *     制限時間を超過したときはプロセスの終了を待たずに{@link VPTimeoutException}で例外的に完了し、
+     *     プロセスの終了を要求する。
+     * </p>
+     * @param process 監視するプロセス
+     * @param timeout 制限時間、あるいは制限しないときはnull
+     * @return プロセスの終了を表すFuture
+     * @throws IllegalArgumentException プロセスがnullのとき、あるいは制限時間が正でないとき
+     */
+    public CompletableFuture<Process> watch(Process process, Duration timeout) {
+        if (process == null)
+            throw new IllegalArgumentException("process is null");
+        if (timeout != null && (timeout.isNegative() || timeout.isZero()))
+            throw new IllegalArgumentException("timeout must be positive");
+
+        live.add(process);
+
+        var future = new CompletableFuture<Process>();
+        process.onExit().whenComplete((p, e) -> {
+            live.remove(process);
+            if (e != null) {
+                future.completeExceptionally(e);
+            } else {
+                future.complete(p);
+            }
+        });
+
+        if (timeout != null && !future.isDone()) {
+            var task = TIMER.schedule(() -> expire(process, timeout, future), timeout.toNanos(), TimeUnit.NANOSECONDS);
+            future.whenComplete((p, e) -> task.cancel(false));
+        }
+
+        return future;
+    }
+
+    private void expire(Process process, Duration timeout, CompletableFuture<Process> future) {
+        if (!future.completeExceptionally(new VPTimeoutException(timeout))) {
+            return;
+        }
+        timedOutCount.incrementAndGet();
+        LOGGER.log(System.Logger.Level.WARNING, "process timed out after " + timeout + ", destroying " + process);
+
+        // 親プロセスが終了すると子孫プロセスを辿れなくなるため、終了を要求する前に控えておく
+        var descendants = descendants(process);
+        descendants.forEach(ProcessHandle::destroy);
+        process.destroy();
+
+        TIMER.schedule(() -> {
+            var survivors = descendants.stream().filter(ProcessHandle::isAlive).toList();
+            var alive = process.isAlive();
+            if (!alive && survivors.isEmpty()) {
+                return;
+            }
+            killedCount.incrementAndGet();
+            LOGGER.log(System.Logger.Level.WARNING, "process did not exit in grace period, destroying forcibly " + process);
+            survivors.forEach(ProcessHandle::destroyForcibly);
+            if (alive) {
+                process.destroyForcibly();
+            }
+        }, gracePeriod.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 実行中のプロセスを子孫プロセスを含めて直ちに強制的に終了させる。
+     * <p>
+     *     プロセスの実行がキャンセルされたときに呼び出す。猶予期間を待たずに終了させるため、
+     *     終了したプロセスは{@link VPProcessScheduler}の同時実行数を直ちに解放する。
+     *     すでに終了しているプロセスは何もしない。
+     * </p>
+     * @param process 終了させるプロセス
+     * @throws IllegalArgumentException プロセスがnullのとき
+     */
+    public void terminate(Process process) {
+        if (process == null)
+            throw new IllegalArgumentException("process is null");
+        if (process.onExit().isDone()) {
+            return;
+        }
+        terminatedCount.incrementAndGet();
+        LOGGER.log(System.Logger.Level.DEBUG, "process cancelled, destroying forcibly " + process);
+        // 親を先に終了させると子孫プロセスを辿れなくなるため、子孫プロセスを先に終了させる
+        descendants(process).forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
+    private static List<ProcessHandle> descendants(Process process) {
+        try {
+            return process.descendants().toList();
+        } catch (UnsupportedOperationException e) {
+            // プロセスハンドルを持たないプロセス
+            LOGGER.log(System.Logger.Level.DEBUG, "descendants are not supported by " + process);
+            return List.of();
+        }
+    }
+
+    /**
+     * ウォッチドッグの統計情報を返す
+     * @return 統計情報
+     */
+    public Statistics getStatistics() {
+        return new Statistics(live.size(), timedOutCount.get(), killedCount.get(), terminatedCount.get());
+    }
+
+    /**
+     * ウォッチドッグの統計情報
+     * @param live 監視している実行中のプロセスの数
+     * @param timedOutCount 制限時間を超過したプロセスの累計
+     * @param killedCount 猶予期間を過ぎて強制的に終了させたプロセスの累計
+     * @param terminatedCount キャンセルされて直ちに終了させたプロセスの累計
+     */
+    public record Statistics(int live, long timedOutCount, long killedCount, long terminatedCount) {
+    }
+
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.k7t3.voicepeakcw4j.process.impl;
+
+import io.github.k7t3.voicepeakcw4j.cache.SynthesisCache;
+import io.github.k7t3.voicepeakcw4j.process.OutputBuffer;
+import io.github.k7t3.voicepeakcw4j.process.VPProcess;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+/**
+ * 合成結果のキャッシュを参照するプロセス
+ * <p>
+ *     キャッシュに存在するときはVOICEPEAKを実行せずに保存されている音声ファイルを出力し、
+ *     存在しないときはVOICEPEAKを実行してその結果をキャッシュに保存する。
+ *     キャッシュへの保存に失敗しても合成は成功として完了する。
+ * </p>
+ * <p>
+ *     出力のパブリッシャーはこのプロセスが持ち、VOICEPEAKを実行したときは委譲先の出力を中継する。
+ *     キャッシュから出力したときは委譲先の種類にかかわらず購読者に完了を通知する。
+ * </p>
+ */
+public class CachedVPProcess implements VPProcess {
+
+    private static final System.Logger LOGGER = System.getLogger(CachedVPProcess.class.getName());
+
+    private final VPProcess delegate;
+
+    private final SynthesisCache cache;
+
+    private final String key;
+
+    private final Path output;
+
+    private final MessagePublisher standardOut;
+
+    private final MessagePublisher errorOut;
+
+    /**
+     * コンストラクタ
+     * @param delegate VOICEPEAKを実行するプロセス
+     * @param cache キャッシュ
+     * @param key 合成結果のキー
+     * @param output 音声ファイルの出力先
+     * @param outputBuffer 出力を購読者ごとにバッファする設定
+     */
+    public CachedVPProcess(VPProcess delegate, SynthesisCache cache, String key, Path output, OutputBuffer outputBuffer) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.key = key;
+        this.output = output;
+        this.standardOut = new MessagePublisher(outputBuffer);
+        this.errorOut = new MessagePublisher(outputBuffer);
+    }
+
+    @Override
+    public CompletableFuture<Integer> start() {
+        if (cache.restore(key, output)) {
+            completeOutputs();
+            return CompletableFuture.completedFuture(0);
+        }
+
+        relayOutputs();
+        var started = delegate.start();
+        return forward(started, started.thenApply(status -> {
+            if (status == 0) {
+                store();
+            }
+            return status;
+        }));
+    }
+
+    @Override
+    public CompletableFuture<Void> execute() {
+        if (cache.restore(key, output)) {
+            completeOutputs();
+            return CompletableFuture.completedFuture(null);
+        }
+
+        relayOutputs();
+        var executed = delegate.execute();
+        return forward(executed, executed.thenRun(this::store));
+    }
+
+    private void store() {
+        try {
+            cache.store(key, output);
+        } catch (UncheckedIOException e) {
+            LOGGER.log(System.Logger.Level.WARNING, "failed to store synthesis result " + output, e);
+        }
+    }
+
+    /**
+     * 変換したFutureを返す。返したFutureをキャンセルしたときは実行もキャンセルする
+     */
+    private static <T> CompletableFuture<T> forward(CompletableFuture<?> source, CompletableFuture<T> future) {
+        future.whenComplete((v, e) -> {
+            if (future.isCancelled()) {
+                source.cancel(false);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * VOICEPEAKを実行せずに購読者に完了を通知する
+     */
+    private void completeOutputs() {
+        standardOut.complete();
+        errorOut.complete();
+    }
+
+    /**
+     * 購読者がいる出力は、委譲先が起動する前に購読して中継する
+     */
+    private void relayOutputs() {
+        if (standardOut.hasSubscribers()) {
+            delegate.getStandardOut().subscribe(new Relay(standardOut));
+        }
+        if (errorOut.hasSubscribers()) {
+            delegate.getErrorOut().subscribe(new Relay(errorOut));
+        }
+    }
+
+    /**
+     * 委譲先の出力をこのプロセスのパブリッシャーに中継する購読者。
+     * 購読者ごとのバッファはこのプロセスのパブリッシャーが持つ
+     */
+    private static class Relay implements Flow.Subscriber<String> {
+
+        private final MessagePublisher target;
+
+        Relay(MessagePublisher target) {
+            this.target = target;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String item) {
+            target.submit(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            target.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            target.complete();
+        }
+    }
+
+    @Override
+    public Flow.Publisher<String> getStandardOut() {
+        return standardOut;
+    }
+
+    @Override
+    public Flow.Publisher<String> getErrorOut() {
+        return errorOut;
+    }
+
+    @Override
+    public long getDroppedLineCount() {
+        return delegate.getDroppedLineCount() + standardOut.getDroppedCount() + errorOut.getDroppedCount();
+    }
+}
@@ -16,12 +16,30 @@
 
 package io.github.k7t3.voicepeakcw4j.process.impl;
 
+import io.github.k7t3.voicepeakcw4j.VPExecutable;
+import io.github.k7t3.voicepeakcw4j.exception.VPCommandException;
+import io.github.k7t3.voicepeakcw4j.exception.VPErrorType;
+import io.github.k7t3.voicepeakcw4j.process.OutputBuffer;
+import io.github.k7t3.voicepeakcw4j.process.RetryPolicy;
 import io.github.k7t3.voicepeakcw4j.process.VPProcess;
+import io.github.k7t3.voicepeakcw4j.process.VPProcessIO;
+import io.github.k7t3.voicepeakcw4j.process.VPProcessScheduler;
+import io.github.k7t3.voicepeakcw4j.process.VPProcessWatchdog;
 
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 /**
  * VOICEPEAKコマンドラインを実行するダミープロセス
@@ -30,35 +48,325 @@ public class DefaultVPProcess implements VPProcess {
 
     private static final System.Logger LOGGER = System.getLogger(DefaultVPProcess.class.getName());
 
-    private final ProcessBuilder processBuilder;
+    /**
+     * プロセスの終了後に出力の読み込みの終了を待機する時間。
+     * 子孫プロセスが出力を引き継いでいると読み込みが終了しないため
+     */
+    private static final long READER_TIMEOUT_SECONDS = 1;
+
+    /**
+     * {@link Process#errorReader()}と同じ文字セット
+     */
+    private static final Charset NATIVE_CHARSET = Charset.forName(System.getProperty("native.encoding"), Charset.defaultCharset());
+
+    private final VPExecutable executable;
+
+    private final List<String> arguments;
+
+    private final VPProcessScheduler scheduler;
+
+    private final Duration timeout;
+
+    private final RetryPolicy retryPolicy;
+
+    /**
+     * VOICEPEAKが音声を出力するパス、あるいは不明なときはnull
+     */
+    private final Path output;
 
-    private final MessagePublisher standardOut = new MessagePublisher();
-    private final MessagePublisher errorOut = new MessagePublisher();
+    private final MessagePublisher standardOut;
+    private final MessagePublisher errorOut;
+
+    /**
+     * 共有のスケジューラを使用するコンストラクタ
+     * @param executable VOICEPEAK実行ファイル
+     * @param arguments VOICEPEAKのオプション引数
+     */
+    public DefaultVPProcess(VPExecutable executable, List<String> arguments) {
+        this(executable, arguments, VPProcessScheduler.getDefault());
+    }
+
+    /**
+     * コンストラクタ
+     * @param executable VOICEPEAK実行ファイル
+     * @param arguments VOICEPEAKのオプション引数
+     * @param scheduler プロセスを起動するスケジューラ
+     */
+    public DefaultVPProcess(VPExecutable executable, List<String> arguments, VPProcessScheduler scheduler) {
+        this(executable, arguments, scheduler, null);
+    }
 
     /**
      * コンストラクタ
-     * @param processBuilder プロセスビルダー
+     * @param executable VOICEPEAK実行ファイル
+     * @param arguments VOICEPEAKのオプション引数
+     * @param scheduler プロセスを起動するスケジューラ
+     * @param timeout 起動してから終了するまでの制限時間、あるいは制限しないときはnull
      */
-    public DefaultVPProcess(ProcessBuilder processBuilder) {
-        this.processBuilder = processBuilder;
+    public DefaultVPProcess(VPExecutable executable, List<String> arguments, VPProcessScheduler scheduler, Duration timeout) {
+        this(executable, arguments, scheduler, timeout, RetryPolicy.DEFAULT);
     }
 
+    /**
+     * コンストラクタ
+     * @param executable VOICEPEAK実行ファイル
+     * @param arguments VOICEPEAKのオプション引数
+     * @param scheduler プロセスを起動するスケジューラ
+     * @param timeout 起動してから終了するまでの制限時間、あるいは制限しないときはnull
+     * @param retryPolicy 一時的なエラーで失敗したときに再実行する方針
+     */
+    public DefaultVPProcess(VPExecutable executable, List<String> arguments, VPProcessScheduler scheduler, Duration timeout, RetryPolicy retryPolicy) {
+        this(executable, arguments, scheduler, timeout, retryPolicy, OutputBuffer.DEFAULT);
+    }
+
+    /**
+     * コンストラクタ
+     * @param executable VOICEPEAK実行ファイル
+     * @param arguments VOICEPEAKのオプション引数
+     * @param scheduler プロセスを起動するスケジューラ
+     * @param timeout 起動してから終了するまでの制限時間、あるいは制限しないときはnull
+     * @param retryPolicy 一時的なエラーで失敗したときに再実行する方針
+     * @param outputBuffer 標準出力及びエラー出力を購読者ごとにバッファする設定
+     */
+    public DefaultVPProcess(VPExecutable executable, List<String> arguments, VPProcessScheduler scheduler, Duration timeout, RetryPolicy retryPolicy, OutputBuffer outputBuffer) {
+        this(executable, arguments, scheduler, timeout, retryPolicy, outputBuffer, null);
+    }
+
+    /**
+     * コンストラクタ
+     * @param executable VOICEPEAK実行ファイル
+     * @param arguments VOICEPEAKのオプション引数
+     * @param scheduler プロセスを起動するスケジューラ
+     * @param timeout 起動してから終了するまでの制限時間、あるいは制限しないときはnull
+     * @param retryPolicy 一時的なエラーで失敗したときに再実行する方針
+     * @param outputBuffer 標準出力及びエラー出力を購読者ごとにバッファする設定
+     * @param output VOICEPEAKが音声を出力するパス。キャンセルしたときに書き込み途中のファイルを削除する。
+     *               削除しないときはnull
+     */
+    public DefaultVPProcess(VPExecutable executable, List<String> arguments, VPProcessScheduler scheduler, Duration timeout, RetryPolicy retryPolicy, OutputBuffer outputBuffer, Path output) {
+        this.executable = executable;
+        this.arguments = List.copyOf(arguments);
+        this.scheduler = scheduler;
+        this.timeout = timeout;
+        this.retryPolicy = retryPolicy;
+        this.output = output;
+        this.standardOut = new MessagePublisher(outputBuffer);
+        this.errorOut = new MessagePublisher(outputBuffer);
+    }
+
+    /**
+     * 最後の試行の結果
+     */
+    private record Attempt(int status, List<String> errorOutput) {}
+
     @Override
     public CompletableFuture<Integer> start() {
-        Process process;
+        return forward(run(), Attempt::status);
+    }
+
+    @Override
+    public CompletableFuture<Void> execute() {
+        return forward(run(), attempt -> {
+            if (attempt.status() != 0) {
+                throw new VPCommandException(attempt.status(), attempt.errorOutput());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 結果を変換したFutureを返す。返したFutureをキャンセルしたときは実行もキャンセルする
+     */
+    private static <T> CompletableFuture<T> forward(CompletableFuture<Attempt> attempt, Function<Attempt, T> mapper) {
+        var future = attempt.thenApply(mapper);
+        future.whenComplete((v, e) -> {
+            if (future.isCancelled()) {
+                attempt.cancel(false);
+            }
+        });
+        return future;
+    }
+
+    private CompletableFuture<Attempt> run() {
+        var future = new CompletableFuture<Attempt>();
+        var launched = new AtomicReference<CompletableFuture<Process>>();
+
+        future.whenComplete((attempt, e) -> {
+            // 起動待ちの間にキャンセルされたときは起動せず、実行中のときは直ちに終了させる
+            var current = launched.get();
+            if (future.isCancelled() && current != null && !current.cancel(false)) {
+                terminate(current);
+            }
+
+            // 実行が終了したら購読者に完了を通知して解放する
+            if (e == null) {
+                standardOut.complete();
+                errorOut.complete();
+            } else {
+                var cause = (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+                standardOut.completeExceptionally(cause);
+                errorOut.completeExceptionally(cause);
+            }
+        });
+
+        attempt(1, future, launched);
+        return future;
+    }
+
+    /**
+     * キャンセルされた実行中のプロセスを終了させる
+     */
+    private static void terminate(CompletableFuture<Process> launch) {
+        var process = launch.isCompletedExceptionally() ? null : launch.getNow(null);
+        if (process == null) {
+            return;
+        }
+        VPProcessWatchdog.getDefault().terminate(process);
+    }
+
+    private void deleteOutput() {
         try {
-            process = processBuilder.start();
+            if (Files.deleteIfExists(output)) {
+                LOGGER.log(System.Logger.Level.DEBUG, "deleted cancelled output " + output);
+            }
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            LOGGER.log(System.Logger.Level.WARNING, "failed to delete cancelled output " + output, e);
+        }
+    }
+
+    /**
+     * 試行ごとの出力のリダイレクト
+     */
+    private static class Redirects {
+
+        /**
+         * 標準出力をパイプで読み込むか
+         */
+        private volatile boolean pipeStandardOut;
+
+        /**
+         * エラー出力のリダイレクト先、あるいはパイプで読み込むときはnull
+         */
+        private volatile Path errorFile;
+
+    }
+
+    /**
+     * 購読者のいない出力はパイプを使用しない。
+     * エラー出力はエラーの種類を分類するためにファイルにリダイレクトする
+     */
+    private ProcessBuilder createBuilder(Redirects redirects) {
+        var builder = new ProcessBuilder(arguments);
+
+        redirects.pipeStandardOut = standardOut.hasSubscribers();
+        if (!redirects.pipeStandardOut) {
+            builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        }
+
+        if (!errorOut.hasSubscribers()) {
+            try {
+                var errorFile = Files.createTempFile("vpcw4j-", ".err");
+                builder.redirectError(errorFile.toFile());
+                redirects.errorFile = errorFile;
+            } catch (IOException e) {
+                LOGGER.log(System.Logger.Level.DEBUG, "failed to create error file, fall back to pipe", e);
+            }
+        }
+
+        return builder;
+    }
+
+    private void attempt(int count, CompletableFuture<Attempt> future, AtomicReference<CompletableFuture<Process>> launched) {
+        var redirects = new Redirects();
+
+        var launch = scheduler.submit(() -> {
+            var process = VPProcessIO.getDefault().launch(executable, createBuilder(redirects));
+            if (output != null) {
+                // キャンセルされて終了したら書き込み途中の音声ファイルを削除する。
+                // 起動中にキャンセルされたプロセスはスケジューラが終了させる
+                process.onExit().whenComplete((p, e) -> {
+                    if (future.isCancelled()) {
+                        deleteOutput();
+                    }
+                });
+            }
+            return process;
+        });
+        launched.set(launch);
+        if (future.isDone()) {
+            // 再実行を待機している間にキャンセルされた
+            launch.cancel(false);
+            return;
         }
-        LOGGER.log(System.Logger.Level.DEBUG, "started process pid = " + process.pid());
 
-        var executor = Executors.newVirtualThreadPerTaskExecutor();
-        standardOut.start(process.inputReader(), executor);
-        errorOut.start(process.errorReader(), executor);
-        executor.shutdown();
+        var errors = new CopyOnWriteArrayList<String>();
+
+        launch.thenCompose(process -> {
+            LOGGER.log(System.Logger.Level.DEBUG, "started process pid = " + process.pid());
+
+            var io = VPProcessIO.getDefault();
+            var readers = new ArrayList<CompletableFuture<Void>>(2);
+            if (redirects.pipeStandardOut) {
+                readers.add(io.read(process.inputReader(), standardOut::submit));
+            }
+            if (redirects.errorFile == null) {
+                readers.add(io.read(process.errorReader(), line -> {
+                    errors.add(line);
+                    errorOut.submit(line);
+                }));
+            }
+            var reading = CompletableFuture.allOf(readers.toArray(CompletableFuture[]::new));
+
+            // 制限時間を超過したときはプロセスの終了を待たずに例外的に完了する
+            // エラー出力を分類するため、プロセスが終了したら読み込みの終了も待機する
+            return VPProcessWatchdog.getDefault().watch(process, timeout).thenCompose(p -> reading
+                    .completeOnTimeout(null, READER_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                    .thenApply(v -> p.exitValue()));
+        }).whenComplete((status, e) -> {
+            var errorFile = redirects.errorFile;
+            if (errorFile != null) {
+                if (status != null && status != 0) {
+                    errors.addAll(readErrorFile(errorFile));
+                }
+                deleteErrorFile(errorFile);
+            }
+
+            if (e != null) {
+                future.completeExceptionally(e);
+                return;
+            }
+
+            if (status != 0) {
+                var errorType = VPErrorType.classify(errors);
+                if (retryPolicy.shouldRetry(errorType, count) && !future.isDone()) {
+                    var backoff = retryPolicy.backoff(count);
+                    LOGGER.log(System.Logger.Level.INFO, "retry %s failure after %d ms (attempt %d)"
+                            .formatted(errorType, backoff.toMillis(), count + 1));
+                    var delayed = CompletableFuture.delayedExecutor(backoff.toNanos(), TimeUnit.NANOSECONDS);
+                    delayed.execute(() -> attempt(count + 1, future, launched));
+                    return;
+                }
+            }
+
+            future.complete(new Attempt(status, List.copyOf(errors)));
+        });
+    }
+
+    private static List<String> readErrorFile(Path errorFile) {
+        try {
+            return Files.readAllLines(errorFile, NATIVE_CHARSET);
+        } catch (IOException e) {
+            LOGGER.log(System.Logger.Level.WARNING, "failed to read error file " + errorFile, e);
+            return List.of();
+        }
+    }
 
-        return process.onExit().thenApply(Process::exitValue);
+    private static void deleteErrorFile(Path errorFile) {
+        try {
+            Files.deleteIfExists(errorFile);
+        } catch (IOException e) {
+            LOGGER.log(System.Logger.Level.WARNING, "failed to delete error file " + errorFile, e);
+        }
     }
 
     @Override
@@ -70,4 +378,9 @@ public class DefaultVPProcess implements VPProcess {
     public Flow.Publisher<String> getErrorOut() {
         return errorOut;
     }
+
+    @Override
+    public long getDroppedLineCount() {
+        return standardOut.getDroppedCount() + errorOut.getDroppedCount();
+    }
 }
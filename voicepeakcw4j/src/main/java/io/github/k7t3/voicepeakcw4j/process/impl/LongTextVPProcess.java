@@ -0,0 +1,246 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.k7t3.voicepeakcw4j.process.impl;
+
+import io.github.k7t3.voicepeakcw4j.audio.WavConcatenator;
+import io.github.k7t3.voicepeakcw4j.exception.VPCommandException;
+import io.github.k7t3.voicepeakcw4j.exception.VPExecutionException;
+import io.github.k7t3.voicepeakcw4j.process.OutputBuffer;
+import io.github.k7t3.voicepeakcw4j.process.VPProcess;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.function.Function;
+
+/**
+ * 一度に処理できる文字数を超えるテキストを分割して合成し、一つの音声ファイルに連結するプロセス
+ * <p>
+ *     分割した文ごとにVOICEPEAKを実行して出力先と同じディレクトリの一時ファイルに出力し、
+ *     すべての合成が完了したら{@link WavConcatenator}で出力先に連結する。
+ *     分割した文のプロセスは同時に起動を要求するため、同時実行数に空きがあれば並列に合成される。
+ *     一つでも失敗したときは残りの合成をキャンセルする。
+ * </p>
+ * <p>
+ *     標準出力及びエラー出力には、分割した文のプロセスの出力を到着順に配信する。
+ * </p>
+ */
+public class LongTextVPProcess implements VPProcess {
+
+    private static final System.Logger LOGGER = System.getLogger(LongTextVPProcess.class.getName());
+
+    /**
+     * 音声ファイルを連結するExecutor
+     */
+    private static final Executor CONCATENATOR = task -> Thread.ofVirtual().name("voicepeakcw4j-concatenator").start(task);
+
+    private final List<DefaultVPProcess> chunks;
+
+    private final List<Path> chunkOutputs;
+
+    private final Path output;
+
+    private final MessagePublisher standardOut;
+    private final MessagePublisher errorOut;
+
+    /**
+     * コンストラクタ
+     * @param chunks 分割した文ごとのプロセス
+     * @param chunkOutputs 分割した文ごとのプロセスが音声を出力するパス
+     * @param output 連結した音声ファイルの出力先
+     * @param outputBuffer 標準出力及びエラー出力のバッファの設定
+     */
+    public LongTextVPProcess(List<DefaultVPProcess> chunks, List<Path> chunkOutputs, Path output, OutputBuffer outputBuffer) {
+        if (chunks.isEmpty() || chunks.size() != chunkOutputs.size())
+            throw new IllegalArgumentException("chunks and chunkOutputs must have the same size");
+        this.chunks = List.copyOf(chunks);
+        this.chunkOutputs = List.copyOf(chunkOutputs);
+        this.output = output;
+        this.standardOut = new MessagePublisher(outputBuffer);
+        this.errorOut = new MessagePublisher(outputBuffer);
+    }
+
+    /**
+     * 分割した文のプロセスの出力をこのプロセスの購読者に配信する購読者
+     */
+    private record Forwarder(MessagePublisher target) implements Flow.Subscriber<String> {
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String item) {
+            target.submit(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+
+    @Override
+    public CompletableFuture<Integer> start() {
+        return forward(run(), e -> {
+            var cause = unwrap(e);
+            if (cause instanceof VPCommandException c) {
+                return c.getStatus();
+            }
+            throw (e instanceof CompletionException ce) ? ce : new CompletionException(e);
+        }, 0);
+    }
+
+    @Override
+    public CompletableFuture<Void> execute() {
+        return forward(run(), e -> {
+            throw (e instanceof CompletionException ce) ? ce : new CompletionException(e);
+        }, null);
+    }
+
+    /**
+     * 結果を変換したFutureを返す。返したFutureをキャンセルしたときは実行もキャンセルする
+     */
+    private static <T> CompletableFuture<T> forward(CompletableFuture<Void> run, Function<Throwable, T> error, T success) {
+        var future = run.handle((v, e) -> e == null ? success : error.apply(e));
+        future.whenComplete((v, e) -> {
+            if (future.isCancelled()) {
+                run.cancel(false);
+            }
+        });
+        return future;
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+    }
+
+    private CompletableFuture<Void> run() {
+        var forwardStandardOut = standardOut.hasSubscribers();
+        var forwardErrorOut = errorOut.hasSubscribers();
+
+        var futures = new ArrayList<CompletableFuture<Void>>(chunks.size());
+        for (var chunk : chunks) {
+            if (forwardStandardOut) {
+                chunk.getStandardOut().subscribe(new Forwarder(standardOut));
+            }
+            if (forwardErrorOut) {
+                chunk.getErrorOut().subscribe(new Forwarder(errorOut));
+            }
+            futures.add(chunk.execute());
+        }
+        LOGGER.log(System.Logger.Level.DEBUG, "queued chunk processes. count: " + chunks.size());
+
+        var done = new CompletableFuture<Void>();
+
+        // 一つでも失敗したら直ちに失敗とする
+        for (var chunkFuture : futures) {
+            chunkFuture.whenComplete((v, e) -> {
+                if (e != null) {
+                    done.completeExceptionally(unwrap(e));
+                }
+            });
+        }
+
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+                .thenRunAsync(this::concatenate, CONCATENATOR)
+                .whenComplete((v, e) -> {
+                    if (e == null) {
+                        done.complete(null);
+                    } else {
+                        done.completeExceptionally(unwrap(e));
+                    }
+                });
+
+        // 一時ファイルを削除してから完了する
+        var future = new CompletableFuture<Void>();
+        done.whenComplete((v, e) -> {
+            // 失敗あるいはキャンセルされたときは残りの合成を起動しない
+            if (e != null) {
+                futures.forEach(chunkFuture -> chunkFuture.cancel(false));
+            }
+
+            deleteChunkOutputs();
+
+            if (e == null) {
+                standardOut.complete();
+                errorOut.complete();
+                future.complete(null);
+            } else {
+                var cause = unwrap(e);
+                standardOut.completeExceptionally(cause);
+                errorOut.completeExceptionally(cause);
+                future.completeExceptionally(cause);
+            }
+        });
+        future.whenComplete((v, e) -> {
+            if (future.isCancelled()) {
+                done.cancel(false);
+            }
+        });
+
+        return future;
+    }
+
+    private void concatenate() {
+        try {
+            var header = WavConcatenator.concatenate(chunkOutputs, output);
+            LOGGER.log(System.Logger.Level.DEBUG, "concatenated " + chunkOutputs.size() + " files, frames: " + header.frameCount());
+        } catch (IOException e) {
+            throw new VPExecutionException(e);
+        }
+    }
+
+    private void deleteChunkOutputs() {
+        for (var chunkOutput : chunkOutputs) {
+            try {
+                Files.deleteIfExists(chunkOutput);
+            } catch (IOException e) {
+                LOGGER.log(System.Logger.Level.WARNING, "failed to delete " + chunkOutput, e);
+            }
+        }
+    }
+
+    @Override
+    public Flow.Publisher<String> getStandardOut() {
+        return standardOut;
+    }
+
+    @Override
+    public Flow.Publisher<String> getErrorOut() {
+        return errorOut;
+    }
+
+    @Override
+    public long getDroppedLineCount() {
+        var count = standardOut.getDroppedCount() + errorOut.getDroppedCount();
+        for (var chunk : chunks) {
+            count += chunk.getDroppedLineCount();
+        }
+        return count;
+    }
+}
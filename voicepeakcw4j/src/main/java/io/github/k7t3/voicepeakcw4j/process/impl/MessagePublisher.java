@@ -16,27 +16,359 @@
 
 package io.github.k7t3.voicepeakcw4j.process.impl;
 
-import java.io.BufferedReader;
-import java.io.IOException;
+import io.github.k7t3.voicepeakcw4j.process.OutputBuffer;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
-import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * VOICEPEAKプロセスの出力を行ごとに配信するパブリッシャー
+ * <p>
+ *     購読者ごとに{@link OutputBuffer}の大きさのバッファを持ち、配信は読み込みとは別のスレッドで行う。
+ *     {@link io.github.k7t3.voicepeakcw4j.process.OverflowPolicy#BLOCK}以外では
+ *     購読者が遅くても読み込みは停止せず、あふれた行は破棄して数える。
+ * </p>
+ * <p>
+ *     {@link #complete()}を呼び出すとその時点の購読者にバッファの残りを配信したのち
+ *     {@link Flow.Subscriber#onComplete()}を通知し、購読者への参照を解放する。
+ *     プロセスは繰り返し実行できるため、パブリッシャーは閉じずに以降の購読を受け付ける。
+ * </p>
+ */
+class MessagePublisher implements Flow.Publisher<String> {
+
+    private static final System.Logger LOGGER = System.getLogger(MessagePublisher.class.getName());
+
+    /**
+     * 配信に使用するExecutor。{@link java.util.concurrent.SubmissionPublisher}と同様に、
+     * 共通プールが並列に実行できないときはタスクごとにスレッドを生成する
+     */
+    private static final Executor DELIVERY = ForkJoinPool.getCommonPoolParallelism() > 1
+            ? ForkJoinPool.commonPool()
+            : task -> new Thread(task).start();
+
+    private final OutputBuffer outputBuffer;
+
+    private final List<BufferedSubscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    MessagePublisher(OutputBuffer outputBuffer) {
+        this.outputBuffer = outputBuffer;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super String> subscriber) {
+        if (subscriber == null)
+            throw new NullPointerException("subscriber is null");
+        var subscription = new BufferedSubscription(subscriber);
+        subscriptions.add(subscription);
+        subscription.signal();
+    }
+
+    /**
+     * 購読者が存在するかを返す
+     * @return 購読者が存在するときはtrue
+     */
+    boolean hasSubscribers() {
+        return !subscriptions.isEmpty();
+    }
+
+    /**
+     * すべての購読者のバッファに行を追加する
+     */
+    void submit(String line) {
+        for (var subscription : subscriptions) {
+            subscription.offer(line);
+        }
+    }
+
+    /**
+     * 現在の購読者にバッファの残りを配信したのち完了を通知する
+     */
+    void complete() {
+        terminate(null);
+    }
+
+    /**
+     * 現在の購読者にバッファの残りを破棄してエラーを通知する
+     * @param error エラー
+     */
+    void completeExceptionally(Throwable error) {
+        terminate(error);
+    }
 
-class MessagePublisher extends SubmissionPublisher<String> {
+    private void terminate(Throwable error) {
+        for (var subscription : subscriptions) {
+            subscriptions.remove(subscription);
+            subscription.terminate(error);
+        }
+    }
 
-    public MessagePublisher() {
-        super();
+    /**
+     * バッファがあふれて破棄した行の累計を返す
+     * @return 破棄した行の累計
+     */
+    long getDroppedCount() {
+        return droppedCount.get();
     }
 
-    void start(BufferedReader reader, Executor executor) {
-        executor.execute(() -> {
-            try (reader) {
+    /**
+     * 購読者ごとのバッファと要求数を管理するサブスクリプション
+     */
+    private final class BufferedSubscription implements Flow.Subscription, Runnable {
+
+        private final Flow.Subscriber<? super String> subscriber;
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notFull = lock.newCondition();
+
+        private final ArrayDeque<String> buffer = new ArrayDeque<>();
+        private final ArrayDeque<String> spill = new ArrayDeque<>();
+
+        private long demand = 0;
+        private boolean subscribed = false;
+        private boolean cancelled = false;
+
+        /**
+         * 完了が要求されたか、完了を通知したか
+         */
+        private boolean terminated = false;
+        private boolean done = false;
+
+        /**
+         * 通知するエラー、あるいは正常に完了するときはnull
+         */
+        private Throwable error;
+
+        /**
+         * 配信タスクがスケジュールされているか
+         */
+        private boolean scheduled = false;
+
+        BufferedSubscription(Flow.Subscriber<? super String> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        void offer(String line) {
+            lock.lock();
+            try {
+                if (cancelled || terminated) {
+                    return;
+                }
+                var capacity = outputBuffer.capacity();
+                switch (outputBuffer.overflowPolicy()) {
+                    case DROP_OLDEST -> {
+                        if (capacity <= buffer.size()) {
+                            buffer.poll();
+                            droppedCount.incrementAndGet();
+                        }
+                        buffer.add(line);
+                    }
+                    case DROP_NEWEST -> {
+                        if (capacity <= buffer.size()) {
+                            droppedCount.incrementAndGet();
+                            return;
+                        }
+                        buffer.add(line);
+                    }
+                    case BLOCK -> {
+                        while (capacity <= buffer.size() && !cancelled && !terminated) {
+                            notFull.awaitUninterruptibly();
+                        }
+                        if (cancelled || terminated) {
+                            return;
+                        }
+                        buffer.add(line);
+                    }
+                    case SPILL -> {
+                        // 順序を保つため、退避している行があるときは新しい行も退避する
+                        if (capacity <= buffer.size() || !spill.isEmpty()) {
+                            if (outputBuffer.spillCapacity() <= spill.size()) {
+                                spill.poll();
+                                droppedCount.incrementAndGet();
+                            }
+                            spill.add(line);
+                        } else {
+                            buffer.add(line);
+                        }
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            signal();
+        }
+
+        void terminate(Throwable error) {
+            lock.lock();
+            try {
+                if (terminated || cancelled) {
+                    return;
+                }
+                terminated = true;
+                this.error = error;
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            signal();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancel();
+                subscriber.onError(new IllegalArgumentException("non-positive subscription request"));
+                return;
+            }
+            lock.lock();
+            try {
+                demand = (Long.MAX_VALUE - demand < n) ? Long.MAX_VALUE : demand + n;
+            } finally {
+                lock.unlock();
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            lock.lock();
+            try {
+                cancelled = true;
+                buffer.clear();
+                spill.clear();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            subscriptions.remove(this);
+        }
+
+        /**
+         * 配信できる行があれば配信タスクをスケジュールする
+         */
+        void signal() {
+            lock.lock();
+            try {
+                if (scheduled || cancelled || done) {
+                    return;
+                }
+                if (subscribed && !isTerminable() && (demand == 0 || buffer.isEmpty())) {
+                    return;
+                }
+                scheduled = true;
+            } finally {
+                lock.unlock();
+            }
+            DELIVERY.execute(this);
+        }
+
+        /**
+         * 配信タスク。同時に一つしか実行されない
+         */
+        @Override
+        public void run() {
+            try {
+                if (markSubscribed()) {
+                    subscriber.onSubscribe(this);
+                }
                 String line;
-                while ((line = reader.readLine()) != null) {
-                    submit(line);
+                while ((line = next()) != null) {
+                    subscriber.onNext(line);
+                }
+                if (markDone()) {
+                    if (error == null) {
+                        subscriber.onComplete();
+                    } else {
+                        subscriber.onError(error);
+                    }
+                }
+            } catch (RuntimeException e) {
+                LOGGER.log(System.Logger.Level.WARNING, "subscriber threw an exception", e);
+                cancel();
+                subscriber.onError(e);
+            } finally {
+                lock.lock();
+                try {
+                    scheduled = false;
+                } finally {
+                    lock.unlock();
+                }
+            }
+            // 配信中に追加された行や要求を配信する
+            signal();
+        }
+
+        /**
+         * 初回の配信であればtrueを返す
+         */
+        private boolean markSubscribed() {
+            lock.lock();
+            try {
+                if (subscribed) {
+                    return false;
+                }
+                subscribed = true;
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 完了を通知できるか。エラーのときはバッファの残りを配信しない
+         */
+        private boolean isTerminable() {
+            return terminated && !done && (error != null || buffer.isEmpty());
+        }
+
+        /**
+         * 完了を通知できるときはtrueを返し、バッファを解放する
+         */
+        private boolean markDone() {
+            lock.lock();
+            try {
+                if (cancelled || !isTerminable()) {
+                    return false;
+                }
+                done = true;
+                buffer.clear();
+                spill.clear();
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private String next() {
+            lock.lock();
+            try {
+                if (cancelled || demand == 0 || error != null) {
+                    return null;
+                }
+                var line = buffer.poll();
+                if (line != null) {
+                    // 退避している行をバッファに戻す
+                    if (!spill.isEmpty()) {
+                        buffer.add(spill.poll());
+                    }
+                    if (demand != Long.MAX_VALUE) {
+                        demand--;
+                    }
+                    notFull.signal();
                 }
-            } catch (IOException ignored) {
+                return line;
+            } finally {
+                lock.unlock();
             }
-        });
+        }
     }
 
 }
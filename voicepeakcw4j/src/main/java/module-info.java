@@ -6,4 +6,7 @@ module voicepeakcw4j {
     exports io.github.k7t3.voicepeakcw4j;
     exports io.github.k7t3.voicepeakcw4j.process;
     exports io.github.k7t3.voicepeakcw4j.exception;
+    exports io.github.k7t3.voicepeakcw4j.cache;
+    exports io.github.k7t3.voicepeakcw4j.audio;
+    exports io.github.k7t3.voicepeakcw4j.text;
 }
\ No newline at end of file
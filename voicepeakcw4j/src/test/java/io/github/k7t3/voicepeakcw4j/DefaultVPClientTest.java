@@ -16,10 +16,15 @@
 
 package io.github.k7t3.voicepeakcw4j;
 
+import io.github.k7t3.voicepeakcw4j.exception.VPExecutionException;
+import io.github.k7t3.voicepeakcw4j.process.VPProcessBuilder;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+import java.util.concurrent.CompletionException;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class DefaultVPClientTest {
@@ -68,4 +73,58 @@ class DefaultVPClientTest {
         assertTrue(narrators.contains("Tohoku Kiritan"));
         assertFalse(narrators.contains("Yukkuri"));
     }
+
+    @Test
+    void getAsync() {
+        var narrators = client.getNarratorsAsync();
+        var emotions = client.getEmotionsAsync("Zundamon");
+
+        assertTrue(narrators.join().contains("Zundamon"));
+        assertTrue(emotions.join().contains("amaama"));
+    }
+
+    @Test
+    void defaultAsync() {
+        // 非同期版を実装していないクライアントは同期版を非同期に実行する
+        VPClient delegate = new VPClient() {
+            @Override
+            public VPProcessBuilder builder() {
+                return client.builder();
+            }
+
+            @Override
+            public List<String> getEmotions(String narrator) {
+                return client.getEmotions(narrator);
+            }
+
+            @Override
+            public List<String> getNarrators() {
+                return client.getNarrators();
+            }
+        };
+
+        assertTrue(delegate.getNarratorsAsync().join().contains("Zundamon"));
+        assertTrue(delegate.getEmotionsAsync("Zundamon").join().contains("amaama"));
+    }
+
+    @Test
+    void failure() {
+        // 存在しないjarファイルを実行するとjavaコマンドが異常終了する
+        var broken = new VPExecutable() {
+            @Override
+            public void fill(List<String> commands) {
+                commands.add("java");
+                commands.add("-jar");
+                commands.add("not-exists.jar");
+            }
+        };
+        var client = new DefaultVPClient(broken);
+
+        var future = client.getNarratorsAsync();
+        var e = assertThrows(CompletionException.class, future::join);
+        assertInstanceOf(VPExecutionException.class, e.getCause());
+
+        // 同期版は例外をそのままスローする
+        assertThrows(VPExecutionException.class, client::getNarrators);
+    }
 }
\ No newline at end of file
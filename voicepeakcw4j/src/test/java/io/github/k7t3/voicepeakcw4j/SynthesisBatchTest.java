@@ -0,0 +1,246 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.k7t3.voicepeakcw4j;
+
+import io.github.k7t3.voicepeakcw4j.exception.VPExecutionException;
+import io.github.k7t3.voicepeakcw4j.process.VPProcessBuilder;
+import io.github.k7t3.voicepeakcw4j.process.VPProcessScheduler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SynthesisBatchTest {
+
+    private VPClient client;
+
+    private Path directory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        client = VPClient.create(new TestVPExecutable());
+        directory = Files.createTempDirectory("vpbatch");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (var stream = Files.walk(directory)) {
+            stream.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    /**
+     * 1件ずつ要求する購読者
+     */
+    private static class ResultSubscriber implements Flow.Subscriber<SynthesisResult> {
+
+        private final List<SynthesisResult> results = Collections.synchronizedList(new ArrayList<>());
+
+        private final CompletableFuture<List<SynthesisResult>> done = new CompletableFuture<>();
+
+        private Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(SynthesisResult item) {
+            results.add(item);
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            done.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            done.complete(results);
+        }
+    }
+
+    private VPProcessBuilder request(String text, String file) {
+        return client.builder()
+                .withNarrator("Zundamon")
+                .withSpeechText(text)
+                .withOutput(directory.resolve(file));
+    }
+
+    @Test
+    void submissionOrder() throws Exception {
+        var requests = List.of(
+                request("一つ目", "0.wav"),
+                request("二つ目", "1.wav"),
+                request("一つ目", "2.wav"),
+                request("三つ目", "3.wav"));
+
+        var before = VPProcessScheduler.getDefault().getStatistics().startedCount();
+
+        var subscriber = new ResultSubscriber();
+        client.synthesize(requests, SynthesisOrder.SUBMISSION).subscribe(subscriber);
+        var results = subscriber.done.get(30, TimeUnit.SECONDS);
+
+        assertEquals(List.of(0, 1, 2, 3), results.stream().map(SynthesisResult::index).toList());
+        for (var result : results) {
+            assertTrue(result.isSuccess());
+            assertTrue(Files.exists(result.output()));
+        }
+
+        // 同じ内容の要求は一度だけ合成される
+        var started = VPProcessScheduler.getDefault().getStatistics().startedCount() - before;
+        assertEquals(3, started);
+    }
+
+    @Test
+    void backpressure() throws Exception {
+        var requests = List.of(
+                request("一つ目", "0.wav"),
+                request("二つ目", "1.wav"),
+                request("三つ目", "2.wav"));
+
+        var before = VPProcessScheduler.getDefault().getStatistics().startedCount();
+
+        var results = new CompletableFuture<SynthesisResult>();
+        client.synthesize(requests).subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(SynthesisResult item) {
+                results.complete(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+
+        var result = results.get(30, TimeUnit.SECONDS);
+        assertEquals(0, result.index());
+
+        // 要求された数を超えて合成しない
+        Thread.sleep(1500);
+        var started = VPProcessScheduler.getDefault().getStatistics().startedCount() - before;
+        assertEquals(1, started);
+    }
+
+    @Test
+    void failure() throws Exception {
+        var requests = List.of(
+                client.builder().withSpeechText("出力先なし"),
+                request("出力先あり", "1.wav"));
+
+        var subscriber = new ResultSubscriber();
+        client.synthesize(requests, SynthesisOrder.SUBMISSION).subscribe(subscriber);
+        var results = subscriber.done.get(30, TimeUnit.SECONDS);
+
+        // 失敗した要求も結果として通知される
+        assertEquals(2, results.size());
+        assertFalse(results.get(0).isSuccess());
+        assertInstanceOf(VPExecutionException.class, results.get(0).error());
+        assertTrue(results.get(1).isSuccess());
+    }
+
+    @Test
+    void manySynchronousFailures() throws Exception {
+        // 直ちに失敗する要求を大量に処理してもスタックを消費し続けない
+        var requests = new ArrayList<VPProcessBuilder>();
+        for (int i = 0; i < 50_000; i++) {
+            requests.add(client.builder().withSpeechText("出力先なし"));
+        }
+
+        ResultSubscriber subscriber = new ResultSubscriber() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                super.onSubscribe(subscription);
+                subscription.request(Long.MAX_VALUE);
+            }
+        };
+        client.synthesize(requests, SynthesisOrder.SUBMISSION).subscribe(subscriber);
+        var results = subscriber.done.get(30, TimeUnit.SECONDS);
+
+        assertEquals(requests.size(), results.size());
+        for (var result : results) {
+            assertInstanceOf(VPExecutionException.class, result.error());
+        }
+    }
+
+    @Test
+    void shareAfterOriginRemoved() throws Exception {
+        var requests = List.of(
+                request("一つ目", "0.wav"),
+                request("二つ目", "1.wav"),
+                request("一つ目", "2.wav"));
+
+        var exists = Collections.synchronizedList(new ArrayList<Boolean>());
+        ResultSubscriber subscriber = new ResultSubscriber() {
+            @Override
+            public void onNext(SynthesisResult item) {
+                // 通知された出力先を購読者が削除しても後続の同じ要求はコピーできる
+                exists.add(Files.exists(item.output()));
+                try {
+                    Files.delete(item.output());
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                super.onNext(item);
+            }
+        };
+        client.synthesize(requests, SynthesisOrder.SUBMISSION).subscribe(subscriber);
+        var results = subscriber.done.get(30, TimeUnit.SECONDS);
+
+        assertEquals(3, results.size());
+        for (var result : results) {
+            assertTrue(result.isSuccess());
+        }
+        assertEquals(List.of(true, true, true), exists);
+
+        // 退避したファイルは購読が終わると削除される
+        try (var files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void empty() throws Exception {
+        var subscriber = new ResultSubscriber();
+        client.synthesize(List.of()).subscribe(subscriber);
+        assertTrue(subscriber.done.get(1, TimeUnit.SECONDS).isEmpty());
+    }
+}
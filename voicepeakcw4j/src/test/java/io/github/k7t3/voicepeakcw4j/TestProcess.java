@@ -0,0 +1,87 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.k7t3.voicepeakcw4j;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 任意のタイミングで終了させることができるプロセス
+ */
+public class TestProcess extends Process {
+
+    private final CompletableFuture<Process> exit = new CompletableFuture<>();
+
+    private volatile int exitValue = 0;
+
+    public void exit() {
+        exit(0);
+    }
+
+    public void exit(int status) {
+        if (!exit.isDone()) {
+            exitValue = status;
+        }
+        exit.complete(this);
+    }
+
+    @Override
+    public long pid() {
+        return -1;
+    }
+
+    @Override
+    public CompletableFuture<Process> onExit() {
+        return exit;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return OutputStream.nullOutputStream();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return InputStream.nullInputStream();
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+        return InputStream.nullInputStream();
+    }
+
+    @Override
+    public int waitFor() {
+        return exit.thenApply(p -> exitValue).join();
+    }
+
+    @Override
+    public boolean isAlive() {
+        return !exit.isDone();
+    }
+
+    @Override
+    public int exitValue() {
+        return exitValue;
+    }
+
+    @Override
+    public void destroy() {
+        exit();
+    }
+}
@@ -19,6 +19,7 @@ package io.github.k7t3.voicepeakcw4j;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
+import java.util.Optional;
 
 public class TestVPExecutable extends VPExecutable {
 
@@ -40,4 +41,9 @@ public class TestVPExecutable extends VPExecutable {
         commands.add("-jar");
         commands.add(executable.toAbsolutePath().toString());
     }
+
+    @Override
+    public Optional<Path> locate() {
+        return Optional.of(executable.toAbsolutePath());
+    }
 }
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.k7t3.voicepeakcw4j;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VPCatalogTest {
+
+    /**
+     * VOICEPEAKの実行回数を数える実行ファイル
+     */
+    private static class CountingVPExecutable extends TestVPExecutable {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public void fill(List<String> commands) {
+            count.incrementAndGet();
+            super.fill(commands);
+        }
+    }
+
+    private CountingVPExecutable executable;
+
+    private Path snapshotFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        executable = new CountingVPExecutable();
+        snapshotFile = Files.createTempFile(null, ".properties");
+        Files.delete(snapshotFile);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(snapshotFile);
+    }
+
+    @Test
+    void getNarrators() {
+        var catalog = new VPCatalog(executable);
+
+        var narrators = catalog.getNarrators();
+        assertTrue(narrators.contains("Zundamon"));
+        assertTrue(narrators.contains("Tohoku Kiritan"));
+
+        // 有効期間内はVOICEPEAKを実行しない
+        assertEquals(narrators, catalog.getNarrators());
+        assertEquals(1, executable.count.get());
+
+        // 破棄すると再取得する
+        catalog.invalidate();
+        assertEquals(narrators, catalog.getNarrators());
+        assertEquals(2, executable.count.get());
+    }
+
+    @Test
+    void expire() {
+        var catalog = new VPCatalog(executable, Duration.ZERO, null);
+        catalog.getEmotions("Zundamon");
+        catalog.getEmotions("Zundamon");
+        assertEquals(2, executable.count.get());
+    }
+
+    @Test
+    void singleFlight() {
+        var catalog = new VPCatalog(executable);
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var futures = new ArrayList<CompletableFuture<List<String>>>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(CompletableFuture.supplyAsync(() -> catalog.getEmotions("Tohoku Kiritan"), executor));
+            }
+            for (var future : futures) {
+                assertTrue(future.join().contains("bright"));
+            }
+        }
+
+        // 同時に要求しても一度だけ実行する
+        assertEquals(1, executable.count.get());
+    }
+
+    @Test
+    void snapshot() {
+        var catalog = new VPCatalog(executable, Duration.ofHours(1), snapshotFile);
+        var narrators = catalog.getNarrators();
+        var emotions = catalog.getEmotions("Zundamon");
+        assertTrue(Files.exists(snapshotFile));
+        assertEquals(2, executable.count.get());
+
+        // スナップショットから読み込んだ一覧はVOICEPEAKを実行せずに返す
+        var restarted = new VPCatalog(executable, Duration.ofHours(1), snapshotFile);
+        assertEquals(narrators, restarted.getNarrators());
+        assertEquals(emotions, restarted.getEmotions("Zundamon"));
+        assertEquals(2, executable.count.get());
+    }
+
+    @Test
+    void snapshotAfterTimeToLive() throws InterruptedException {
+        var catalog = new VPCatalog(executable, Duration.ofSeconds(1), snapshotFile);
+        var narrators = catalog.getNarrators();
+        assertEquals(1, executable.count.get());
+
+        // 保存してから有効期間が過ぎても、実行ファイルが同じであれば読み込んだときから有効とする
+        Thread.sleep(1500);
+        var restarted = new VPCatalog(executable, Duration.ofSeconds(1), snapshotFile);
+        assertEquals(narrators, restarted.getNarrators());
+        assertEquals(1, executable.count.get());
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.k7t3.voicepeakcw4j;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VPExecutablePoolTest {
+
+    /**
+     * 起動したプロセスのコマンドを記録する実行ファイル
+     */
+    private static class RecordingVPExecutable extends VPExecutable {
+
+        private final List<List<String>> launched = new ArrayList<>();
+
+        private final List<Map<String, String>> environments = new ArrayList<>();
+
+        private final List<File> directories = new ArrayList<>();
+
+        private final List<TestProcess> processes = new ArrayList<>();
+
+        private boolean broken = false;
+
+        @Override
+        public Process launch(ProcessBuilder builder) throws IOException {
+            configure(builder);
+            environments.add(Map.copyOf(builder.environment()));
+            directories.add(builder.directory());
+            if (broken) {
+                throw new IOException("broken");
+            }
+            launched.add(List.copyOf(builder.command()));
+            var process = new TestProcess();
+            processes.add(process);
+            return process;
+        }
+    }
+
+    @Test
+    void leastLoaded() throws IOException {
+        var first = new RecordingVPExecutable();
+        var second = new RecordingVPExecutable();
+        var pool = new VPExecutablePool(List.of(first, second));
+
+        pool.launch(new ProcessBuilder("--list-narrator"));
+        pool.launch(new ProcessBuilder("--list-narrator"));
+
+        // 実行中のプロセスが少ないメンバーに振り分けられる
+        assertEquals(1, first.launched.size());
+        assertEquals(1, second.launched.size());
+        assertEquals(List.of("--list-narrator"), first.launched.getFirst());
+
+        // 終了したメンバーの負荷が下がる
+        second.processes.getFirst().exit();
+        pool.launch(new ProcessBuilder("--list-narrator"));
+        assertEquals(2, second.launched.size());
+
+        var status = pool.getStatus();
+        assertEquals(1, status.get(0).load());
+        assertEquals(1, status.get(1).load());
+    }
+
+    @Test
+    void failover() throws IOException {
+        var broken = new RecordingVPExecutable();
+        broken.broken = true;
+        var healthy = new RecordingVPExecutable();
+        var pool = new VPExecutablePool(List.of(broken, healthy), Duration.ofMinutes(1));
+
+        pool.launch(new ProcessBuilder("--list-narrator"));
+        assertEquals(List.of("--list-narrator"), healthy.launched.getFirst());
+
+        var status = pool.getStatus();
+        assertFalse(status.get(0).healthy());
+        assertEquals(1, status.get(0).failureCount());
+        assertEquals(0, status.get(0).load());
+        assertTrue(status.get(1).healthy());
+
+        // 不健全なメンバーは負荷が少なくても選択されない
+        pool.launch(new ProcessBuilder("--list-narrator"));
+        assertEquals(2, healthy.launched.size());
+        assertEquals(1, pool.getStatus().get(0).launchedCount());
+    }
+
+    @Test
+    void exitFailure() throws IOException {
+        var crashing = new RecordingVPExecutable();
+        var healthy = new RecordingVPExecutable();
+        var pool = new VPExecutablePool(List.of(crashing, healthy), Duration.ofMinutes(1));
+
+        pool.launch(new ProcessBuilder("--list-narrator"));
+        assertEquals(1, crashing.launched.size());
+
+        // 起動したあとに異常終了したメンバーは不健全として扱われる
+        crashing.processes.getFirst().exit(1);
+        var status = pool.getStatus();
+        assertFalse(status.get(0).healthy());
+        assertEquals(1, status.get(0).failureCount());
+        assertEquals(0, status.get(0).load());
+
+        pool.launch(new ProcessBuilder("--list-narrator"));
+        pool.launch(new ProcessBuilder("--list-narrator"));
+        assertEquals(1, crashing.launched.size());
+        assertEquals(2, healthy.launched.size());
+    }
+
+    @Test
+    void minimumRun() throws IOException {
+        var member = new RecordingVPExecutable();
+        var pool = new VPExecutablePool(List.of(member), Duration.ofMinutes(1), Duration.ofMinutes(1));
+
+        pool.launch(new ProcessBuilder("--list-narrator"));
+
+        // 最短実行時間より早く終了したメンバーは終了コードにかかわらず不健全として扱われる
+        member.processes.getFirst().exit();
+        assertFalse(pool.getStatus().getFirst().healthy());
+        assertEquals(1, pool.getStatus().getFirst().failureCount());
+    }
+
+    @Test
+    void failoverEnvironment() throws IOException {
+        var broken = new RecordingVPExecutable();
+        broken.broken = true;
+        broken.withEnvironment("VOICEPEAK_MEMBER", "broken");
+        broken.withWorkingDirectory(Paths.get("broken"));
+        var healthy = new RecordingVPExecutable();
+        var pool = new VPExecutablePool(List.of(broken, healthy), Duration.ofMinutes(1));
+        pool.withEnvironment("VOICEPEAK_POOL", "pool");
+
+        pool.launch(new ProcessBuilder("--list-narrator"));
+
+        // 失敗したメンバーの環境変数と作業ディレクトリは引き継がれない
+        assertEquals("broken", broken.environments.getFirst().get("VOICEPEAK_MEMBER"));
+        var environment = healthy.environments.getFirst();
+        assertFalse(environment.containsKey("VOICEPEAK_MEMBER"));
+        assertEquals("pool", environment.get("VOICEPEAK_POOL"));
+        assertNull(healthy.directories.getFirst());
+        assertEquals(List.of("--list-narrator"), healthy.launched.getFirst());
+    }
+
+    @Test
+    void allBroken() {
+        var first = new RecordingVPExecutable();
+        first.broken = true;
+        var second = new RecordingVPExecutable();
+        second.broken = true;
+        var pool = new VPExecutablePool(List.of(first, second));
+
+        var e = assertThrows(IOException.class, () -> pool.launch(new ProcessBuilder("--list-narrator")));
+        assertEquals(1, e.getSuppressed().length);
+    }
+
+    @Test
+    void client() {
+        var pool = new VPExecutablePool(List.of(new TestVPExecutable(), new TestVPExecutable()));
+        var client = VPClient.create(pool);
+
+        var narrators = client.getNarrators();
+        assertEquals(List.of("Zundamon", "Tohoku Kiritan"), narrators);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.k7t3.voicepeakcw4j;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VPExecutableTest {
+
+    private Path home;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        home = Files.createTempDirectory("vphome");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (var stream = Files.walk(home)) {
+            stream.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    void isolatedHome() {
+        var worker = home.resolve("worker1");
+        var executable = new VPExecutable(Paths.get("voicepeak"))
+                .withIsolatedHome(worker)
+                .withEnvironment("VOICEPEAK_TEST", "1");
+
+        var builder = new ProcessBuilder();
+        executable.configure(builder);
+
+        var env = builder.environment();
+        assertEquals(worker.toAbsolutePath().toString(), env.get("HOME"));
+        assertEquals(worker.toAbsolutePath().resolve(".config").toString(), env.get("XDG_CONFIG_HOME"));
+        assertEquals("1", env.get("VOICEPEAK_TEST"));
+
+        // 作業ディレクトリもホームディレクトリになる
+        assertEquals(worker.toAbsolutePath().toFile(), builder.directory());
+        assertTrue(Files.isDirectory(worker));
+    }
+
+    @Test
+    void removeEnvironment() {
+        var executable = new VPExecutable(Paths.get("voicepeak"))
+                .withEnvironment("PATH", null)
+                .withWorkingDirectory(home);
+
+        var builder = new ProcessBuilder();
+        executable.configure(builder);
+
+        assertFalse(builder.environment().containsKey("PATH"));
+        assertEquals(home.toAbsolutePath().toFile(), builder.directory());
+        assertTrue(executable.getEnvironment().containsKey("PATH"));
+    }
+
+    @Test
+    void launch() throws Exception {
+        var executable = new TestVPExecutable();
+        executable.withWorkingDirectory(home);
+
+        // 作業ディレクトリを変えても実行できる
+        var process = executable.launch(new ProcessBuilder("--list-narrator"));
+        assertEquals(0, process.waitFor());
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.k7t3.voicepeakcw4j.audio;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WavConcatenatorTest {
+
+    private Path directory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("vpcw4j");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (var files = Files.list(directory)) {
+            for (var file : files.toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+
+    /**
+     * 48kHz モノラル 16bitのWAVファイルを書き込む
+     * @param junk VOICEPEAKと同様にJUNKチャンクを含めるか
+     * @param dataSize dataチャンクに書き込むサイズ
+     */
+    private Path write(String name, byte[] data, boolean junk, int dataSize, int sampleRate) throws IOException {
+        var buffer = ByteBuffer.allocate(44 + (junk ? 60 : 0) + data.length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put("RIFF".getBytes()).putInt(0).put("WAVE".getBytes());
+        if (junk) {
+            buffer.put("JUNK".getBytes()).putInt(52).put(new byte[52]);
+        }
+        buffer.put("fmt ".getBytes()).putInt(16)
+                .putShort((short) 1).putShort((short) 1).putInt(sampleRate).putInt(sampleRate * 2)
+                .putShort((short) 2).putShort((short) 16);
+        buffer.put("data".getBytes()).putInt(dataSize).put(data);
+
+        var file = directory.resolve(name);
+        Files.write(file, buffer.array());
+        return file;
+    }
+
+    private static byte[] fill(int size, int value) {
+        var data = new byte[size];
+        Arrays.fill(data, (byte) value);
+        return data;
+    }
+
+    @Test
+    void readHeader() throws IOException {
+        var file = write("a.wav", fill(100, 1), true, 100, 48000);
+        var header = WavHeader.read(file);
+        assertEquals(WavHeader.FORMAT_PCM, header.formatTag());
+        assertEquals(48000, header.sampleRate());
+        assertEquals(104, header.dataOffset());
+        assertEquals(100, header.dataSize());
+        assertEquals(50, header.frameCount());
+
+        // 書き込み途中のサイズはファイルの終端までとする
+        var writing = write("b.wav", fill(100, 1), false, 0, 48000);
+        assertEquals(100, WavHeader.read(writing).dataSize());
+    }
+
+    @Test
+    void concatenate() throws IOException {
+        var first = write("a.wav", fill(100, 1), true, 100, 48000);
+        var second = write("b.wav", fill(60, 2), false, -1, 48000);
+        var output = directory.resolve("out.wav");
+
+        var header = WavConcatenator.concatenate(List.of(first, second), output);
+        assertEquals(160, header.dataSize());
+        assertEquals(header, WavHeader.read(output));
+
+        var bytes = Files.readAllBytes(output);
+        assertEquals(WavHeader.CANONICAL_SIZE + 160, bytes.length);
+        assertEquals(160 + 36, ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).getInt(4));
+        assertEquals(1, bytes[WavHeader.CANONICAL_SIZE]);
+        assertEquals(1, bytes[WavHeader.CANONICAL_SIZE + 99]);
+        assertEquals(2, bytes[WavHeader.CANONICAL_SIZE + 100]);
+        assertEquals(2, bytes[bytes.length - 1]);
+    }
+
+    @Test
+    void formatMismatch() throws IOException {
+        var first = write("a.wav", fill(100, 1), false, 100, 48000);
+        var second = write("b.wav", fill(100, 1), false, 100, 44100);
+        assertThrows(IOException.class, () -> WavConcatenator.concatenate(List.of(first, second), directory.resolve("out.wav")));
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.k7t3.voicepeakcw4j.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SynthesisCacheTest {
+
+    private Path directory;
+
+    private Path work;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("voicepeakcw4j-cache");
+        work = Files.createTempDirectory("voicepeakcw4j-work");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (var dir : List.of(directory, work)) {
+            try (var stream = Files.walk(dir)) {
+                for (var path : stream.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+
+    /**
+     * 指定サイズのダミー音声ファイルを作成する
+     */
+    private Path createFile(String name, int size) throws IOException {
+        var file = work.resolve(name);
+        Files.write(file, new byte[size]);
+        return file;
+    }
+
+    @Test
+    void createKey() {
+        var key = SynthesisCache.createKey(List.of("--say", "hello"));
+        assertEquals(key, SynthesisCache.createKey(List.of("--say", "hello")));
+
+        // 引数の区切りが異なるときは別のキー
+        assertNotEquals(key, SynthesisCache.createKey(List.of("--sayhello")));
+    }
+
+    @Test
+    void restore() throws IOException {
+        var cache = new SynthesisCache(directory, 1024);
+        var target = work.resolve("target.wav");
+
+        assertFalse(cache.restore("a", target));
+        assertEquals(1, cache.getMissCount());
+
+        cache.store("a", createFile("a.wav", 100));
+        assertTrue(cache.restore("a", target));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(100, Files.size(target));
+    }
+
+    @Test
+    void evict() throws IOException {
+        var cache = new SynthesisCache(directory, 250);
+
+        cache.store("a", createFile("a.wav", 100));
+        cache.store("b", createFile("b.wav", 100));
+
+        // aを参照してbを最も古いエントリにする
+        assertTrue(cache.restore("a", work.resolve("target.wav")));
+
+        cache.store("c", createFile("c.wav", 100));
+
+        assertEquals(2, cache.getEntryCount());
+        assertEquals(200, cache.getSize());
+        assertFalse(cache.restore("b", work.resolve("target.wav")));
+        assertTrue(cache.restore("a", work.resolve("target.wav")));
+        assertTrue(cache.restore("c", work.resolve("target.wav")));
+
+        // 上限を超えるファイルは保存しない
+        cache.store("d", createFile("d.wav", 300));
+        assertFalse(cache.restore("d", work.resolve("target.wav")));
+    }
+
+    @Test
+    void reload() throws IOException {
+        var cache = new SynthesisCache(directory, 1024);
+        cache.store("a", createFile("a.wav", 100));
+
+        // 同じディレクトリから読み込んだキャッシュに引き継がれる
+        var reloaded = new SynthesisCache(directory, 1024);
+        assertEquals(1, reloaded.getEntryCount());
+        assertEquals(100, reloaded.getSize());
+        assertTrue(reloaded.restore("a", work.resolve("target.wav")));
+    }
+
+    @Test
+    void clear() throws IOException {
+        var cache = new SynthesisCache(directory, 1024);
+        cache.store("a", createFile("a.wav", 100));
+        cache.clear();
+
+        assertEquals(0, cache.getEntryCount());
+        assertEquals(0, cache.getSize());
+        assertFalse(cache.restore("a", work.resolve("target.wav")));
+    }
+}
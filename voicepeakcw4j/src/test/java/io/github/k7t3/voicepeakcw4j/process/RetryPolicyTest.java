@@ -0,0 +1,177 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.k7t3.voicepeakcw4j.process;
+
+import io.github.k7t3.voicepeakcw4j.TestProcess;
+import io.github.k7t3.voicepeakcw4j.VPExecutable;
+import io.github.k7t3.voicepeakcw4j.exception.VPCommandException;
+import io.github.k7t3.voicepeakcw4j.exception.VPErrorType;
+import io.github.k7t3.voicepeakcw4j.process.impl.DefaultVPProcess;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryPolicyTest {
+
+    private static final String INSTANCE_LIMIT = "In this version, up to 1 command line instance can be executed at same time.";
+
+    private static final String BUG_REPORT = "===== BEGIN BUG REPORT =====";
+
+    /**
+     * 起動直後にエラー出力を排出して終了するプロセス
+     */
+    private static class FailingProcess extends TestProcess {
+
+        private final int status;
+
+        private final String error;
+
+        FailingProcess(int status, String error) {
+            this.status = status;
+            this.error = error;
+            exit();
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return new ByteArrayInputStream((error + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public int exitValue() {
+            return status;
+        }
+    }
+
+    /**
+     * 用意したプロセスを順に起動する実行ファイル
+     */
+    private static class ScriptedVPExecutable extends VPExecutable {
+
+        private final ArrayDeque<FailingProcess> processes;
+
+        private final AtomicInteger launched = new AtomicInteger();
+
+        ScriptedVPExecutable(List<FailingProcess> processes) {
+            this.processes = new ArrayDeque<>(processes);
+        }
+
+        @Override
+        public synchronized Process launch(ProcessBuilder builder) throws IOException {
+            launched.incrementAndGet();
+            var process = (FailingProcess) processes.poll();
+
+            // エラー出力がファイルにリダイレクトされているときはファイルに書き込む
+            var errorFile = builder.redirectError().file();
+            if (errorFile != null) {
+                Files.writeString(errorFile.toPath(), process.error + System.lineSeparator());
+            }
+            return process;
+        }
+    }
+
+    private static final RetryPolicy FAST = new RetryPolicy(3, Duration.ofMillis(1), Duration.ofMillis(10), Set.of(VPErrorType.INSTANCE_LIMIT));
+
+    @Test
+    void classify() {
+        assertEquals(VPErrorType.INSTANCE_LIMIT, VPErrorType.classify(List.of(INSTANCE_LIMIT)));
+        assertEquals(VPErrorType.CHARACTER_LIMIT, VPErrorType.classify(List.of(
+                "In this version, the character limit for a single run is 140 characters, but the input string contains 141 characters.")));
+        assertEquals(VPErrorType.MISSING_TEXT, VPErrorType.classify(List.of("Please specify text to say")));
+        assertEquals(VPErrorType.INTERNAL_ERROR, VPErrorType.classify(List.of(
+                "Internal BUG occurred. Please report what you are doing and these details to us.", BUG_REPORT)));
+        assertEquals(VPErrorType.UNKNOWN, VPErrorType.classify(List.of()));
+
+        assertTrue(VPErrorType.INSTANCE_LIMIT.isTransient());
+        assertFalse(VPErrorType.INTERNAL_ERROR.isTransient());
+        assertEquals(Set.of(VPErrorType.INSTANCE_LIMIT), RetryPolicy.DEFAULT.retryOn());
+    }
+
+    @Test
+    void backoff() {
+        var policy = new RetryPolicy(10, Duration.ofMillis(100), Duration.ofMillis(300), Set.of());
+        for (int i = 0; i < 100; i++) {
+            var first = policy.backoff(1).toMillis();
+            assertTrue(50 <= first && first <= 100);
+
+            var second = policy.backoff(2).toMillis();
+            assertTrue(100 <= second && second <= 200);
+
+            // 上限を超えない
+            var last = policy.backoff(64).toMillis();
+            assertTrue(150 <= last && last <= 300);
+        }
+
+        assertFalse(RetryPolicy.NONE.shouldRetry(VPErrorType.INSTANCE_LIMIT, 1));
+        assertTrue(FAST.shouldRetry(VPErrorType.INSTANCE_LIMIT, 2));
+        assertFalse(FAST.shouldRetry(VPErrorType.INSTANCE_LIMIT, 3));
+        assertFalse(FAST.shouldRetry(VPErrorType.UNKNOWN, 1));
+    }
+
+    @Test
+    void retryTransient() {
+        var executable = new ScriptedVPExecutable(List.of(
+                new FailingProcess(1, INSTANCE_LIMIT),
+                new FailingProcess(1, INSTANCE_LIMIT),
+                new FailingProcess(0, "")));
+        var process = new DefaultVPProcess(executable, List.of(), new VPProcessScheduler(1), null, FAST);
+
+        // 同時実行数の上限による失敗は再実行される
+        assertEquals(0, process.start().join());
+        assertEquals(3, executable.launched.get());
+    }
+
+    @Test
+    void giveUp() {
+        var executable = new ScriptedVPExecutable(List.of(
+                new FailingProcess(1, INSTANCE_LIMIT),
+                new FailingProcess(1, INSTANCE_LIMIT),
+                new FailingProcess(1, INSTANCE_LIMIT)));
+        var process = new DefaultVPProcess(executable, List.of(), new VPProcessScheduler(1), null, FAST);
+
+        var e = assertThrows(CompletionException.class, () -> process.execute().join());
+        var failure = assertInstanceOf(VPCommandException.class, e.getCause());
+        assertEquals(VPErrorType.INSTANCE_LIMIT, failure.getErrorType());
+        assertEquals(1, failure.getStatus());
+        assertEquals(3, executable.launched.get());
+    }
+
+    @Test
+    void notTransient() {
+        var executable = new ScriptedVPExecutable(List.of(new FailingProcess(1, BUG_REPORT)));
+        var process = new DefaultVPProcess(executable, List.of(), new VPProcessScheduler(1), null, FAST);
+
+        var e = assertThrows(CompletionException.class, () -> process.execute().join());
+        var failure = assertInstanceOf(VPCommandException.class, e.getCause());
+        assertEquals(VPErrorType.INTERNAL_ERROR, failure.getErrorType());
+        assertEquals(List.of(BUG_REPORT), failure.getErrorOutput());
+        assertEquals(1, executable.launched.get());
+    }
+
+}
@@ -20,6 +20,10 @@ import io.github.k7t3.voicepeakcw4j.MessageSubscriber;
 import io.github.k7t3.voicepeakcw4j.Subscriber;
 import io.github.k7t3.voicepeakcw4j.TestVPExecutable;
 import io.github.k7t3.voicepeakcw4j.VPExecutable;
+import io.github.k7t3.voicepeakcw4j.audio.WavHeader;
+import io.github.k7t3.voicepeakcw4j.cache.SynthesisCache;
+import io.github.k7t3.voicepeakcw4j.exception.VPCommandException;
+import io.github.k7t3.voicepeakcw4j.exception.VPErrorType;
 import io.github.k7t3.voicepeakcw4j.exception.VPExecutionException;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -28,6 +32,7 @@ import org.junit.jupiter.api.Test;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.util.Map;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
@@ -85,6 +90,18 @@ class VPProcessBuilderTest {
         assertEquals(1, status);
     }
 
+    @Test
+    void errorNarratorType() {
+        var errorProcess = essentialBuilder()
+                .withNarrator("unexpected narrator")
+                .build();
+
+        // 未対応のナレーターは内部エラーとして出力され、再実行されない
+        var e = assertThrows(CompletionException.class, () -> errorProcess.execute().join());
+        var failure = assertInstanceOf(VPCommandException.class, e.getCause());
+        assertEquals(VPErrorType.INTERNAL_ERROR, failure.getErrorType());
+    }
+
     @Test
     void withSpeechText() {
         var process = essentialBuilder()
@@ -164,6 +181,98 @@ class VPProcessBuilderTest {
         }
     }
 
+    @Test
+    void withCache() throws IOException {
+        var cacheDirectory = Files.createTempDirectory(null);
+        var tmpPath = Files.createTempFile(null, null);
+        try {
+            var cache = new SynthesisCache(cacheDirectory, 1024 * 1024);
+
+            var process = essentialBuilder()
+                    .withOutput(tmpPath)
+                    .withCache(cache)
+                    .build();
+            assertEquals(0, startProcess(process));
+            assertEquals(1, cache.getMissCount());
+            assertEquals(1, cache.getEntryCount());
+
+            // 二回目はVOICEPEAKを実行せずにキャッシュから出力する
+            Files.delete(tmpPath);
+            var sub = new MessageSubscriber();
+            var cachedProcess = essentialBuilder()
+                    .withOutput(tmpPath)
+                    .withCache(cache)
+                    .build();
+            cachedProcess.getStandardOut().subscribe(sub);
+
+            assertEquals(0, startProcess(cachedProcess));
+            assertEquals(1, cache.getHitCount());
+            assertTrue(Files.exists(tmpPath));
+            assertTrue(sub.getOutputs().isEmpty());
+
+        } finally {
+            Files.deleteIfExists(tmpPath);
+            new SynthesisCache(cacheDirectory, 1).clear();
+            Files.deleteIfExists(cacheDirectory);
+        }
+    }
+
+    @Test
+    void withCacheStoreFailure() throws IOException {
+        var cacheDirectory = Files.createTempDirectory(null);
+        var tmpPath = Files.createTempFile(null, null);
+        try {
+            var cache = new SynthesisCache(cacheDirectory, 1024 * 1024);
+
+            // キャッシュに保存できなくても合成は成功する
+            Files.delete(cacheDirectory);
+            var process = essentialBuilder()
+                    .withOutput(tmpPath)
+                    .withCache(cache)
+                    .build();
+            assertEquals(0, startProcess(process));
+            assertTrue(Files.exists(tmpPath));
+            assertEquals(0, cache.getEntryCount());
+
+        } finally {
+            Files.deleteIfExists(tmpPath);
+            Files.deleteIfExists(cacheDirectory);
+        }
+    }
+
+    @Test
+    void withLongText() throws IOException {
+        var tmpPath = Files.createTempFile(null, ".wav");
+        try {
+            // 上限を超えるテキストは分割して合成し、連結する
+            var sub = new MessageSubscriber();
+            var process = new VPProcessBuilder(executable)
+                    .withSpeechText("恥の多い生涯を送って来ました。自分には、人間の生活というものが、見当つかないのです。")
+                    .withMaxSentenceLength(20)
+                    .withOutput(tmpPath)
+                    .build();
+            process.getStandardOut().subscribe(sub);
+            process.execute().join();
+
+            var header = WavHeader.read(tmpPath);
+            assertEquals(3 * 206336, header.dataSize());
+            assertEquals(3, sub.getOutputs().stream().filter(line -> line.startsWith("Speech Text:")).count());
+
+            // 分割した音声ファイルは削除される
+            try (var files = Files.list(tmpPath.getParent())) {
+                assertTrue(files.noneMatch(file -> file.getFileName().toString().startsWith(tmpPath.getFileName() + ".part")));
+            }
+        } finally {
+            Files.deleteIfExists(tmpPath);
+        }
+    }
+
+    @Test
+    void errorMaxSentenceLength() {
+        var builder = essentialBuilder().withMaxSentenceLength(3);
+        assertThrows(VPExecutionException.class, builder::build);
+    }
+
     @Test
     void withPitch() {
         // ピッチオプションの範囲は-300 ~ 300
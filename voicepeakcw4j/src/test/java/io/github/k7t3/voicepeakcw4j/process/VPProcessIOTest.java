@@ -0,0 +1,85 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.k7t3.voicepeakcw4j.process;
+
+import io.github.k7t3.voicepeakcw4j.MessageSubscriber;
+import io.github.k7t3.voicepeakcw4j.TestVPExecutable;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VPProcessIOTest {
+
+    private static long countErrorFiles() throws IOException {
+        try (var files = Files.list(Paths.get(System.getProperty("java.io.tmpdir")))) {
+            return files.map(Path::getFileName).map(Path::toString)
+                    .filter(name -> name.startsWith("vpcw4j-") && name.endsWith(".err"))
+                    .count();
+        }
+    }
+
+    private static VPProcessBuilder builder() {
+        return new VPProcessBuilder(new TestVPExecutable())
+                .withNarrator("Zundamon")
+                .withSpeechText("speech text");
+    }
+
+    @Test
+    void discardWithoutSubscribers() throws IOException {
+        var io = VPProcessIO.getDefault();
+        var before = io.getStatistics();
+        var errorFiles = countErrorFiles();
+
+        assertEquals(0, builder().build().start().join());
+
+        // 購読者がいないときはパイプを使用しない
+        var after = io.getStatistics();
+        assertEquals(before.launchedCount() + 1, after.launchedCount());
+        assertEquals(before.pipedCount(), after.pipedCount());
+        assertEquals(before.discardedCount() + 1, after.discardedCount());
+        assertEquals(before.redirectedCount() + 1, after.redirectedCount());
+        assertTrue(0 < after.averageLaunchNanos());
+        assertTrue(after.averageLaunchNanos() <= after.maxLaunchNanos());
+
+        // エラー出力のリダイレクト先は削除されている
+        assertEquals(errorFiles, countErrorFiles());
+    }
+
+    @Test
+    void pipeWithSubscribers() {
+        var io = VPProcessIO.getDefault();
+        var before = io.getStatistics();
+
+        var process = builder().build();
+        var standardOut = new MessageSubscriber();
+        process.getStandardOut().subscribe(standardOut);
+        process.getErrorOut().subscribe(new MessageSubscriber());
+
+        assertEquals(0, process.start().join());
+
+        var after = io.getStatistics();
+        assertEquals(before.pipedCount() + 2, after.pipedCount());
+        assertEquals(before.discardedCount(), after.discardedCount());
+        assertEquals(0, after.activeReaders());
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.k7t3.voicepeakcw4j.process;
+
+import io.github.k7t3.voicepeakcw4j.TestProcess;
+import io.github.k7t3.voicepeakcw4j.exception.VPExecutionException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VPProcessSchedulerTest {
+
+    @Test
+    void fifo() {
+        var scheduler = new VPProcessScheduler(1);
+        var started = Collections.synchronizedList(new ArrayList<Integer>());
+        var processes = new ArrayList<TestProcess>();
+        var futures = new ArrayList<CompletableFuture<Process>>();
+
+        for (int i = 0; i < 3; i++) {
+            var index = i;
+            var process = new TestProcess();
+            processes.add(process);
+            futures.add(scheduler.submit(() -> {
+                started.add(index);
+                return process;
+            }));
+        }
+
+        // 同時実行数は1なので先頭のみ起動している
+        assertEquals(List.of(0), started);
+        assertEquals(2, scheduler.getStatistics().queued());
+
+        processes.get(0).exit();
+        assertEquals(List.of(0, 1), started);
+
+        processes.get(1).exit();
+        processes.get(2).exit();
+        assertEquals(List.of(0, 1, 2), started);
+
+        futures.forEach(f -> assertTrue(f.isDone()));
+
+        var statistics = scheduler.getStatistics();
+        assertEquals(3, statistics.startedCount());
+        assertEquals(0, statistics.running());
+        assertEquals(0, statistics.queued());
+        assertTrue(statistics.maxWaitNanos() >= statistics.averageWaitNanos());
+    }
+
+    @Test
+    void setPermits() {
+        var scheduler = new VPProcessScheduler(1);
+        var first = new TestProcess();
+        var second = new TestProcess();
+
+        scheduler.submit(() -> first);
+        var future = scheduler.submit(() -> second);
+        assertFalse(future.isDone());
+
+        // 同時実行数を増やすとキューされている要求が起動する
+        scheduler.setPermits(2);
+        assertTrue(future.isDone());
+        assertEquals(2, scheduler.getStatistics().running());
+
+        assertThrows(IllegalArgumentException.class, () -> scheduler.setPermits(0));
+    }
+
+    @Test
+    void cancel() {
+        var scheduler = new VPProcessScheduler(1);
+        var first = new TestProcess();
+        scheduler.submit(() -> first);
+
+        var launched = new ArrayList<Integer>();
+        var future = scheduler.submit(() -> {
+            launched.add(1);
+            return new TestProcess();
+        });
+
+        // 起動前にキャンセルした要求は起動しない
+        future.cancel(false);
+        first.exit();
+        assertTrue(launched.isEmpty());
+        assertEquals(0, scheduler.getStatistics().running());
+    }
+
+    @Test
+    void cancelWhileLaunching() {
+        var scheduler = new VPProcessScheduler(1);
+        var first = new TestProcess();
+        scheduler.submit(() -> first);
+
+        // 通常の終了要求を無視するプロセス
+        var process = new TestProcess() {
+            @Override
+            public void destroy() {
+            }
+
+            @Override
+            public Process destroyForcibly() {
+                exit();
+                return this;
+            }
+        };
+        var future = new AtomicReference<CompletableFuture<Process>>();
+        future.set(scheduler.submit(() -> {
+            future.get().cancel(false);
+            return process;
+        }));
+
+        // 起動中にキャンセルしたプロセスは直ちに強制的に終了させる
+        var terminated = VPProcessWatchdog.getDefault().getStatistics().terminatedCount();
+        first.exit();
+        assertTrue(process.onExit().isDone());
+        assertEquals(terminated + 1, VPProcessWatchdog.getDefault().getStatistics().terminatedCount());
+        assertEquals(0, scheduler.getStatistics().running());
+    }
+
+    @Test
+    void failure() {
+        var scheduler = new VPProcessScheduler(1);
+        var future = scheduler.submit(() -> {
+            throw new IOException("failed to start");
+        });
+
+        var e = assertThrows(CompletionException.class, future::join);
+        assertInstanceOf(VPExecutionException.class, e.getCause());
+
+        // 起動に失敗したときは同時実行数を占有しない
+        assertEquals(0, scheduler.getStatistics().running());
+    }
+}
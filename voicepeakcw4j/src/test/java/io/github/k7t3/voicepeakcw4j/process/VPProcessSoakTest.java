@@ -0,0 +1,155 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.k7t3.voicepeakcw4j.process;
+
+import io.github.k7t3.voicepeakcw4j.MessageSubscriber;
+import io.github.k7t3.voicepeakcw4j.TestVPExecutable;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * モックに対して大量の音声を合成し、ヒープとスレッドが増え続けないことを確認する。
+ * <p>
+ *     実行に時間がかかるため通常のテストからは除外しており、<code>gradlew soakTest</code>で実行する。
+ * </p>
+ */
+@Tag("soak")
+class VPProcessSoakTest {
+
+    private static final int COUNT = Integer.getInteger("voicepeakcw4j.soak.count", 20_000);
+
+    private static final int PARALLELISM = Integer.getInteger("voicepeakcw4j.soak.parallelism", 8);
+
+    private static final int CHECKPOINTS = 10;
+
+    /**
+     * 完了の通知を数える購読者
+     */
+    private static class CompletionSubscriber extends MessageSubscriber {
+
+        private final AtomicLong completed;
+
+        CompletionSubscriber(AtomicLong completed) {
+            this.completed = completed;
+        }
+
+        @Override
+        public void onComplete() {
+            completed.incrementAndGet();
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        var runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static int threadCount() {
+        return ManagementFactory.getThreadMXBean().getThreadCount();
+    }
+
+    @Test
+    void soak() throws IOException, InterruptedException {
+        var scheduler = VPProcessScheduler.getDefault();
+        var permits = scheduler.getPermits();
+        scheduler.setPermits(PARALLELISM);
+
+        var directory = Files.createTempDirectory("vpcw4j-soak");
+        var executable = new TestVPExecutable();
+        var inFlight = new Semaphore(PARALLELISM * 2);
+        var completed = new AtomicLong();
+        var failed = new AtomicLong();
+
+        long baselineHeap = 0;
+        int baselineThreads = 0;
+
+        try {
+            for (int i = 0; i < COUNT; i++) {
+                inFlight.acquire();
+
+                var output = directory.resolve(i + ".wav");
+                var process = new VPProcessBuilder(executable)
+                        .withNarrator("Zundamon")
+                        .withSpeechText("soak " + i)
+                        .withOutput(output)
+                        .build();
+                process.getStandardOut().subscribe(new CompletionSubscriber(completed));
+                process.getErrorOut().subscribe(new CompletionSubscriber(completed));
+
+                process.start().whenComplete((status, e) -> {
+                    if (e != null || status != 0) {
+                        failed.incrementAndGet();
+                    }
+                    try {
+                        Files.deleteIfExists(output);
+                    } catch (IOException ignored) {
+                    }
+                    inFlight.release();
+                });
+
+                if ((i + 1) % (COUNT / CHECKPOINTS) == 0) {
+                    inFlight.acquire(PARALLELISM * 2);
+                    var heap = usedHeap();
+                    var threads = threadCount();
+                    System.out.printf("soak %d/%d heap=%dKB threads=%d%n", i + 1, COUNT, heap / 1024, threads);
+
+                    // 最初のチェックポイントを基準とする
+                    if (baselineThreads == 0) {
+                        baselineHeap = heap;
+                        baselineThreads = threads;
+                    } else {
+                        assertTrue(heap < baselineHeap + 32L * 1024 * 1024, "heap grows " + heap);
+                        assertTrue(threads <= baselineThreads + 8, "threads grow " + threads);
+                    }
+                    inFlight.release(PARALLELISM * 2);
+                }
+            }
+
+            assertTrue(inFlight.tryAcquire(PARALLELISM * 2, 1, TimeUnit.MINUTES));
+            assertEquals(0, failed.get());
+
+            // すべての購読者に完了が通知される
+            for (int i = 0; i < 50 && completed.get() < COUNT * 2L; i++) {
+                Thread.sleep(100);
+            }
+            assertEquals(COUNT * 2L, completed.get());
+        } finally {
+            scheduler.setPermits(permits);
+            try (var files = Files.list(directory)) {
+                for (Path file : files.toList()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(directory);
+        }
+    }
+
+}
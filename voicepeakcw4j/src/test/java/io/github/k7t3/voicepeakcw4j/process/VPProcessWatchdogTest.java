@@ -0,0 +1,297 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.k7t3.voicepeakcw4j.process;
+
+import io.github.k7t3.voicepeakcw4j.TestProcess;
+import io.github.k7t3.voicepeakcw4j.VPExecutable;
+import io.github.k7t3.voicepeakcw4j.exception.VPTimeoutException;
+import io.github.k7t3.voicepeakcw4j.process.impl.DefaultVPProcess;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VPProcessWatchdogTest {
+
+    /**
+     * 通常の終了要求を無視するプロセス
+     */
+    private static class StubbornProcess extends TestProcess {
+
+        @Override
+        public void destroy() {
+        }
+
+        @Override
+        public Process destroyForcibly() {
+            exit();
+            return this;
+        }
+    }
+
+    /**
+     * 通常の終了要求を無視する子プロセス
+     */
+    private static class StubbornHandle implements ProcessHandle {
+
+        private final CompletableFuture<ProcessHandle> exit = new CompletableFuture<>();
+
+        @Override
+        public long pid() {
+            return -2;
+        }
+
+        @Override
+        public Optional<ProcessHandle> parent() {
+            return Optional.empty();
+        }
+
+        @Override
+        public Stream<ProcessHandle> children() {
+            return Stream.empty();
+        }
+
+        @Override
+        public Stream<ProcessHandle> descendants() {
+            return Stream.empty();
+        }
+
+        @Override
+        public Info info() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<ProcessHandle> onExit() {
+            return exit;
+        }
+
+        @Override
+        public boolean supportsNormalTermination() {
+            return true;
+        }
+
+        @Override
+        public boolean destroy() {
+            return false;
+        }
+
+        @Override
+        public boolean destroyForcibly() {
+            return exit.complete(this);
+        }
+
+        @Override
+        public boolean isAlive() {
+            return !exit.isDone();
+        }
+
+        @Override
+        public int compareTo(ProcessHandle other) {
+            return Long.compare(pid(), other.pid());
+        }
+    }
+
+    /**
+     * 終了要求で終了するが、終了要求を無視する子プロセスを残すプロセス
+     */
+    private static class OrphaningProcess extends TestProcess {
+
+        private final StubbornHandle child = new StubbornHandle();
+
+        @Override
+        public Stream<ProcessHandle> descendants() {
+            // 終了した親プロセスからは子孫プロセスを辿れない
+            return isAlive() ? Stream.of(child) : Stream.empty();
+        }
+    }
+
+    @Test
+    void exitBeforeTimeout() {
+        var watchdog = new VPProcessWatchdog(Duration.ZERO);
+        var process = new TestProcess();
+
+        var future = watchdog.watch(process, Duration.ofMinutes(1));
+        assertEquals(1, watchdog.getStatistics().live());
+
+        process.exit();
+        assertSame(process, future.join());
+        assertEquals(0, watchdog.getStatistics().live());
+        assertEquals(0, watchdog.getStatistics().timedOutCount());
+    }
+
+    @Test
+    void timeout() {
+        var watchdog = new VPProcessWatchdog(Duration.ofMinutes(1));
+        var process = new TestProcess();
+
+        var future = watchdog.watch(process, Duration.ofMillis(50));
+        var e = assertThrows(CompletionException.class, future::join);
+        assertInstanceOf(VPTimeoutException.class, e.getCause());
+        assertEquals(Duration.ofMillis(50), ((VPTimeoutException) e.getCause()).getTimeout());
+
+        // 通常の終了要求で終了している
+        process.onExit().orTimeout(5, TimeUnit.SECONDS).join();
+        var statistics = watchdog.getStatistics();
+        assertEquals(0, statistics.live());
+        assertEquals(1, statistics.timedOutCount());
+        assertEquals(0, statistics.killedCount());
+    }
+
+    @Test
+    void destroyForcibly() {
+        var watchdog = new VPProcessWatchdog(Duration.ofMillis(50));
+        var process = new StubbornProcess();
+
+        var future = watchdog.watch(process, Duration.ofMillis(50));
+        assertThrows(CompletionException.class, future::join);
+
+        // 猶予期間を過ぎると強制的に終了させる
+        process.onExit().orTimeout(5, TimeUnit.SECONDS).join();
+        assertEquals(1, watchdog.getStatistics().killedCount());
+    }
+
+    @Test
+    void destroyOrphanForcibly() {
+        var watchdog = new VPProcessWatchdog(Duration.ofMillis(50));
+        var process = new OrphaningProcess();
+
+        var future = watchdog.watch(process, Duration.ofMillis(50));
+        assertThrows(CompletionException.class, future::join);
+
+        // 親プロセスが終了しても残った子プロセスは猶予期間を過ぎると強制的に終了させる
+        process.onExit().orTimeout(5, TimeUnit.SECONDS).join();
+        process.child.onExit().orTimeout(5, TimeUnit.SECONDS).join();
+        assertEquals(1, watchdog.getStatistics().killedCount());
+    }
+
+    @Test
+    void releaseSlot() throws InterruptedException {
+        var scheduler = new VPProcessScheduler(1);
+        var processes = new CopyOnWriteArrayList<TestProcess>();
+        var executable = new VPExecutable() {
+            @Override
+            public Process launch(ProcessBuilder builder) {
+                var process = new TestProcess();
+                processes.add(process);
+                return process;
+            }
+        };
+
+        var hung = new DefaultVPProcess(executable, List.of(), scheduler, Duration.ofMillis(50));
+        var next = new DefaultVPProcess(executable, List.of(), scheduler);
+
+        var hungFuture = hung.start();
+        var nextFuture = next.start();
+        assertEquals(1, processes.size());
+
+        // 制限時間を超過したプロセスが終了すると次のプロセスが起動する
+        var e = assertThrows(CompletionException.class, hungFuture::join);
+        assertInstanceOf(VPTimeoutException.class, e.getCause());
+        for (int i = 0; i < 100 && processes.size() < 2; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(2, processes.size());
+
+        processes.get(1).exit();
+        assertEquals(0, nextFuture.join());
+    }
+
+    @Test
+    void terminateOnCancel() throws InterruptedException {
+        var scheduler = new VPProcessScheduler(1);
+        var processes = new CopyOnWriteArrayList<TestProcess>();
+        var executable = new VPExecutable() {
+            @Override
+            public Process launch(ProcessBuilder builder) {
+                var process = new StubbornProcess();
+                processes.add(process);
+                return process;
+            }
+        };
+
+        var running = new DefaultVPProcess(executable, List.of(), scheduler);
+        var next = new DefaultVPProcess(executable, List.of(), scheduler);
+
+        var runningFuture = running.start();
+        var nextFuture = next.start();
+        assertEquals(1, processes.size());
+
+        // 実行中にキャンセルすると猶予期間を待たずに強制的に終了させる
+        var terminated = VPProcessWatchdog.getDefault().getStatistics().terminatedCount();
+        runningFuture.cancel(false);
+        assertTrue(processes.getFirst().onExit().isDone());
+        assertEquals(terminated + 1, VPProcessWatchdog.getDefault().getStatistics().terminatedCount());
+
+        // 終了したプロセスの同時実行数を解放して次のプロセスが起動する
+        for (int i = 0; i < 100 && processes.size() < 2; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(2, processes.size());
+
+        processes.get(1).exit();
+        assertEquals(0, nextFuture.join());
+    }
+
+    @Test
+    void deleteOutputOnCancelWhileLaunching() throws IOException, InterruptedException {
+        var output = Files.createTempFile("vpwatchdog", ".wav");
+        var future = new AtomicReference<CompletableFuture<Integer>>();
+        var executable = new VPExecutable() {
+            @Override
+            public Process launch(ProcessBuilder builder) {
+                // 起動している間にキャンセルされる
+                future.get().cancel(false);
+                return new StubbornProcess();
+            }
+        };
+
+        var scheduler = new VPProcessScheduler(1);
+        var first = new TestProcess();
+        scheduler.submit(() -> first);
+
+        var process = new DefaultVPProcess(executable, List.of(), scheduler, null,
+                RetryPolicy.NONE, OutputBuffer.DEFAULT, output);
+        future.set(process.start());
+        first.exit();
+
+        // スケジューラが終了させたプロセスの書き込み途中の音声ファイルを削除する
+        for (int i = 0; i < 100 && Files.exists(output); i++) {
+            Thread.sleep(50);
+        }
+        assertFalse(Files.exists(output));
+    }
+
+    @Test
+    void invalidTimeout() {
+        var watchdog = VPProcessWatchdog.getDefault();
+        assertThrows(IllegalArgumentException.class, () -> watchdog.watch(new TestProcess(), Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, () -> watchdog.watch(null, null));
+    }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.k7t3.voicepeakcw4j.process.impl;
+
+import io.github.k7t3.voicepeakcw4j.cache.SynthesisCache;
+import io.github.k7t3.voicepeakcw4j.process.OutputBuffer;
+import io.github.k7t3.voicepeakcw4j.process.VPProcess;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachedVPProcessTest {
+
+    /**
+     * 出力先に書き込み、標準出力に一行出力するプロセス
+     */
+    private static class WritingVPProcess implements VPProcess {
+
+        private final Path output;
+
+        private final SubmissionPublisher<String> standardOut = new SubmissionPublisher<>();
+
+        private final SubmissionPublisher<String> errorOut = new SubmissionPublisher<>();
+
+        private int started = 0;
+
+        WritingVPProcess(Path output) {
+            this.output = output;
+        }
+
+        @Override
+        public CompletableFuture<Integer> start() {
+            started++;
+            try {
+                Files.write(output, new byte[16]);
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+            standardOut.submit("written");
+            standardOut.close();
+            errorOut.close();
+            return CompletableFuture.completedFuture(0);
+        }
+
+        @Override
+        public Flow.Publisher<String> getStandardOut() {
+            return standardOut;
+        }
+
+        @Override
+        public Flow.Publisher<String> getErrorOut() {
+            return errorOut;
+        }
+
+        @Override
+        public long getDroppedLineCount() {
+            return 0;
+        }
+    }
+
+    /**
+     * 受け取った行と完了を記録する購読者
+     */
+    private static class RecordingSubscriber implements Flow.Subscriber<String> {
+
+        private final List<String> items = Collections.synchronizedList(new ArrayList<>());
+
+        private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            completion.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            completion.complete(null);
+        }
+    }
+
+    private Path directory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("vpcached");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (var stream = Files.walk(directory)) {
+            for (var path : stream.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Test
+    void relayAndComplete() {
+        var cache = new SynthesisCache(directory.resolve("cache"), 1024);
+        var output = directory.resolve("output.wav");
+
+        // 合成したときは委譲先の出力を中継する
+        var delegate = new WritingVPProcess(output);
+        var process = new CachedVPProcess(delegate, cache, "key", output, OutputBuffer.DEFAULT);
+        var subscriber = new RecordingSubscriber();
+        process.getStandardOut().subscribe(subscriber);
+
+        assertEquals(0, process.start().join());
+        subscriber.completion.orTimeout(5, TimeUnit.SECONDS).join();
+        assertEquals(List.of("written"), subscriber.items);
+        assertEquals(1, cache.getEntryCount());
+
+        // キャッシュから出力したときは委譲先の種類にかかわらず完了を通知する
+        var cachedDelegate = new WritingVPProcess(output);
+        var cached = new CachedVPProcess(cachedDelegate, cache, "key", output, OutputBuffer.DEFAULT);
+        var cachedSubscriber = new RecordingSubscriber();
+        cached.getStandardOut().subscribe(cachedSubscriber);
+
+        assertEquals(0, cached.start().join());
+        cachedSubscriber.completion.orTimeout(5, TimeUnit.SECONDS).join();
+        assertTrue(cachedSubscriber.items.isEmpty());
+        assertEquals(0, cachedDelegate.started);
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.k7t3.voicepeakcw4j.process.impl;
+
+import io.github.k7t3.voicepeakcw4j.process.OutputBuffer;
+import io.github.k7t3.voicepeakcw4j.process.OverflowPolicy;
+import io.github.k7t3.voicepeakcw4j.process.VPProcessIO;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessagePublisherTest {
+
+    /**
+     * 要求するまで受け取らない購読者
+     */
+    private static class PullSubscriber implements Flow.Subscriber<String> {
+
+        private final CompletableFuture<Flow.Subscription> subscription = new CompletableFuture<>();
+
+        private final List<String> items = Collections.synchronizedList(new ArrayList<>());
+
+        private volatile CountDownLatch latch = new CountDownLatch(0);
+
+        private final CompletableFuture<Void> terminal = new CompletableFuture<>();
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription.complete(subscription);
+        }
+
+        @Override
+        public void onNext(String item) {
+            items.add(item);
+            latch.countDown();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            terminal.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            terminal.complete(null);
+        }
+
+        List<String> request(int n) throws InterruptedException {
+            latch = new CountDownLatch(n);
+            subscription.join().request(n);
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            return List.copyOf(items);
+        }
+    }
+
+    private static PullSubscriber subscribe(MessagePublisher publisher) {
+        var subscriber = new PullSubscriber();
+        publisher.subscribe(subscriber);
+        subscriber.subscription.orTimeout(5, TimeUnit.SECONDS).join();
+        return subscriber;
+    }
+
+    private static void submit(MessagePublisher publisher, int count) {
+        for (int i = 1; i <= count; i++) {
+            publisher.submit(String.valueOf(i));
+        }
+    }
+
+    @Test
+    void dropOldest() throws InterruptedException {
+        var publisher = new MessagePublisher(OutputBuffer.of(3, OverflowPolicy.DROP_OLDEST));
+        var subscriber = subscribe(publisher);
+
+        submit(publisher, 5);
+        assertEquals(List.of("3", "4", "5"), subscriber.request(3));
+        assertEquals(2, publisher.getDroppedCount());
+    }
+
+    @Test
+    void dropNewest() throws InterruptedException {
+        var publisher = new MessagePublisher(OutputBuffer.of(3, OverflowPolicy.DROP_NEWEST));
+        var subscriber = subscribe(publisher);
+
+        submit(publisher, 5);
+        assertEquals(List.of("1", "2", "3"), subscriber.request(3));
+        assertEquals(2, publisher.getDroppedCount());
+    }
+
+    @Test
+    void spill() throws InterruptedException {
+        var publisher = new MessagePublisher(new OutputBuffer(2, OverflowPolicy.SPILL, 2));
+        var subscriber = subscribe(publisher);
+
+        // 先頭と末尾が保持される
+        submit(publisher, 6);
+        assertEquals(List.of("1", "2", "5", "6"), subscriber.request(4));
+        assertEquals(2, publisher.getDroppedCount());
+    }
+
+    @Test
+    void block() throws InterruptedException {
+        var publisher = new MessagePublisher(OutputBuffer.of(1, OverflowPolicy.BLOCK));
+        var subscriber = subscribe(publisher);
+
+        var reader = new Thread(() -> submit(publisher, 3));
+        reader.start();
+
+        // バッファに空きができるまで待機する
+        reader.join(200);
+        assertTrue(reader.isAlive());
+
+        assertEquals(List.of("1", "2", "3"), subscriber.request(3));
+        reader.join(5000);
+        assertFalse(reader.isAlive());
+        assertEquals(0, publisher.getDroppedCount());
+    }
+
+    @Test
+    void slowSubscriber() {
+        var publisher = new MessagePublisher(OutputBuffer.DEFAULT);
+        var unblock = new CountDownLatch(1);
+        publisher.subscribe(new PullSubscriber() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(String item) {
+                try {
+                    unblock.await();
+                } catch (InterruptedException ignored) {
+                }
+            }
+        });
+
+        var lines = IntStream.range(0, 10_000).mapToObj(String::valueOf).collect(Collectors.joining("\n"));
+        var reader = new BufferedReader(new StringReader(lines));
+
+        // 購読者が受け取らなくても読み込みは停止しない
+        VPProcessIO.getDefault().read(reader, publisher::submit).orTimeout(5, TimeUnit.SECONDS).join();
+        assertTrue(0 < publisher.getDroppedCount());
+        unblock.countDown();
+    }
+
+    @Test
+    void lossless() {
+        var publisher = new MessagePublisher(OutputBuffer.of(256, OverflowPolicy.BLOCK));
+        PullSubscriber subscriber = new PullSubscriber() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+        };
+        publisher.subscribe(subscriber);
+
+        var lines = IntStream.range(0, 10_000).mapToObj(String::valueOf).collect(Collectors.joining("\n"));
+        var reader = new BufferedReader(new StringReader(lines));
+
+        // 読み込みを待機させるときはバッファの大きさを超えても行を破棄しない
+        VPProcessIO.getDefault().read(reader, publisher::submit).orTimeout(5, TimeUnit.SECONDS).join();
+        publisher.complete();
+        subscriber.terminal.orTimeout(5, TimeUnit.SECONDS).join();
+        assertEquals(10_000, subscriber.items.size());
+        assertEquals("9999", subscriber.items.getLast());
+        assertEquals(0, publisher.getDroppedCount());
+    }
+
+    @Test
+    void complete() throws InterruptedException {
+        var publisher = new MessagePublisher(OutputBuffer.DEFAULT);
+        var subscriber = subscribe(publisher);
+
+        submit(publisher, 3);
+        publisher.complete();
+
+        // 購読者を解放する
+        assertFalse(publisher.hasSubscribers());
+        publisher.submit("4");
+
+        // バッファの残りを配信してから完了を通知する
+        assertFalse(subscriber.terminal.isDone());
+        assertEquals(List.of("1", "2", "3"), subscriber.request(3));
+        subscriber.terminal.orTimeout(5, TimeUnit.SECONDS).join();
+    }
+
+    @Test
+    void completeExceptionally() {
+        var publisher = new MessagePublisher(OutputBuffer.DEFAULT);
+        var subscriber = subscribe(publisher);
+
+        submit(publisher, 3);
+        var error = new IllegalStateException("timeout");
+        publisher.completeExceptionally(error);
+
+        // バッファの残りを配信せずにエラーを通知する
+        var e = assertThrows(CompletionException.class, () -> subscriber.terminal.orTimeout(5, TimeUnit.SECONDS).join());
+        assertSame(error, e.getCause());
+        assertTrue(subscriber.items.isEmpty());
+        assertFalse(publisher.hasSubscribers());
+    }
+
+    @Test
+    void resubscribe() throws InterruptedException {
+        var publisher = new MessagePublisher(OutputBuffer.DEFAULT);
+        var first = subscribe(publisher);
+        publisher.complete();
+        first.terminal.orTimeout(5, TimeUnit.SECONDS).join();
+
+        // 完了したあとも購読を受け付ける
+        var second = subscribe(publisher);
+        submit(publisher, 1);
+        assertEquals(List.of("1"), second.request(1));
+        assertTrue(first.items.isEmpty());
+    }
+
+    @Test
+    void releaseSubscriber() throws InterruptedException {
+        var publisher = new MessagePublisher(OutputBuffer.DEFAULT);
+        var subscriber = subscribe(publisher);
+        var terminal = subscriber.terminal;
+        var reference = new WeakReference<>(subscriber);
+        subscriber = null;
+
+        publisher.complete();
+        terminal.orTimeout(5, TimeUnit.SECONDS).join();
+
+        // 完了を通知した購読者はパブリッシャーから参照されない
+        for (int i = 0; i < 20 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        assertNull(reference.get());
+    }
+
+}
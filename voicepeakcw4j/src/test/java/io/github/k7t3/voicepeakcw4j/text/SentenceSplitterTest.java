@@ -14,7 +14,7 @@
  * limitations under the License.
  */
 
-package io.github.k7t3.voicepeakcw4j.speech;
+package io.github.k7t3.voicepeakcw4j.text;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;